@@ -14,6 +14,11 @@ public class AppSettings {
     private static final String KEY_AUTO_INDENT = "auto_indent";
     private static final String KEY_WORD_WRAP = "word_wrap";
     private static final String KEY_SHOW_WHITESPACE = "show_whitespace";
+    private static final String KEY_SPECULATIVE_COMPILE = "speculative_compile";
+    private static final String KEY_OUTPUT_LIMIT_KB = "output_limit_kb";
+    private static final String KEY_TIERED_EXECUTION = "tiered_execution";
+    private static final String KEY_SESSION_MODE = "session_mode";
+    private static final String KEY_PROJECT_MODE = "project_mode";
     
     public enum Theme {
         DARK, LIGHT
@@ -96,6 +101,46 @@ public class AppSettings {
         prefs.edit().putBoolean(KEY_SHOW_WHITESPACE, enabled).apply();
     }
     
+    public boolean isSpeculativeCompileEnabled() {
+        return prefs.getBoolean(KEY_SPECULATIVE_COMPILE, false);
+    }
+    
+    public void setSpeculativeCompileEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_SPECULATIVE_COMPILE, enabled).apply();
+    }
+    
+    public boolean isTieredExecutionEnabled() {
+        return prefs.getBoolean(KEY_TIERED_EXECUTION, true);
+    }
+    
+    public void setTieredExecutionEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_TIERED_EXECUTION, enabled).apply();
+    }
+    
+    public boolean isSessionModeEnabled() {
+        return prefs.getBoolean(KEY_SESSION_MODE, false);
+    }
+    
+    public void setSessionModeEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_SESSION_MODE, enabled).apply();
+    }
+    
+    public boolean isProjectModeEnabled() {
+        return prefs.getBoolean(KEY_PROJECT_MODE, false);
+    }
+    
+    public void setProjectModeEnabled(boolean enabled) {
+        prefs.edit().putBoolean(KEY_PROJECT_MODE, enabled).apply();
+    }
+    
+    public int getOutputLimitKb() {
+        return prefs.getInt(KEY_OUTPUT_LIMIT_KB, 1024);
+    }
+    
+    public void setOutputLimitKb(int limitKb) {
+        prefs.edit().putInt(KEY_OUTPUT_LIMIT_KB, limitKb).apply();
+    }
+    
     public void resetToDefaults() {
         prefs.edit().clear().apply();
     }
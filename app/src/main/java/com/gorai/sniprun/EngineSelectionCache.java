@@ -0,0 +1,225 @@
+package com.gorai.sniprun;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class EngineSelectionCache {
+    
+    private static final String PREFS_NAME = "EngineSelection";
+    private static final String KEY_ROUTES = "routes";
+    private static final int MAX_ROUTES = 256;
+    private static final int CONFIDENT_STREAK = 2;
+    private static final long VERIFY_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+    
+    private static final Pattern COMMENTS = Pattern.compile("//[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern LITERALS = Pattern.compile("\"(?:\\\\.|[^\"\\\\])*\"|'(?:\\\\.|[^'\\\\])*'");
+    private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(static\\s+)?([\\w.]+(?:\\.\\*)?)\\s*;", Pattern.MULTILINE);
+    private static final Pattern STATIC_API = Pattern.compile("\\b([A-Z]\\w*)\\s*\\.\\s*(\\w+)");
+    private static final Pattern CONSTRUCTOR = Pattern.compile("\\bnew\\s+([A-Z]\\w*)");
+    private static final Pattern KEYWORD = Pattern.compile(
+        "\\b(for|while|do|if|else|switch|try|catch|finally|throw|return|break|continue|class|interface|enum|" +
+        "record|extends|implements|static|synchronized|var|instanceof)\\b");
+    private static final Pattern METHOD_DECLARATION = Pattern.compile(
+        "\\b(?:public|private|protected|static)\\s+[\\w<>\\[\\], ]+\\s+(\\w+)\\s*\\(");
+    
+    public static class Route {
+        private JavaExecutor.Tier engine;
+        private int streak;
+        private long compiledMs;
+        private long interpretedMs;
+        private long failedCompileMs;
+        private long lastUsed;
+        private long verifiedAt;
+        
+        public Route() {}
+        
+        public JavaExecutor.Tier getEngine() { return engine; }
+        public int getStreak() { return streak; }
+        public long getCompiledMs() { return compiledMs; }
+        public long getInterpretedMs() { return interpretedMs; }
+        public long getFailedCompileMs() { return failedCompileMs; }
+        
+        boolean isConfident() {
+            return engine != null && streak >= CONFIDENT_STREAK;
+        }
+    }
+    
+    private final SharedPreferences prefs;
+    private final Gson gson = new Gson();
+    private Map<String, Route> routes = new HashMap<>();
+    private int hits;
+    private int misses;
+    private long latencySavedMs;
+    
+    public EngineSelectionCache(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        loadRoutes();
+    }
+    
+    private void loadRoutes() {
+        String json = prefs.getString(KEY_ROUTES, "");
+        if (!json.isEmpty()) {
+            Type type = new TypeToken<Map<String, Route>>(){}.getType();
+            Map<String, Route> loaded = gson.fromJson(json, type);
+            if (loaded != null) {
+                routes = loaded;
+            }
+        }
+    }
+    
+    private void saveRoutes() {
+        prefs.edit().putString(KEY_ROUTES, gson.toJson(routes)).apply();
+    }
+    
+    public static String fingerprint(String sourceCode) {
+        String code = LITERALS.matcher(COMMENTS.matcher(sourceCode).replaceAll(" ")).replaceAll("\"\"");
+        Set<String> features = new TreeSet<>();
+        
+        Matcher matcher = IMPORT.matcher(code);
+        while (matcher.find()) {
+            features.add("import:" + (matcher.group(1) != null ? "static " : "") + matcher.group(2));
+        }
+        matcher = STATIC_API.matcher(code);
+        while (matcher.find()) {
+            features.add("api:" + matcher.group(1) + "." + matcher.group(2));
+        }
+        matcher = CONSTRUCTOR.matcher(code);
+        while (matcher.find()) {
+            features.add("new:" + matcher.group(1));
+        }
+        matcher = KEYWORD.matcher(code);
+        while (matcher.find()) {
+            features.add("stmt:" + matcher.group(1));
+        }
+        matcher = METHOD_DECLARATION.matcher(code);
+        while (matcher.find()) {
+            features.add("method:" + ("main".equals(matcher.group(1)) ? "main" : "other"));
+        }
+        if (code.contains("->")) {
+            features.add("stmt:lambda");
+        }
+        if (code.contains("::")) {
+            features.add("stmt:method-reference");
+        }
+        if (code.contains("[]")) {
+            features.add("type:array");
+        }
+        if (code.contains("<") && code.contains(">")) {
+            features.add("type:generic");
+        }
+        
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(String.join("\n", features).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(features.hashCode());
+        }
+    }
+    
+    public synchronized Route lookup(String fingerprint) {
+        Route route = routes.get(fingerprint);
+        if (route == null || !route.isConfident()) {
+            misses++;
+            return null;
+        }
+        hits++;
+        route.lastUsed = System.currentTimeMillis();
+        if (route.engine == JavaExecutor.Tier.INTERPRETED) {
+            latencySavedMs += route.failedCompileMs;
+        }
+        return route;
+    }
+    
+    public synchronized void recordCompiled(String fingerprint, long compiledMs) {
+        Route route = routeFor(fingerprint, JavaExecutor.Tier.COMPILED);
+        route.compiledMs = compiledMs;
+        saveRoutes();
+    }
+    
+    public synchronized void recordInterpreted(String fingerprint, long failedCompileMs, long interpretedMs) {
+        Route route = routeFor(fingerprint, JavaExecutor.Tier.INTERPRETED);
+        if (failedCompileMs > 0) {
+            route.failedCompileMs = failedCompileMs;
+        }
+        route.interpretedMs = interpretedMs;
+        saveRoutes();
+    }
+    
+    public synchronized boolean isVerificationDue(String fingerprint) {
+        Route route = routes.get(fingerprint);
+        return route != null && route.engine == JavaExecutor.Tier.INTERPRETED && 
+               System.currentTimeMillis() - route.verifiedAt >= VERIFY_INTERVAL_MS;
+    }
+    
+    public synchronized void markVerified(String fingerprint) {
+        Route route = routes.get(fingerprint);
+        if (route != null) {
+            route.verifiedAt = System.currentTimeMillis();
+            saveRoutes();
+        }
+    }
+    
+    public synchronized void forget(String fingerprint) {
+        if (routes.remove(fingerprint) != null) {
+            saveRoutes();
+        }
+    }
+    
+    private Route routeFor(String fingerprint, JavaExecutor.Tier engine) {
+        Route route = routes.get(fingerprint);
+        if (route == null) {
+            trimRoutes();
+            route = new Route();
+            routes.put(fingerprint, route);
+        }
+        route.streak = route.engine == engine ? route.streak + 1 : 1;
+        route.engine = engine;
+        route.lastUsed = System.currentTimeMillis();
+        return route;
+    }
+    
+    private void trimRoutes() {
+        while (routes.size() >= MAX_ROUTES) {
+            String oldest = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (Map.Entry<String, Route> entry : routes.entrySet()) {
+                if (entry.getValue().lastUsed < oldestTime) {
+                    oldestTime = entry.getValue().lastUsed;
+                    oldest = entry.getKey();
+                }
+            }
+            routes.remove(oldest);
+        }
+    }
+    
+    public synchronized int getHits() {
+        return hits;
+    }
+    
+    public synchronized int getMisses() {
+        return misses;
+    }
+    
+    public synchronized long getLatencySavedMs() {
+        return latencySavedMs;
+    }
+}
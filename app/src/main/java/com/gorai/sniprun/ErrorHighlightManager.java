@@ -7,6 +7,8 @@ import android.text.style.BackgroundColorSpan;
 import android.text.style.UnderlineSpan;
 import android.widget.EditText;
 
+import com.gorai.sniprun.compiler.Diagnostic;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -70,6 +72,34 @@ public class ErrorHighlightManager {
         applyErrorHighlights();
     }
     
+    public void showDiagnostics(String code, List<Diagnostic> diagnostics) {
+        Editable editable = codeEditor.getText();
+        if (!highlightingEnabled || editable == null || !code.contentEquals(editable)) {
+            return;
+        }
+        
+        clearErrorHighlights();
+        errors.clear();
+        
+        for (Diagnostic diagnostic : diagnostics) {
+            int start = diagnostic.getStartOffset();
+            int end = Math.max(diagnostic.getEndOffset(), Math.min(start + 1, code.length()));
+            errors.add(new ErrorInfo(start, end, diagnostic.toString(), toErrorType(diagnostic.getSeverity())));
+        }
+        applyErrorHighlights();
+    }
+    
+    private ErrorType toErrorType(Diagnostic.Severity severity) {
+        switch (severity) {
+            case ERROR:
+                return ErrorType.SYNTAX_ERROR;
+            case WARNING:
+                return ErrorType.WARNING;
+            default:
+                return ErrorType.INFO;
+        }
+    }
+    
     private void findSyntaxErrors(String code) {
         
         findUnmatchedBraces(code);
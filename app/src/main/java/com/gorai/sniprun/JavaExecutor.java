@@ -5,14 +5,39 @@ import android.util.Log;
 
 import com.gorai.sniprun.compiler.ProfessionalJavaCompiler;
 import com.gorai.sniprun.compiler.AndroidCompatibleJavaCompiler;
+import com.gorai.sniprun.compiler.CancellationToken;
+import com.gorai.sniprun.compiler.CompilationProgressListener;
+import com.gorai.sniprun.compiler.CompilerService;
+import com.gorai.sniprun.compiler.ExecutionScheduler;
+import com.gorai.sniprun.compiler.ProjectBuilder;
+import com.gorai.sniprun.compiler.ReplSession;
+import com.gorai.sniprun.compiler.SpeculativeCompiler;
+import com.gorai.sniprun.compiler.StageHistograms;
+import com.gorai.sniprun.compiler.StageTimings;
 
+import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class JavaExecutor {
     
     private static final String TAG = "JavaExecutor";
     private final ProfessionalJavaCompiler compiler;
     private final AndroidCompatibleJavaCompiler fallbackCompiler;
+    private final ExecutionScheduler scheduler;
+    private final EngineSelectionCache engineSelectionCache;
+    private final Set<String> verifyingFingerprints = ConcurrentHashMap.newKeySet();
+    private ReplSession session;
+    private ProjectBuilder projectBuilder;
+    
+    public enum Tier {
+        COMPILED, INTERPRETED
+    }
     
     public static class ExecutionResult {
         private final boolean success;
@@ -20,14 +45,31 @@ public class JavaExecutor {
         private final String errorMessage;
         private final List<String> compilationErrors;
         private final long executionTimeMs;
+        private final boolean cancelled;
+        private long droppedOutputBytes;
+        private Tier tier = Tier.COMPILED;
+        private long firstOutputMs = -1;
+        private long fullResultMs = -1;
+        private boolean routeHit;
+        private int routeHits;
+        private int routeMisses;
+        private long latencySavedMs;
+        private long totalLatencySavedMs;
+        private StageTimings stageTimings = new StageTimings();
         
         public ExecutionResult(boolean success, String output, String errorMessage, 
                              List<String> compilationErrors, long executionTimeMs) {
+            this(success, output, errorMessage, compilationErrors, executionTimeMs, false);
+        }
+        
+        public ExecutionResult(boolean success, String output, String errorMessage, 
+                             List<String> compilationErrors, long executionTimeMs, boolean cancelled) {
             this.success = success;
             this.output = output;
             this.errorMessage = errorMessage;
             this.compilationErrors = compilationErrors;
             this.executionTimeMs = executionTimeMs;
+            this.cancelled = cancelled;
         }
         
         public boolean isSuccess() { 
@@ -50,6 +92,80 @@ public class JavaExecutor {
             return executionTimeMs; 
         }
         
+        public boolean isCancelled() { 
+            return cancelled; 
+        }
+        
+        public long getDroppedOutputBytes() { 
+            return droppedOutputBytes; 
+        }
+        
+        public Tier getTier() { 
+            return tier; 
+        }
+        
+        public long getFirstOutputMs() { 
+            return firstOutputMs; 
+        }
+        
+        public long getFullResultMs() { 
+            return fullResultMs; 
+        }
+        
+        public boolean isRouteHit() { 
+            return routeHit; 
+        }
+        
+        public int getRouteHits() { 
+            return routeHits; 
+        }
+        
+        public int getRouteMisses() { 
+            return routeMisses; 
+        }
+        
+        public long getLatencySavedMs() { 
+            return latencySavedMs; 
+        }
+        
+        public long getTotalLatencySavedMs() { 
+            return totalLatencySavedMs; 
+        }
+        
+        public StageTimings getStageTimings() { 
+            return stageTimings; 
+        }
+        
+        ExecutionResult withStageTimings(StageTimings stageTimings) {
+            this.stageTimings = stageTimings;
+            return this;
+        }
+        
+        ExecutionResult withDroppedOutputBytes(long droppedOutputBytes) {
+            this.droppedOutputBytes = droppedOutputBytes;
+            return this;
+        }
+        
+        ExecutionResult withTier(Tier tier) {
+            this.tier = tier;
+            return this;
+        }
+        
+        ExecutionResult withLatencies(long firstOutputMs, long fullResultMs) {
+            this.firstOutputMs = firstOutputMs;
+            this.fullResultMs = fullResultMs;
+            return this;
+        }
+        
+        ExecutionResult withRouting(boolean routeHit, long latencySavedMs, EngineSelectionCache cache) {
+            this.routeHit = routeHit;
+            this.latencySavedMs = latencySavedMs;
+            this.routeHits = cache.getHits();
+            this.routeMisses = cache.getMisses();
+            this.totalLatencySavedMs = cache.getLatencySavedMs();
+            return this;
+        }
+        
         public String getFormattedErrorMessage() {
             if (errorMessage == null && (compilationErrors == null || compilationErrors.isEmpty())) {
                 return null;
@@ -75,51 +191,284 @@ public class JavaExecutor {
     }
     
     public JavaExecutor(Context context) {
-        this.compiler = new ProfessionalJavaCompiler(context);
-        this.fallbackCompiler = new AndroidCompatibleJavaCompiler(context);
+        CompilerService compilerService = CompilerService.getInstance(context);
+        this.compiler = compilerService.getCompiler();
+        this.fallbackCompiler = compilerService.getFallbackCompiler();
+        this.scheduler = compilerService.getScheduler();
+        this.engineSelectionCache = new EngineSelectionCache(context);
+    }
+    
+    private static class RunTracker implements CompilationProgressListener {
+        private final CompilationProgressListener delegate;
+        private final long startNanos = System.nanoTime();
+        private long firstOutputNanos;
+        private boolean compiledRunning;
+        private CancellationToken previewToken;
+        
+        RunTracker(CompilationProgressListener delegate) {
+            this.delegate = delegate;
+        }
+        
+        synchronized CancellationToken newPreviewToken(CancellationToken runToken) {
+            previewToken = runToken.newChild();
+            return previewToken;
+        }
+        
+        private void cancelPreview() {
+            if (previewToken != null && !previewToken.isCancelled()) {
+                Log.d(TAG, "Cancelling interpreted preview");
+                previewToken.cancel();
+            }
+        }
+        
+        @Override
+        public synchronized void onProgress(String phase, int percent) {
+            if (ProfessionalJavaCompiler.PHASE_RUNNING.equals(phase)) {
+                compiledRunning = true;
+                cancelPreview();
+            }
+            if (delegate != null) {
+                delegate.onProgress(phase, percent);
+            }
+        }
+        
+        @Override
+        public synchronized void onOutput(String text) {
+            markFirstOutput();
+            if (delegate != null) {
+                delegate.onOutput(text);
+            }
+        }
+        
+        synchronized boolean offerPreview(String output) {
+            if (compiledRunning) {
+                return false;
+            }
+            markFirstOutput();
+            if (delegate != null) {
+                delegate.onPreviewOutput(output);
+            }
+            return true;
+        }
+        
+        private void markFirstOutput() {
+            if (firstOutputNanos == 0) {
+                firstOutputNanos = System.nanoTime();
+            }
+        }
+        
+        synchronized ExecutionResult finish(ExecutionResult result) {
+            cancelPreview();
+            long fullResultMs = (System.nanoTime() - startNanos) / 1_000_000;
+            long firstOutputMs = firstOutputNanos != 0 ? (firstOutputNanos - startNanos) / 1_000_000 : fullResultMs;
+            Log.d(TAG, result.getTier() + " result: first output " + firstOutputMs + 
+                       "ms, full result " + fullResultMs + "ms (" + result.getStageTimings() + ")");
+            if (!result.isCancelled()) {
+                StageHistograms.getInstance().record(result.getStageTimings());
+            }
+            return result.withLatencies(firstOutputMs, fullResultMs);
+        }
+    }
+    
+    public ExecutionScheduler.RunFuture<ExecutionResult> submit(String coalesceKey, String sourceCode, 
+                                                                ExecutionScheduler.Priority priority,
+                                                                CancellationToken token, 
+                                                                CompilationProgressListener listener,
+                                                                SpeculativeCompiler speculativeCompiler,
+                                                                boolean tiered) {
+        RunTracker tracker = new RunTracker(listener);
+        String fingerprint = EngineSelectionCache.fingerprint(sourceCode);
+        EngineSelectionCache.Route route = engineSelectionCache.lookup(fingerprint);
+        
+        if (route != null && route.getEngine() == Tier.INTERPRETED) {
+            Log.d(TAG, "Routing " + fingerprint + " straight to the interpreter");
+            return scheduler.submit(coalesceKey, priority, token, 
+                compileToken -> route,
+                (routed, executeToken) -> tracker.finish(
+                    executeRouted(sourceCode, fingerprint, routed, executeToken, tracker)));
+        }
+        
+        boolean routeHit = route != null;
+        CancellationToken previewToken = tiered && !routeHit ? tracker.newPreviewToken(token) : null;
+        CompletableFuture<AndroidCompatibleJavaCompiler.CompilationResult> preview = previewToken != null
+            ? scheduler.submitPreview(priority, previewToken, () -> interpretPreview(sourceCode, previewToken, tracker))
+            : null;
+        
+        return scheduler.submit(coalesceKey, priority, token, 
+            compileToken -> {
+                ProfessionalJavaCompiler.CompiledProgram ready = speculativeCompiler != null 
+                    ? speculativeCompiler.awaitProgram(sourceCode, compileToken) 
+                    : null;
+                return ready != null ? ready : compiler.compile(sourceCode, compileToken, tracker);
+            },
+            (program, executeToken) -> tracker.finish(
+                learnEngine(fingerprint, program, executeCompiled(program, executeToken, tracker, preview))
+                    .withRouting(routeHit, 0, engineSelectionCache)));
+    }
+    
+    private ExecutionResult executeRouted(String sourceCode, String fingerprint, EngineSelectionCache.Route route,
+                                          CancellationToken token, CompilationProgressListener listener) {
+        AndroidCompatibleJavaCompiler.CompilationResult result = fallbackCompiler.compileAndExecute(sourceCode, token);
+        if (result.isCancelled() || result.isBudgetExhausted()) {
+            return new ExecutionResult(
+                false,
+                result.getOutput(),
+                result.getErrorMessage(),
+                null,
+                result.getExecutionTimeMs(),
+                result.isCancelled()
+            ).withTier(Tier.INTERPRETED)
+             .withStageTimings(interpretedTimings(null, result))
+             .withDroppedOutputBytes(result.getDroppedOutputBytes());
+        }
+        if (!result.isSuccess()) {
+            Log.d(TAG, "Routed interpreter run failed, dropping route " + fingerprint);
+            engineSelectionCache.forget(fingerprint);
+            return executeJavaCode(sourceCode, token, listener).withRouting(false, 0, engineSelectionCache);
+        }
+        
+        engineSelectionCache.recordInterpreted(fingerprint, 0, result.getExecutionTimeMs());
+        verifyEngineInBackground(sourceCode, fingerprint);
+        return new ExecutionResult(
+            true,
+            result.getOutput(),
+            null,
+            null,
+            result.getExecutionTimeMs()
+        ).withTier(Tier.INTERPRETED)
+         .withStageTimings(interpretedTimings(null, result))
+         .withDroppedOutputBytes(result.getDroppedOutputBytes())
+         .withRouting(true, route.getFailedCompileMs(), engineSelectionCache);
+    }
+    
+    private void verifyEngineInBackground(String sourceCode, String fingerprint) {
+        if (!engineSelectionCache.isVerificationDue(fingerprint) || !verifyingFingerprints.add(fingerprint)) {
+            return;
+        }
+        CancellationToken token = new CancellationToken();
+        scheduler.submitWhenIdle(token, () -> {
+            ProfessionalJavaCompiler.CompiledProgram program = compiler.compile(sourceCode, token, null);
+            if (program.isSuccess()) {
+                Log.d(TAG, "Snippet shape " + fingerprint + " now compiles, routing back to ECJ");
+                engineSelectionCache.recordCompiled(fingerprint, program.getCompileTimeMs());
+            } else if (!program.isCancelled()) {
+                engineSelectionCache.markVerified(fingerprint);
+            }
+            return program;
+        }).whenComplete((program, error) -> verifyingFingerprints.remove(fingerprint));
+    }
+    
+    public ExecutionScheduler.RunFuture<ExecutionResult> submitSession(String coalesceKey, String sourceCode,
+                                                                       ExecutionScheduler.Priority priority,
+                                                                       CancellationToken token,
+                                                                       CompilationProgressListener listener) {
+        RunTracker tracker = new RunTracker(listener);
+        ReplSession replSession = getSession();
+        return scheduler.submit(coalesceKey, priority, token, 
+            compileToken -> sourceCode,
+            (buffer, executeToken) -> tracker.finish(directResult(replSession.eval(buffer, executeToken, tracker))));
+    }
+    
+    public synchronized ReplSession getSession() {
+        if (session == null) {
+            session = compiler.newSession();
+        }
+        return session;
+    }
+    
+    public void resetSession() {
+        getSession().reset();
+    }
+    
+    public ExecutionScheduler.RunFuture<ExecutionResult> submitProject(String coalesceKey, File projectRoot,
+                                                                       Map<String, String> unsavedSources,
+                                                                       String preferredSource,
+                                                                       ExecutionScheduler.Priority priority,
+                                                                       CancellationToken token,
+                                                                       CompilationProgressListener listener) {
+        RunTracker tracker = new RunTracker(listener);
+        ProjectBuilder builder = getProjectBuilder();
+        return scheduler.submit(coalesceKey, priority, token, 
+            compileToken -> builder.build(projectRoot, unsavedSources, preferredSource, compileToken, tracker),
+            (program, executeToken) -> tracker.finish(directResult(compiler.execute(program, executeToken, tracker))));
+    }
+    
+    private synchronized ProjectBuilder getProjectBuilder() {
+        if (projectBuilder == null) {
+            projectBuilder = compiler.newProjectBuilder();
+        }
+        return projectBuilder;
+    }
+    
+    private ExecutionResult directResult(ProfessionalJavaCompiler.CompilationResult result) {
+        return new ExecutionResult(
+            result.isSuccess(),
+            result.getOutput(),
+            result.getErrorMessage(),
+            result.getCompilationErrors(),
+            result.getExecutionTimeMs(),
+            result.isCancelled()
+        ).withDroppedOutputBytes(result.getDroppedOutputBytes())
+         .withStageTimings(result.getStageTimings());
+    }
+    
+    private ExecutionResult learnEngine(String fingerprint, ProfessionalJavaCompiler.CompiledProgram program, 
+                                        ExecutionResult result) {
+        if (result.isCancelled() || !result.isSuccess()) {
+            return result;
+        }
+        if (result.getTier() == Tier.COMPILED) {
+            engineSelectionCache.recordCompiled(fingerprint, program.getCompileTimeMs() + result.getExecutionTimeMs());
+        } else {
+            engineSelectionCache.recordInterpreted(fingerprint, program.getCompileTimeMs(), result.getExecutionTimeMs());
+        }
+        return result;
+    }
+    
+    private AndroidCompatibleJavaCompiler.CompilationResult interpretPreview(String sourceCode, CancellationToken token,
+                                                                         RunTracker tracker) {
+        AndroidCompatibleJavaCompiler.CompilationResult result = fallbackCompiler.compileAndExecute(sourceCode, token);
+        if (result.isSuccess() && !token.isCancelled() && tracker.offerPreview(result.getOutput())) {
+            Log.d(TAG, "Interpreted preview shown after " + result.getExecutionTimeMs() + "ms");
+        }
+        return result;
     }
     
     public ExecutionResult executeJavaCode(String sourceCode) {
+        return executeJavaCode(sourceCode, new CancellationToken(), null);
+    }
+    
+    public ExecutionResult executeJavaCode(String sourceCode, CancellationToken token, 
+                                           CompilationProgressListener listener) {
         try {
             Log.d(TAG, "Attempting to compile and execute Java code");
             
-            ProfessionalJavaCompiler.CompilationResult result = compiler.compileAndExecute(sourceCode);
+            return handleResult(sourceCode, compiler.compileAndExecute(sourceCode, token, listener), token, null);
             
-            if (result.isSuccess()) {
-                Log.d(TAG, "ProfessionalJavaCompiler succeeded");
-                return new ExecutionResult(
-                    result.isSuccess(),
-                    result.getOutput(),
-                    result.getErrorMessage(),
-                    result.getCompilationErrors(),
-                    result.getExecutionTimeMs()
-                );
-            } else {
-                Log.d(TAG, "ProfessionalJavaCompiler failed, using AndroidCompatibleJavaCompiler as fallback");
-                
-                AndroidCompatibleJavaCompiler.CompilationResult fallbackResult = 
-                    fallbackCompiler.compileAndExecute(sourceCode);
-                
-                if (fallbackResult.isSuccess()) {
-                    Log.d(TAG, "AndroidCompatibleJavaCompiler fallback succeeded");
-                    return new ExecutionResult(
-                        fallbackResult.isSuccess(),
-                        fallbackResult.getOutput(),
-                        null,
-                        null,
-                        fallbackResult.getExecutionTimeMs()
-                    );
-                } else {
-                    Log.e(TAG, "Both compilers failed");
-                    return new ExecutionResult(
-                        false,
-                        "",
-                        "Compilation failed: " + (result.getErrorMessage() != null ? result.getErrorMessage() : "Unknown error"),
-                        result.getCompilationErrors(),
-                        result.getExecutionTimeMs()
-                    );
-                }
-            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error executing Java code", e);
+            return new ExecutionResult(
+                false,
+                "",
+                "Execution error: " + e.getMessage(),
+                null,
+                0
+            );
+        }
+    }
+    
+    public ExecutionResult executeCompiled(ProfessionalJavaCompiler.CompiledProgram program, 
+                                           CancellationToken token, CompilationProgressListener listener) {
+        return executeCompiled(program, token, listener, null);
+    }
+    
+    private ExecutionResult executeCompiled(ProfessionalJavaCompiler.CompiledProgram program, 
+                                            CancellationToken token, CompilationProgressListener listener,
+                                            CompletableFuture<AndroidCompatibleJavaCompiler.CompilationResult> preview) {
+        try {
+            Log.d(TAG, "Executing precompiled " + program.getClassName());
+            
+            return handleResult(program.getSourceCode(), compiler.execute(program, token, listener), token, preview);
             
         } catch (Exception e) {
             Log.e(TAG, "Error executing Java code", e);
@@ -132,4 +481,126 @@ public class JavaExecutor {
             );
         }
     }
+    
+    private ExecutionResult handleResult(String sourceCode, ProfessionalJavaCompiler.CompilationResult result, 
+                                         CancellationToken token,
+                                         CompletableFuture<AndroidCompatibleJavaCompiler.CompilationResult> preview) {
+        if (result.isCancelled() || (!result.isSuccess() && token.isCancelled())) {
+            Log.d(TAG, "Execution cancelled");
+            return new ExecutionResult(
+                false,
+                "",
+                result.getErrorMessage() != null ? result.getErrorMessage() : "Cancelled",
+                null,
+                result.getExecutionTimeMs(),
+                true
+            ).withStageTimings(result.getStageTimings());
+        }
+        
+        if (result.isBudgetExhausted()) {
+            Log.d(TAG, "Compiled run stopped: " + result.getErrorMessage());
+            return new ExecutionResult(
+                false,
+                result.getOutput(),
+                result.getErrorMessage(),
+                null,
+                result.getExecutionTimeMs()
+            ).withDroppedOutputBytes(result.getDroppedOutputBytes())
+             .withStageTimings(result.getStageTimings());
+        }
+        
+        if (result.isSuccess()) {
+            Log.d(TAG, preview != null ? "Compiled result supersedes interpreted preview" 
+                                       : "ProfessionalJavaCompiler succeeded");
+            return new ExecutionResult(
+                result.isSuccess(),
+                result.getOutput(),
+                result.getErrorMessage(),
+                result.getCompilationErrors(),
+                result.getExecutionTimeMs()
+            ).withDroppedOutputBytes(result.getDroppedOutputBytes())
+             .withStageTimings(result.getStageTimings());
+        } else {
+            Log.d(TAG, "ProfessionalJavaCompiler failed, using AndroidCompatibleJavaCompiler as fallback");
+            
+            AndroidCompatibleJavaCompiler.CompilationResult fallbackResult = preview != null 
+                ? awaitPreview(sourceCode, preview, token) 
+                : fallbackCompiler.compileAndExecute(sourceCode, token);
+            
+            if (fallbackResult.isCancelled()) {
+                Log.d(TAG, "Interpreted fallback cancelled");
+                return new ExecutionResult(
+                    false,
+                    fallbackResult.getOutput(),
+                    fallbackResult.getErrorMessage(),
+                    null,
+                    fallbackResult.getExecutionTimeMs(),
+                    true
+                ).withTier(Tier.INTERPRETED)
+                 .withStageTimings(interpretedTimings(result.getStageTimings(), fallbackResult))
+                 .withDroppedOutputBytes(fallbackResult.getDroppedOutputBytes());
+            }
+            if (fallbackResult.isBudgetExhausted()) {
+                Log.d(TAG, "Interpreted fallback stopped: " + fallbackResult.getErrorMessage());
+                return new ExecutionResult(
+                    false,
+                    fallbackResult.getOutput(),
+                    fallbackResult.getErrorMessage(),
+                    null,
+                    fallbackResult.getExecutionTimeMs()
+                ).withTier(Tier.INTERPRETED)
+                 .withStageTimings(interpretedTimings(result.getStageTimings(), fallbackResult))
+                 .withDroppedOutputBytes(fallbackResult.getDroppedOutputBytes());
+            }
+            if (fallbackResult.isSuccess()) {
+                Log.d(TAG, "AndroidCompatibleJavaCompiler fallback succeeded");
+                return new ExecutionResult(
+                    fallbackResult.isSuccess(),
+                    fallbackResult.getOutput(),
+                    null,
+                    null,
+                    fallbackResult.getExecutionTimeMs()
+                ).withTier(Tier.INTERPRETED)
+                 .withStageTimings(interpretedTimings(result.getStageTimings(), fallbackResult))
+                 .withDroppedOutputBytes(fallbackResult.getDroppedOutputBytes());
+            } else {
+                Log.e(TAG, "Both compilers failed");
+                return new ExecutionResult(
+                    false,
+                    "",
+                    "Compilation failed: " + (result.getErrorMessage() != null ? result.getErrorMessage() : "Unknown error"),
+                    result.getCompilationErrors(),
+                    result.getExecutionTimeMs()
+                ).withStageTimings(interpretedTimings(result.getStageTimings(), fallbackResult));
+            }
+        }
+    }
+    
+    private static StageTimings interpretedTimings(StageTimings compiledTimings, 
+                                                   AndroidCompatibleJavaCompiler.CompilationResult interpreted) {
+        StageTimings timings = new StageTimings(compiledTimings);
+        long interpretNanos = interpreted.getInterpreterTimeNanos();
+        timings.add(StageTimings.Stage.INTERPRET, interpretNanos > 0 ? interpretNanos 
+                                                                     : interpreted.getExecutionTimeMs() * 1_000_000L);
+        Log.d(TAG, "Interpreter executed " + interpreted.getInterpretedSteps() + " steps in " + 
+                   interpretNanos / 1_000_000 + "ms");
+        return timings;
+    }
+    
+    private AndroidCompatibleJavaCompiler.CompilationResult awaitPreview(String sourceCode,
+            CompletableFuture<AndroidCompatibleJavaCompiler.CompilationResult> preview, CancellationToken token) {
+        try {
+            Log.d(TAG, "Confirming interpreted preview");
+            AndroidCompatibleJavaCompiler.CompilationResult result = preview.get();
+            if (!result.isCancelled() || token.isCancelled()) {
+                return result;
+            }
+            Log.d(TAG, "Interpreted preview was cancelled, interpreting again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException | ExecutionException e) {
+            Log.d(TAG, "Interpreted preview unavailable, interpreting again");
+        }
+        return fallbackCompiler.compileAndExecute(sourceCode, token);
+    }
 }
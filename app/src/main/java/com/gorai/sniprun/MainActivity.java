@@ -31,16 +31,32 @@ import com.airbnb.lottie.LottieAnimationView;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.tabs.TabLayout;
+import com.gorai.sniprun.compiler.CancellationToken;
+import com.gorai.sniprun.compiler.CompilationProgressListener;
+import com.gorai.sniprun.compiler.CompilerService;
+import com.gorai.sniprun.compiler.Diagnostic;
+import com.gorai.sniprun.compiler.DiagnosticChecker;
+import com.gorai.sniprun.compiler.ExecutionScheduler;
+import com.gorai.sniprun.compiler.ProfessionalJavaCompiler;
+import com.gorai.sniprun.compiler.SpeculativeCompiler;
+import com.gorai.sniprun.compiler.StageHistograms;
+import com.gorai.sniprun.compiler.StageTimings;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class MainActivity extends AppCompatActivity implements FileExplorerFragment.OnFileSelectedListener {
     
     private CodeEditor codeEditor;
     private TextView outputConsole;
+    private TextView compilerStatus;
+    private TextView stageTimingsHeader;
+    private TextView stageTimingsPanel;
     private TabLayout tabLayout;
     private FloatingActionButton runButton;
     private FloatingActionButton newFileButton;
@@ -55,8 +71,10 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     private LottieAnimationView resultAnimation;
     private FrameLayout animationOverlay;
     
-    private ExecutorService executorService;
+    private CompilerService compilerService;
     private JavaExecutor javaExecutor;
+    private SpeculativeCompiler speculativeCompiler;
+    private DiagnosticChecker diagnosticChecker;
     private FileManager fileManager;
     private AppSettings appSettings;
     private UndoRedoManager undoRedoManager;
@@ -71,13 +89,24 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     
     private static final int CREATE_FILE_REQUEST_CODE = 1002;
     private static final int OPEN_FILE_REQUEST_CODE = 1003;
+    private static final String RUN_COALESCE_KEY = "editor";
     private String pendingCodeToSave = null;
+    private volatile CancellationToken runToken;
+    private volatile CancellationToken compileToken;
+    private volatile ExecutionScheduler.RunFuture<JavaExecutor.ExecutionResult> currentRun;
+    
+    private final CompilerService.StateListener compilerStateListener = state -> 
+        runOnUiThread(() -> updateCompilerStatus(state));
     
 
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        
+        compilerService = CompilerService.getInstance(this);
+        compilerService.start();
+        
         setContentView(R.layout.activity_enhanced_main);
         
         initializeViews();
@@ -85,10 +114,12 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         setupToolbar();
         setupListeners();
         
-        executorService = Executors.newSingleThreadExecutor();
         javaExecutor = new JavaExecutor(this);
         fileManager = new FileManager(this);
         appSettings = new AppSettings(this);
+        speculativeCompiler = new SpeculativeCompiler(compilerService.getCompiler());
+        speculativeCompiler.setEnabled(appSettings.isSpeculativeCompileEnabled());
+        compilerService.setOutputLimitBytes(appSettings.getOutputLimitKb() * 1024);
         
         initializeEditorFeatures();
         
@@ -96,13 +127,15 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         startInitialAnimations();
         setupOnBackPressed();
         
-        testCompilers();
-        runQuickTest();
+        compilerService.addStateListener(compilerStateListener);
     }
     
     private void initializeViews() {
         codeEditor = findViewById(R.id.code_editor);
         outputConsole = findViewById(R.id.output_console);
+        compilerStatus = findViewById(R.id.compiler_status);
+        stageTimingsHeader = findViewById(R.id.stage_timings_header);
+        stageTimingsPanel = findViewById(R.id.stage_timings_panel);
         tabLayout = findViewById(R.id.tab_layout);
         runButton = findViewById(R.id.run_button);
         newFileButton = findViewById(R.id.new_file_button);
@@ -122,6 +155,19 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     private void initializeEditorFeatures() {
         undoRedoManager = new UndoRedoManager(codeEditor);
         errorHighlightManager = new ErrorHighlightManager(codeEditor);
+        diagnosticChecker = new DiagnosticChecker(compilerService.getCompiler(), new DiagnosticChecker.Listener() {
+            @Override
+            public void onDiagnostics(String sourceCode, List<Diagnostic> diagnostics) {
+                errorHighlightManager.showDiagnostics(sourceCode, diagnostics);
+            }
+            
+            @Override
+            public void onCheckFailed(String sourceCode) {
+                if (sourceCode.contentEquals(codeEditor.getText())) {
+                    errorHighlightManager.highlightErrors(sourceCode);
+                }
+            }
+        });
 
         
         if (lineNumberView != null) {
@@ -138,7 +184,13 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
             @Override
             public void afterTextChanged(android.text.Editable s) {
                 String code = s.toString();
-                errorHighlightManager.highlightErrors(code);
+                diagnosticChecker.onSourceChanged(code);
+                
+                CancellationToken pendingCompile = compileToken;
+                if (pendingCompile != null) {
+                    pendingCompile.cancel();
+                }
+                speculativeCompiler.onSourceChanged(code.trim());
             }
         });
     }
@@ -230,6 +282,9 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         if (copyOutputButton != null) {
             copyOutputButton.setOnClickListener(v -> copyOutputToClipboard());
         }
+        if (stageTimingsHeader != null) {
+            stageTimingsHeader.setOnClickListener(v -> toggleStageTimings());
+        }
         
         if (animationOverlay != null) {
             animationOverlay.setOnClickListener(v -> hideAnimationOverlay());
@@ -346,7 +401,6 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         showLoadingAnimation();
         
         outputConsole.setText("Running code...\n");
-        runButton.setEnabled(false);
         
         if (editorStatusAnimation != null) {
             try {
@@ -356,49 +410,176 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
             }
         }
         
-        executorService.execute(() -> {
+        CancellationToken token = new CancellationToken();
+        runToken = token;
+        compileToken = token;
+        
+        CompilationProgressListener listener = new CompilationProgressListener() {
+            @Override
+            public void onProgress(String phase, int percent) {
+                onCompilationProgress(token, phase, percent);
+            }
+            
+            @Override
+            public void onOutput(String text) {
+                onProgramOutput(token, text);
+            }
+            
+            @Override
+            public void onPreviewOutput(String output) {
+                onPreviewOutputReady(token, output);
+            }
+        };
+        
+        ExecutionScheduler.RunFuture<JavaExecutor.ExecutionResult> run;
+        File projectDirectory = appSettings.isProjectModeEnabled() ? resolveProjectDirectory() : null;
+        if (projectDirectory != null) {
+            Map<String, String> unsavedSources = new HashMap<>();
+            unsavedSources.put(new File(currentFilePath).getAbsolutePath(), codeEditor.getText().toString());
+            run = javaExecutor.submitProject(RUN_COALESCE_KEY, projectDirectory, unsavedSources, currentFilePath,
+                                             ExecutionScheduler.Priority.INTERACTIVE, token, listener);
+        } else if (appSettings.isSessionModeEnabled()) {
+            run = javaExecutor.submitSession(RUN_COALESCE_KEY, code, ExecutionScheduler.Priority.INTERACTIVE, token, listener);
+        } else {
+            run = javaExecutor.submit(RUN_COALESCE_KEY, code, ExecutionScheduler.Priority.INTERACTIVE, token, listener, 
+                                      speculativeCompiler, appSettings.isTieredExecutionEnabled());
+        }
+        currentRun = run;
+        run.whenComplete((result, error) -> runOnUiThread(() -> onRunFinished(token, result, error)));
+    }
+    
+    private File resolveProjectDirectory() {
+        if (currentFilePath == null || currentFilePath.startsWith("content://")) {
+            return null;
+        }
+        File file = new File(currentFilePath).getAbsoluteFile();
+        File root = new File(fileManager.getProjectRoot()).getAbsoluteFile();
+        File directory = file.getParentFile();
+        while (directory != null && !root.equals(directory.getParentFile())) {
+            directory = directory.getParentFile();
+        }
+        return directory != null ? directory : file.getParentFile();
+    }
+    
+    private void onRunFinished(CancellationToken token, JavaExecutor.ExecutionResult result, Throwable error) {
+        if (runToken != token) {
+            return;
+        }
+        
+        hideLoadingAnimation();
+        finishRun(token);
+        if (result != null) {
+            showStageTimings(result.getStageTimings());
+        }
+        
+        if (error instanceof CancellationException) {
+            outputConsole.setText("Execution stopped");
+        } else if (error != null) {
+            outputConsole.setText("Error: " + error.getMessage());
+            showErrorAnimation();
+        } else if (result.isCancelled()) {
+            outputConsole.setText(result.getErrorMessage());
+        } else if (result.isSuccess()) {
+            outputConsole.setText(result.getOutput());
+            showSuccessAnimation();
+            if (result.getDroppedOutputBytes() > 0) {
+                Toast.makeText(this, "Output truncated, " + result.getDroppedOutputBytes() + 
+                             " bytes dropped", Toast.LENGTH_SHORT).show();
+            }
+        } else {
+            outputConsole.setText("Error: " + result.getErrorMessage());
+            showErrorAnimation();
+        }
+        
+        if (editorStatusAnimation != null) {
             try {
-                JavaExecutor.ExecutionResult result = javaExecutor.executeJavaCode(code);
-                
-                runOnUiThread(() -> {
-                    hideLoadingAnimation();
-                    
-                    if (result.isSuccess()) {
-                        outputConsole.setText(result.getOutput());
-                        showSuccessAnimation();
-                    } else {
-                        outputConsole.setText("Error: " + result.getErrorMessage());
-                        showErrorAnimation();
-                    }
-                    
-                    runButton.setEnabled(true);
-                    
-                    if (editorStatusAnimation != null) {
-                        try {
-                            editorStatusAnimation.cancelAnimation();
-                        } catch (Exception e) {
-                        }
-                    }
-                });
-                
+                editorStatusAnimation.cancelAnimation();
             } catch (Exception e) {
-                runOnUiThread(() -> {
-                    hideLoadingAnimation();
-                    outputConsole.setText("Error: " + e.getMessage());
-                    runButton.setEnabled(true);
-                    showErrorAnimation();
-                    
-                    if (editorStatusAnimation != null) {
-                        try {
-                            editorStatusAnimation.cancelAnimation();
-                        } catch (Exception ex) {
-                        }
-                    }
-                });
+            }
+        }
+    }
+    
+    private void onCompilationProgress(CancellationToken token, String phase, int percent) {
+        if (ProfessionalJavaCompiler.PHASE_RUNNING.equals(phase) && compileToken == token) {
+            compileToken = null;
+        }
+        runOnUiThread(() -> {
+            if (compilerStatus != null && runToken == token) {
+                compilerStatus.setText(phase + " " + percent + "%");
+            }
+            if (ProfessionalJavaCompiler.PHASE_RUNNING.equals(phase) && runToken == token) {
+                outputConsole.setText("");
+            }
+        });
+    }
+    
+    private void toggleStageTimings() {
+        boolean expand = stageTimingsPanel.getVisibility() != View.VISIBLE;
+        stageTimingsPanel.setVisibility(expand ? View.VISIBLE : View.GONE);
+        stageTimingsHeader.setText(expand ? "▾ Stage timings" : "▸ Stage timings");
+    }
+    
+    private void showStageTimings(StageTimings timings) {
+        if (stageTimingsPanel == null) {
+            return;
+        }
+        
+        StageHistograms histograms = StageHistograms.getInstance();
+        StringBuilder text = new StringBuilder(String.format(Locale.US, "%-10s %9s %9s %9s %5s%n", 
+                                                             "Stage", "Last ms", "p50 ms", "p99 ms", "Runs"));
+        for (StageTimings.Stage stage : StageTimings.Stage.values()) {
+            if (!timings.has(stage)) {
+                continue;
+            }
+            text.append(String.format(Locale.US, "%-10s %9.2f %9.2f %9.2f %5d%n", 
+                                      stage.getLabel(),
+                                      timings.getNanos(stage) / 1_000_000.0,
+                                      histograms.getPercentileNanos(stage, 50) / 1_000_000.0,
+                                      histograms.getPercentileNanos(stage, 99) / 1_000_000.0,
+                                      histograms.getSampleCount(stage)));
+        }
+        text.append(String.format(Locale.US, "%-10s %9.2f", "Total", timings.getTotalNanos() / 1_000_000.0));
+        stageTimingsPanel.setText(text.toString());
+    }
+    
+    private void onPreviewOutputReady(CancellationToken token, String output) {
+        runOnUiThread(() -> {
+            if (runToken == token) {
+                outputConsole.setText(output);
+                if (compilerStatus != null) {
+                    compilerStatus.setText("Preview (interpreted), compiling...");
+                }
+            }
+        });
+    }
+    
+    private void onProgramOutput(CancellationToken token, String text) {
+        runOnUiThread(() -> {
+            if (runToken == token) {
+                outputConsole.append(text);
             }
         });
     }
     
+    private void finishRun(CancellationToken token) {
+        if (compileToken == token) {
+            compileToken = null;
+        }
+        if (runToken == token) {
+            runToken = null;
+            currentRun = null;
+            updateCompilerStatus(compilerService.getState());
+        }
+    }
+    
+    private void stopRun() {
+        ExecutionScheduler.RunFuture<JavaExecutor.ExecutionResult> run = currentRun;
+        if (run != null) {
+            run.cancel(true);
+            Toast.makeText(this, "Stopping...", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
     private void newFileWithAnimation() {
         createNewFile();
     }
@@ -503,46 +684,25 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         outputConsole.setText("Error: " + message);
     }
     
-    private void testCompilers() {
-        String testCode = "System.out.println(\"Test output: \" + (5 + 3));";
+    private void updateCompilerStatus(CompilerService.State state) {
+        if (compilerStatus == null) {
+            return;
+        }
         
-        executorService.execute(() -> {
-            try {
-                JavaExecutor.ExecutionResult result = javaExecutor.executeJavaCode(testCode);
-                
-                if (result.isSuccess()) {
-                } else {
-                    String formatted = result.getFormattedErrorMessage();
-                    if (formatted != null && !formatted.trim().isEmpty()) {
-                    }
-                }
-                
-            } catch (Exception e) {
-            }
-        });
-    }
-    
-    private void runQuickTest() {
-        executorService.execute(() -> {
-            try {
-                Log.d("MainActivity", "Running quick test of Java compilation");
-                
-                String testCode = "System.out.println(\"Quick test: \" + (2 + 3));";
-                JavaExecutor.ExecutionResult result = javaExecutor.executeJavaCode(testCode);
-                
-                if (result.isSuccess()) {
-                    Log.d("MainActivity", "✓ Quick test SUCCESS - Output: " + result.getOutput());
-                } else {
-                    Log.e("MainActivity", "✗ Quick test FAILED - Error: " + result.getErrorMessage());
-                    if (result.getFormattedErrorMessage() != null) {
-                        Log.e("MainActivity", "Formatted error: " + result.getFormattedErrorMessage());
-                    }
-                }
-                
-            } catch (Exception e) {
-                Log.e("MainActivity", "Quick test failed with exception", e);
-            }
-        });
+        switch (state) {
+            case WARMING:
+                compilerStatus.setText("Warming up compiler...");
+                break;
+            case READY:
+                compilerStatus.setText("Compiler ready");
+                break;
+            case FAILED:
+                compilerStatus.setText("Compiler warm-up failed");
+                break;
+            default:
+                compilerStatus.setText("");
+                break;
+        }
     }
     
     private void createNewFile() {
@@ -702,6 +862,14 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.enhanced_main_menu, menu);
+        MenuItem sessionMode = menu.findItem(R.id.action_session_mode);
+        if (sessionMode != null) {
+            sessionMode.setChecked(appSettings.isSessionModeEnabled());
+        }
+        MenuItem projectMode = menu.findItem(R.id.action_project_mode);
+        if (projectMode != null) {
+            projectMode.setChecked(appSettings.isProjectModeEnabled());
+        }
         return true;
     }
     
@@ -709,7 +877,10 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
         
-        if (id == R.id.action_save) {
+        if (id == R.id.action_stop) {
+            stopRun();
+            return true;
+        } else if (id == R.id.action_save) {
             saveCurrentFile();
             return true;
         } else if (id == R.id.action_open) {
@@ -733,6 +904,24 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         } else if (id == R.id.action_clear_console) {
             outputConsole.setText("");
             return true;
+        } else if (id == R.id.action_session_mode) {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            appSettings.setSessionModeEnabled(enabled);
+            Toast.makeText(this, enabled ? "Session mode on: state is kept between runs" : "Session mode off", 
+                           Toast.LENGTH_SHORT).show();
+            return true;
+        } else if (id == R.id.action_reset_session) {
+            javaExecutor.resetSession();
+            Toast.makeText(this, "Session reset", Toast.LENGTH_SHORT).show();
+            return true;
+        } else if (id == R.id.action_project_mode) {
+            boolean enabled = !item.isChecked();
+            item.setChecked(enabled);
+            appSettings.setProjectModeEnabled(enabled);
+            Toast.makeText(this, enabled ? "Project build on: runs build every file in the open file's project" 
+                                         : "Project build off", Toast.LENGTH_SHORT).show();
+            return true;
         }
         
         return super.onOptionsItemSelected(item);
@@ -1113,6 +1302,7 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
         }
         
         errorHighlightManager.setHighlightingEnabled(appSettings.isSyntaxHighlightingEnabled());
+        diagnosticChecker.setEnabled(appSettings.isSyntaxHighlightingEnabled());
         
         codeEditor.setTextSize(appSettings.getFontSize());
         
@@ -1155,6 +1345,12 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     @Override
     protected void onResume() {
         super.onResume();
+        if (speculativeCompiler != null) {
+            speculativeCompiler.setEnabled(appSettings.isSpeculativeCompileEnabled());
+        }
+        if (compilerService != null) {
+            compilerService.setOutputLimitBytes(appSettings.getOutputLimitKb() * 1024);
+        }
         if (toolbarLogoAnimation != null) {
             try {
                 toolbarLogoAnimation.resumeAnimation();
@@ -1184,8 +1380,17 @@ public class MainActivity extends AppCompatActivity implements FileExplorerFragm
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
+        if (currentRun != null) {
+            currentRun.cancel(true);
+        }
+        if (speculativeCompiler != null) {
+            speculativeCompiler.shutdown();
+        }
+        if (diagnosticChecker != null) {
+            diagnosticChecker.shutdown();
+        }
+        if (compilerService != null) {
+            compilerService.removeStateListener(compilerStateListener);
         }
     }
     
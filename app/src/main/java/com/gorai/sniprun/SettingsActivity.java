@@ -19,6 +19,8 @@ public class SettingsActivity extends AppCompatActivity {
     private Switch wordWrapSwitch;
     private Switch autoSaveSwitch;
     private Switch showWhitespaceSwitch;
+    private Switch speculativeCompileSwitch;
+    private Switch tieredExecutionSwitch;
     
     private SeekBar fontSizeSeekBar;
     private TextView fontSizeValue;
@@ -56,6 +58,8 @@ public class SettingsActivity extends AppCompatActivity {
         wordWrapSwitch = findViewById(R.id.switch_word_wrap);
         autoSaveSwitch = findViewById(R.id.switch_auto_save);
         showWhitespaceSwitch = findViewById(R.id.switch_show_whitespace);
+        speculativeCompileSwitch = findViewById(R.id.switch_speculative_compile);
+        tieredExecutionSwitch = findViewById(R.id.switch_tiered_execution);
         
         fontSizeSeekBar = findViewById(R.id.seekbar_font_size);
         fontSizeValue = findViewById(R.id.text_font_size_value);
@@ -73,6 +77,8 @@ public class SettingsActivity extends AppCompatActivity {
         wordWrapSwitch.setChecked(appSettings.isWordWrapEnabled());
         autoSaveSwitch.setChecked(appSettings.isAutoSaveEnabled());
         showWhitespaceSwitch.setChecked(appSettings.isShowWhitespaceEnabled());
+        speculativeCompileSwitch.setChecked(appSettings.isSpeculativeCompileEnabled());
+        tieredExecutionSwitch.setChecked(appSettings.isTieredExecutionEnabled());
         
         int fontSize = appSettings.getFontSize();
         fontSizeSeekBar.setProgress(fontSize);
@@ -107,6 +113,14 @@ public class SettingsActivity extends AppCompatActivity {
             appSettings.setShowWhitespaceEnabled(isChecked);
         });
         
+        speculativeCompileSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            appSettings.setSpeculativeCompileEnabled(isChecked);
+        });
+        
+        tieredExecutionSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            appSettings.setTieredExecutionEnabled(isChecked);
+        });
+        
         fontSizeSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
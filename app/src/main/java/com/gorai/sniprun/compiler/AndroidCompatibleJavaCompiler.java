@@ -1,6 +1,15 @@
 package com.gorai.sniprun.compiler;
 
 import android.content.Context;
+import android.util.Log;
+
+import com.gorai.sniprun.compiler.interpreter.BudgetExceededException;
+import com.gorai.sniprun.compiler.interpreter.EvaluationException;
+import com.gorai.sniprun.compiler.interpreter.ExecutionBudget;
+import com.gorai.sniprun.compiler.interpreter.ParseException;
+import com.gorai.sniprun.compiler.interpreter.Program;
+import com.gorai.sniprun.compiler.interpreter.ProgramCache;
+import com.gorai.sniprun.compiler.interpreter.ThrownException;
 
 import java.io.*;
 import java.util.*;
@@ -10,11 +19,14 @@ import java.util.regex.Pattern;
 public class AndroidCompatibleJavaCompiler {
     
     private static final String TAG = "AndroidCompatibleJavaCompiler";
+    private static final int PROGRAM_CACHE_ENTRIES = 32;
+    private static final long EXECUTION_TIMEOUT_MS = 10_000;
+    private static final long DEFAULT_STEP_LIMIT = 250_000_000L;
     private final Context context;
-    private final File workingDirectory;
-    private final File sourceDirectory;
-    private final File classDirectory;
-    private final File tempDirectory;
+    private final ProgramCache programCache = new ProgramCache(PROGRAM_CACHE_ENTRIES);
+    private volatile long timeoutMs = EXECUTION_TIMEOUT_MS;
+    private volatile long stepLimit = DEFAULT_STEP_LIMIT;
+    private volatile int outputLimitBytes = OutputCapture.DEFAULT_MAX_BYTES;
     
     public static class CompilationResult {
         private final boolean success;
@@ -22,6 +34,11 @@ public class AndroidCompatibleJavaCompiler {
         private final String errorMessage;
         private final List<String> compilationErrors;
         private final long executionTimeMs;
+        private boolean cancelled;
+        private boolean budgetExhausted;
+        private long interpretedSteps;
+        private long interpreterTimeNanos;
+        private long droppedOutputBytes;
         
         public CompilationResult(boolean success, String output, String errorMessage, 
                                List<String> compilationErrors, long executionTimeMs) {
@@ -37,53 +54,35 @@ public class AndroidCompatibleJavaCompiler {
         public String getErrorMessage() { return errorMessage; }
         public List<String> getCompilationErrors() { return compilationErrors; }
         public long getExecutionTimeMs() { return executionTimeMs; }
-    }
-    
-    public AndroidCompatibleJavaCompiler(Context context) {
-        this.context = context;
-        this.workingDirectory = new File(context.getFilesDir(), "java_compiler");
-        this.sourceDirectory = new File(workingDirectory, "src");
-        this.classDirectory = new File(workingDirectory, "classes");
-        this.tempDirectory = new File(workingDirectory, "temp");
+        public boolean isCancelled() { return cancelled; }
+        public boolean isBudgetExhausted() { return budgetExhausted; }
+        public long getInterpretedSteps() { return interpretedSteps; }
+        public long getInterpreterTimeNanos() { return interpreterTimeNanos; }
+        public long getDroppedOutputBytes() { return droppedOutputBytes; }
         
-        initializeDirectories();
-    }
-    
-    private void initializeDirectories() {
-        try {
-            if (!workingDirectory.exists()) workingDirectory.mkdirs();
-            if (!sourceDirectory.exists()) sourceDirectory.mkdirs();
-            if (!classDirectory.exists()) classDirectory.mkdirs();
-            if (!tempDirectory.exists()) tempDirectory.mkdirs();
-            
-            cleanupDirectories();
-        } catch (Exception e) {
+        CompilationResult withRunStatistics(ExecutionBudget budget, BudgetExceededException stopped) {
+            this.interpretedSteps = budget.getSteps();
+            this.interpreterTimeNanos = budget.getElapsedNanos();
+            this.cancelled = stopped != null && stopped.isCancelled();
+            this.budgetExhausted = stopped != null && !stopped.isCancelled();
+            return this;
         }
-    }
-    
-    private void cleanupDirectories() {
-        try {
-            deleteDirectoryContents(classDirectory);
-            deleteDirectoryContents(tempDirectory);
-        } catch (Exception e) {
+        
+        CompilationResult withDroppedOutputBytes(long droppedOutputBytes) {
+            this.droppedOutputBytes = droppedOutputBytes;
+            return this;
         }
     }
     
-    private void deleteDirectoryContents(File directory) {
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        deleteDirectoryContents(file);
-                    }
-                    file.delete();
-                }
-            }
-        }
+    public AndroidCompatibleJavaCompiler(Context context) {
+        this.context = context;
     }
     
     public CompilationResult compileAndExecute(String sourceCode) {
+        return compileAndExecute(sourceCode, null);
+    }
+    
+    public CompilationResult compileAndExecute(String sourceCode, CancellationToken token) {
         long startTime = System.currentTimeMillis();
         
         try {
@@ -92,30 +91,53 @@ public class AndroidCompatibleJavaCompiler {
             }
             
             String className = extractClassName(sourceCode);
+            int lineOffset = 0;
             if (className == null) {
                 className = "TempClass";
+                lineOffset = sourceCode.contains("public static void main") ? 1 : 2;
                 sourceCode = wrapInClass(sourceCode, className);
             }
             
-            List<String> syntaxErrors = validateSyntax(sourceCode);
-            if (!syntaxErrors.isEmpty()) {
+            Program program;
+            try {
+                program = programCache.get(sourceCode, className);
+            } catch (ParseException e) {
                 return new CompilationResult(false, "", "Syntax validation failed", 
-                                           syntaxErrors, System.currentTimeMillis() - startTime);
+                                           Collections.singletonList("Line " + userLine(e.getLine(), lineOffset) + 
+                                                                     ": " + e.getMessage()), 
+                                           System.currentTimeMillis() - startTime);
+            } catch (EvaluationException e) {
+                return new CompilationResult(false, "", "Compilation failed", 
+                                           Collections.singletonList("Line " + userLine(e.getLine(), lineOffset) + 
+                                                                     ": " + e.getMessage()), 
+                                           System.currentTimeMillis() - startTime);
             }
             
-            String output = executeWithInterpreter(sourceCode, className);
+            return executeWithInterpreter(program, className, lineOffset, token, startTime);
             
-            return new CompilationResult(true, output, null, null, 
-                                       System.currentTimeMillis() - startTime);
-            
-        } catch (Exception e) {
+        } catch (Exception | VirtualMachineError e) {
+            Log.w(TAG, "Interpreter failed", e);
             return new CompilationResult(false, "", "Internal error: " + e.getMessage(), 
                                        null, System.currentTimeMillis() - startTime);
-        } finally {
-            cleanup();
         }
     }
     
+    public void setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+    
+    public void setStepLimit(long stepLimit) {
+        this.stepLimit = stepLimit;
+    }
+    
+    public void setOutputLimitBytes(int outputLimitBytes) {
+        this.outputLimitBytes = outputLimitBytes;
+    }
+    
+    public void warmUp() {
+        compileAndExecute("int warmUp = 1 + 1;\nSystem.out.println(\"Warm-up: \" + warmUp);");
+    }
+    
     private String extractClassName(String sourceCode) {
         Pattern classPattern = Pattern.compile("public\\s+class\\s+(\\w+)");
         Matcher matcher = classPattern.matcher(sourceCode);
@@ -123,10 +145,26 @@ public class AndroidCompatibleJavaCompiler {
     }
     
     private String wrapInClass(String code, String className) {
+        StringBuilder imports = new StringBuilder();
+        String[] lines = code.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].trim().startsWith("import ")) {
+                imports.append(lines[i].trim()).append(' ');
+                lines[i] = "";
+            }
+        }
+        if (imports.length() > 0) {
+            StringBuilder body = new StringBuilder();
+            for (int i = 0; i < lines.length; i++) {
+                body.append(i == 0 ? "" : "\n").append(lines[i]);
+            }
+            code = body.toString();
+        }
+        
         if (code.contains("public static void main")) {
-            return "public class " + className + " {\n" + code + "\n}";
+            return imports + "public class " + className + " {\n" + code + "\n}";
         } else {
-            return "public class " + className + " {\n" +
+            return imports + "public class " + className + " {\n" +
                    "    public static void main(String[] args) {\n" +
                    "        " + code.replaceAll("\n", "\n        ") + "\n" +
                    "    }\n" +
@@ -134,558 +172,49 @@ public class AndroidCompatibleJavaCompiler {
         }
     }
     
-    private List<String> validateSyntax(String sourceCode) {
-        List<String> errors = new ArrayList<>();
-        
-        int openBraces = 0;
-        int closeBraces = 0;
-        int openParens = 0;
-        int closeParens = 0;
-        boolean inString = false;
-        boolean inChar = false;
-        boolean escape = false;
+    private CompilationResult executeWithInterpreter(Program program, String className, int lineOffset, 
+                                                     CancellationToken token, long startTime) throws IOException {
+        OutputCapture capture = new OutputCapture(outputLimitBytes, null);
+        PrintStream stream = new PrintStream(capture.stdout(), true, "UTF-8");
+        ExecutionBudget budget = new ExecutionBudget(token, timeoutMs, stepLimit);
+        BudgetExceededException stopped = null;
+        String error = null;
         
-        char[] chars = sourceCode.toCharArray();
-        for (int i = 0; i < chars.length; i++) {
-            char c = chars[i];
-            
-            if (escape) {
-                escape = false;
-                continue;
-            }
-            
-            if (c == '\\') {
-                escape = true;
-                continue;
-            }
-            
-            if (!inChar && c == '"') {
-                inString = !inString;
-                continue;
-            }
-            
-            if (!inString && c == '\'') {
-                inChar = !inChar;
-                continue;
-            }
-            
-            if (!inString && !inChar) {
-                switch (c) {
-                    case '{':
-                        openBraces++;
-                        break;
-                    case '}':
-                        closeBraces++;
-                        break;
-                    case '(':
-                        openParens++;
-                        break;
-                    case ')':
-                        closeParens++;
-                        break;
-                }
-            }
-        }
-        
-        if (openBraces != closeBraces) {
-            errors.add("Mismatched braces: " + openBraces + " open, " + closeBraces + " close");
-        }
-        
-        if (openParens != closeParens) {
-            errors.add("Mismatched parentheses: " + openParens + " open, " + closeParens + " close");
-        }
-        
-        if (inString) {
-            errors.add("Unclosed string literal");
-        }
-        
-        if (inChar) {
-            errors.add("Unclosed character literal");
-        }
-        
-        return errors;
-    }
-    
-    private String executeWithInterpreter(String sourceCode, String className) throws Exception {
-        AndroidJavaInterpreter interpreter = new AndroidJavaInterpreter();
-        return interpreter.execute(sourceCode, className);
-    }
-    
-    private void cleanup() {
         try {
-            cleanupDirectories();
-        } catch (Exception e) {
-        }
+            program.run(stream, stream, budget);
+        } catch (BudgetExceededException e) {
+            stopped = e;
+            error = e.isCancelled() ? e.getMessage() 
+                                    : e.getMessage() + " at line " + userLine(e.getLine(), lineOffset);
+        } catch (ThrownException e) {
+            stream.println("Exception in thread \"main\" " + e.getThrown());
+            stream.println("\tat " + className + ".main(line " + userLine(e.getLine(), lineOffset) + ")");
+        } catch (EvaluationException e) {
+            error = "Runtime error at line " + userLine(e.getLine(), lineOffset) + ": " + e.getMessage();
+        }
+        
+        stream.flush();
+        String output = capture.getStdout();
+        if (capture.isTruncated()) {
+            Log.d(TAG, "Interpreter output truncated, dropped " + capture.getDroppedBytes() + " bytes");
+            output += "\n... [output truncated: " + capture.getDroppedBytes() + " bytes dropped] ...";
+        }
+        long executionTimeMs = System.currentTimeMillis() - startTime;
+        Log.d(TAG, "Interpreted " + className + " in " + executionTimeMs + "ms (" + budget.getSteps() + 
+                   " steps, " + budget.getElapsedNanos() / 1000 + "us in interpreter)");
+        
+        if (error != null) {
+            return new CompilationResult(false, output, error, null, executionTimeMs)
+                .withRunStatistics(budget, stopped)
+                .withDroppedOutputBytes(capture.getDroppedBytes());
+        }
+        return new CompilationResult(true, output.isEmpty() ? "Program executed successfully (no output)" : output, 
+                                   null, null, executionTimeMs)
+            .withRunStatistics(budget, null)
+            .withDroppedOutputBytes(capture.getDroppedBytes());
     }
     
-    private static class AndroidJavaInterpreter {
-        private final Map<String, Object> variables = new HashMap<>();
-        private final StringBuilder output = new StringBuilder();
-        private final Pattern PRINT_PATTERN = Pattern.compile("System\\.out\\.print(?:ln)?\\s*\\(([^)]+)\\)");
-        private final Pattern VARIABLE_DECLARATION = Pattern.compile("(\\w+)\\s+(\\w+)\\s*=\\s*(.+?)(?:;|$)");
-        private final Pattern ASSIGNMENT = Pattern.compile("(\\w+)\\s*=\\s*(.+?)(?:;|$)");
-        private final Pattern METHOD_CALL = Pattern.compile("(\\w+)\\.(\\w+)\\(([^)]*)\\)");
-        
-        public String execute(String sourceCode, String className) {
-            output.setLength(0);
-            variables.clear();
-            
-            try {
-                String mainBody = extractMainMethodBody(sourceCode);
-                if (mainBody != null) {
-                    executeStatements(mainBody);
-                } else {
-                    executeStatements(sourceCode);
-                }
-                
-                String result = output.toString();
-                return result.isEmpty() ? "Program executed successfully (no output)" : result;
-                
-            } catch (Exception e) {
-                return "Runtime error: " + e.getMessage();
-            }
-        }
-        
-        private String extractMainMethodBody(String sourceCode) {
-            Pattern mainPattern = Pattern.compile(
-                "public\\s+static\\s+void\\s+main\\s*\\([^)]*\\)\\s*\\{([^}]*(?:\\{[^}]*\\}[^}]*)*)\\}",
-                Pattern.DOTALL);
-            Matcher matcher = mainPattern.matcher(sourceCode);
-            return matcher.find() ? matcher.group(1).trim() : null;
-        }
-        
-        private void executeStatements(String code) {
-            String[] lines = code.split("\\n");
-            
-            for (String line : lines) {
-                line = line.trim();
-                if (!line.isEmpty() && !line.startsWith("import")) {
-                    executeStatement(line);
-                }
-            }
-        }
-        
-        private void executeStatement(String statement) {
-            statement = statement.trim();
-            if (statement.endsWith(";")) {
-                statement = statement.substring(0, statement.length() - 1);
-            }
-            
-            if (PRINT_PATTERN.matcher(statement).find()) {
-                executePrintStatement(statement);
-            } else if (statement.contains("for") && statement.contains("(")) {
-                handleForLoop(statement);
-            } else if (statement.contains("if") && statement.contains("(")) {
-                handleIfStatement(statement);
-            } else if (VARIABLE_DECLARATION.matcher(statement).matches()) {
-                executeVariableDeclaration(statement);
-            } else if (ASSIGNMENT.matcher(statement).matches()) {
-                executeAssignment(statement);
-            } else if (statement.contains(".add(") || statement.contains(".put(")) {
-                executeCollectionOperation(statement);
-            } else if (METHOD_CALL.matcher(statement).find()) {
-                executeMethodCall(statement);
-            }
-        }
-        
-        private void executePrintStatement(String statement) {
-            String printPrefix = "System.out.print";
-            int startIndex = statement.indexOf(printPrefix);
-            if (startIndex != -1) {
-                int openParenIndex = statement.indexOf('(', startIndex);
-                if (openParenIndex != -1) {
-                    String expression = extractBalancedParentheses(statement, openParenIndex);
-                    if (expression != null) {
-                        Object value = evaluateExpression(expression);
-                        output.append(value).append("\n");
-                    }
-                }
-            }
-        }
-        
-        private String extractBalancedParentheses(String text, int startIndex) {
-            int parenCount = 0;
-            int i = startIndex;
-            
-            while (i < text.length() && text.charAt(i) != '(') {
-                i++;
-            }
-            
-            if (i >= text.length()) return null;
-            
-            i++;
-            int contentStart = i;
-            parenCount = 1;
-            
-            while (i < text.length() && parenCount > 0) {
-                char c = text.charAt(i);
-                if (c == '(') {
-                    parenCount++;
-                } else if (c == ')') {
-                    parenCount--;
-                }
-                i++;
-            }
-            
-            if (parenCount == 0) {
-                return text.substring(contentStart, i - 1);
-            }
-            
-            return null;
-        }
-        
-        private void executeVariableDeclaration(String statement) {
-            Matcher matcher = VARIABLE_DECLARATION.matcher(statement);
-            if (matcher.find()) {
-                String type = matcher.group(1);
-                String name = matcher.group(2);
-                String value = matcher.group(3);
-                
-                Object evaluatedValue = evaluateExpression(value);
-                
-                if ("List".equals(type) || "ArrayList".equals(type)) {
-                    variables.put(name, new ArrayList<>());
-                } else if ("Map".equals(type) || "HashMap".equals(type)) {
-                    variables.put(name, new HashMap<>());
-                } else {
-                    variables.put(name, evaluatedValue);
-                }
-            }
-        }
-        
-        private void executeAssignment(String statement) {
-            Matcher matcher = ASSIGNMENT.matcher(statement);
-            if (matcher.find()) {
-                String name = matcher.group(1);
-                String value = matcher.group(2);
-                Object evaluatedValue = evaluateExpression(value);
-                variables.put(name, evaluatedValue);
-            }
-        }
-        
-        private void executeMethodCall(String statement) {
-            Matcher matcher = METHOD_CALL.matcher(statement);
-            if (matcher.find()) {
-                String objectName = matcher.group(1);
-                String methodName = matcher.group(2);
-                String args = matcher.group(3);
-                
-                Object obj = variables.get(objectName);
-                if (obj != null) {
-                    try {
-                        if ("add".equals(methodName) && obj instanceof List) {
-                            Object value = evaluateExpression(args);
-                            ((List<Object>) obj).add(value);
-                        } else if ("put".equals(methodName) && obj instanceof Map) {
-                            String[] parts = args.split(",");
-                            if (parts.length == 2) {
-                                Object key = evaluateExpression(parts[0].trim());
-                                Object value = evaluateExpression(parts[1].trim());
-                                ((Map<Object, Object>) obj).put(key, value);
-                            }
-                        }
-                    } catch (Exception e) {
-                    }
-                }
-            }
-        }
-        
-        private void handleForLoop(String statement) {
-            Pattern forPattern = Pattern.compile("for\\s*\\(\\s*(\\w+)\\s+(\\w+)\\s*=\\s*(\\d+);\\s*(\\w+)\\s*<=\\s*(\\d+);\\s*(\\w+)\\+\\+\\s*\\)");
-            Matcher matcher = forPattern.matcher(statement);
-            
-            if (matcher.find()) {
-                String varName = matcher.group(2);
-                int start = Integer.parseInt(matcher.group(3));
-                int end = Integer.parseInt(matcher.group(5));
-                
-                for (int i = start; i <= end; i++) {
-                    variables.put(varName, i);
-                }
-            }
-        }
-        
-        private void handleIfStatement(String statement) {
-            Pattern ifPattern = Pattern.compile("if\\s*\\(([^)]+)\\)");
-            Matcher matcher = ifPattern.matcher(statement);
-            
-            if (matcher.find()) {
-                String condition = matcher.group(1);
-            }
-        }
-        
-        private void executeCollectionOperation(String statement) {
-            if (statement.contains(".add(")) {
-                Pattern addPattern = Pattern.compile("(\\w+)\\.add\\(([^)]+)\\)");
-                Matcher matcher = addPattern.matcher(statement);
-                
-                if (matcher.find()) {
-                    String listName = matcher.group(1);
-                    String value = matcher.group(2);
-                    Object evaluatedValue = evaluateExpression(value);
-                    
-                    Object list = variables.get(listName);
-                    if (list instanceof List) {
-                        ((List<Object>) list).add(evaluatedValue);
-                    }
-                }
-            }
-            
-            if (statement.contains(".put(")) {
-                Pattern putPattern = Pattern.compile("(\\w+)\\.put\\(([^,]+),\\s*([^)]+)\\)");
-                Matcher matcher = putPattern.matcher(statement);
-                
-                if (matcher.find()) {
-                    String mapName = matcher.group(1);
-                    String key = matcher.group(2);
-                    String value = matcher.group(3);
-                    
-                    Object keyObj = evaluateExpression(key);
-                    Object valueObj = evaluateExpression(value);
-                    
-                    Object map = variables.get(mapName);
-                    if (map instanceof Map) {
-                        ((Map<Object, Object>) map).put(keyObj, valueObj);
-                    }
-                }
-            }
-        }
-        
-        private Object evaluateExpression(String expression) {
-            expression = expression.trim();
-            
-            if (expression.startsWith("\"") && expression.endsWith("\"")) {
-                return expression.substring(1, expression.length() - 1);
-            }
-            
-            if (expression.matches("\\d+")) {
-                return Integer.parseInt(expression);
-            }
-            
-            if (expression.matches("\\d+\\.\\d+")) {
-                return Double.parseDouble(expression);
-            }
-            
-            if (expression.equals("true") || expression.equals("false")) {
-                return Boolean.parseBoolean(expression);
-            }
-            
-            if (expression.startsWith("new ArrayList<>()")) {
-                return new ArrayList<>();
-            }
-            
-            if (expression.startsWith("new HashMap<>()")) {
-                return new HashMap<>();
-            }
-            
-            if (variables.containsKey(expression)) {
-                return variables.get(expression);
-            }
-            
-            if (expression.contains("(") && expression.contains(")")) {
-                return evaluateComplexExpression(expression);
-            }
-            
-            if (expression.contains("+")) {
-                return evaluateAddition(expression);
-            }
-            
-            if (expression.contains("-")) {
-                return evaluateSubtraction(expression);
-            }
-            
-            if (expression.contains("*")) {
-                return evaluateMultiplication(expression);
-            }
-            
-            if (expression.contains("/")) {
-                return evaluateDivision(expression);
-            }
-            
-            if (expression.contains(".")) {
-                return evaluateMethodCall(expression);
-            }
-            
-            return expression;
-        }
-        
-        private Object evaluateComplexExpression(String expression) {
-            Pattern parenthesesPattern = Pattern.compile("(.*)\\(([^()]+)\\)(.*)");
-            Matcher matcher = parenthesesPattern.matcher(expression);
-            
-            if (matcher.find()) {
-                String before = matcher.group(1);
-                String inside = matcher.group(2);
-                String after = matcher.group(3);
-                
-                Object innerResult = evaluateExpression(inside);
-                
-                String newExpression = before + innerResult + after;
-                return evaluateExpression(newExpression);
-            }
-            
-            return expression;
-        }
-        
-        private Object evaluateAddition(String expression) {
-            int lastPlusIndex = findLastTopLevelPlus(expression);
-            
-            if (lastPlusIndex != -1) {
-                String left = expression.substring(0, lastPlusIndex).trim();
-                String right = expression.substring(lastPlusIndex + 1).trim();
-                
-                Object leftVal = evaluateExpression(left);
-                Object rightVal = evaluateExpression(right);
-                
-                if (leftVal instanceof Integer && rightVal instanceof Integer) {
-                    return (Integer) leftVal + (Integer) rightVal;
-                } else if (leftVal instanceof Double || rightVal instanceof Double) {
-                    double leftDouble = (leftVal instanceof Double) ? (Double) leftVal : ((Integer) leftVal).doubleValue();
-                    double rightDouble = (rightVal instanceof Double) ? (Double) rightVal : ((Integer) rightVal).doubleValue();
-                    return leftDouble + rightDouble;
-                } else {
-                    return leftVal.toString() + rightVal.toString();
-                }
-            }
-            return expression;
-        }
-        
-        private int findLastTopLevelPlus(String expression) {
-            int parenDepth = 0;
-            boolean inString = false;
-            boolean inChar = false;
-            boolean escape = false;
-            
-            for (int i = expression.length() - 1; i >= 0; i--) {
-                char c = expression.charAt(i);
-                
-                if (escape) {
-                    escape = false;
-                    continue;
-                }
-                
-                if (c == '\\') {
-                    escape = true;
-                    continue;
-                }
-                
-                if (!inChar && c == '"') {
-                    inString = !inString;
-                    continue;
-                }
-                
-                if (!inString && c == '\'') {
-                    inChar = !inChar;
-                    continue;
-                }
-                
-                if (!inString && !inChar) {
-                    if (c == ')') {
-                        parenDepth++;
-                    } else if (c == '(') {
-                        parenDepth--;
-                    } else if (c == '+' && parenDepth == 0) {
-                        return i;
-                    }
-                }
-            }
-            return -1;
-        }
-        
-        private Object evaluateSubtraction(String expression) {
-            String[] parts = expression.split("\\-");
-            if (parts.length == 2) {
-                Object left = evaluateExpression(parts[0].trim());
-                Object right = evaluateExpression(parts[1].trim());
-                
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (Integer) left - (Integer) right;
-                } else if (left instanceof Double || right instanceof Double) {
-                    double leftVal = (left instanceof Double) ? (Double) left : ((Integer) left).doubleValue();
-                    double rightVal = (right instanceof Double) ? (Double) right : ((Integer) right).doubleValue();
-                    return leftVal - rightVal;
-                }
-            }
-            return expression;
-        }
-        
-        private Object evaluateMultiplication(String expression) {
-            String[] parts = expression.split("\\*");
-            if (parts.length == 2) {
-                Object left = evaluateExpression(parts[0].trim());
-                Object right = evaluateExpression(parts[1].trim());
-                
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (Integer) left * (Integer) right;
-                } else if (left instanceof Double || right instanceof Double) {
-                    double leftVal = (left instanceof Double) ? (Double) left : ((Integer) left).doubleValue();
-                    double rightVal = (right instanceof Double) ? (Double) right : ((Integer) right).doubleValue();
-                    return leftVal * rightVal;
-                }
-            }
-            return expression;
-        }
-        
-        private Object evaluateDivision(String expression) {
-            String[] parts = expression.split("\\/");
-            if (parts.length == 2) {
-                Object left = evaluateExpression(parts[0].trim());
-                Object right = evaluateExpression(parts[1].trim());
-                
-                if (left instanceof Integer && right instanceof Integer) {
-                    int rightVal = (Integer) right;
-                    if (rightVal != 0) {
-                        return (Integer) left / rightVal;
-                    }
-                } else if (left instanceof Double || right instanceof Double) {
-                    double leftVal = (left instanceof Double) ? (Double) left : ((Integer) left).doubleValue();
-                    double rightVal = (right instanceof Double) ? (Double) right : ((Integer) right).doubleValue();
-                    if (rightVal != 0.0) {
-                        return leftVal / rightVal;
-                    }
-                }
-            }
-            return expression;
-        }
-        
-        private Object evaluateMethodCall(String expression) {
-            if (expression.contains(".toUpperCase()")) {
-                String varName = expression.substring(0, expression.indexOf("."));
-                Object value = variables.get(varName);
-                if (value instanceof String) {
-                    return ((String) value).toUpperCase();
-                }
-            }
-            
-            if (expression.contains(".toLowerCase()")) {
-                String varName = expression.substring(0, expression.indexOf("."));
-                Object value = variables.get(varName);
-                if (value instanceof String) {
-                    return ((String) value).toLowerCase();
-                }
-            }
-            
-            if (expression.contains(".length()")) {
-                String varName = expression.substring(0, expression.indexOf("."));
-                Object value = variables.get(varName);
-                if (value instanceof String) {
-                    return ((String) value).length();
-                } else if (value instanceof List) {
-                    return ((List<?>) value).size();
-                }
-            }
-            
-            if (expression.contains(".size()")) {
-                String varName = expression.substring(0, expression.indexOf("."));
-                Object value = variables.get(varName);
-                if (value instanceof List) {
-                    return ((List<?>) value).size();
-                } else if (value instanceof Map) {
-                    return ((Map<?, ?>) value).size();
-                }
-            }
-            
-            return expression;
-        }
+    private static int userLine(int line, int lineOffset) {
+        return Math.max(1, line - lineOffset);
     }
 }
@@ -0,0 +1,237 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class BytecodeSecurityValidator {
+    
+    private static final String TAG = "BytecodeSecurityValidator";
+    
+    private static final Map<String, String> DENYLIST = new HashMap<>();
+    private static final Set<String> DENIED_NAMES = new HashSet<>();
+    
+    static {
+        deny("System.exit() calls are not allowed",
+             "java/lang/System.exit", "java/lang/Runtime.exit", "java/lang/Runtime.halt",
+             "android/os/Process.killProcess");
+        deny("Runtime access is restricted",
+             "java/lang/Runtime.getRuntime", "java/lang/Runtime.load", "java/lang/Runtime.loadLibrary",
+             "java/lang/System.load", "java/lang/System.loadLibrary");
+        deny("Process execution is not allowed",
+             "java/lang/Runtime.exec", "java/lang/ProcessBuilder.<init>", "java/lang/ProcessBuilder.start");
+        deny("File system modifications are restricted",
+             "java/io/File.delete", "java/io/File.deleteOnExit", "java/io/File.mkdir", "java/io/File.mkdirs",
+             "java/io/File.renameTo", "java/nio/file/Files.delete", "java/nio/file/Files.deleteIfExists",
+             "java/nio/file/Files.createDirectory", "java/nio/file/Files.createDirectories",
+             "java/nio/file/Files.move");
+        deny("Replacing the standard streams is not allowed",
+             "java/lang/System.setOut", "java/lang/System.setErr", "java/lang/System.setIn");
+        deny("Security manager changes are not allowed",
+             "java/lang/System.setSecurityManager");
+        deny("Unsafe memory access is not allowed",
+             "sun/misc/Unsafe.theUnsafe", "sun/misc/Unsafe.getUnsafe");
+    }
+    
+    public static class Violation {
+        private final String className;
+        private final String member;
+        private final String reason;
+        private final int line;
+        
+        Violation(String className, String member, String reason, int line) {
+            this.className = className;
+            this.member = member;
+            this.reason = reason;
+            this.line = line;
+        }
+        
+        public String getClassName() { return className; }
+        public String getMember() { return member; }
+        public String getReason() { return reason; }
+        public int getLine() { return line; }
+        
+        Violation withLineOffset(int offset) {
+            return line > 0 ? new Violation(className, member, reason, Math.max(1, line - offset)) : this;
+        }
+        
+        @Override
+        public String toString() {
+            String location = line > 0 ? "Line " + line + ": " : "";
+            return location + reason + " (" + member.replace('/', '.') + ")";
+        }
+    }
+    
+    private BytecodeSecurityValidator() {
+    }
+    
+    private static void deny(String reason, String... members) {
+        for (String member : members) {
+            DENYLIST.put(member, reason);
+            DENIED_NAMES.add(member.substring(member.indexOf('.') + 1));
+        }
+    }
+    
+    public static String deniedReason(String owner, String name) {
+        return DENYLIST.get(owner + "." + name);
+    }
+    
+    public static List<Violation> validate(Map<String, byte[]> classes) {
+        return validate(classes, Collections.emptyMap());
+    }
+    
+    public static List<Violation> validate(Map<String, byte[]> classes, Map<String, byte[]> linkedClasses) {
+        long startTime = System.nanoTime();
+        List<Violation> violations = new ArrayList<>();
+        SupertypeResolver supertypes = new SupertypeResolver(classes, linkedClasses);
+        
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            new ClassReader(entry.getValue()).accept(new ScanningClassVisitor(entry.getKey(), supertypes, violations),
+                                                     ClassReader.SKIP_FRAMES);
+        }
+        
+        Log.d(TAG, "Scanned " + classes.size() + " classes in " + (System.nanoTime() - startTime) / 1000 +
+                   "us, " + violations.size() + " violations");
+        return violations;
+    }
+    
+    private static class SupertypeResolver {
+        private final Map<String, byte[]> classes;
+        private final Map<String, byte[]> linkedClasses;
+        private final Map<String, String> superNames = new HashMap<>();
+        
+        SupertypeResolver(Map<String, byte[]> classes, Map<String, byte[]> linkedClasses) {
+            this.classes = classes;
+            this.linkedClasses = linkedClasses;
+        }
+        
+        String deniedReason(String owner, String name) {
+            if (!DENIED_NAMES.contains(name) || "<init>".equals(name)) {
+                return BytecodeSecurityValidator.deniedReason(owner, name);
+            }
+            for (String type = owner; type != null; type = superName(type)) {
+                String reason = BytecodeSecurityValidator.deniedReason(type, name);
+                if (reason != null) {
+                    return reason;
+                }
+            }
+            return null;
+        }
+        
+        private String superName(String type) {
+            if (superNames.containsKey(type)) {
+                return superNames.get(type);
+            }
+            String superName = resolveSuperName(type);
+            superNames.put(type, superName);
+            return superName;
+        }
+        
+        private String resolveSuperName(String type) {
+            if (type.startsWith("[")) {
+                return null;
+            }
+            String className = type.replace('/', '.');
+            byte[] bytes = classes.get(className);
+            if (bytes == null) {
+                bytes = linkedClasses.get(className);
+            }
+            if (bytes != null) {
+                return new ClassReader(bytes).getSuperName();
+            }
+            try {
+                Class<?> superclass = Class.forName(className, false, BytecodeSecurityValidator.class.getClassLoader())
+                    .getSuperclass();
+                return superclass != null ? superclass.getName().replace('.', '/') : null;
+            } catch (ClassNotFoundException | LinkageError e) {
+                Log.d(TAG, "Cannot resolve supertype of " + className);
+                return null;
+            }
+        }
+    }
+    
+    private static class ScanningClassVisitor extends ClassVisitor {
+        private final String className;
+        private final SupertypeResolver supertypes;
+        private final List<Violation> violations;
+        
+        ScanningClassVisitor(String className, SupertypeResolver supertypes, List<Violation> violations) {
+            super(Opcodes.ASM9);
+            this.className = className;
+            this.supertypes = supertypes;
+            this.violations = violations;
+        }
+        
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                         String signature, String[] exceptions) {
+            return new ScanningMethodVisitor(className, supertypes, violations);
+        }
+    }
+    
+    private static class ScanningMethodVisitor extends MethodVisitor {
+        private final String className;
+        private final SupertypeResolver supertypes;
+        private final List<Violation> violations;
+        private int currentLine;
+        
+        ScanningMethodVisitor(String className, SupertypeResolver supertypes, List<Violation> violations) {
+            super(Opcodes.ASM9);
+            this.className = className;
+            this.supertypes = supertypes;
+            this.violations = violations;
+        }
+        
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            currentLine = line;
+        }
+        
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            check(owner, name);
+        }
+        
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            check(owner, name);
+        }
+        
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethod,
+                                           Object... bootstrapMethodArguments) {
+            for (Object argument : bootstrapMethodArguments) {
+                if (argument instanceof Handle) {
+                    check(((Handle) argument).getOwner(), ((Handle) argument).getName());
+                }
+            }
+        }
+        
+        @Override
+        public void visitLdcInsn(Object value) {
+            if (value instanceof Handle) {
+                check(((Handle) value).getOwner(), ((Handle) value).getName());
+            }
+        }
+        
+        private void check(String owner, String name) {
+            String reason = supertypes.deniedReason(owner, name);
+            if (reason != null) {
+                violations.add(new Violation(className, owner + "." + name, reason, currentLine));
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.gorai.sniprun.compiler;
+
+import java.util.concurrent.CancellationException;
+
+public class CancellationToken {
+    
+    private final CancellationToken parent;
+    private volatile boolean cancelled;
+    
+    public CancellationToken() {
+        this(null);
+    }
+    
+    private CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+    
+    public CancellationToken newChild() {
+        return new CancellationToken(this);
+    }
+    
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+    
+    public void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Cancelled");
+        }
+    }
+}
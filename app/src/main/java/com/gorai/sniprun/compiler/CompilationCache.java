@@ -0,0 +1,151 @@
+package com.gorai.sniprun.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CompilationCache {
+    
+    private static final String TAG = "CompilationCache";
+    private static final String CACHE_DIRECTORY = "compile_cache";
+    private static final String ENTRY_SUFFIX = ".bin";
+    private static final int ENTRY_MAGIC = 0x534E5243;
+    private static final int ENTRY_VERSION = 1;
+    
+    private static final long DEFAULT_MEMORY_BUDGET_BYTES = 8L * 1024 * 1024;
+    private static final long DEFAULT_DISK_BUDGET_BYTES = 32L * 1024 * 1024;
+    
+    private static CompilationCache instance;
+    
+    private final TwoTierStore<Entry> store;
+    
+    public static class Entry {
+        private final Map<String, byte[]> classes;
+        private final List<String> diagnostics;
+        private final long sizeBytes;
+        
+        public Entry(Map<String, byte[]> classes, List<String> diagnostics) {
+            this.classes = Collections.unmodifiableMap(new LinkedHashMap<>(classes));
+            this.diagnostics = Collections.unmodifiableList(new ArrayList<>(diagnostics));
+            
+            long size = 0;
+            for (Map.Entry<String, byte[]> entry : this.classes.entrySet()) {
+                size += entry.getKey().length() * 2L + entry.getValue().length;
+            }
+            for (String diagnostic : this.diagnostics) {
+                size += diagnostic.length() * 2L;
+            }
+            this.sizeBytes = size;
+        }
+        
+        public Map<String, byte[]> getClasses() { return classes; }
+        public List<String> getDiagnostics() { return diagnostics; }
+        public boolean isSuccess() { return diagnostics.isEmpty(); }
+        public long getSizeBytes() { return sizeBytes; }
+    }
+    
+    private static class EntryCodec implements TwoTierStore.Codec<Entry> {
+        @Override
+        public long sizeOf(Entry entry) {
+            return entry.getSizeBytes();
+        }
+        
+        @Override
+        public void write(DataOutputStream out, Entry entry) throws IOException {
+            out.writeInt(entry.getClasses().size());
+            for (Map.Entry<String, byte[]> classEntry : entry.getClasses().entrySet()) {
+                out.writeUTF(classEntry.getKey());
+                out.writeInt(classEntry.getValue().length);
+                out.write(classEntry.getValue());
+            }
+            
+            out.writeInt(entry.getDiagnostics().size());
+            for (String diagnostic : entry.getDiagnostics()) {
+                out.writeUTF(diagnostic);
+            }
+        }
+        
+        @Override
+        public Entry read(DataInputStream in) throws IOException {
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            int classCount = in.readInt();
+            for (int i = 0; i < classCount; i++) {
+                String name = in.readUTF();
+                byte[] bytecode = new byte[in.readInt()];
+                in.readFully(bytecode);
+                classes.put(name, bytecode);
+            }
+            
+            List<String> diagnostics = new ArrayList<>();
+            int diagnosticCount = in.readInt();
+            for (int i = 0; i < diagnosticCount; i++) {
+                diagnostics.add(in.readUTF());
+            }
+            return new Entry(classes, diagnostics);
+        }
+    }
+    
+    public static synchronized CompilationCache getInstance(File filesDir) {
+        if (instance == null) {
+            File directory = filesDir != null ? new File(filesDir, CACHE_DIRECTORY) : null;
+            instance = new CompilationCache(directory, DEFAULT_MEMORY_BUDGET_BYTES, DEFAULT_DISK_BUDGET_BYTES);
+        }
+        return instance;
+    }
+    
+    public CompilationCache(File directory, long memoryBudgetBytes, long diskBudgetBytes) {
+        this.store = new TwoTierStore<>(TAG, directory, ENTRY_SUFFIX, ENTRY_MAGIC, ENTRY_VERSION,
+                                        memoryBudgetBytes, diskBudgetBytes, new EntryCodec());
+    }
+    
+    public static String computeKey(String sourceCode, String compilerOptions) {
+        MessageDigest digest = TwoTierStore.sha256();
+        digest.update(normalize(sourceCode).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(compilerOptions.getBytes(StandardCharsets.UTF_8));
+        return TwoTierStore.toHex(digest.digest());
+    }
+    
+    private static String normalize(String sourceCode) {
+        String[] lines = sourceCode.replace("\r\n", "\n").replace('\r', '\n').split("\n");
+        StringBuilder normalized = new StringBuilder(sourceCode.length());
+        
+        for (String line : lines) {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            normalized.append(line, 0, end).append('\n');
+        }
+        
+        return normalized.toString();
+    }
+    
+    public Entry get(String key) {
+        return store.get(key);
+    }
+    
+    public void put(String key, Entry entry) {
+        store.put(key, entry);
+    }
+    
+    public int getHitCount() {
+        return store.getHitCount();
+    }
+    
+    public int getMissCount() {
+        return store.getMissCount();
+    }
+    
+    public void clear() {
+        store.clear();
+    }
+}
@@ -0,0 +1,63 @@
+package com.gorai.sniprun.compiler;
+
+import org.eclipse.jdt.core.compiler.CompilationProgress;
+
+class CompilationMonitor extends CompilationProgress {
+    
+    private final CancellationToken token;
+    private final CompilationProgressListener listener;
+    private final int startPercent;
+    private final int endPercent;
+    private String taskName = ProfessionalJavaCompiler.PHASE_COMPILING;
+    private int completedWork;
+    private int totalWork;
+    
+    CompilationMonitor(CancellationToken token, CompilationProgressListener listener, 
+                       int startPercent, int endPercent) {
+        this.token = token;
+        this.listener = listener;
+        this.startPercent = startPercent;
+        this.endPercent = endPercent;
+    }
+    
+    @Override
+    public void begin(int remainingWork) {
+        completedWork = 0;
+        totalWork = remainingWork;
+        report();
+    }
+    
+    @Override
+    public void worked(int workIncrement, int remainingWork) {
+        completedWork += workIncrement;
+        totalWork = completedWork + remainingWork;
+        report();
+    }
+    
+    @Override
+    public void setTaskName(String name) {
+        if (name != null && !name.isEmpty()) {
+            taskName = name;
+            report();
+        }
+    }
+    
+    @Override
+    public boolean isCanceled() {
+        return token.isCancelled();
+    }
+    
+    @Override
+    public void done() {
+        completedWork = totalWork;
+        report();
+    }
+    
+    private void report() {
+        if (listener == null) {
+            return;
+        }
+        int fraction = totalWork > 0 ? completedWork * 100 / totalWork : 0;
+        listener.onProgress(taskName, startPercent + (endPercent - startPercent) * fraction / 100);
+    }
+}
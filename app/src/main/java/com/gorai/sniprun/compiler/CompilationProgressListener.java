@@ -0,0 +1,12 @@
+package com.gorai.sniprun.compiler;
+
+public interface CompilationProgressListener {
+    
+    void onProgress(String phase, int percent);
+    
+    default void onOutput(String text) {
+    }
+    
+    default void onPreviewOutput(String output) {
+    }
+}
@@ -0,0 +1,133 @@
+package com.gorai.sniprun.compiler;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CompilerService {
+    
+    private static final String TAG = "CompilerService";
+    
+    private static CompilerService instance;
+    
+    public enum State {
+        IDLE, WARMING, READY, FAILED
+    }
+    
+    public interface StateListener {
+        void onStateChanged(State state);
+    }
+    
+    private final Context context;
+    private final ProfessionalJavaCompiler compiler;
+    private final AndroidCompatibleJavaCompiler fallbackCompiler;
+    private final ExecutorService backgroundExecutor;
+    private final ExecutionScheduler scheduler;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile State state = State.IDLE;
+    private volatile long warmUpTimeMs;
+    
+    public static synchronized CompilerService getInstance(Context context) {
+        if (instance == null) {
+            instance = new CompilerService(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private CompilerService(Context context) {
+        this.context = context;
+        this.compiler = new ProfessionalJavaCompiler(context);
+        this.fallbackCompiler = new AndroidCompatibleJavaCompiler(context);
+        this.scheduler = new ExecutionScheduler();
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "compiler-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public synchronized void start() {
+        if (state != State.IDLE && state != State.FAILED) {
+            return;
+        }
+        
+        setState(State.WARMING);
+        if (DexConverter.isDexRuntime()) {
+            RunnerPool.getInstance(context).start();
+        }
+        backgroundExecutor.execute(this::warmUp);
+    }
+    
+    private void warmUp() {
+        long startTime = System.currentTimeMillis();
+        
+        try {
+            compiler.warmUp();
+            fallbackCompiler.warmUp();
+            
+            warmUpTimeMs = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Compilers warmed up in " + warmUpTimeMs + "ms");
+            setState(State.READY);
+        } catch (Throwable t) {
+            Log.w(TAG, "Compiler warm-up failed", t);
+            setState(State.FAILED);
+        }
+    }
+    
+    private void setState(State newState) {
+        state = newState;
+        for (StateListener listener : listeners) {
+            listener.onStateChanged(newState);
+        }
+    }
+    
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+        listener.onStateChanged(state);
+    }
+    
+    public void removeStateListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public boolean isReady() {
+        return state == State.READY;
+    }
+    
+    public boolean isWarming() {
+        return state == State.WARMING;
+    }
+    
+    public long getWarmUpTimeMs() {
+        return warmUpTimeMs;
+    }
+    
+    public ProfessionalJavaCompiler getCompiler() {
+        return compiler;
+    }
+    
+    public AndroidCompatibleJavaCompiler getFallbackCompiler() {
+        return fallbackCompiler;
+    }
+    
+    public void setOutputLimitBytes(int outputLimitBytes) {
+        compiler.setOutputLimitBytes(outputLimitBytes);
+        fallbackCompiler.setOutputLimitBytes(outputLimitBytes);
+    }
+    
+    public ExecutionScheduler getScheduler() {
+        return scheduler;
+    }
+}
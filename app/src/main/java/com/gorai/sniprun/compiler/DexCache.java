@@ -0,0 +1,119 @@
+package com.gorai.sniprun.compiler;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class DexCache {
+    
+    private static final String TAG = "DexCache";
+    private static final String CACHE_DIRECTORY = "dex_cache";
+    private static final String ENTRY_SUFFIX = ".dexs";
+    private static final int ENTRY_MAGIC = 0x534E5244;
+    private static final int ENTRY_VERSION = 1;
+    
+    private static final long DEFAULT_MEMORY_BUDGET_BYTES = 8L * 1024 * 1024;
+    private static final long DEFAULT_DISK_BUDGET_BYTES = 32L * 1024 * 1024;
+    
+    private static DexCache instance;
+    
+    private final TwoTierStore<Entry> store;
+    
+    public static class Entry {
+        private final List<byte[]> dexFiles;
+        private final long sizeBytes;
+        
+        public Entry(List<byte[]> dexFiles) {
+            this.dexFiles = Collections.unmodifiableList(new ArrayList<>(dexFiles));
+            
+            long size = 0;
+            for (byte[] dexFile : this.dexFiles) {
+                size += dexFile.length;
+            }
+            this.sizeBytes = size;
+        }
+        
+        public List<byte[]> getDexFiles() { return dexFiles; }
+        public long getSizeBytes() { return sizeBytes; }
+    }
+    
+    private static class EntryCodec implements TwoTierStore.Codec<Entry> {
+        @Override
+        public long sizeOf(Entry entry) {
+            return entry.getSizeBytes();
+        }
+        
+        @Override
+        public void write(DataOutputStream out, Entry entry) throws IOException {
+            out.writeInt(entry.getDexFiles().size());
+            for (byte[] dex : entry.getDexFiles()) {
+                out.writeInt(dex.length);
+                out.write(dex);
+            }
+        }
+        
+        @Override
+        public Entry read(DataInputStream in) throws IOException {
+            List<byte[]> dexFiles = new ArrayList<>();
+            int dexCount = in.readInt();
+            for (int i = 0; i < dexCount; i++) {
+                byte[] dex = new byte[in.readInt()];
+                in.readFully(dex);
+                dexFiles.add(dex);
+            }
+            return new Entry(dexFiles);
+        }
+    }
+    
+    public static synchronized DexCache getInstance(File filesDir) {
+        if (instance == null) {
+            File directory = filesDir != null ? new File(filesDir, CACHE_DIRECTORY) : null;
+            instance = new DexCache(directory, DEFAULT_MEMORY_BUDGET_BYTES, DEFAULT_DISK_BUDGET_BYTES);
+        }
+        return instance;
+    }
+    
+    public DexCache(File directory, long memoryBudgetBytes, long diskBudgetBytes) {
+        this.store = new TwoTierStore<>(TAG, directory, ENTRY_SUFFIX, ENTRY_MAGIC, ENTRY_VERSION,
+                                        memoryBudgetBytes, diskBudgetBytes, new EntryCodec());
+    }
+    
+    public static String computeKey(Map<String, byte[]> classes, String dexOptions) {
+        MessageDigest digest = TwoTierStore.sha256();
+        for (Map.Entry<String, byte[]> entry : new TreeMap<>(classes).entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(entry.getValue());
+        }
+        digest.update(dexOptions.getBytes(StandardCharsets.UTF_8));
+        return TwoTierStore.toHex(digest.digest());
+    }
+    
+    public Entry get(String key) {
+        return store.get(key);
+    }
+    
+    public void put(String key, Entry entry) {
+        store.put(key, entry);
+    }
+    
+    public int getHitCount() {
+        return store.getHitCount();
+    }
+    
+    public int getMissCount() {
+        return store.getMissCount();
+    }
+    
+    public void clear() {
+        store.clear();
+    }
+}
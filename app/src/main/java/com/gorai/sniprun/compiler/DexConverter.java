@@ -0,0 +1,185 @@
+package com.gorai.sniprun.compiler;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.android.tools.r8.ByteDataView;
+import com.android.tools.r8.CompilationFailedException;
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DexIndexedConsumer;
+import com.android.tools.r8.Diagnostic;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.origin.Origin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import dalvik.system.DexClassLoader;
+import dalvik.system.InMemoryDexClassLoader;
+
+public class DexConverter {
+    
+    private static final String TAG = "DexConverter";
+    private static final String DEX_FILE_DIRECTORY = "snippet_dex";
+    private static final int MAX_DEX_FILES_ON_DISK = 32;
+    
+    private final DexCache dexCache;
+    private final File codeCacheDir;
+    
+    public DexConverter(Context context) {
+        this.dexCache = DexCache.getInstance(context != null ? context.getFilesDir() : null);
+        this.codeCacheDir = context != null ? context.getCodeCacheDir() : null;
+    }
+    
+    public static boolean isDexRuntime() {
+        return System.getProperty("java.vm.name", "").startsWith("Dalvik");
+    }
+    
+    public List<byte[]> convert(Map<String, byte[]> classes) throws CompilationFailedException {
+        String key = DexCache.computeKey(classes, getDexOptionsKey());
+        DexCache.Entry cached = dexCache.get(key);
+        if (cached != null) {
+            Log.d(TAG, "Dex cache hit for " + classes.keySet());
+            return cached.getDexFiles();
+        }
+        
+        long startTime = System.currentTimeMillis();
+        List<byte[]> dexFiles = runD8(classes);
+        Log.d(TAG, "Dexed " + classes.size() + " classes in " + (System.currentTimeMillis() - startTime) + "ms");
+        
+        dexCache.put(key, new DexCache.Entry(dexFiles));
+        return dexFiles;
+    }
+    
+    private List<byte[]> runD8(Map<String, byte[]> classes) throws CompilationFailedException {
+        final TreeMap<Integer, byte[]> output = new TreeMap<>();
+        final List<String> errors = new ArrayList<>();
+        
+        DiagnosticsHandler diagnostics = new DiagnosticsHandler() {
+            @Override
+            public void error(Diagnostic error) {
+                errors.add(error.getDiagnosticMessage());
+            }
+            
+            @Override
+            public void warning(Diagnostic warning) {
+                Log.d(TAG, "D8 warning: " + warning.getDiagnosticMessage());
+            }
+            
+            @Override
+            public void info(Diagnostic info) {
+            }
+        };
+        
+        D8Command.Builder builder = D8Command.builder(diagnostics)
+            .setMinApiLevel(getMinApiLevel())
+            .setMode(CompilationMode.DEBUG)
+            .setProgramConsumer(new DexIndexedConsumer.ForwardingConsumer(null) {
+                @Override
+                public void accept(int fileIndex, ByteDataView data, Set<String> descriptors,
+                                   DiagnosticsHandler handler) {
+                    synchronized (output) {
+                        output.put(fileIndex, data.copyByteData());
+                    }
+                }
+            });
+        
+        for (byte[] bytecode : classes.values()) {
+            builder.addClassProgramData(bytecode, Origin.unknown());
+        }
+        
+        try {
+            D8.run(builder.build());
+        } catch (CompilationFailedException e) {
+            Log.w(TAG, "D8 failed: " + errors, e);
+            throw e;
+        }
+        
+        return new ArrayList<>(output.values());
+    }
+    
+    private String getDexOptionsKey() {
+        return "minApi=" + getMinApiLevel() + ",mode=debug";
+    }
+    
+    private static int getMinApiLevel() {
+        return Math.max(Build.VERSION.SDK_INT, Build.VERSION_CODES.N);
+    }
+    
+    public ClassLoader createClassLoader(List<byte[]> dexFiles, ClassLoader parent) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+            ByteBuffer[] buffers = new ByteBuffer[dexFiles.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.wrap(dexFiles.get(i));
+            }
+            return new InMemoryDexClassLoader(buffers, parent);
+        }
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && dexFiles.size() == 1) {
+            return new InMemoryDexClassLoader(ByteBuffer.wrap(dexFiles.get(0)), parent);
+        }
+        
+        return createFileClassLoader(dexFiles, parent);
+    }
+    
+    private ClassLoader createFileClassLoader(List<byte[]> dexFiles, ClassLoader parent) throws IOException {
+        if (codeCacheDir == null) {
+            throw new IOException("No code cache directory available for dex loading");
+        }
+        
+        File directory = new File(codeCacheDir, DEX_FILE_DIRECTORY);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        trimDexFiles(directory);
+        
+        StringBuilder dexPath = new StringBuilder();
+        for (byte[] dex : dexFiles) {
+            File file = new File(directory, hash(dex) + ".dex");
+            if (!file.exists()) {
+                File temp = new File(directory, file.getName() + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(temp)) {
+                    out.write(dex);
+                }
+                temp.setReadOnly();
+                if (!temp.renameTo(file)) {
+                    temp.delete();
+                    throw new IOException("Could not write " + file);
+                }
+            }
+            if (dexPath.length() > 0) {
+                dexPath.append(File.pathSeparator);
+            }
+            dexPath.append(file.getAbsolutePath());
+        }
+        
+        return new DexClassLoader(dexPath.toString(), directory.getAbsolutePath(), null, parent);
+    }
+    
+    private void trimDexFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".dex"));
+        if (files == null || files.length < MAX_DEX_FILES_ON_DISK) {
+            return;
+        }
+        
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i <= files.length - MAX_DEX_FILES_ON_DISK; i++) {
+            files[i].delete();
+        }
+    }
+    
+    private static String hash(byte[] data) {
+        return TwoTierStore.toHex(TwoTierStore.sha256().digest(data));
+    }
+}
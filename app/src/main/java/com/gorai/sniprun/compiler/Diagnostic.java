@@ -0,0 +1,42 @@
+package com.gorai.sniprun.compiler;
+
+public class Diagnostic {
+    
+    public enum Severity {
+        ERROR,
+        WARNING,
+        INFO
+    }
+    
+    private final Severity severity;
+    private final int startOffset;
+    private final int endOffset;
+    private final int line;
+    private final int problemId;
+    private final String message;
+    
+    public Diagnostic(Severity severity, int startOffset, int endOffset, int line, int problemId, String message) {
+        this.severity = severity;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.line = line;
+        this.problemId = problemId;
+        this.message = message;
+    }
+    
+    public Severity getSeverity() { return severity; }
+    public int getStartOffset() { return startOffset; }
+    public int getEndOffset() { return endOffset; }
+    public int getLine() { return line; }
+    public int getProblemId() { return problemId; }
+    public String getMessage() { return message; }
+    
+    public boolean isError() {
+        return severity == Severity.ERROR;
+    }
+    
+    @Override
+    public String toString() {
+        return "Line " + line + ": " + message;
+    }
+}
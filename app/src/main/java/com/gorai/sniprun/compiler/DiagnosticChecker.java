@@ -0,0 +1,110 @@
+package com.gorai.sniprun.compiler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DiagnosticChecker {
+    
+    private static final String TAG = "DiagnosticChecker";
+    private static final long DEBOUNCE_DELAY_MS = 350;
+    
+    public interface Listener {
+        void onDiagnostics(String sourceCode, List<Diagnostic> diagnostics);
+        
+        void onCheckFailed(String sourceCode);
+    }
+    
+    private final ProfessionalJavaCompiler compiler;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService backgroundExecutor;
+    private final Runnable checkRunnable = this::startCheck;
+    
+    private boolean enabled = true;
+    private String pendingSource;
+    private CancellationToken inFlightToken;
+    
+    public DiagnosticChecker(ProfessionalJavaCompiler compiler, Listener listener) {
+        this.compiler = compiler;
+        this.listener = listener;
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "diagnostic-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            cancel();
+        }
+    }
+    
+    public synchronized void onSourceChanged(String sourceCode) {
+        if (!enabled) {
+            return;
+        }
+        
+        cancel();
+        pendingSource = sourceCode;
+        handler.postDelayed(checkRunnable, DEBOUNCE_DELAY_MS);
+    }
+    
+    private synchronized void startCheck() {
+        String sourceCode = pendingSource;
+        pendingSource = null;
+        if (!enabled || sourceCode == null) {
+            return;
+        }
+        
+        CancellationToken token = new CancellationToken();
+        inFlightToken = token;
+        backgroundExecutor.execute(() -> {
+            if (token.isCancelled()) {
+                return;
+            }
+            try {
+                List<Diagnostic> diagnostics = compiler.check(sourceCode, token);
+                handler.post(() -> {
+                    if (!token.isCancelled()) {
+                        listener.onDiagnostics(sourceCode, diagnostics);
+                    }
+                });
+            } catch (CancellationException e) {
+                Log.d(TAG, "Check superseded by a newer edit");
+            } catch (Exception e) {
+                Log.w(TAG, "Check failed", e);
+                handler.post(() -> {
+                    if (!token.isCancelled()) {
+                        listener.onCheckFailed(sourceCode);
+                    }
+                });
+            }
+        });
+    }
+    
+    public synchronized void cancel() {
+        handler.removeCallbacks(checkRunnable);
+        pendingSource = null;
+        if (inFlightToken != null) {
+            inFlightToken.cancel();
+            inFlightToken = null;
+        }
+    }
+    
+    public void shutdown() {
+        cancel();
+        backgroundExecutor.shutdownNow();
+    }
+}
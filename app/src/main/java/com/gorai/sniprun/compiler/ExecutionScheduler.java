@@ -0,0 +1,226 @@
+package com.gorai.sniprun.compiler;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExecutionScheduler {
+    
+    private static final String TAG = "ExecutionScheduler";
+    private static final int COMPILE_THREADS = 1;
+    private static final int EXECUTION_THREADS = 2;
+    private static final int PREVIEW_THREADS = 1;
+    private static final int IDLE_THREADS = 1;
+    private static final long RUN_STACK_BYTES = 32L << 20;
+    
+    public enum Priority {
+        INTERACTIVE, BATCH, BACKGROUND
+    }
+    
+    public interface CompileStep<P> {
+        P compile(CancellationToken token) throws Exception;
+    }
+    
+    public interface ExecuteStep<P, R> {
+        R execute(P program, CancellationToken token) throws Exception;
+    }
+    
+    public static class RunFuture<R> extends CompletableFuture<R> {
+        private final CancellationToken token;
+        private volatile ThreadPoolExecutor stagePool;
+        private volatile Runnable stageTask;
+        
+        RunFuture(CancellationToken token) {
+            this.token = token;
+        }
+        
+        public CancellationToken getToken() {
+            return token;
+        }
+        
+        synchronized boolean schedule(ThreadPoolExecutor pool, Runnable task) {
+            if (isDone()) {
+                return false;
+            }
+            stagePool = pool;
+            stageTask = task;
+            pool.execute(task);
+            return true;
+        }
+        
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            token.cancel();
+            synchronized (this) {
+                ThreadPoolExecutor pool = stagePool;
+                if (pool != null && pool.remove(stageTask)) {
+                    Log.d(TAG, "Dropped queued stage before it started");
+                }
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+    
+    private static class StageTask implements Runnable, Comparable<StageTask> {
+        private final Priority priority;
+        private final long sequence;
+        private final Runnable body;
+        
+        StageTask(Priority priority, long sequence, Runnable body) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.body = body;
+        }
+        
+        @Override
+        public void run() {
+            body.run();
+        }
+        
+        @Override
+        public int compareTo(StageTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+    
+    private final ThreadPoolExecutor compilePool;
+    private final ThreadPoolExecutor executionPool;
+    private final ThreadPoolExecutor previewPool;
+    private final ThreadPoolExecutor idlePool;
+    private final Map<String, RunFuture<?>> latestByKey = new ConcurrentHashMap<>();
+    private final Set<CancellationToken> idleTokens = ConcurrentHashMap.newKeySet();
+    private final AtomicLong nextSequence = new AtomicLong();
+    
+    public ExecutionScheduler() {
+        this.compilePool = createPool("snippet-compile", COMPILE_THREADS, Process.THREAD_PRIORITY_FOREGROUND, 0);
+        this.executionPool = createPool("snippet-execute", EXECUTION_THREADS, Process.THREAD_PRIORITY_FOREGROUND,
+                                        RUN_STACK_BYTES);
+        this.previewPool = createPool("snippet-preview", PREVIEW_THREADS, Process.THREAD_PRIORITY_FOREGROUND,
+                                      RUN_STACK_BYTES);
+        this.idlePool = createPool("snippet-idle", IDLE_THREADS, Process.THREAD_PRIORITY_BACKGROUND, 0);
+    }
+    
+    private static ThreadPoolExecutor createPool(String name, int threads, int threadPriority, long stackSize) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                      new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(null, () -> {
+                Process.setThreadPriority(threadPriority);
+                runnable.run();
+            }, name + "-" + count.incrementAndGet(), stackSize);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public <P, R> RunFuture<R> submit(String coalesceKey, Priority priority, CancellationToken token,
+                                      CompileStep<P> compileStep, ExecuteStep<P, R> executeStep) {
+        RunFuture<R> future = new RunFuture<>(token);
+        long sequence = nextSequence.incrementAndGet();
+        yieldIdleWork();
+        
+        if (coalesceKey != null) {
+            RunFuture<?> previous = latestByKey.put(coalesceKey, future);
+            if (previous != null && !previous.isDone()) {
+                Log.d(TAG, "Superseding previous run for " + coalesceKey);
+                previous.cancel(true);
+            }
+            future.whenComplete((result, error) -> latestByKey.remove(coalesceKey, future));
+        }
+        
+        future.schedule(compilePool, new StageTask(priority, sequence, () -> {
+            try {
+                token.throwIfCancelled();
+                P program = compileStep.compile(token);
+                token.throwIfCancelled();
+                future.schedule(executionPool, new StageTask(priority, sequence, () -> {
+                    try {
+                        token.throwIfCancelled();
+                        future.complete(executeStep.execute(program, token));
+                    } catch (Throwable t) {
+                        fail(future, t);
+                    }
+                }));
+            } catch (Throwable t) {
+                fail(future, t);
+            }
+        }));
+        return future;
+    }
+    
+    public <T> CompletableFuture<T> submitPreview(Priority priority, CancellationToken token, Callable<T> step) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        previewPool.execute(new StageTask(priority, nextSequence.incrementAndGet(), () -> {
+            if (token.isCancelled()) {
+                future.cancel(false);
+                return;
+            }
+            try {
+                future.complete(step.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }));
+        return future;
+    }
+    
+    public <T> CompletableFuture<T> submitWhenIdle(CancellationToken token, Callable<T> step) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        idlePool.execute(new StageTask(Priority.BACKGROUND, nextSequence.incrementAndGet(), () -> {
+            if (token.isCancelled() || !isCompileIdle()) {
+                future.cancel(false);
+                return;
+            }
+            idleTokens.add(token);
+            try {
+                future.complete(step.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                idleTokens.remove(token);
+            }
+        }));
+        return future;
+    }
+    
+    public boolean isCompileIdle() {
+        return compilePool.getActiveCount() == 0 && compilePool.getQueue().isEmpty();
+    }
+    
+    private void yieldIdleWork() {
+        for (CancellationToken token : idleTokens) {
+            Log.d(TAG, "Cancelling idle work for an incoming run");
+            token.cancel();
+        }
+    }
+    
+    public int getActivePreviewCount() {
+        return previewPool.getActiveCount();
+    }
+    
+    private static void fail(RunFuture<?> future, Throwable error) {
+        if (error instanceof CancellationException) {
+            future.cancel(false);
+        } else {
+            future.completeExceptionally(error);
+        }
+    }
+    
+    public void cancelAll() {
+        for (RunFuture<?> future : latestByKey.values()) {
+            future.cancel(true);
+        }
+    }
+}
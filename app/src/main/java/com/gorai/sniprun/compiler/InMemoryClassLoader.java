@@ -0,0 +1,23 @@
+package com.gorai.sniprun.compiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class InMemoryClassLoader extends ClassLoader {
+    
+    private final Map<String, byte[]> classes;
+    
+    InMemoryClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+        super(parent);
+        this.classes = new HashMap<>(classes);
+    }
+    
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytecode = classes.get(name);
+        if (bytecode == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytecode, 0, bytecode.length);
+    }
+}
@@ -0,0 +1,76 @@
+package com.gorai.sniprun.compiler;
+
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileManager;
+
+public class InMemoryJavaFileManager implements JavaFileManager {
+    
+    private static final String ENCODING = "UTF-8";
+    
+    private final Map<Location, Map<String, byte[]>> locations = new HashMap<>();
+    
+    public synchronized void putSource(String className, byte[] content) {
+        put(StandardLocation.SOURCE_PATH, className, content);
+    }
+    
+    public synchronized void putClass(String className, byte[] bytecode) {
+        put(StandardLocation.CLASS_OUTPUT, className, bytecode);
+    }
+    
+    public synchronized void put(Location location, String className, byte[] content) {
+        Map<String, byte[]> entries = locations.get(location);
+        if (entries == null) {
+            entries = new LinkedHashMap<>();
+            locations.put(location, entries);
+        }
+        entries.put(className, content);
+    }
+    
+    public synchronized byte[] get(Location location, String className) {
+        Map<String, byte[]> entries = locations.get(location);
+        return entries != null ? entries.get(className) : null;
+    }
+    
+    public synchronized byte[] getClassBytes(String className) {
+        return get(StandardLocation.CLASS_OUTPUT, className);
+    }
+    
+    public synchronized Map<String, byte[]> list(Location location) {
+        Map<String, byte[]> entries = locations.get(location);
+        if (entries == null) {
+            return Collections.emptyMap();
+        }
+        return new LinkedHashMap<>(entries);
+    }
+    
+    public synchronized Map<String, byte[]> getClassOutput() {
+        return list(StandardLocation.CLASS_OUTPUT);
+    }
+    
+    public synchronized void clear(Location location) {
+        locations.remove(location);
+    }
+    
+    public synchronized ICompilationUnit[] getCompilationUnits() {
+        Map<String, byte[]> sources = list(StandardLocation.SOURCE_PATH);
+        List<ICompilationUnit> units = new ArrayList<>();
+        
+        for (Map.Entry<String, byte[]> entry : sources.entrySet()) {
+            String fileName = entry.getKey().replace('.', '/') + ".java";
+            char[] contents = new String(entry.getValue(), StandardCharsets.UTF_8).toCharArray();
+            units.add(new CompilationUnit(contents, fileName, ENCODING));
+        }
+        
+        return units.toArray(new ICompilationUnit[0]);
+    }
+}
@@ -0,0 +1,175 @@
+package com.gorai.sniprun.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class OutputCapture {
+    
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    private static final int PENDING_CAPACITY = 64 * 1024;
+    
+    public interface Listener {
+        void onOutput(String text);
+    }
+    
+    private final int maxBytes;
+    private final Listener listener;
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    private final byte[] pending;
+    private int pendingStart;
+    private int pendingSize;
+    private long skippedPendingBytes;
+    private long capturedBytes;
+    private long totalBytes;
+    private long droppedBytes;
+    private boolean truncationReported;
+    
+    public OutputCapture(int maxBytes, Listener listener) {
+        this.maxBytes = maxBytes;
+        this.listener = listener;
+        this.pending = listener != null ? new byte[PENDING_CAPACITY] : new byte[0];
+    }
+    
+    public OutputStream stdout() {
+        return new Sink(false);
+    }
+    
+    public OutputStream stderr() {
+        return new Sink(true);
+    }
+    
+    synchronized void write(boolean error, byte[] buffer, int offset, int length) {
+        totalBytes += length;
+        
+        int accepted = (int) Math.max(0, Math.min(length, maxBytes - capturedBytes));
+        if (accepted > 0) {
+            (error ? stderr : stdout).write(buffer, offset, accepted);
+            capturedBytes += accepted;
+            enqueue(buffer, offset, accepted);
+        }
+        
+        if (accepted < length) {
+            droppedBytes += length - accepted;
+            if (!truncationReported) {
+                truncationReported = true;
+                byte[] marker = ("\n... [output limit of " + maxBytes + " bytes reached] ...\n")
+                    .getBytes(StandardCharsets.UTF_8);
+                enqueue(marker, 0, marker.length);
+            }
+        }
+    }
+    
+    synchronized void addDroppedBytes(long bytes) {
+        totalBytes += bytes;
+        droppedBytes += bytes;
+    }
+    
+    private void enqueue(byte[] buffer, int offset, int length) {
+        if (listener == null) {
+            return;
+        }
+        
+        if (length > pending.length) {
+            skippedPendingBytes += length - pending.length;
+            offset += length - pending.length;
+            length = pending.length;
+        }
+        
+        int overflow = pendingSize + length - pending.length;
+        if (overflow > 0) {
+            pendingStart = (pendingStart + overflow) % pending.length;
+            pendingSize -= overflow;
+            skippedPendingBytes += overflow;
+        }
+        
+        int writePosition = (pendingStart + pendingSize) % pending.length;
+        int firstPart = Math.min(length, pending.length - writePosition);
+        System.arraycopy(buffer, offset, pending, writePosition, firstPart);
+        System.arraycopy(buffer, offset + firstPart, pending, 0, length - firstPart);
+        pendingSize += length;
+    }
+    
+    public void pump() {
+        if (listener == null) {
+            return;
+        }
+        
+        String text;
+        synchronized (this) {
+            int length = completeUtf8Length();
+            if (length == 0 && skippedPendingBytes == 0) {
+                return;
+            }
+            
+            byte[] chunk = new byte[length];
+            int firstPart = Math.min(length, pending.length - pendingStart);
+            System.arraycopy(pending, pendingStart, chunk, 0, firstPart);
+            System.arraycopy(pending, 0, chunk, firstPart, length - firstPart);
+            pendingStart = (pendingStart + length) % pending.length;
+            pendingSize -= length;
+            
+            text = new String(chunk, StandardCharsets.UTF_8);
+            if (skippedPendingBytes > 0) {
+                text = "\n... [" + skippedPendingBytes + " bytes skipped] ...\n" + text;
+                skippedPendingBytes = 0;
+            }
+        }
+        listener.onOutput(text);
+    }
+    
+    private int completeUtf8Length() {
+        int length = pendingSize;
+        for (int back = 1; back <= Math.min(3, pendingSize); back++) {
+            int b = pending[(pendingStart + pendingSize - back) % pending.length] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            int sequenceLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            if (sequenceLength > back) {
+                length = pendingSize - back;
+            }
+            break;
+        }
+        return length;
+    }
+    
+    public synchronized String getStdout() {
+        return new String(stdout.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    public synchronized String getStderr() {
+        return new String(stderr.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+    
+    public synchronized long getDroppedBytes() {
+        return droppedBytes;
+    }
+    
+    public synchronized boolean isTruncated() {
+        return droppedBytes > 0;
+    }
+    
+    private class Sink extends OutputStream {
+        private final boolean error;
+        
+        Sink(boolean error) {
+            this.error = error;
+        }
+        
+        @Override
+        public void write(int b) {
+            OutputCapture.this.write(error, new byte[] {(byte) b}, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            OutputCapture.this.write(error, buffer, offset, length);
+        }
+    }
+}
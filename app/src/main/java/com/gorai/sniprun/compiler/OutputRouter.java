@@ -0,0 +1,102 @@
+package com.gorai.sniprun.compiler;
+
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+
+public final class OutputRouter {
+    
+    private static final InheritableThreadLocal<Route> CURRENT = new InheritableThreadLocal<>();
+    private static boolean installed;
+    
+    private static final class Route {
+        final PrintStream out;
+        final PrintStream err;
+        
+        Route(PrintStream out, PrintStream err) {
+            this.out = out;
+            this.err = err;
+        }
+    }
+    
+    private OutputRouter() {
+    }
+    
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        System.setOut(new RoutingPrintStream(System.out, false));
+        System.setErr(new RoutingPrintStream(System.err, true));
+    }
+    
+    public static void bind(OutputCapture capture) {
+        try {
+            CURRENT.set(new Route(new PrintStream(capture.stdout(), true, "UTF-8"),
+                                  new PrintStream(capture.stderr(), true, "UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not available", e);
+        }
+    }
+    
+    public static void unbind() {
+        Route route = CURRENT.get();
+        CURRENT.remove();
+        if (route != null) {
+            route.out.flush();
+            route.err.flush();
+        }
+    }
+    
+    private static final class RoutingPrintStream extends PrintStream {
+        private final PrintStream fallback;
+        private final boolean error;
+        
+        RoutingPrintStream(PrintStream fallback, boolean error) {
+            super(fallback, true);
+            this.fallback = fallback;
+            this.error = error;
+        }
+        
+        private PrintStream target() {
+            Route route = CURRENT.get();
+            if (route == null) {
+                return fallback;
+            }
+            return error ? route.err : route.out;
+        }
+        
+        @Override public void flush() { target().flush(); }
+        @Override public void close() { target().flush(); }
+        @Override public boolean checkError() { return target().checkError(); }
+        @Override public void write(int b) { target().write(b); }
+        @Override public void write(byte[] buf, int off, int len) { target().write(buf, off, len); }
+        @Override public void print(boolean b) { target().print(b); }
+        @Override public void print(char c) { target().print(c); }
+        @Override public void print(int i) { target().print(i); }
+        @Override public void print(long l) { target().print(l); }
+        @Override public void print(float f) { target().print(f); }
+        @Override public void print(double d) { target().print(d); }
+        @Override public void print(char[] s) { target().print(s); }
+        @Override public void print(String s) { target().print(s); }
+        @Override public void print(Object obj) { target().print(obj); }
+        @Override public void println() { target().println(); }
+        @Override public void println(boolean x) { target().println(x); }
+        @Override public void println(char x) { target().println(x); }
+        @Override public void println(int x) { target().println(x); }
+        @Override public void println(long x) { target().println(x); }
+        @Override public void println(float x) { target().println(x); }
+        @Override public void println(double x) { target().println(x); }
+        @Override public void println(char[] x) { target().println(x); }
+        @Override public void println(String x) { target().println(x); }
+        @Override public void println(Object x) { target().println(x); }
+        @Override public PrintStream printf(String format, Object... args) { target().printf(format, args); return this; }
+        @Override public PrintStream printf(Locale l, String format, Object... args) { target().printf(l, format, args); return this; }
+        @Override public PrintStream format(String format, Object... args) { target().format(format, args); return this; }
+        @Override public PrintStream format(Locale l, String format, Object... args) { target().format(l, format, args); return this; }
+        @Override public PrintStream append(CharSequence csq) { target().append(csq); return this; }
+        @Override public PrintStream append(CharSequence csq, int start, int end) { target().append(csq, start, end); return this; }
+        @Override public PrintStream append(char c) { target().append(c); return this; }
+    }
+}
@@ -0,0 +1,109 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PreemptionInstrumenter {
+    
+    private static final String TAG = "PreemptionInstrumenter";
+    private static final String BUDGET_OWNER = Type.getInternalName(RunBudget.class);
+    private static final String TICK_METHOD = "tick";
+    private static final String TICK_DESCRIPTOR = "()V";
+    
+    private PreemptionInstrumenter() {
+    }
+    
+    public static Map<String, byte[]> instrument(Map<String, byte[]> classes) {
+        long startTime = System.nanoTime();
+        int checkpoints = 0;
+        
+        Map<String, byte[]> instrumented = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(entry.getValue()).accept(classNode, 0);
+            
+            for (MethodNode method : classNode.methods) {
+                checkpoints += instrumentMethod(method);
+            }
+            
+            ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+            classNode.accept(writer);
+            instrumented.put(entry.getKey(), writer.toByteArray());
+        }
+        
+        Log.d(TAG, "Inserted " + checkpoints + " budget checks into " + classes.size() + " classes in " +
+                   (System.nanoTime() - startTime) / 1000 + "us");
+        return instrumented;
+    }
+    
+    private static int instrumentMethod(MethodNode method) {
+        InsnList instructions = method.instructions;
+        if (instructions.size() == 0) {
+            return 0;
+        }
+        
+        List<AbstractInsnNode> backEdges = new ArrayList<>();
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (isBackEdge(instructions, insn)) {
+                backEdges.add(insn);
+            }
+        }
+        
+        for (AbstractInsnNode backEdge : backEdges) {
+            instructions.insertBefore(backEdge, tickCall());
+        }
+        instructions.insert(tickCall());
+        
+        return backEdges.size() + 1;
+    }
+    
+    private static boolean isBackEdge(InsnList instructions, AbstractInsnNode insn) {
+        if (insn instanceof JumpInsnNode) {
+            return isBackward(instructions, insn, ((JumpInsnNode) insn).label);
+        }
+        if (insn instanceof TableSwitchInsnNode) {
+            TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+            return isBackward(instructions, insn, tableSwitch.dflt) || anyBackward(instructions, insn, tableSwitch.labels);
+        }
+        if (insn instanceof LookupSwitchInsnNode) {
+            LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+            return isBackward(instructions, insn, lookupSwitch.dflt) || anyBackward(instructions, insn, lookupSwitch.labels);
+        }
+        return false;
+    }
+    
+    private static boolean anyBackward(InsnList instructions, AbstractInsnNode insn, List<LabelNode> labels) {
+        for (LabelNode label : labels) {
+            if (isBackward(instructions, insn, label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isBackward(InsnList instructions, AbstractInsnNode insn, LabelNode target) {
+        return instructions.indexOf(target) <= instructions.indexOf(insn);
+    }
+    
+    private static MethodInsnNode tickCall() {
+        return new MethodInsnNode(Opcodes.INVOKESTATIC, BUDGET_OWNER, TICK_METHOD, TICK_DESCRIPTOR, false);
+    }
+}
@@ -3,20 +3,24 @@ package com.gorai.sniprun.compiler;
 import android.content.Context;
 import android.util.Log;
 
-import org.eclipse.jdt.core.compiler.batch.BatchCompiler;
-import org.eclipse.jdt.internal.compiler.batch.Main;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,15 +31,25 @@ import org.objectweb.asm.tree.ClassNode;
 public class ProfessionalJavaCompiler {
     
     private static final String TAG = "ProfessionalJavaCompiler";
+    private static final long CANCEL_POLL_INTERVAL_MS = 16;
+    private static final long EXECUTION_TIMEOUT_SECONDS = 10;
+    
+    public static final String PHASE_VALIDATING = "Validating";
+    public static final String PHASE_COMPILING = "Compiling";
+    public static final String PHASE_DEXING = "Dexing";
+    public static final String PHASE_RUNNING = "Running";
+    
+    private static String bootClasspath;
     private final Context context;
-    private final File workingDirectory;
-    private final File sourceDirectory;
-    private final File classDirectory;
-    private final File tempDirectory;
+    private final CompilationCache compilationCache;
+    private final DexConverter dexConverter;
+    private final RunnerPool runnerPool;
+    private final SharedClassLayer sharedClassLayer = new SharedClassLayer();
+    private final SharedClassLayer.LoaderCache sharedLoaders = new SharedClassLayer.LoaderCache();
+    private volatile long stepLimit;
+    private volatile int outputLimitBytes = OutputCapture.DEFAULT_MAX_BYTES;
     
     private SecurityManager originalSecurityManager;
-    private PrintStream originalSystemOut;
-    private PrintStream originalSystemErr;
     
     public static class CompilationResult {
         private final boolean success;
@@ -43,6 +57,14 @@ public class ProfessionalJavaCompiler {
         private final String errorMessage;
         private final List<String> compilationErrors;
         private final long executionTimeMs;
+        private boolean cacheHit;
+        private int cacheHits;
+        private int cacheMisses;
+        private boolean cancelled;
+        private boolean budgetExhausted;
+        private long outputBytes;
+        private long droppedOutputBytes;
+        private StageTimings stageTimings = new StageTimings();
         
         public CompilationResult(boolean success, String output, String errorMessage, 
                                List<String> compilationErrors, long executionTimeMs) {
@@ -58,102 +80,373 @@ public class ProfessionalJavaCompiler {
         public String getErrorMessage() { return errorMessage; }
         public List<String> getCompilationErrors() { return compilationErrors; }
         public long getExecutionTimeMs() { return executionTimeMs; }
+        public boolean isCacheHit() { return cacheHit; }
+        public int getCacheHits() { return cacheHits; }
+        public int getCacheMisses() { return cacheMisses; }
+        public boolean isCancelled() { return cancelled; }
+        public boolean isBudgetExhausted() { return budgetExhausted; }
+        public long getOutputBytes() { return outputBytes; }
+        public long getDroppedOutputBytes() { return droppedOutputBytes; }
+        public StageTimings getStageTimings() { return stageTimings; }
+        
+        CompilationResult withCacheStatistics(boolean cacheHit, CompilationCache cache) {
+            this.cacheHit = cacheHit;
+            this.cacheHits = cache.getHitCount();
+            this.cacheMisses = cache.getMissCount();
+            return this;
+        }
+        
+        CompilationResult markCancelled() {
+            this.cancelled = true;
+            return this;
+        }
+        
+        CompilationResult markBudgetExhausted() {
+            this.budgetExhausted = true;
+            return this;
+        }
+        
+        CompilationResult withStageTimings(StageTimings stageTimings) {
+            this.stageTimings = stageTimings;
+            return this;
+        }
+        
+        CompilationResult withOutputStatistics(OutputCapture capture) {
+            this.outputBytes = capture.getTotalBytes();
+            this.droppedOutputBytes = capture.getDroppedBytes();
+            return this;
+        }
+    }
+    
+    public static class CompiledProgram {
+        private final String sourceCode;
+        private final String className;
+        private final Map<String, byte[]> classes;
+        private final List<byte[]> dexFiles;
+        private final boolean cacheHit;
+        private final long compileTimeMs;
+        private final CompilationResult failure;
+        private StageTimings stageTimings = new StageTimings();
+        private SharedClassLayer.Partition partition;
+        private List<byte[]> sharedDexFiles;
+        
+        CompiledProgram(String sourceCode, String className, Map<String, byte[]> classes, 
+                        List<byte[]> dexFiles, boolean cacheHit, long compileTimeMs) {
+            this(sourceCode, className, classes, dexFiles, cacheHit, compileTimeMs, null);
+        }
+        
+        private CompiledProgram(String sourceCode, String className, Map<String, byte[]> classes, 
+                                List<byte[]> dexFiles, boolean cacheHit, long compileTimeMs, 
+                                CompilationResult failure) {
+            this.sourceCode = sourceCode;
+            this.className = className;
+            this.classes = classes;
+            this.dexFiles = dexFiles;
+            this.cacheHit = cacheHit;
+            this.compileTimeMs = compileTimeMs;
+            this.failure = failure;
+        }
+        
+        static CompiledProgram failed(String sourceCode, CompilationResult failure) {
+            return new CompiledProgram(sourceCode, null, Collections.emptyMap(), null, false, 
+                                       failure.getExecutionTimeMs(), failure);
+        }
+        
+        public boolean isSuccess() { return failure == null; }
+        public boolean isCancelled() { return failure != null && failure.isCancelled(); }
+        public String getSourceCode() { return sourceCode; }
+        public String getClassName() { return className; }
+        public Map<String, byte[]> getClasses() { return classes; }
+        public List<byte[]> getDexFiles() { return dexFiles; }
+        public boolean isCacheHit() { return cacheHit; }
+        public long getCompileTimeMs() { return compileTimeMs; }
+        public CompilationResult getFailure() { return failure; }
+        public StageTimings getStageTimings() { return stageTimings; }
+        public SharedClassLayer.Partition getPartition() { return partition; }
+        public List<byte[]> getSharedDexFiles() { return sharedDexFiles; }
+        
+        CompiledProgram withSharedLayer(SharedClassLayer.Partition partition, List<byte[]> sharedDexFiles) {
+            this.partition = partition;
+            this.sharedDexFiles = sharedDexFiles;
+            return this;
+        }
+        
+        CompiledProgram withStageTimings(StageTimings stageTimings) {
+            this.stageTimings = stageTimings;
+            if (failure != null) {
+                failure.withStageTimings(stageTimings);
+            }
+            return this;
+        }
     }
     
     public ProfessionalJavaCompiler(Context context) {
         this.context = context;
-        this.workingDirectory = new File(context.getFilesDir(), "java_compiler");
-        this.sourceDirectory = new File(workingDirectory, "src");
-        this.classDirectory = new File(workingDirectory, "classes");
-        this.tempDirectory = new File(workingDirectory, "temp");
-        
-        initializeDirectories();
+        this.compilationCache = CompilationCache.getInstance(context != null ? context.getFilesDir() : null);
+        this.dexConverter = new DexConverter(context);
+        this.runnerPool = context != null && DexConverter.isDexRuntime() ? RunnerPool.getInstance(context) : null;
     }
     
-    private void initializeDirectories() {
-        try {
-            if (!workingDirectory.exists()) workingDirectory.mkdirs();
-            if (!sourceDirectory.exists()) sourceDirectory.mkdirs();
-            if (!classDirectory.exists()) classDirectory.mkdirs();
-            if (!tempDirectory.exists()) tempDirectory.mkdirs();
-            
-            cleanupDirectories();
-        } catch (Exception e) {
-        }
+    public CompilationResult compileAndExecute(String sourceCode) {
+        return compileAndExecute(sourceCode, new CancellationToken(), null);
     }
     
-    private void cleanupDirectories() {
-        try {
-            deleteDirectoryContents(classDirectory);
-            deleteDirectoryContents(tempDirectory);
-        } catch (Exception e) {
+    public CompilationResult compileAndExecute(String sourceCode, CancellationToken token, 
+                                               CompilationProgressListener listener) {
+        long startTime = System.currentTimeMillis();
+        
+        CompiledProgram program = compile(sourceCode, token, listener);
+        if (!program.isSuccess()) {
+            return program.getFailure();
         }
+        return execute(program, token, listener, startTime);
     }
     
-    private void deleteDirectoryContents(File directory) {
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        deleteDirectoryContents(file);
-                    }
-                    file.delete();
-                }
-            }
-        }
+    public CompiledProgram compile(String sourceCode, CancellationToken token, 
+                                   CompilationProgressListener listener) {
+        StageTimings timings = new StageTimings();
+        CompiledProgram program = compileStages(sourceCode, token, listener, timings);
+        timings.end();
+        return program.withStageTimings(timings);
     }
     
-    public CompilationResult compileAndExecute(String sourceCode) {
+    private CompiledProgram compileStages(String sourceCode, CancellationToken token, 
+                                          CompilationProgressListener listener, StageTimings timings) {
         long startTime = System.currentTimeMillis();
         
         try {
             if (sourceCode == null || sourceCode.trim().isEmpty()) {
-                return new CompilationResult(false, "", "Source code is empty", null, 0);
+                return CompiledProgram.failed(sourceCode, 
+                    new CompilationResult(false, "", "Source code is empty", null, 0));
             }
             
-            try {
-                CodeSecurityValidator.validateCodeSafety(sourceCode);
-            } catch (SecurityException e) {
-                List<String> securityErrors = new ArrayList<>();
-                securityErrors.add("Security violation: " + e.getMessage());
-                return new CompilationResult(false, "", "Code contains unsafe operations", 
-                                           securityErrors, System.currentTimeMillis() - startTime);
-            }
+            reportProgress(listener, PHASE_VALIDATING, 0);
             
+            timings.begin(StageTimings.Stage.WRAP);
             String className = extractClassName(sourceCode);
+            String unitSource = sourceCode;
+            int lineOffset = 0;
             if (className == null) {
                 className = "TempClass";
-                sourceCode = wrapInClass(sourceCode, className);
+                unitSource = wrapInClass(sourceCode, className);
+                lineOffset = wrapLineOffset(sourceCode);
             }
             
-            List<String> syntaxErrors = validateSyntax(sourceCode);
+            timings.begin(StageTimings.Stage.SYNTAX);
+            List<String> syntaxErrors = validateSyntax(unitSource);
             if (!syntaxErrors.isEmpty()) {
-                return new CompilationResult(false, "", "Syntax validation failed", 
-                                           syntaxErrors, System.currentTimeMillis() - startTime);
+                return CompiledProgram.failed(sourceCode, 
+                    new CompilationResult(false, "", "Syntax validation failed", 
+                                          syntaxErrors, System.currentTimeMillis() - startTime));
             }
             
-            File sourceFile = new File(sourceDirectory, className + ".java");
-            try (FileWriter writer = new FileWriter(sourceFile)) {
-                writer.write(sourceCode);
+            token.throwIfCancelled();
+            
+            timings.begin(StageTimings.Stage.COMPILE);
+            String cacheKey = CompilationCache.computeKey(unitSource, getCompilerOptionsKey());
+            CompilationCache.Entry compiled = compilationCache.get(cacheKey);
+            boolean cacheHit = compiled != null;
+            
+            if (compiled == null) {
+                try {
+                    compiled = compileWithECJ(unitSource, className, token, listener);
+                } catch (CancellationException e) {
+                    Log.d(TAG, "Compilation of " + className + " cancelled");
+                    return CompiledProgram.failed(sourceCode, cancelledResult("Compilation cancelled", startTime));
+                } catch (Exception e) {
+                    Log.w(TAG, "Eclipse JDT compilation failed", e);
+                    List<String> errors = new ArrayList<>();
+                    errors.add("Compiler initialization error: " + e.getMessage());
+                    errors.add("This typically indicates missing JDK classes on Android");
+                    return CompiledProgram.failed(sourceCode, 
+                        new CompilationResult(false, "", "Compilation failed", 
+                                              errors, System.currentTimeMillis() - startTime)
+                            .withCacheStatistics(false, compilationCache));
+                }
+                compilationCache.put(cacheKey, compiled);
+            } else {
+                Log.d(TAG, "Compilation cache hit for " + className);
             }
             
-            List<String> compilationErrors = compileWithECJ(sourceFile, className);
-            if (!compilationErrors.isEmpty()) {
-                return new CompilationResult(false, "", "Compilation failed", 
-                                           compilationErrors, System.currentTimeMillis() - startTime);
+            if (!compiled.isSuccess()) {
+                return CompiledProgram.failed(sourceCode, 
+                    new CompilationResult(false, "", "Compilation failed", 
+                                          new ArrayList<>(compiled.getDiagnostics()), System.currentTimeMillis() - startTime)
+                        .withCacheStatistics(cacheHit, compilationCache));
             }
             
-            String output = executeCompiledCode(className);
+            return link(sourceCode, className, compiled.getClasses(), cacheHit, lineOffset, 
+                        token, listener, timings, startTime);
             
-            return new CompilationResult(true, output, null, null, 
-                                       System.currentTimeMillis() - startTime);
+        } catch (CancellationException e) {
+            return CompiledProgram.failed(sourceCode, cancelledResult("Compilation cancelled", startTime));
+        } catch (Exception e) {
+            return CompiledProgram.failed(sourceCode, 
+                new CompilationResult(false, "", "Internal error: " + e.getMessage(), 
+                                      null, System.currentTimeMillis() - startTime));
+        }
+    }
+    
+    CompiledProgram link(String sourceCode, String className, Map<String, byte[]> compiledClasses, 
+                         boolean cacheHit, int lineOffset, CancellationToken token, 
+                         CompilationProgressListener listener, StageTimings timings, long startTime) {
+        timings.begin(StageTimings.Stage.SECURITY);
+        List<BytecodeSecurityValidator.Violation> violations = 
+            BytecodeSecurityValidator.validate(compiledClasses);
+        if (!violations.isEmpty()) {
+            List<String> securityErrors = new ArrayList<>();
+            for (BytecodeSecurityValidator.Violation violation : violations) {
+                securityErrors.add("Security violation: " + violation.withLineOffset(lineOffset));
+            }
+            return CompiledProgram.failed(sourceCode, 
+                new CompilationResult(false, "", "Code contains unsafe operations", 
+                                      securityErrors, System.currentTimeMillis() - startTime)
+                    .withCacheStatistics(cacheHit, compilationCache));
+        }
+        
+        Map<String, byte[]> classes = instrumentForPreemption(compiledClasses);
+        SharedClassLayer.Partition partition = sharedClassLayer.partition(classes, className);
+        
+        List<byte[]> dexFiles = null;
+        List<byte[]> sharedDexFiles = null;
+        if (DexConverter.isDexRuntime()) {
+            token.throwIfCancelled();
+            reportProgress(listener, PHASE_DEXING, 95);
+            timings.begin(StageTimings.Stage.DEX);
+            try {
+                dexFiles = partition.getChangedClasses().isEmpty() 
+                    ? Collections.emptyList() : dexConverter.convert(partition.getChangedClasses());
+                if (partition.hasSharedClasses()) {
+                    sharedDexFiles = dexConverter.convert(partition.getSharedClasses());
+                }
+            } catch (Exception | LinkageError e) {
+                Log.w(TAG, "Dex conversion failed", e);
+                List<String> errors = new ArrayList<>();
+                errors.add("Dex conversion error: " + e.getMessage());
+                return CompiledProgram.failed(sourceCode, 
+                    new CompilationResult(false, "", "Dex conversion failed", 
+                                          errors, System.currentTimeMillis() - startTime)
+                        .withCacheStatistics(cacheHit, compilationCache));
+            }
+        }
+        
+        return new CompiledProgram(sourceCode, className, classes, dexFiles, cacheHit, 
+                                   System.currentTimeMillis() - startTime)
+            .withSharedLayer(partition, sharedDexFiles);
+    }
+    
+    public void setStepLimit(long stepLimit) {
+        this.stepLimit = stepLimit;
+    }
+    
+    public void setOutputLimitBytes(int outputLimitBytes) {
+        this.outputLimitBytes = outputLimitBytes;
+    }
+    
+    int getOutputLimitBytes() {
+        return outputLimitBytes;
+    }
+    
+    public ReplSession newSession() {
+        return new ReplSession(this);
+    }
+    
+    public ProjectBuilder newProjectBuilder() {
+        return new ProjectBuilder(this);
+    }
+    
+    Map<String, byte[]> instrumentForPreemption(Map<String, byte[]> classes) {
+        try {
+            return PreemptionInstrumenter.instrument(classes);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Preemption instrumentation failed, running uninstrumented", e);
+            return classes;
+        }
+    }
+    
+    public CompilationResult execute(CompiledProgram program, CancellationToken token, 
+                                     CompilationProgressListener listener) {
+        if (!program.isSuccess()) {
+            return program.getFailure();
+        }
+        return execute(program, token, listener, System.currentTimeMillis());
+    }
+    
+    private CompilationResult execute(CompiledProgram program, CancellationToken token, 
+                                      CompilationProgressListener listener, long startTime) {
+        StageTimings timings = new StageTimings(program.getStageTimings());
+        OutputCapture capture = new OutputCapture(outputLimitBytes, listener != null ? listener::onOutput : null);
+        try {
+            token.throwIfCancelled();
+            reportProgress(listener, PHASE_RUNNING, 100);
             
+            if (!executeInRunner(program, token, capture, timings)) {
+                executeCompiledCode(program, token, capture, timings);
+            }
+            if (capture.isTruncated()) {
+                Log.d(TAG, "Output truncated, dropped " + capture.getDroppedBytes() + " bytes");
+            }
+            
+            timings.begin(StageTimings.Stage.CAPTURE);
+            String output = formatOutput(capture);
+            timings.end();
+            
+            return new CompilationResult(true, output, null, null, 
+                                       System.currentTimeMillis() - startTime)
+                .withCacheStatistics(program.isCacheHit(), compilationCache)
+                .withOutputStatistics(capture)
+                .withStageTimings(timings);
+            
+        } catch (CancellationException e) {
+            timings.end();
+            return cancelledResult(e.getMessage(), startTime).withStageTimings(timings);
+        } catch (RunBudget.Exhausted e) {
+            timings.end();
+            Log.d(TAG, "Compiled run stopped: " + e.getMessage());
+            return new CompilationResult(false, formatOutput(capture), e.getMessage(), null, 
+                                         System.currentTimeMillis() - startTime)
+                .markBudgetExhausted()
+                .withOutputStatistics(capture)
+                .withStageTimings(timings);
         } catch (Exception e) {
+            timings.end();
             return new CompilationResult(false, "", "Internal error: " + e.getMessage(), 
-                                       null, System.currentTimeMillis() - startTime);
-        } finally {
-            cleanup();
+                                       null, System.currentTimeMillis() - startTime)
+                .withStageTimings(timings);
+        }
+    }
+    
+    private CompilationResult cancelledResult(String message, long startTime) {
+        return new CompilationResult(false, "", message, null, System.currentTimeMillis() - startTime)
+            .markCancelled();
+    }
+    
+    private void reportProgress(CompilationProgressListener listener, String phase, int percent) {
+        if (listener != null) {
+            listener.onProgress(phase, percent);
+        }
+    }
+    
+    public void warmUp() {
+        String warmUpSource = "public class WarmUp {\n" +
+                              "    public static void main(String[] args) {\n" +
+                              "        java.util.List<String> values = new java.util.ArrayList<>();\n" +
+                              "        values.add(String.valueOf(args.length));\n" +
+                              "        System.out.println(values);\n" +
+                              "    }\n" +
+                              "}";
+        
+        CompilationCache.Entry compiled = compileWithECJ(warmUpSource, "WarmUp", new CancellationToken(), null);
+        if (!compiled.isSuccess()) {
+            Log.w(TAG, "Warm-up compilation reported errors: " + compiled.getDiagnostics());
+            return;
+        }
+        
+        try {
+            List<byte[]> dexFiles = DexConverter.isDexRuntime() ? dexConverter.convert(compiled.getClasses()) : null;
+            createProgramClassLoader(compiled.getClasses(), dexFiles, getClass().getClassLoader()).loadClass("WarmUp");
+        } catch (Throwable t) {
+            Log.d(TAG, "Warm-up class loading unavailable: " + t.getMessage());
         }
     }
     
@@ -175,6 +468,10 @@ public class ProfessionalJavaCompiler {
         }
     }
     
+    private int wrapLineOffset(String code) {
+        return code.contains("public static void main") ? 1 : 2;
+    }
+    
     private List<String> validateSyntax(String sourceCode) {
         List<String> errors = new ArrayList<>();
         
@@ -247,97 +544,157 @@ public class ProfessionalJavaCompiler {
         return errors;
     }
     
-    private List<String> compileWithECJ(File sourceFile, String className) {
+    private CompilationCache.Entry compileWithECJ(String sourceCode, String className, 
+                                                  CancellationToken token, CompilationProgressListener listener) {
+        return compileWithECJ(sourceCode, className, getNameEnvironment(), token, listener);
+    }
+    
+    INameEnvironment getNameEnvironment() {
+        return SharedNameEnvironment.getInstance(getAndroidBootClasspath());
+    }
+    
+    CompilationCache.Entry compileWithECJ(String sourceCode, String className, INameEnvironment nameEnvironment,
+                                          CancellationToken token, CompilationProgressListener listener) {
         List<String> errors = new ArrayList<>();
+        InMemoryJavaFileManager fileManager = new InMemoryJavaFileManager();
+        fileManager.putSource(className, sourceCode.getBytes(StandardCharsets.UTF_8));
         
-        try {
-            ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
-            PrintWriter compilerWriter = new PrintWriter(compilerOutput);
-            
-            List<String> args = new ArrayList<>();
-            args.add("-d");
-            args.add(classDirectory.getAbsolutePath());
-            args.add("-cp");  
-            args.add(getAndroidClasspath());
-            args.add("-source");
-            args.add("8");
-            args.add("-target");
-            args.add("8");
-            args.add("-encoding");
-            args.add("UTF-8");
-            args.add("-proc:none");
-            
-            String bootcp = getAndroidBootClasspath();
-            if (!bootcp.isEmpty()) {
-                args.add("-bootclasspath");
-                args.add(bootcp);
+        final List<CategorizedProblem> problems = new ArrayList<>();
+        ICompilerRequestor requestor = result -> {
+            CategorizedProblem[] resultProblems = result.getProblems();
+            if (resultProblems != null) {
+                problems.addAll(Arrays.asList(resultProblems));
             }
-            
-            args.add(sourceFile.getAbsolutePath());
-            
-            String[] argsArray = args.toArray(new String[0]);
-            
-            boolean success = false;
-            try {
-                Log.d(TAG, "Compiling with args: " + Arrays.toString(argsArray));
-                success = BatchCompiler.compile(argsArray, compilerWriter, compilerWriter, null);
-                Log.d(TAG, "Compilation success: " + success);
-            } catch (Exception e) {
-                Log.w(TAG, "Eclipse JDT compilation failed", e);
-                errors.add("Eclipse JDT compilation failed: " + e.getMessage());
-                errors.add("Trying to use system classpath: " + System.getProperty("java.class.path", "not available"));
-                return errors;
+            if (result.hasErrors()) {
+                return;
             }
-            
-            compilerWriter.close();
-            String compilerOutputStr = compilerOutput.toString();
-            
-            Log.d(TAG, "Compiler output: " + compilerOutputStr);
-            
-            if (!success || !compilerOutputStr.isEmpty()) {
-                if (!compilerOutputStr.isEmpty()) {
-                    errors.addAll(parseCompilerErrors(compilerOutputStr));
-                } else {
-                    errors.add("Compilation failed for unknown reason");
-                }
+            for (ClassFile classFile : result.getClassFiles()) {
+                String name = CharOperation.toString(classFile.getCompoundName());
+                fileManager.putClass(name, classFile.getBytes());
             }
-            
-            File classFile = new File(classDirectory, className + ".class");
-            Log.d(TAG, "Looking for class file: " + classFile.getAbsolutePath());
-            Log.d(TAG, "Class file exists: " + classFile.exists());
-            
-            if (!classFile.exists()) {
-                errors.add("Class file was not generated - compilation may have failed silently");
-                
-                File[] files = classDirectory.listFiles();
-                if (files != null) {
-                    Log.d(TAG, "Files in class directory: " + Arrays.toString(files));
-                } else {
-                    Log.d(TAG, "Class directory is empty or doesn't exist");
-                }
+        };
+        
+        Compiler compiler = new Compiler(
+            nameEnvironment,
+            DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+            new CompilerOptions(getCompilerSettings()),
+            requestor,
+            new DefaultProblemFactory(Locale.getDefault()),
+            null,
+            new CompilationMonitor(token, listener, 5, 90));
+        
+        Log.d(TAG, "Compiling in memory: " + className);
+        compiler.compile(fileManager.getCompilationUnits());
+        token.throwIfCancelled();
+        
+        for (CategorizedProblem problem : problems) {
+            if (problem.isError()) {
+                errors.add(formatProblem(problem));
+            } else {
+                Log.w(TAG, "Compiler warning: " + formatProblem(problem));
             }
-            
-        } catch (Exception e) {
-            errors.add("Compiler initialization error: " + e.getMessage());
-            errors.add("This typically indicates missing JDK classes on Android");
         }
         
-        return errors;
-    }
-    
-    private String getClasspath() {
-        return getAndroidClasspath();
+        if (errors.isEmpty() && fileManager.getClassBytes(className) == null) {
+            errors.add("Class file was not generated - compilation may have failed silently");
+            Log.d(TAG, "Generated classes: " + fileManager.getClassOutput().keySet());
+        }
+        
+        return new CompilationCache.Entry(fileManager.getClassOutput(), errors);
     }
     
-    private String getAndroidClasspath() {
-        StringBuilder classpath = new StringBuilder();
+    public List<Diagnostic> check(String sourceCode, CancellationToken token) {
+        long startTime = System.nanoTime();
+        String className = extractClassName(sourceCode);
+        String prefix = "";
+        String suffix = "";
+        if (className == null) {
+            className = "TempClass";
+            if (sourceCode.contains("public static void main")) {
+                prefix = "public class " + className + " {\n";
+                suffix = "\n}";
+            } else {
+                prefix = "public class " + className + " { public static void main(String[] args) {\n";
+                suffix = "\n}}";
+            }
+        }
+        
+        InMemoryJavaFileManager fileManager = new InMemoryJavaFileManager();
+        fileManager.putSource(className, (prefix + sourceCode + suffix).getBytes(StandardCharsets.UTF_8));
         
-        classpath.append(classDirectory.getAbsolutePath());
+        final List<CategorizedProblem> problems = new ArrayList<>();
+        ICompilerRequestor requestor = result -> {
+            CategorizedProblem[] resultProblems = result.getProblems();
+            if (resultProblems != null) {
+                problems.addAll(Arrays.asList(resultProblems));
+            }
+        };
+        
+        Map<String, String> settings = getCompilerSettings();
+        settings.put(CompilerOptions.OPTION_GenerateClassFiles, CompilerOptions.DISABLED);
+        settings.put(CompilerOptions.OPTION_LineNumberAttribute, CompilerOptions.DO_NOT_GENERATE);
+        settings.put(CompilerOptions.OPTION_SourceFileAttribute, CompilerOptions.DO_NOT_GENERATE);
         
-        return classpath.toString();
+        Compiler compiler = new Compiler(
+            getNameEnvironment(),
+            DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+            new CompilerOptions(settings),
+            requestor,
+            new DefaultProblemFactory(Locale.getDefault()),
+            null,
+            new CompilationMonitor(token, null, 0, 100));
+        compiler.compile(fileManager.getCompilationUnits());
+        token.throwIfCancelled();
+        
+        int lineOffset = prefix.isEmpty() ? 0 : 1;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        for (CategorizedProblem problem : problems) {
+            Diagnostic.Severity severity = problem.isError() ? Diagnostic.Severity.ERROR
+                : problem.isWarning() ? Diagnostic.Severity.WARNING : Diagnostic.Severity.INFO;
+            int start = clamp(problem.getSourceStart() - prefix.length(), 0, sourceCode.length());
+            int end = clamp(problem.getSourceEnd() + 1 - prefix.length(), start, sourceCode.length());
+            diagnostics.add(new Diagnostic(severity, start, end,
+                                           Math.max(1, problem.getSourceLineNumber() - lineOffset),
+                                           problem.getID(), problem.getMessage()));
+        }
+        
+        Log.d(TAG, "Checked " + className + " in " + (System.nanoTime() - startTime) / 1000 + "us, " +
+                   diagnostics.size() + " problems");
+        return diagnostics;
+    }
+    
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    Map<String, String> getCompilerSettings() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_8);
+        settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_8);
+        settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_8);
+        settings.put(CompilerOptions.OPTION_Encoding, "UTF-8");
+        settings.put(CompilerOptions.OPTION_Process_Annotations, CompilerOptions.DISABLED);
+        settings.put(CompilerOptions.OPTION_LineNumberAttribute, CompilerOptions.GENERATE);
+        settings.put(CompilerOptions.OPTION_SourceFileAttribute, CompilerOptions.GENERATE);
+        return settings;
+    }
+    
+    private String getCompilerOptionsKey() {
+        return new TreeMap<>(getCompilerSettings()).toString();
+    }
+    
+    private String formatProblem(CategorizedProblem problem) {
+        return "Line " + problem.getSourceLineNumber() + ": " + problem.getMessage();
+    }
+    
+    private static synchronized String getAndroidBootClasspath() {
+        if (bootClasspath == null) {
+            bootClasspath = resolveAndroidBootClasspath();
+        }
+        return bootClasspath;
     }
     
-    private String getAndroidBootClasspath() {
+    private static String resolveAndroidBootClasspath() {
         StringBuilder bootclasspath = new StringBuilder();
         
         try {
@@ -377,103 +734,165 @@ public class ProfessionalJavaCompiler {
         return bootclasspath.toString();
     }
     
-
     
-    private List<String> parseCompilerErrors(String compilerOutput) {
-        List<String> errors = new ArrayList<>();
-        String[] lines = compilerOutput.split("\n");
-        
-        for (String line : lines) {
-            line = line.trim();
-            if (!line.isEmpty()) {
-                if (line.contains("ERROR") || line.contains("error") || 
-                    line.contains("Exception") || line.contains("at line") ||
-                    line.contains("cannot find symbol") || line.contains("package does not exist") ||
-                    line.matches(".*\\.java:[0-9]+:.*")) {
-                    errors.add(formatErrorMessage(line));
-                } else if (line.contains("warning") || line.contains("WARNING")) {
-                    Log.w(TAG, "Compiler warning: " + line);
-                } else if (!line.isEmpty() && !line.startsWith("Note:")) {
-                    Log.d(TAG, "Compiler output: " + line);
-                }
-            }
+    
+    private boolean executeInRunner(CompiledProgram program, CancellationToken token, 
+                                    OutputCapture capture, StageTimings timings) throws Exception {
+        if (runnerPool == null || program.getDexFiles() == null) {
+            return false;
         }
         
-        return errors;
+        long runStart = System.nanoTime();
+        SharedClassLayer.Partition partition = program.getPartition();
+        RunnerPool.Result result = runnerPool.execute(program.getClassName(), program.getDexFiles(), 
+                                                      partition != null ? partition.getKey() : null,
+                                                      program.getSharedDexFiles(), token, 
+                                                      EXECUTION_TIMEOUT_SECONDS, TimeUnit.SECONDS, stepLimit,
+                                                      capture, outputLimitBytes);
+        if (result == null) {
+            Log.d(TAG, "No runner process available, executing in-process");
+            return false;
+        }
+        long loadNanos = result.getLoadNanos();
+        timings.add(StageTimings.Stage.LOAD, loadNanos);
+        timings.add(StageTimings.Stage.RUN, Math.max(0, System.nanoTime() - runStart - loadNanos));
+        if (result.isCancelled()) {
+            throw new CancellationException("Execution stopped");
+        }
+        if (result.isTimedOut()) {
+            throw new RunBudget.Exhausted("Execution timeout exceeded (" + EXECUTION_TIMEOUT_SECONDS + " seconds)", 
+                                          false);
+        }
+        if (result.isBudgetExhausted()) {
+            throw new RunBudget.Exhausted(result.getError(), false);
+        }
+        if (result.getError() != null) {
+            throw new RuntimeException(result.getError());
+        }
+        
+        return true;
     }
     
-    private String formatErrorMessage(String rawError) {
-        String formatted = rawError
-            .replaceAll("^[0-9]+\\. ", "")
-            .replaceAll("----------", "")
-            .trim();
-        
-        if (formatted.isEmpty()) {
-            return rawError;
+    String formatOutput(OutputCapture capture) {
+        String output = capture.getStdout();
+        String error = capture.getStderr();
+        if (!error.isEmpty()) {
+            output += "\nErrors:\n" + error;
+        }
+        if (capture.isTruncated()) {
+            output += "\n... [output truncated: " + capture.getDroppedBytes() + " bytes dropped] ...";
         }
         
-        return formatted;
+        return output.isEmpty() ? "Program executed successfully (no output)" : output;
     }
     
-    private String executeCompiledCode(String className) throws Exception {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ByteArrayOutputStream errorStream = new ByteArrayOutputStream();
-        
-        originalSystemOut = System.out;
-        originalSystemErr = System.err;
-        System.setOut(new PrintStream(outputStream));
-        System.setErr(new PrintStream(errorStream));
-        
-        
+    private void executeCompiledCode(CompiledProgram program, CancellationToken token, 
+                                     OutputCapture capture, StageTimings timings) throws Exception {
         try {
-            URL[] urls = { classDirectory.toURI().toURL() };
-            URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader());
+            timings.begin(StageTimings.Stage.LOAD);
+            ClassLoader classLoader = createProgramClassLoader(program);
             
-            Class<?> clazz = classLoader.loadClass(className);
+            Class<?> clazz = classLoader.loadClass(program.getClassName());
             Method mainMethod = clazz.getMethod("main", String[].class);
             
-            executeWithSecurityControls(() -> {
-                try {
-                    mainMethod.invoke(null, (Object) new String[0]);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }, 10, TimeUnit.SECONDS);
-            
-            classLoader.close();
+            timings.begin(StageTimings.Stage.RUN);
+            invokeInProcess(mainMethod, new Object[] { new String[0] }, token, capture);
             
         } finally {
-            restoreSystemStreams();
+            timings.end();
+            capture.pump();
         }
-        
-        String output = outputStream.toString();
-        String error = errorStream.toString();
-        
-        if (!error.isEmpty()) {
-            output += "\nErrors:\n" + error;
+    }
+    
+    void invokeInProcess(Method method, Object[] arguments, CancellationToken token, 
+                         OutputCapture capture) throws Exception {
+        OutputRouter.install();
+        executeWithSecurityControls(() -> {
+            try {
+                method.invoke(null, arguments);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RunBudget.Exhausted) {
+                    throw (RunBudget.Exhausted) e.getCause();
+                }
+                e.getCause().printStackTrace();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, token, capture, EXECUTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    ClassLoader defineClasses(Map<String, byte[]> classes, ClassLoader parent) throws Exception {
+        List<byte[]> dexFiles = DexConverter.isDexRuntime() ? dexConverter.convert(classes) : null;
+        return createProgramClassLoader(classes, dexFiles, parent);
+    }
+    
+    private ClassLoader createProgramClassLoader(CompiledProgram program) throws Exception {
+        SharedClassLayer.Partition partition = program.getPartition();
+        if (partition == null || !partition.hasSharedClasses()) {
+            return createProgramClassLoader(program.getClasses(), program.getDexFiles(), getClass().getClassLoader());
         }
         
-        return output.isEmpty() ? "Program executed successfully (no output)" : output;
+        ClassLoader parent = sharedLoaders.get(partition.getKey(), () -> 
+            createProgramClassLoader(partition.getSharedClasses(), program.getSharedDexFiles(), 
+                                     getClass().getClassLoader()));
+        if (partition.getChangedClasses().isEmpty()) {
+            return parent;
+        }
+        return createProgramClassLoader(partition.getChangedClasses(), program.getDexFiles(), parent);
     }
     
-    private void executeWithSecurityControls(Runnable task, long timeout, TimeUnit unit) throws Exception {
+    private ClassLoader createProgramClassLoader(Map<String, byte[]> classes, List<byte[]> dexFiles, 
+                                                 ClassLoader parent) throws IOException {
+        if (dexFiles != null) {
+            return dexConverter.createClassLoader(dexFiles, parent);
+        }
+        return new InMemoryClassLoader(classes, parent);
+    }
+    
+    private void executeWithSecurityControls(Runnable task, CancellationToken token, OutputCapture capture,
+                                             long timeout, TimeUnit unit) throws Exception {
+        AtomicReference<RunBudget.Exhausted> exhausted = new AtomicReference<>();
+        long budgetStepLimit = stepLimit;
         Thread executionThread = new Thread(() -> {
+            RunBudget.install(new RunBudget(token, unit.toMillis(timeout), budgetStepLimit));
+            OutputRouter.bind(capture);
             try {
                 checkSystemExitCalls();
                 task.run();
+            } catch (RunBudget.Exhausted e) {
+                exhausted.set(e);
             } catch (SecurityException e) {
                 throw new RuntimeException("Security violation: " + e.getMessage());
+            } finally {
+                OutputRouter.unbind();
+                RunBudget.clear();
             }
         });
         
         executionThread.setDaemon(true);
         executionThread.start();
         
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
         try {
-            executionThread.join(unit.toMillis(timeout));
+            while (executionThread.isAlive() && System.currentTimeMillis() < deadline) {
+                if (token.isCancelled()) {
+                    executionThread.interrupt();
+                    throw new CancellationException("Execution stopped");
+                }
+                executionThread.join(CANCEL_POLL_INTERVAL_MS);
+                capture.pump();
+            }
             if (executionThread.isAlive()) {
                 executionThread.interrupt();
-                throw new RuntimeException("Execution timeout exceeded (" + timeout + " " + unit.name().toLowerCase() + ")");
+                throw new RunBudget.Exhausted("Execution timeout exceeded (" + timeout + " " + 
+                                              unit.name().toLowerCase() + ")", false);
+            }
+            RunBudget.Exhausted budgetError = exhausted.get();
+            if (budgetError != null) {
+                if (budgetError.isCancelled()) {
+                    throw new CancellationException("Execution stopped");
+                }
+                throw budgetError;
             }
         } catch (InterruptedException e) {
             executionThread.interrupt();
@@ -490,42 +909,4 @@ public class ProfessionalJavaCompiler {
     
     private void restoreSecurityManager() {
     }
-    
-    private void restoreSystemStreams() {
-        if (originalSystemOut != null) {
-            System.setOut(originalSystemOut);
-        }
-        if (originalSystemErr != null) {
-            System.setErr(originalSystemErr);
-        }
-    }
-    
-    private void cleanup() {
-        try {
-            cleanupDirectories();
-        } catch (Exception e) {
-        }
-    }
-    
-    private static class CodeSecurityValidator {
-        
-        public static void validateCodeSafety(String sourceCode) throws SecurityException {
-            if (sourceCode.contains("System.exit")) {
-                throw new SecurityException("System.exit() calls are not allowed");
-            }
-            
-            if (sourceCode.contains("Runtime.getRuntime")) {
-                throw new SecurityException("Runtime access is restricted");
-            }
-            
-            if (sourceCode.contains("ProcessBuilder")) {
-                throw new SecurityException("Process execution is not allowed");
-            }
-            
-            if (sourceCode.contains("java.io.File") && 
-                (sourceCode.contains("delete") || sourceCode.contains("mkdir"))) {
-                throw new SecurityException("File system modifications are restricted");
-            }
-        }
-    }
 }
@@ -0,0 +1,454 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+
+public class ProjectBuilder {
+    
+    private static final String TAG = "ProjectBuilder";
+    private static final String MAIN_DESCRIPTOR = "([Ljava/lang/String;)V";
+    
+    private static class SourceFile {
+        final String hash;
+        final Set<String> classNames = new LinkedHashSet<>();
+        
+        SourceFile(String hash) {
+            this.hash = hash;
+        }
+    }
+    
+    private static class ClassRecord {
+        final String sourcePath;
+        final byte[] bytecode;
+        final Set<String> references;
+        final Set<String> supertypes = new HashSet<>();
+        String abiHash;
+        String constantsHash;
+        boolean hasMain;
+        
+        ClassRecord(String sourcePath, byte[] bytecode) {
+            this.sourcePath = sourcePath;
+            this.bytecode = bytecode;
+            this.references = SharedClassLayer.references(bytecode);
+        }
+    }
+    
+    private final ProfessionalJavaCompiler compiler;
+    private File root;
+    private Map<String, SourceFile> sources = new HashMap<>();
+    private Map<String, ClassRecord> classes = new HashMap<>();
+    
+    ProjectBuilder(ProfessionalJavaCompiler compiler) {
+        this.compiler = compiler;
+    }
+    
+    public synchronized ProfessionalJavaCompiler.CompiledProgram build(File projectRoot, Map<String, String> overrides,
+                                                                       String preferredSource, CancellationToken token,
+                                                                       CompilationProgressListener listener) {
+        long startTime = System.currentTimeMillis();
+        String description = projectRoot.getAbsolutePath();
+        StageTimings timings = new StageTimings();
+        ProfessionalJavaCompiler.CompiledProgram program;
+        try {
+            program = buildStages(projectRoot, overrides, preferredSource, token, listener, timings, startTime);
+        } catch (CancellationException e) {
+            program = ProfessionalJavaCompiler.CompiledProgram.failed(description,
+                new ProfessionalJavaCompiler.CompilationResult(false, "", "Compilation cancelled", null,
+                                                               System.currentTimeMillis() - startTime).markCancelled());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read project " + description, e);
+            program = failed(description, "Could not read project: " + e.getMessage(), null, startTime);
+        }
+        timings.end();
+        return program.withStageTimings(timings);
+    }
+    
+    public synchronized void reset() {
+        root = null;
+        sources = new HashMap<>();
+        classes = new HashMap<>();
+    }
+    
+    private ProfessionalJavaCompiler.CompiledProgram buildStages(File projectRoot, Map<String, String> overrides,
+                                                                 String preferredSource, CancellationToken token,
+                                                                 CompilationProgressListener listener,
+                                                                 StageTimings timings, long startTime) throws IOException {
+        String description = projectRoot.getAbsolutePath();
+        if (!projectRoot.equals(root)) {
+            reset();
+            root = projectRoot;
+        }
+        
+        timings.begin(StageTimings.Stage.WRAP);
+        Map<String, String> contents = new TreeMap<>();
+        collectSources(projectRoot, projectRoot, overrides, contents);
+        if (contents.isEmpty()) {
+            return failed(description, "No Java sources found in " + projectRoot.getName(), null, startTime);
+        }
+        
+        Map<String, SourceFile> nextSources = new HashMap<>(sources);
+        Map<String, ClassRecord> nextClasses = new HashMap<>(classes);
+        Set<String> pending = new TreeSet<>();
+        Set<String> abiChanged = new HashSet<>();
+        for (Map.Entry<String, String> entry : contents.entrySet()) {
+            SourceFile previous = sources.get(entry.getKey());
+            if (previous == null || !previous.hash.equals(hash(entry.getValue()))) {
+                pending.add(entry.getKey());
+            }
+        }
+        for (String path : sources.keySet()) {
+            if (!contents.containsKey(path)) {
+                abiChanged.addAll(nextSources.remove(path).classNames);
+                nextClasses.keySet().removeAll(abiChanged);
+            }
+        }
+        pending.addAll(dependents(nextClasses, abiChanged));
+        
+        timings.begin(StageTimings.Stage.COMPILE);
+        Set<String> compiled = new TreeSet<>();
+        while (!pending.isEmpty()) {
+            token.throwIfCancelled();
+            Map<String, ClassRecord> previous = new HashMap<>();
+            for (String path : pending) {
+                SourceFile source = nextSources.remove(path);
+                if (source != null) {
+                    for (String className : source.classNames) {
+                        previous.put(className, nextClasses.remove(className));
+                    }
+                }
+            }
+            
+            List<String> errors = compileSources(pending, contents, nextSources, nextClasses, token, listener);
+            if (!errors.isEmpty()) {
+                return failed(description, "Compilation failed", errors, startTime);
+            }
+            compiled.addAll(pending);
+            
+            abiChanged.clear();
+            boolean constantsChanged = false;
+            for (Map.Entry<String, ClassRecord> entry : previous.entrySet()) {
+                ClassRecord current = nextClasses.get(entry.getKey());
+                if (current == null || !current.abiHash.equals(entry.getValue().abiHash)) {
+                    abiChanged.add(entry.getKey());
+                }
+                if (current == null || !current.constantsHash.equals(entry.getValue().constantsHash)) {
+                    constantsChanged = true;
+                }
+            }
+            
+            pending = new TreeSet<>(constantsChanged ? contents.keySet() : dependents(nextClasses, abiChanged));
+            pending.removeAll(compiled);
+            if (!pending.isEmpty()) {
+                Log.d(TAG, (constantsChanged ? "Inlined constants changed, recompiling " : "ABI of " + abiChanged +
+                           " changed, recompiling ") + pending);
+            }
+        }
+        Log.d(TAG, "Recompiled " + compiled.size() + " of " + contents.size() + " files: " + compiled);
+        
+        String mainClass = findMainClass(nextClasses, preferredSource != null
+            ? nextSources.get(relativePath(projectRoot, new File(preferredSource))) : null);
+        if (mainClass == null) {
+            return failed(description, "No class with a public static void main(String[]) method", null, startTime);
+        }
+        
+        sources = nextSources;
+        classes = nextClasses;
+        
+        Map<String, byte[]> programClasses = new TreeMap<>();
+        for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+            programClasses.put(entry.getKey(), entry.getValue().bytecode);
+        }
+        return compiler.link(description, mainClass, new LinkedHashMap<>(programClasses), compiled.isEmpty(), 0,
+                             token, listener, timings, startTime);
+    }
+    
+    private void collectSources(File root, File directory, Map<String, String> overrides,
+                                Map<String, String> contents) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(".")) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                collectSources(root, file, overrides, contents);
+            } else if (file.getName().endsWith(".java")) {
+                String override = overrides != null ? overrides.get(file.getAbsolutePath()) : null;
+                contents.put(relativePath(root, file), override != null ? override
+                    : new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            }
+        }
+    }
+    
+    private static String relativePath(File root, File file) {
+        return root.toURI().relativize(file.toURI()).getPath();
+    }
+    
+    private List<String> compileSources(Set<String> paths, Map<String, String> contents,
+                                        Map<String, SourceFile> nextSources, Map<String, ClassRecord> nextClasses,
+                                        CancellationToken token, CompilationProgressListener listener) {
+        List<ICompilationUnit> units = new ArrayList<>();
+        for (String path : paths) {
+            String content = contents.get(path);
+            units.add(new CompilationUnit(content.toCharArray(), path, "UTF-8"));
+            nextSources.put(path, new SourceFile(hash(content)));
+        }
+        
+        List<String> errors = new ArrayList<>();
+        ICompilerRequestor requestor = result -> {
+            String path = new String(result.getFileName());
+            CategorizedProblem[] problems = result.getProblems();
+            if (problems != null) {
+                for (CategorizedProblem problem : problems) {
+                    if (problem.isError()) {
+                        errors.add(path + ": Line " + problem.getSourceLineNumber() + ": " + problem.getMessage());
+                    }
+                }
+            }
+            if (result.hasErrors()) {
+                return;
+            }
+            for (ClassFile classFile : result.getClassFiles()) {
+                String name = CharOperation.toString(classFile.getCompoundName());
+                ClassRecord record = fingerprint(new ClassRecord(path, classFile.getBytes()));
+                nextClasses.put(name, record);
+                nextSources.get(path).classNames.add(name);
+            }
+        };
+        
+        Compiler ecj = new Compiler(
+            new ProjectNameEnvironment(compiler.getNameEnvironment(), nextClasses),
+            DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+            new CompilerOptions(compiler.getCompilerSettings()),
+            requestor,
+            new DefaultProblemFactory(Locale.getDefault()),
+            null,
+            new CompilationMonitor(token, listener, 5, 90));
+        ecj.compile(units.toArray(new ICompilationUnit[0]));
+        token.throwIfCancelled();
+        return errors;
+    }
+    
+    private static Set<String> dependents(Map<String, ClassRecord> classes, Set<String> changed) {
+        Set<String> paths = new TreeSet<>();
+        if (changed.isEmpty()) {
+            return paths;
+        }
+        Set<String> affected = withSubtypes(classes, changed);
+        for (ClassRecord record : classes.values()) {
+            if (!Collections.disjoint(record.references, affected)) {
+                paths.add(record.sourcePath);
+            }
+        }
+        return paths;
+    }
+    
+    private static Set<String> withSubtypes(Map<String, ClassRecord> classes, Set<String> changed) {
+        Set<String> affected = new HashSet<>(changed);
+        boolean grew = true;
+        while (grew) {
+            grew = false;
+            for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+                if (!affected.contains(entry.getKey()) &&
+                    !Collections.disjoint(entry.getValue().supertypes, affected)) {
+                    affected.add(entry.getKey());
+                    grew = true;
+                }
+            }
+        }
+        return affected;
+    }
+    
+    private static String findMainClass(Map<String, ClassRecord> classes, SourceFile preferred) {
+        if (preferred != null) {
+            for (String className : preferred.classNames) {
+                if (classes.get(className).hasMain) {
+                    return className;
+                }
+            }
+        }
+        
+        List<String> candidates = new ArrayList<>();
+        for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+            if (entry.getValue().hasMain) {
+                candidates.add(entry.getKey());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Collections.sort(candidates);
+        for (String candidate : candidates) {
+            if (candidate.equals("Main") || candidate.endsWith(".Main")) {
+                return candidate;
+            }
+        }
+        if (candidates.size() > 1) {
+            Log.d(TAG, "Several main classes " + candidates + ", using " + candidates.get(0));
+        }
+        return candidates.get(0);
+    }
+    
+    private static ClassRecord fingerprint(ClassRecord record) {
+        Set<String> abi = new TreeSet<>();
+        Set<String> constants = new TreeSet<>();
+        new ClassReader(record.bytecode).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature,
+                              String superName, String[] interfaces) {
+                abi.add("class " + (access & ~Opcodes.ACC_SUPER) + " " + name + " " + signature + " " +
+                        superName + " " + Arrays.toString(interfaces));
+                if (superName != null) {
+                    record.supertypes.add(superName.replace('/', '.'));
+                }
+                for (String type : interfaces) {
+                    record.supertypes.add(type.replace('/', '.'));
+                }
+            }
+            
+            @Override
+            public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                if ((access & Opcodes.ACC_PRIVATE) == 0) {
+                    abi.add("inner " + access + " " + name + " " + outerName + " " + innerName);
+                }
+            }
+            
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor,
+                                           String signature, Object value) {
+                if ((access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) == 0) {
+                    abi.add("field " + access + " " + name + " " + descriptor + " " + signature);
+                }
+                if (value != null) {
+                    constants.add(name + "=" + value);
+                }
+                return null;
+            }
+            
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                if ((access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) == 0) {
+                    abi.add("method " + access + " " + name + descriptor + " " + signature + " " +
+                            Arrays.toString(exceptions));
+                }
+                if ("main".equals(name) && MAIN_DESCRIPTOR.equals(descriptor) &&
+                    (access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)) == (Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC)) {
+                    record.hasMain = true;
+                }
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        record.abiHash = hash(abi.toString());
+        record.constantsHash = hash(constants.toString());
+        return record;
+    }
+    
+    private static String hash(String value) {
+        return SharedClassLayer.hash(value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static ProfessionalJavaCompiler.CompiledProgram failed(String description, String message,
+                                                                   List<String> errors, long startTime) {
+        return ProfessionalJavaCompiler.CompiledProgram.failed(description,
+            new ProfessionalJavaCompiler.CompilationResult(false, "", message, errors,
+                                                           System.currentTimeMillis() - startTime));
+    }
+    
+    private static class ProjectNameEnvironment implements INameEnvironment {
+        private final INameEnvironment delegate;
+        private final Map<String, ClassRecord> classes;
+        private final Set<String> packages = new HashSet<>();
+        
+        ProjectNameEnvironment(INameEnvironment delegate, Map<String, ClassRecord> classes) {
+            this.delegate = delegate;
+            this.classes = classes;
+            for (String className : classes.keySet()) {
+                int index = className.indexOf('.');
+                while (index >= 0) {
+                    packages.add(className.substring(0, index));
+                    index = className.indexOf('.', index + 1);
+                }
+            }
+        }
+        
+        @Override
+        public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+            NameEnvironmentAnswer answer = findProjectType(CharOperation.toString(compoundTypeName));
+            return answer != null ? answer : delegate.findType(compoundTypeName);
+        }
+        
+        @Override
+        public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+            NameEnvironmentAnswer answer = findProjectType(
+                CharOperation.toString(CharOperation.arrayConcat(packageName, typeName)));
+            return answer != null ? answer : delegate.findType(typeName, packageName);
+        }
+        
+        @Override
+        public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+            String name = parentPackageName == null || parentPackageName.length == 0
+                ? new String(packageName)
+                : CharOperation.toString(parentPackageName) + "." + new String(packageName);
+            return packages.contains(name) || delegate.isPackage(parentPackageName, packageName);
+        }
+        
+        @Override
+        public void cleanup() {
+        }
+        
+        private NameEnvironmentAnswer findProjectType(String className) {
+            ClassRecord record = classes.get(className);
+            if (record == null) {
+                return null;
+            }
+            try {
+                String fileName = className.replace('.', '/') + ".class";
+                return new NameEnvironmentAnswer(new ClassFileReader(record.bytecode, fileName.toCharArray(), true), null);
+            } catch (ClassFormatException e) {
+                Log.w(TAG, "Could not read project class " + className, e);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ReplSession {
+    
+    private static final String TAG = "ReplSession";
+    private static final String PACKAGE = "repl";
+    private static final String CLASS_PREFIX = "Snippet";
+    private static final String RUN_METHOD = "run";
+    
+    private static final String ANNOTATIONS = "((?:@[\\w.]+(?:\\([^)]*\\))?\\s+)*)";
+    private static final String TYPE = "([\\w.$]+(?:\\s*<[^;=(){}]*>)?(?:\\s*\\[\\s*\\])*(?:\\.\\.\\.)?)";
+    
+    private static final Pattern IMPORT = Pattern.compile("import\\s+(static\\s+)?[\\w.]+(?:\\s*\\.\\s*\\*)?\\s*;");
+    private static final Pattern TYPE_DECLARATION = Pattern.compile(
+        ANNOTATIONS + "((?:(?:public|protected|private|static|final|abstract|strictfp)\\s+)*)" +
+        "(?:class|interface|enum|@interface)\\s+(\\w+)[^{]*\\{.*\\}", Pattern.DOTALL);
+    private static final Pattern METHOD_DECLARATION = Pattern.compile(
+        ANNOTATIONS + "((?:(?:public|protected|private|static|final|synchronized|strictfp)\\s+)*)" +
+        "(?:<[^>]*>\\s*)?" + TYPE + "\\s+(\\w+)\\s*\\(([^)]*)\\)\\s*(?:throws\\s+[\\w.$,\\s]+)?\\{.*\\}",
+        Pattern.DOTALL);
+    private static final Pattern VARIABLE_DECLARATION = Pattern.compile(
+        "((?:final\\s+)*)" + TYPE + "\\s+(\\w+)\\s*(?:\\[\\s*\\]\\s*)*(=|,|;)", Pattern.DOTALL);
+    private static final Pattern DECLARATOR = Pattern.compile(
+        "\\s*(\\w+)\\s*((?:\\[\\s*\\]\\s*)*)(?:=(.*))?", Pattern.DOTALL);
+    private static final Pattern DECLARATOR_START = Pattern.compile("\\s*\\w+\\s*(?:\\[\\s*\\]\\s*)*(?:=|,|$)");
+    private static final Pattern ACCESS_MODIFIERS = Pattern.compile("\\b(?:public|protected|private|static)\\s+");
+    private static final Pattern PARAMETER_NAME = Pattern.compile("(\\w+)\\s*((?:\\[\\s*\\]\\s*)*)$");
+    private static final Pattern WORD = Pattern.compile("\\w+");
+    private static final Pattern PROBLEM_LINE = Pattern.compile("^Line (\\d+): ");
+    
+    private static final Set<String> KEYWORDS = new LinkedHashSet<>(Arrays.asList(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+        "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+        "implements", "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private",
+        "protected", "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+        "throw", "throws", "transient", "try", "void", "volatile", "while", "yield"));
+    private static final Set<String> PRIMITIVE_TYPES = new LinkedHashSet<>(Arrays.asList(
+        "boolean", "byte", "char", "double", "float", "int", "long", "short", "void"));
+    
+    private static class Chunk {
+        final String text;
+        final int line;
+        
+        Chunk(String text, int line) {
+            this.text = text;
+            this.line = line;
+        }
+    }
+    
+    private static class Snippet {
+        final String className;
+        final List<String> lines = new ArrayList<>();
+        final List<Integer> sourceLines = new ArrayList<>();
+        final List<String> imports = new ArrayList<>();
+        final Map<String, String> variables = new LinkedHashMap<>();
+        final Map<String, String> methods = new LinkedHashMap<>();
+        final Map<String, String> forwarders = new LinkedHashMap<>();
+        final Map<String, String> types = new LinkedHashMap<>();
+        
+        Snippet(String className) {
+            this.className = className;
+        }
+        
+        void append(String text, int sourceLine) {
+            String[] split = text.split("\n", -1);
+            for (int i = 0; i < split.length; i++) {
+                lines.add(split[i]);
+                sourceLines.add(sourceLine > 0 ? sourceLine + i : 0);
+            }
+        }
+        
+        String getQualifiedName() {
+            return PACKAGE + "." + className;
+        }
+        
+        String getSource() {
+            return String.join("\n", lines);
+        }
+        
+        String remap(String problem) {
+            Matcher matcher = PROBLEM_LINE.matcher(problem);
+            if (!matcher.find()) {
+                return problem;
+            }
+            int generated = Integer.parseInt(matcher.group(1));
+            int line = generated > 0 && generated <= sourceLines.size() ? sourceLines.get(generated - 1) : 0;
+            return line > 0 ? "Line " + line + ": " + problem.substring(matcher.end()) : problem.substring(matcher.end());
+        }
+    }
+    
+    private final ProfessionalJavaCompiler compiler;
+    private final List<String> imports = new ArrayList<>();
+    private final Map<String, String> variables = new LinkedHashMap<>();
+    private final Map<String, String> methods = new LinkedHashMap<>();
+    private final Map<String, String> forwarders = new LinkedHashMap<>();
+    private final Map<String, String> types = new LinkedHashMap<>();
+    private final Map<String, byte[]> sessionClasses = new HashMap<>();
+    private final List<String> evaluated = new ArrayList<>();
+    private ClassLoader loader;
+    private int snippetCount;
+    
+    ReplSession(ProfessionalJavaCompiler compiler) {
+        this.compiler = compiler;
+    }
+    
+    public synchronized void reset() {
+        imports.clear();
+        variables.clear();
+        methods.clear();
+        forwarders.clear();
+        types.clear();
+        sessionClasses.clear();
+        evaluated.clear();
+        loader = null;
+        Log.d(TAG, "Session reset after " + snippetCount + " snippets");
+    }
+    
+    public synchronized int getSnippetCount() {
+        return snippetCount;
+    }
+    
+    public synchronized int getDeclarationCount() {
+        return variables.size() + methods.size() + types.size();
+    }
+    
+    public synchronized ProfessionalJavaCompiler.CompilationResult eval(String buffer, CancellationToken token,
+                                                                         CompilationProgressListener listener) {
+        long startTime = System.currentTimeMillis();
+        StageTimings timings = new StageTimings();
+        
+        try {
+            token.throwIfCancelled();
+            timings.begin(StageTimings.Stage.WRAP);
+            List<Chunk> chunks = split(buffer);
+            int common = 0;
+            while (common < chunks.size() && common < evaluated.size() &&
+                   chunks.get(common).text.equals(evaluated.get(common))) {
+                common++;
+            }
+            if (common == chunks.size()) {
+                truncateHistory(common);
+                timings.end();
+                return new ProfessionalJavaCompiler.CompilationResult(true, "Session is up to date", null, null,
+                                                                      System.currentTimeMillis() - startTime)
+                    .withStageTimings(timings);
+            }
+            
+            Snippet snippet = generate(chunks.subList(common, chunks.size()), CLASS_PREFIX + (snippetCount + 1));
+            
+            timings.begin(StageTimings.Stage.COMPILE);
+            CompilationCache.Entry compiled = compiler.compileWithECJ(snippet.getSource(), snippet.getQualifiedName(),
+                new SessionNameEnvironment(compiler.getNameEnvironment(), sessionClasses), token, listener);
+            if (!compiled.isSuccess()) {
+                List<String> errors = new ArrayList<>();
+                for (String diagnostic : compiled.getDiagnostics()) {
+                    errors.add(snippet.remap(diagnostic));
+                }
+                timings.end();
+                return new ProfessionalJavaCompiler.CompilationResult(false, "", "Compilation failed", errors,
+                                                                      System.currentTimeMillis() - startTime)
+                    .withStageTimings(timings);
+            }
+            
+            timings.begin(StageTimings.Stage.SECURITY);
+            List<BytecodeSecurityValidator.Violation> violations = 
+                BytecodeSecurityValidator.validate(compiled.getClasses(), sessionClasses);
+            if (!violations.isEmpty()) {
+                List<String> errors = new ArrayList<>();
+                for (BytecodeSecurityValidator.Violation violation : violations) {
+                    errors.add("Security violation: " + snippet.remap(violation.toString()));
+                }
+                timings.end();
+                return new ProfessionalJavaCompiler.CompilationResult(false, "", "Code contains unsafe operations",
+                                                                      errors, System.currentTimeMillis() - startTime)
+                    .withStageTimings(timings);
+            }
+            
+            timings.begin(StageTimings.Stage.LOAD);
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (Map.Entry<String, byte[]> entry : compiler.instrumentForPreemption(compiled.getClasses()).entrySet()) {
+                classes.put(entry.getKey(), SharedClassLayer.widenAccess(entry.getValue()));
+            }
+            ClassLoader snippetLoader = compiler.defineClasses(classes,
+                loader != null ? loader : ProfessionalJavaCompiler.class.getClassLoader());
+            Method runMethod = snippetLoader.loadClass(snippet.getQualifiedName()).getMethod(RUN_METHOD);
+            
+            token.throwIfCancelled();
+            if (listener != null) {
+                listener.onProgress(ProfessionalJavaCompiler.PHASE_RUNNING, 100);
+            }
+            timings.begin(StageTimings.Stage.RUN);
+            OutputCapture capture = new OutputCapture(compiler.getOutputLimitBytes(),
+                                                      listener != null ? listener::onOutput : null);
+            String runtimeError = null;
+            boolean budgetExhausted = false;
+            try {
+                compiler.invokeInProcess(runMethod, new Object[0], token, capture);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RunBudget.Exhausted e) {
+                runtimeError = e.getMessage();
+                budgetExhausted = true;
+            } catch (Exception e) {
+                runtimeError = e.getMessage();
+            } finally {
+                timings.end();
+                capture.pump();
+            }
+            
+            commit(snippet, classes, snippetLoader, chunks);
+            
+            timings.begin(StageTimings.Stage.CAPTURE);
+            String output = compiler.formatOutput(capture);
+            timings.end();
+            ProfessionalJavaCompiler.CompilationResult result = new ProfessionalJavaCompiler.CompilationResult(
+                runtimeError == null, output, runtimeError, null, System.currentTimeMillis() - startTime);
+            return (budgetExhausted ? result.markBudgetExhausted() : result)
+                .withOutputStatistics(capture)
+                .withStageTimings(timings);
+            
+        } catch (CancellationException e) {
+            timings.end();
+            return new ProfessionalJavaCompiler.CompilationResult(false, "", "Execution stopped", null,
+                                                                  System.currentTimeMillis() - startTime)
+                .markCancelled()
+                .withStageTimings(timings);
+        } catch (Exception | LinkageError e) {
+            Log.w(TAG, "Session evaluation failed", e);
+            timings.end();
+            return new ProfessionalJavaCompiler.CompilationResult(false, "", "Internal error: " + e.getMessage(),
+                                                                  null, System.currentTimeMillis() - startTime)
+                .withStageTimings(timings);
+        }
+    }
+    
+    private void commit(Snippet snippet, Map<String, byte[]> classes, ClassLoader snippetLoader, List<Chunk> chunks) {
+        snippetCount++;
+        imports.addAll(snippet.imports);
+        variables.putAll(snippet.variables);
+        methods.putAll(snippet.methods);
+        forwarders.putAll(snippet.forwarders);
+        types.putAll(snippet.types);
+        sessionClasses.putAll(classes);
+        loader = snippetLoader;
+        
+        evaluated.clear();
+        for (Chunk chunk : chunks) {
+            evaluated.add(chunk.text);
+        }
+        Log.d(TAG, "Committed " + snippet.className + " (" + classes.size() + " classes, " +
+                   getDeclarationCount() + " live declarations)");
+    }
+    
+    private void truncateHistory(int size) {
+        while (evaluated.size() > size) {
+            evaluated.remove(evaluated.size() - 1);
+        }
+    }
+    
+    private Snippet generate(List<Chunk> chunks, String className) {
+        Snippet snippet = new Snippet(className);
+        List<Chunk> importChunks = new ArrayList<>();
+        List<Chunk> members = new ArrayList<>();
+        List<Chunk> fields = new ArrayList<>();
+        List<Chunk> statements = new ArrayList<>();
+        
+        for (Chunk chunk : chunks) {
+            String text = chunk.text.endsWith(";") || chunk.text.endsWith("}") ? chunk.text : chunk.text + ";";
+            Matcher matcher;
+            if (IMPORT.matcher(text).matches()) {
+                snippet.imports.add(text);
+                importChunks.add(new Chunk(text, chunk.line));
+            } else if ((matcher = TYPE_DECLARATION.matcher(text)).matches()) {
+                snippet.types.put(matcher.group(3), className);
+                members.add(new Chunk(asStaticMember(text, matcher), chunk.line));
+            } else if ((matcher = METHOD_DECLARATION.matcher(text)).matches() &&
+                       isDeclarationType(matcher.group(3)) && !KEYWORDS.contains(matcher.group(4))) {
+                String signature = matcher.group(4) + "(" + parameterTypes(matcher.group(5)) + ")";
+                snippet.methods.put(signature, className);
+                snippet.forwarders.put(signature, forwarder(text, matcher, className));
+                members.add(new Chunk(asStaticMember(text, matcher), chunk.line));
+            } else if ((matcher = VARIABLE_DECLARATION.matcher(text)).lookingAt() &&
+                       isDeclarationType(matcher.group(2)) && !KEYWORDS.contains(matcher.group(3))) {
+                String type = matcher.group(2);
+                String declarators = text.substring(matcher.start(3), text.lastIndexOf(';'));
+                for (String declarator : splitDeclarators(declarators)) {
+                    Matcher parts = DECLARATOR.matcher(declarator);
+                    if (!parts.matches()) {
+                        continue;
+                    }
+                    String name = parts.group(1);
+                    String fieldType = type + parts.group(2).replaceAll("\\s", "");
+                    snippet.variables.put(name, className);
+                    fields.add(new Chunk("public static " + fieldType + " " + name + ";", chunk.line));
+                    String initializer = parts.group(3);
+                    if (initializer != null) {
+                        initializer = initializer.trim();
+                        if (initializer.startsWith("{")) {
+                            initializer = "new " + fieldType + " " + initializer;
+                        }
+                        statements.add(new Chunk(name + " = " + initializer + ";", chunk.line));
+                    }
+                }
+            } else {
+                statements.add(new Chunk(text, chunk.line));
+            }
+        }
+        
+        snippet.append("package " + PACKAGE + ";", 0);
+        for (String existing : imports) {
+            snippet.append(existing, 0);
+        }
+        for (Chunk chunk : importChunks) {
+            snippet.append(chunk.text, chunk.line);
+        }
+        for (Map.Entry<String, String> entry : variables.entrySet()) {
+            if (!snippet.variables.containsKey(entry.getKey())) {
+                snippet.append("import static " + PACKAGE + "." + entry.getValue() + "." + entry.getKey() + ";", 0);
+            }
+        }
+        Set<String> methodImports = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : methods.entrySet()) {
+            if (!snippet.methods.containsKey(entry.getKey())) {
+                methodImports.add(PACKAGE + "." + entry.getValue() + "." + methodName(entry.getKey()));
+            }
+        }
+        for (String methodImport : methodImports) {
+            snippet.append("import static " + methodImport + ";", 0);
+        }
+        for (Map.Entry<String, String> entry : types.entrySet()) {
+            if (!snippet.types.containsKey(entry.getKey())) {
+                snippet.append("import " + PACKAGE + "." + entry.getValue() + "." + entry.getKey() + ";", 0);
+            }
+        }
+        
+        snippet.append("public class " + className + " {", 0);
+        for (Chunk field : fields) {
+            snippet.append(field.text, field.line);
+        }
+        for (Chunk member : members) {
+            snippet.append(member.text, member.line);
+        }
+        Set<String> declaredMethods = new LinkedHashSet<>();
+        for (String signature : snippet.methods.keySet()) {
+            declaredMethods.add(methodName(signature));
+        }
+        for (Map.Entry<String, String> entry : forwarders.entrySet()) {
+            if (declaredMethods.contains(methodName(entry.getKey())) && !snippet.methods.containsKey(entry.getKey())) {
+                snippet.append(entry.getValue(), 0);
+            }
+        }
+        snippet.append("public static void " + RUN_METHOD + "() throws Throwable {", 0);
+        for (Chunk statement : statements) {
+            snippet.append(statement.text, statement.line);
+        }
+        snippet.append("}", 0);
+        snippet.append("}", 0);
+        return snippet;
+    }
+    
+    private static boolean isDeclarationType(String type) {
+        String base = type.replaceAll("[\\s\\[\\].]+$", "");
+        int generic = base.indexOf('<');
+        String name = generic >= 0 ? base.substring(0, generic).trim() : base;
+        return PRIMITIVE_TYPES.contains(name) || !KEYWORDS.contains(name);
+    }
+    
+    private static String asStaticMember(String text, Matcher matcher) {
+        String modifiers = ACCESS_MODIFIERS.matcher(matcher.group(2)).replaceAll("");
+        return matcher.group(1) + "public static " + modifiers + text.substring(matcher.end(2));
+    }
+    
+    private static String methodName(String signature) {
+        return signature.substring(0, signature.indexOf('('));
+    }
+    
+    private static String forwarder(String text, Matcher matcher, String className) {
+        String header = text.substring(matcher.end(2), text.indexOf('{', matcher.end(5))).trim();
+        List<String> arguments = new ArrayList<>();
+        for (String parameter : splitTopLevel(matcher.group(5), true)) {
+            Matcher name = PARAMETER_NAME.matcher(parameter.trim());
+            if (name.find()) {
+                arguments.add(name.group(1));
+            }
+        }
+        String call = PACKAGE + "." + className + "." + matcher.group(4) + "(" + String.join(", ", arguments) + ");";
+        return "public static " + header + " { " + ("void".equals(matcher.group(3).trim()) ? "" : "return ") + call + " }";
+    }
+    
+    private static String parameterTypes(String parameters) {
+        List<String> types = new ArrayList<>();
+        for (String parameter : splitTopLevel(parameters, true)) {
+            String cleaned = parameter.replaceAll("@[\\w.]+(?:\\([^)]*\\))?", "").replaceAll("\\bfinal\\b", "").trim();
+            if (cleaned.isEmpty()) {
+                continue;
+            }
+            Matcher name = PARAMETER_NAME.matcher(cleaned);
+            if (name.find()) {
+                cleaned = cleaned.substring(0, name.start()) + name.group(2);
+            }
+            types.add(cleaned.replaceAll("\\s", ""));
+        }
+        return String.join(",", types);
+    }
+    
+    private static List<String> splitDeclarators(String declarators) {
+        List<String> result = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < declarators.length(); i++) {
+            char c = declarators.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipLiteral(declarators, i);
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+            } else if (c == ',' && depth == 0 && DECLARATOR_START.matcher(declarators).region(i + 1,
+                       declarators.length()).lookingAt()) {
+                result.add(declarators.substring(start, i));
+                start = i + 1;
+            }
+        }
+        result.add(declarators.substring(start));
+        return result;
+    }
+    
+    private static List<String> splitTopLevel(String text, boolean angleBrackets) {
+        List<String> result = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == '[' || c == '{' || (angleBrackets && c == '<')) {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}' || (angleBrackets && c == '>')) {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                result.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        result.add(text.substring(start));
+        return result;
+    }
+    
+    private static int skipLiteral(String text, int start) {
+        char quote = text.charAt(start);
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote || c == '\n') {
+                return i;
+            }
+        }
+        return text.length() - 1;
+    }
+    
+    private static List<Chunk> split(String buffer) {
+        List<Chunk> chunks = new ArrayList<>();
+        int length = buffer.length();
+        int line = 1;
+        int i = 0;
+        
+        while (i < length) {
+            int[] position = skipTrivia(buffer, i, line);
+            i = position[0];
+            line = position[1];
+            if (i >= length) {
+                break;
+            }
+            
+            int start = i;
+            int startLine = line;
+            int depth = 0;
+            boolean ended = false;
+            while (i < length && !ended) {
+                char c = buffer.charAt(i);
+                if (c == '\n') {
+                    line++;
+                } else if (c == '"' || c == '\'') {
+                    i = skipLiteral(buffer, i);
+                } else if (c == '/' && i + 1 < length && buffer.charAt(i + 1) == '/') {
+                    while (i + 1 < length && buffer.charAt(i + 1) != '\n') {
+                        i++;
+                    }
+                } else if (c == '/' && i + 1 < length && buffer.charAt(i + 1) == '*') {
+                    int end = buffer.indexOf("*/", i + 2);
+                    end = end < 0 ? length - 1 : end + 1;
+                    line += countLines(buffer, i, end);
+                    i = end;
+                } else if (c == '(' || c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ')' || c == ']') {
+                    depth--;
+                } else if (c == '}') {
+                    depth--;
+                    ended = depth <= 0 && !continuesAfterBlock(buffer, i + 1, buffer.substring(start, i));
+                } else if (c == ';' && depth <= 0) {
+                    ended = !continuesAfterStatement(buffer, i + 1);
+                }
+                i++;
+            }
+            chunks.add(new Chunk(buffer.substring(start, i).trim(), startLine));
+        }
+        return chunks;
+    }
+    
+    private static boolean continuesAfterBlock(String buffer, int index, String chunk) {
+        int next = skipTrivia(buffer, index, 0)[0];
+        if (next >= buffer.length()) {
+            return false;
+        }
+        char c = buffer.charAt(next);
+        if (c == ';' || c == ',' || c == '.' || c == ')' || c == ']') {
+            return true;
+        }
+        Matcher word = WORD.matcher(buffer).region(next, buffer.length());
+        if (!word.lookingAt()) {
+            return false;
+        }
+        String keyword = word.group();
+        return keyword.equals("else") || keyword.equals("catch") || keyword.equals("finally") ||
+               (keyword.equals("while") && chunk.startsWith("do"));
+    }
+    
+    private static boolean continuesAfterStatement(String buffer, int index) {
+        int next = skipTrivia(buffer, index, 0)[0];
+        return buffer.startsWith("else", next) &&
+               (next + 4 == buffer.length() || !Character.isJavaIdentifierPart(buffer.charAt(next + 4)));
+    }
+    
+    private static int[] skipTrivia(String buffer, int index, int line) {
+        int length = buffer.length();
+        while (index < length) {
+            char c = buffer.charAt(index);
+            if (c == '\n') {
+                line++;
+                index++;
+            } else if (Character.isWhitespace(c)) {
+                index++;
+            } else if (buffer.startsWith("//", index)) {
+                int end = buffer.indexOf('\n', index);
+                index = end < 0 ? length : end;
+            } else if (buffer.startsWith("/*", index)) {
+                int end = buffer.indexOf("*/", index + 2);
+                end = end < 0 ? length : end + 2;
+                line += countLines(buffer, index, end);
+                index = end;
+            } else {
+                break;
+            }
+        }
+        return new int[] { index, line };
+    }
+    
+    private static int countLines(String text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end && i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static class SessionNameEnvironment implements INameEnvironment {
+        private final INameEnvironment delegate;
+        private final Map<String, byte[]> classes;
+        
+        SessionNameEnvironment(INameEnvironment delegate, Map<String, byte[]> classes) {
+            this.delegate = delegate;
+            this.classes = classes;
+        }
+        
+        @Override
+        public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+            if (compoundTypeName != null && compoundTypeName.length == 2 && isSessionPackage(compoundTypeName[0])) {
+                return findSessionType(new String(compoundTypeName[1]));
+            }
+            return delegate.findType(compoundTypeName);
+        }
+        
+        @Override
+        public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+            if (packageName != null && packageName.length == 1 && isSessionPackage(packageName[0])) {
+                return findSessionType(new String(typeName));
+            }
+            return delegate.findType(typeName, packageName);
+        }
+        
+        @Override
+        public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+            if (parentPackageName == null || parentPackageName.length == 0) {
+                if (isSessionPackage(packageName)) {
+                    return true;
+                }
+            } else if (parentPackageName.length == 1 && isSessionPackage(parentPackageName[0])) {
+                return false;
+            }
+            return delegate.isPackage(parentPackageName, packageName);
+        }
+        
+        @Override
+        public void cleanup() {
+        }
+        
+        private static boolean isSessionPackage(char[] name) {
+            return CharOperation.equals(name, PACKAGE.toCharArray());
+        }
+        
+        private NameEnvironmentAnswer findSessionType(String simpleName) {
+            byte[] bytecode = classes.get(PACKAGE + "." + simpleName);
+            if (bytecode == null) {
+                return null;
+            }
+            try {
+                String fileName = PACKAGE + "/" + simpleName + ".class";
+                return new NameEnvironmentAnswer(new ClassFileReader(bytecode, fileName.toCharArray(), true), null);
+            } catch (ClassFormatException e) {
+                Log.w(TAG, "Could not read session class " + simpleName, e);
+                return null;
+            }
+        }
+    }
+}
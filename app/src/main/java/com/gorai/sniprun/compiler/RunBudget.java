@@ -0,0 +1,118 @@
+package com.gorai.sniprun.compiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class RunBudget {
+    
+    static final int CHECK_INTERVAL = 4096;
+    
+    private static final InheritableThreadLocal<RunBudget> CURRENT = new InheritableThreadLocal<>();
+    private static final ThreadLocal<Ticker> TICKERS = new ThreadLocal<>();
+    private static final Ticker UNBOUND = new Ticker(null, null);
+    private static Ticker last = UNBOUND;
+    
+    private final CancellationToken token;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private final long stepLimit;
+    private final AtomicLong steps = new AtomicLong();
+    private volatile Exhausted exhausted;
+    
+    private static final class Ticker {
+        final RunBudget budget;
+        final Thread thread;
+        int countdown = 1;
+        
+        Ticker(RunBudget budget, Thread thread) {
+            this.budget = budget;
+            this.thread = thread;
+        }
+    }
+    
+    public static class Exhausted extends Error {
+        private final boolean cancelled;
+        
+        Exhausted(String message, boolean cancelled) {
+            super(message, null, false, false);
+            this.cancelled = cancelled;
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+    
+    public RunBudget(CancellationToken token, long timeoutMs, long stepLimit) {
+        this.token = token;
+        this.hasDeadline = timeoutMs > 0;
+        this.deadlineNanos = System.nanoTime() + timeoutMs * 1_000_000L;
+        this.stepLimit = stepLimit;
+    }
+    
+    public static void tick() {
+        Ticker ticker = last;
+        if (ticker.thread != Thread.currentThread()) {
+            ticker = lookup();
+            if (ticker == null) {
+                return;
+            }
+        }
+        if (--ticker.countdown <= 0) {
+            ticker.countdown = 0;
+            ticker.budget.check();
+            ticker.countdown = CHECK_INTERVAL;
+        }
+    }
+    
+    private static Ticker lookup() {
+        RunBudget budget = CURRENT.get();
+        if (budget == null) {
+            return null;
+        }
+        Ticker ticker = TICKERS.get();
+        if (ticker == null || ticker.budget != budget) {
+            ticker = new Ticker(budget, Thread.currentThread());
+            TICKERS.set(ticker);
+        }
+        last = ticker;
+        return ticker;
+    }
+    
+    private void check() {
+        Exhausted latched = exhausted;
+        if (latched != null) {
+            throw latched;
+        }
+        long consumed = steps.addAndGet(CHECK_INTERVAL);
+        if (token != null && token.isCancelled()) {
+            throw exhaust("Execution stopped", true);
+        }
+        if (hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+            throw exhaust("Execution timeout exceeded", false);
+        }
+        if (stepLimit > 0 && consumed > stepLimit) {
+            throw exhaust("Step budget of " + stepLimit + " exhausted", false);
+        }
+    }
+    
+    private Exhausted exhaust(String message, boolean cancelled) {
+        exhausted = new Exhausted(message, cancelled);
+        return exhausted;
+    }
+    
+    public static void install(RunBudget budget) {
+        CURRENT.set(budget);
+        TICKERS.remove();
+        last = UNBOUND;
+    }
+    
+    public static void clear() {
+        CURRENT.remove();
+        TICKERS.remove();
+        last = UNBOUND;
+    }
+    
+    public long getSteps() {
+        return steps.get();
+    }
+}
@@ -0,0 +1,337 @@
+package com.gorai.sniprun.compiler;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RunnerPool {
+    
+    private static final String TAG = "RunnerPool";
+    private static final long ACQUIRE_TIMEOUT_MS = 2000;
+    private static final long POLL_INTERVAL_MS = 16;
+    private static final int MAX_PAYLOAD_BYTES = 512 * 1024;
+    
+    private static final Class<?>[] RUNNER_SERVICES = {
+        SnippetRunnerService.Runner0.class,
+        SnippetRunnerService.Runner1.class
+    };
+    
+    private static RunnerPool instance;
+    
+    private final Context context;
+    private final Messenger replyMessenger;
+    private final Runner[] runners;
+    private final Map<Integer, PendingRun> pendingRuns = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRunId = new AtomicInteger();
+    private boolean started;
+    
+    public static class Result {
+        private final String error;
+        private final boolean timedOut;
+        private final boolean cancelled;
+        private final boolean budgetExhausted;
+        private final long loadNanos;
+        
+        Result(String error, boolean timedOut, boolean cancelled, boolean budgetExhausted, long loadNanos) {
+            this.error = error;
+            this.timedOut = timedOut;
+            this.cancelled = cancelled;
+            this.budgetExhausted = budgetExhausted;
+            this.loadNanos = loadNanos;
+        }
+        
+        public String getError() { return error; }
+        public boolean isTimedOut() { return timedOut; }
+        public boolean isCancelled() { return cancelled; }
+        public boolean isBudgetExhausted() { return budgetExhausted; }
+        public long getLoadNanos() { return loadNanos; }
+    }
+    
+    private static class PendingRun {
+        final OutputCapture capture;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String error;
+        volatile boolean budgetExhausted;
+        volatile long loadNanos;
+        
+        PendingRun(OutputCapture capture) {
+            this.capture = capture;
+        }
+        
+        void append(int stream, byte[] bytes) {
+            if (bytes != null) {
+                capture.write(stream == SnippetRunnerService.STREAM_ERR, bytes, 0, bytes.length);
+            }
+        }
+        
+        void complete(String error, boolean budgetExhausted, long droppedBytes, long loadNanos) {
+            this.loadNanos = loadNanos;
+            if (droppedBytes > 0) {
+                capture.addDroppedBytes(droppedBytes);
+            }
+            this.error = error;
+            this.budgetExhausted = budgetExhausted;
+            done.countDown();
+        }
+        
+        Result toResult(boolean timedOut, boolean cancelled) {
+            capture.pump();
+            return new Result(error, timedOut, cancelled, budgetExhausted, loadNanos);
+        }
+    }
+    
+    private class Runner implements ServiceConnection {
+        final int index;
+        final Class<?> serviceClass;
+        volatile Messenger service;
+        volatile int pid;
+        volatile boolean busy;
+        volatile PendingRun current;
+        
+        Runner(int index, Class<?> serviceClass) {
+            this.index = index;
+            this.serviceClass = serviceClass;
+        }
+        
+        void bind() {
+            if (!context.bindService(new Intent(context, serviceClass), this, Context.BIND_AUTO_CREATE)) {
+                Log.w(TAG, "Could not bind " + serviceClass.getSimpleName());
+            }
+        }
+        
+        boolean isReady() {
+            return service != null && pid > 0 && !busy;
+        }
+        
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = new Messenger(binder);
+            Message hello = Message.obtain(null, SnippetRunnerService.MSG_HELLO, index, 0);
+            hello.replyTo = replyMessenger;
+            try {
+                service.send(hello);
+            } catch (RemoteException e) {
+                Log.w(TAG, "Runner " + index + " died during handshake", e);
+            }
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            Log.d(TAG, "Runner " + index + " disconnected");
+            service = null;
+            pid = 0;
+            failCurrent("Runner process exited");
+        }
+        
+        void onHello(int runnerPid) {
+            pid = runnerPid;
+            Log.d(TAG, "Runner " + index + " ready in process " + runnerPid);
+            synchronized (RunnerPool.this) {
+                RunnerPool.this.notifyAll();
+            }
+        }
+        
+        void failCurrent(String error) {
+            PendingRun run = current;
+            if (run != null) {
+                run.complete(error, false, 0, 0);
+            }
+        }
+        
+        void kill() {
+            int runnerPid = pid;
+            pid = 0;
+            service = null;
+            try {
+                context.unbindService(this);
+            } catch (IllegalArgumentException e) {
+                Log.d(TAG, "Runner " + index + " was not bound");
+            }
+            if (runnerPid > 0) {
+                Process.killProcess(runnerPid);
+            }
+            bind();
+        }
+    }
+    
+    public static synchronized RunnerPool getInstance(Context context) {
+        if (instance == null) {
+            instance = new RunnerPool(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private RunnerPool(Context context) {
+        this.context = context;
+        
+        HandlerThread replyThread = new HandlerThread("runner-pool-replies");
+        replyThread.start();
+        this.replyMessenger = new Messenger(new Handler(replyThread.getLooper(), this::handleReply));
+        
+        this.runners = new Runner[RUNNER_SERVICES.length];
+        for (int i = 0; i < runners.length; i++) {
+            runners[i] = new Runner(i, RUNNER_SERVICES[i]);
+        }
+    }
+    
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (Runner runner : runners) {
+            runner.bind();
+        }
+    }
+    
+    public synchronized boolean hasReadyRunner() {
+        for (Runner runner : runners) {
+            if (runner.isReady()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean handleReply(Message msg) {
+        switch (msg.what) {
+            case SnippetRunnerService.MSG_HELLO:
+                if (msg.arg1 >= 0 && msg.arg1 < runners.length) {
+                    runners[msg.arg1].onHello(msg.arg2);
+                }
+                return true;
+            case SnippetRunnerService.MSG_OUTPUT: {
+                PendingRun run = pendingRuns.get(msg.arg1);
+                if (run != null) {
+                    run.append(msg.arg2, msg.getData().getByteArray(SnippetRunnerService.KEY_BYTES));
+                }
+                return true;
+            }
+            case SnippetRunnerService.MSG_RESULT: {
+                PendingRun run = pendingRuns.get(msg.arg1);
+                if (run != null) {
+                    Bundle data = msg.getData();
+                    run.complete(data.getString(SnippetRunnerService.KEY_ERROR),
+                                 data.getBoolean(SnippetRunnerService.KEY_BUDGET_EXHAUSTED),
+                                 data.getLong(SnippetRunnerService.KEY_DROPPED_BYTES),
+                                 data.getLong(SnippetRunnerService.KEY_LOAD_NANOS));
+                }
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+    
+    public Result execute(String className, List<byte[]> dexFiles, String sharedKey, List<byte[]> sharedDexFiles,
+                          CancellationToken token, long timeout, TimeUnit unit, long stepLimit,
+                          OutputCapture capture, int outputLimitBytes) throws InterruptedException {
+        Bundle data = new Bundle();
+        int payloadBytes = 0;
+        data.putString(SnippetRunnerService.KEY_CLASS_NAME, className);
+        data.putLong(SnippetRunnerService.KEY_TIMEOUT_MS, unit.toMillis(timeout));
+        data.putLong(SnippetRunnerService.KEY_STEP_LIMIT, stepLimit);
+        data.putInt(SnippetRunnerService.KEY_OUTPUT_LIMIT, outputLimitBytes);
+        data.putInt(SnippetRunnerService.KEY_DEX_COUNT, dexFiles.size());
+        for (int i = 0; i < dexFiles.size(); i++) {
+            data.putByteArray(SnippetRunnerService.KEY_DEX_PREFIX + i, dexFiles.get(i));
+            payloadBytes += dexFiles.get(i).length;
+        }
+        if (sharedKey != null && sharedDexFiles != null) {
+            data.putString(SnippetRunnerService.KEY_SHARED_KEY, sharedKey);
+            data.putInt(SnippetRunnerService.KEY_SHARED_DEX_COUNT, sharedDexFiles.size());
+            for (int i = 0; i < sharedDexFiles.size(); i++) {
+                data.putByteArray(SnippetRunnerService.KEY_SHARED_DEX_PREFIX + i, sharedDexFiles.get(i));
+                payloadBytes += sharedDexFiles.get(i).length;
+            }
+        }
+        if (payloadBytes > MAX_PAYLOAD_BYTES) {
+            Log.d(TAG, "Dex payload too large for a runner: " + payloadBytes + " bytes");
+            return null;
+        }
+        
+        Runner runner = acquire();
+        if (runner == null) {
+            return null;
+        }
+        
+        int runId = nextRunId.incrementAndGet();
+        PendingRun run = new PendingRun(capture);
+        pendingRuns.put(runId, run);
+        runner.current = run;
+        
+        try {
+            Message message = Message.obtain(null, SnippetRunnerService.MSG_RUN, runId, 0);
+            message.setData(data);
+            message.replyTo = replyMessenger;
+            Messenger service = runner.service;
+            if (service == null) {
+                return null;
+            }
+            service.send(message);
+            
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            while (!run.done.await(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                capture.pump();
+                if (token.isCancelled()) {
+                    Log.d(TAG, "Killing runner " + runner.index + " after cancellation");
+                    runner.kill();
+                    return run.toResult(false, true);
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    Log.d(TAG, "Killing runner " + runner.index + " after timeout");
+                    runner.kill();
+                    return run.toResult(true, false);
+                }
+            }
+            return run.toResult(false, false);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Runner " + runner.index + " unreachable", e);
+            return null;
+        } finally {
+            pendingRuns.remove(runId);
+            runner.current = null;
+            release(runner);
+        }
+    }
+    
+    private synchronized Runner acquire() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MS;
+        while (true) {
+            for (Runner runner : runners) {
+                if (runner.isReady()) {
+                    runner.busy = true;
+                    return runner;
+                }
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                Log.d(TAG, "No runner available");
+                return null;
+            }
+            wait(remaining);
+        }
+    }
+    
+    private synchronized void release(Runner runner) {
+        runner.busy = false;
+        notifyAll();
+    }
+}
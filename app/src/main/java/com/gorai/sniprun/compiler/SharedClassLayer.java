@@ -0,0 +1,300 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class SharedClassLayer {
+    
+    private static final String TAG = "SharedClassLayer";
+    private static final int MAX_TRACKED_CLASSES = 512;
+    
+    public static class Partition {
+        private final String key;
+        private final Map<String, byte[]> sharedClasses;
+        private final Map<String, byte[]> changedClasses;
+        
+        Partition(String key, Map<String, byte[]> sharedClasses, Map<String, byte[]> changedClasses) {
+            this.key = key;
+            this.sharedClasses = sharedClasses;
+            this.changedClasses = changedClasses;
+        }
+        
+        public String getKey() { return key; }
+        public Map<String, byte[]> getSharedClasses() { return sharedClasses; }
+        public Map<String, byte[]> getChangedClasses() { return changedClasses; }
+        
+        public boolean hasSharedClasses() {
+            return !sharedClasses.isEmpty();
+        }
+    }
+    
+    public interface LoaderFactory {
+        ClassLoader create() throws Exception;
+    }
+    
+    public static class LoaderCache {
+        private String key;
+        private ClassLoader loader;
+        private int reuseCount;
+        
+        public synchronized ClassLoader get(String key, LoaderFactory factory) throws Exception {
+            if (key.equals(this.key) && loader != null) {
+                reuseCount++;
+                Log.d(TAG, "Reusing shared class loader " + key + " (" + reuseCount + " reuses)");
+                return loader;
+            }
+            this.loader = factory.create();
+            this.key = key;
+            this.reuseCount = 0;
+            return loader;
+        }
+    }
+    
+    private static class ClassInfo {
+        final Set<String> references = new HashSet<>();
+        boolean stateful;
+    }
+    
+    private final Map<String, String> previousHashes = new HashMap<>();
+    
+    public synchronized Partition partition(Map<String, byte[]> classes, String entryClassName) {
+        Map<String, String> hashes = new HashMap<>();
+        Map<String, ClassInfo> candidates = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            String hash = hash(entry.getValue());
+            hashes.put(entry.getKey(), hash);
+            if (!entry.getKey().equals(entryClassName) && hash.equals(previousHashes.get(entry.getKey()))) {
+                ClassInfo info = analyze(entry.getValue());
+                if (!info.stateful) {
+                    candidates.put(entry.getKey(), info);
+                }
+            }
+        }
+        
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (Iterator<ClassInfo> iterator = candidates.values().iterator(); iterator.hasNext(); ) {
+                for (String reference : iterator.next().references) {
+                    if (classes.containsKey(reference) && !candidates.containsKey(reference)) {
+                        iterator.remove();
+                        removed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        
+        if (previousHashes.size() + hashes.size() > MAX_TRACKED_CLASSES) {
+            previousHashes.clear();
+        }
+        previousHashes.putAll(hashes);
+        
+        if (candidates.isEmpty()) {
+            return new Partition(null, Collections.emptyMap(), classes);
+        }
+        
+        TreeMap<String, String> sharedHashes = new TreeMap<>();
+        Map<String, byte[]> shared = new LinkedHashMap<>();
+        Map<String, byte[]> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            if (candidates.containsKey(entry.getKey())) {
+                sharedHashes.put(entry.getKey(), hashes.get(entry.getKey()));
+                shared.put(entry.getKey(), widenAccess(entry.getValue()));
+            } else {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        
+        String key = hash(sharedHashes.toString().getBytes(StandardCharsets.UTF_8));
+        Log.d(TAG, "Sharing " + shared.keySet() + ", reloading " + changed.keySet());
+        return new Partition(key, shared, changed);
+    }
+    
+    static Set<String> references(byte[] bytecode) {
+        return analyze(bytecode).references;
+    }
+    
+    private static ClassInfo analyze(byte[] bytecode) {
+        ClassInfo info = new ClassInfo();
+        new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature,
+                              String superName, String[] interfaces) {
+                addType(info, superName);
+                if (interfaces != null) {
+                    for (String type : interfaces) {
+                        addType(info, type);
+                    }
+                }
+            }
+            
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor,
+                                           String signature, Object value) {
+                if ((access & Opcodes.ACC_STATIC) != 0 && value == null) {
+                    info.stateful = true;
+                }
+                addDescriptor(info, descriptor);
+                return null;
+            }
+            
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                if ("<clinit>".equals(name)) {
+                    info.stateful = true;
+                }
+                addDescriptor(info, descriptor);
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitTypeInsn(int opcode, String type) {
+                        addType(info, type);
+                    }
+                    
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                        addType(info, owner);
+                        addDescriptor(info, descriptor);
+                    }
+                    
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                                                boolean isInterface) {
+                        addType(info, owner);
+                        addDescriptor(info, descriptor);
+                    }
+                    
+                    @Override
+                    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethod,
+                                                       Object... bootstrapMethodArguments) {
+                        addDescriptor(info, descriptor);
+                        for (Object argument : bootstrapMethodArguments) {
+                            addConstant(info, argument);
+                        }
+                    }
+                    
+                    @Override
+                    public void visitLdcInsn(Object value) {
+                        addConstant(info, value);
+                    }
+                    
+                    @Override
+                    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                        addDescriptor(info, descriptor);
+                    }
+                    
+                    @Override
+                    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+                        addType(info, type);
+                    }
+                    
+                    @Override
+                    public void visitLocalVariable(String name, String descriptor, String signature,
+                                                   Label start, Label end, int index) {
+                        addDescriptor(info, descriptor);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_FRAMES);
+        return info;
+    }
+    
+    private static void addConstant(ClassInfo info, Object value) {
+        if (value instanceof Type) {
+            addDescriptor(info, ((Type) value).getDescriptor());
+        } else if (value instanceof Handle) {
+            addType(info, ((Handle) value).getOwner());
+            addDescriptor(info, ((Handle) value).getDesc());
+        }
+    }
+    
+    private static void addType(ClassInfo info, String internalName) {
+        if (internalName == null) {
+            return;
+        }
+        if (internalName.startsWith("[")) {
+            addDescriptor(info, internalName);
+        } else {
+            info.references.add(internalName.replace('/', '.'));
+        }
+    }
+    
+    private static void addDescriptor(ClassInfo info, String descriptor) {
+        int index = descriptor.indexOf('L');
+        while (index >= 0) {
+            int end = descriptor.indexOf(';', index);
+            if (end < 0) {
+                return;
+            }
+            info.references.add(descriptor.substring(index + 1, end).replace('/', '.'));
+            index = descriptor.indexOf('L', end);
+        }
+    }
+    
+    static byte[] widenAccess(byte[] bytecode) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(bytecode).accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public void visit(int version, int access, String name, String signature,
+                              String superName, String[] interfaces) {
+                super.visit(version, widen(access), name, signature, superName, interfaces);
+            }
+            
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor,
+                                           String signature, Object value) {
+                return super.visitField(widen(access), name, descriptor, signature, value);
+            }
+            
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                return super.visitMethod(widen(access), name, descriptor, signature, exceptions);
+            }
+        }, 0);
+        return writer.toByteArray();
+    }
+    
+    private static int widen(int access) {
+        if ((access & Opcodes.ACC_PRIVATE) != 0) {
+            return access;
+        }
+        return (access & ~Opcodes.ACC_PROTECTED) | Opcodes.ACC_PUBLIC;
+    }
+    
+    static String hash(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(bytes);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
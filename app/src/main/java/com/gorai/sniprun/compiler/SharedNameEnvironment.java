@@ -0,0 +1,270 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class SharedNameEnvironment implements INameEnvironment {
+    
+    private static final String TAG = "SharedNameEnvironment";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JMOD_CLASSES_PREFIX = "classes/";
+    
+    private static SharedNameEnvironment instance;
+    
+    private final String classpath;
+    private final Map<String, Map<String, ClassLocation>> packageIndex = new HashMap<>();
+    private final Set<String> packages = new HashSet<>();
+    private final List<ZipFile> openArchives = new ArrayList<>();
+    private final ConcurrentHashMap<String, SoftReference<ClassFileReader>> readerCache = new ConcurrentHashMap<>();
+    private volatile int readerHits;
+    private volatile int readerLoads;
+    
+    private static class ClassLocation {
+        final ZipFile archive;
+        final String entryName;
+        final File file;
+        
+        ClassLocation(ZipFile archive, String entryName) {
+            this.archive = archive;
+            this.entryName = entryName;
+            this.file = null;
+        }
+        
+        ClassLocation(File file) {
+            this.archive = null;
+            this.entryName = null;
+            this.file = file;
+        }
+        
+        byte[] read() throws IOException {
+            if (archive != null) {
+                ZipEntry entry = archive.getEntry(entryName);
+                try (InputStream in = archive.getInputStream(entry)) {
+                    return readFully(in, (int) entry.getSize());
+                }
+            }
+            try (InputStream in = new FileInputStream(file)) {
+                return readFully(in, (int) file.length());
+            }
+        }
+    }
+    
+    public static synchronized SharedNameEnvironment getInstance(String classpath) {
+        if (instance == null || !instance.classpath.equals(classpath)) {
+            if (instance != null) {
+                instance.close();
+            }
+            instance = new SharedNameEnvironment(classpath);
+        }
+        return instance;
+    }
+    
+    private SharedNameEnvironment(String classpath) {
+        this.classpath = classpath;
+        
+        long startTime = System.currentTimeMillis();
+        for (String path : classpath.split(File.pathSeparator)) {
+            if (!path.isEmpty()) {
+                indexClasspathEntry(new File(path));
+            }
+        }
+        Log.d(TAG, "Indexed " + packageIndex.size() + " packages in " +
+                   (System.currentTimeMillis() - startTime) + "ms");
+    }
+    
+    private void indexClasspathEntry(File entry) {
+        if (entry.isDirectory()) {
+            indexDirectory(entry, "");
+        } else if (entry.isFile()) {
+            indexArchive(entry);
+        }
+    }
+    
+    private void indexArchive(File file) {
+        boolean jmod = file.getName().endsWith(".jmod");
+        try {
+            ZipFile archive = new ZipFile(file);
+            openArchives.add(archive);
+            
+            Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.endsWith(CLASS_SUFFIX)) {
+                    continue;
+                }
+                
+                String binaryName = name;
+                if (jmod) {
+                    if (!name.startsWith(JMOD_CLASSES_PREFIX)) {
+                        continue;
+                    }
+                    binaryName = name.substring(JMOD_CLASSES_PREFIX.length());
+                }
+                addToIndex(binaryName, new ClassLocation(archive, name));
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not index " + file, e);
+        }
+    }
+    
+    private void indexDirectory(File directory, String packagePath) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        
+        for (File file : files) {
+            if (file.isDirectory()) {
+                indexDirectory(file, packagePath + file.getName() + "/");
+            } else if (file.getName().endsWith(CLASS_SUFFIX)) {
+                addToIndex(packagePath + file.getName(), new ClassLocation(file));
+            }
+        }
+    }
+    
+    private void addToIndex(String binaryName, ClassLocation location) {
+        int lastSlash = binaryName.lastIndexOf('/');
+        String packageName = lastSlash >= 0 ? binaryName.substring(0, lastSlash) : "";
+        String typeName = binaryName.substring(lastSlash + 1, binaryName.length() - CLASS_SUFFIX.length());
+        
+        Map<String, ClassLocation> types = packageIndex.get(packageName);
+        if (types == null) {
+            types = new HashMap<>();
+            packageIndex.put(packageName, types);
+            registerPackage(packageName);
+        }
+        if (!types.containsKey(typeName)) {
+            types.put(typeName, location);
+        }
+    }
+    
+    private void registerPackage(String packageName) {
+        String current = packageName;
+        while (!current.isEmpty() && packages.add(current)) {
+            int lastSlash = current.lastIndexOf('/');
+            current = lastSlash >= 0 ? current.substring(0, lastSlash) : "";
+        }
+    }
+    
+    @Override
+    public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+        if (compoundTypeName == null || compoundTypeName.length == 0) {
+            return null;
+        }
+        char[][] packageName = CharOperation.subarray(compoundTypeName, 0, compoundTypeName.length - 1);
+        return findType(compoundTypeName[compoundTypeName.length - 1], packageName);
+    }
+    
+    @Override
+    public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+        String packagePath = CharOperation.toString(packageName).replace('.', '/');
+        String simpleName = new String(typeName);
+        
+        ClassFileReader reader = getReader(packagePath, simpleName);
+        return reader != null ? new NameEnvironmentAnswer(reader, null) : null;
+    }
+    
+    private ClassFileReader getReader(String packagePath, String simpleName) {
+        String key = packagePath.isEmpty() ? simpleName : packagePath + "/" + simpleName;
+        
+        SoftReference<ClassFileReader> cached = readerCache.get(key);
+        ClassFileReader reader = cached != null ? cached.get() : null;
+        if (reader != null) {
+            readerHits++;
+            return reader;
+        }
+        
+        Map<String, ClassLocation> types = packageIndex.get(packagePath);
+        ClassLocation location = types != null ? types.get(simpleName) : null;
+        if (location == null) {
+            return null;
+        }
+        
+        try {
+            reader = new ClassFileReader(location.read(), (key + CLASS_SUFFIX).toCharArray(), true);
+            readerCache.put(key, new SoftReference<>(reader));
+            readerLoads++;
+            return reader;
+        } catch (IOException | ClassFormatException e) {
+            Log.w(TAG, "Could not read class " + key, e);
+            return null;
+        }
+    }
+    
+    @Override
+    public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+        String parent = parentPackageName == null ? "" : CharOperation.toString(parentPackageName).replace('.', '/');
+        String name = new String(packageName);
+        return packages.contains(parent.isEmpty() ? name : parent + "/" + name);
+    }
+    
+    @Override
+    public void cleanup() {
+    }
+    
+    public int getReaderHits() {
+        return readerHits;
+    }
+    
+    public int getReaderLoads() {
+        return readerLoads;
+    }
+    
+    private synchronized void close() {
+        readerCache.clear();
+        for (ZipFile archive : openArchives) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+            }
+        }
+        openArchives.clear();
+    }
+    
+    private static byte[] readFully(InputStream in, int sizeHint) throws IOException {
+        byte[] buffer = new byte[sizeHint > 0 ? sizeHint : 8192];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                int next = in.read();
+                if (next == -1) {
+                    break;
+                }
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                grown[length++] = (byte) next;
+                buffer = grown;
+            }
+        }
+        if (length == buffer.length) {
+            return buffer;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+}
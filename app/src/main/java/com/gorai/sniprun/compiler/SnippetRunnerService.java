@@ -0,0 +1,286 @@
+package com.gorai.sniprun.compiler;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnippetRunnerService extends Service {
+    
+    private static final String TAG = "SnippetRunnerService";
+    
+    static final int MSG_HELLO = 1;
+    static final int MSG_RUN = 2;
+    static final int MSG_OUTPUT = 3;
+    static final int MSG_RESULT = 4;
+    
+    static final int STREAM_OUT = 0;
+    static final int STREAM_ERR = 1;
+    
+    static final String KEY_CLASS_NAME = "class_name";
+    static final String KEY_DEX_COUNT = "dex_count";
+    static final String KEY_DEX_PREFIX = "dex_";
+    static final String KEY_SHARED_KEY = "shared_key";
+    static final String KEY_SHARED_DEX_COUNT = "shared_dex_count";
+    static final String KEY_SHARED_DEX_PREFIX = "shared_dex_";
+    static final String KEY_TIMEOUT_MS = "timeout_ms";
+    static final String KEY_STEP_LIMIT = "step_limit";
+    static final String KEY_OUTPUT_LIMIT = "output_limit";
+    static final String KEY_DROPPED_BYTES = "dropped_bytes";
+    static final String KEY_LOAD_NANOS = "load_nanos";
+    static final String KEY_BUDGET_EXHAUSTED = "budget_exhausted";
+    static final String KEY_BYTES = "bytes";
+    static final String KEY_ERROR = "error";
+    
+    private static final int OUTPUT_CHUNK_BYTES = 4096;
+    private static final long OUTPUT_FLUSH_INTERVAL_MS = 16;
+    
+    public static class Runner0 extends SnippetRunnerService {
+    }
+    
+    public static class Runner1 extends SnippetRunnerService {
+    }
+    
+    private final ExecutorService runExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snippet-runner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private Messenger messenger;
+    private DexConverter dexConverter;
+    private final SharedClassLayer.LoaderCache sharedLoaders = new SharedClassLayer.LoaderCache();
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        dexConverter = new DexConverter(this);
+        messenger = new Messenger(new Handler(Looper.getMainLooper(), this::handleMessage));
+        runExecutor.execute(this::warmUp);
+    }
+    
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+    
+    private void warmUp() {
+        try {
+            Class.forName("dalvik.system.InMemoryDexClassLoader");
+            Class.forName("dalvik.system.DexClassLoader");
+        } catch (Throwable t) {
+            Log.d(TAG, "Runner warm-up incomplete: " + t.getMessage());
+        }
+    }
+    
+    private boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_HELLO:
+                reply(msg.replyTo, Message.obtain(null, MSG_HELLO, msg.arg1, Process.myPid()));
+                return true;
+            case MSG_RUN:
+                Bundle data = msg.getData();
+                Messenger replyTo = msg.replyTo;
+                int runId = msg.arg1;
+                runExecutor.execute(() -> run(runId, data, replyTo));
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private void run(int runId, Bundle data, Messenger replyTo) {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        OutputBudget outputBudget = new OutputBudget(data.getInt(KEY_OUTPUT_LIMIT, OutputCapture.DEFAULT_MAX_BYTES));
+        Handler drainHandler = new Handler(Looper.getMainLooper());
+        StreamingOutput outStream = new StreamingOutput(replyTo, runId, STREAM_OUT, outputBudget, drainHandler);
+        StreamingOutput errStream = new StreamingOutput(replyTo, runId, STREAM_ERR, outputBudget, drainHandler);
+        PrintStream out = new PrintStream(outStream, true);
+        PrintStream err = new PrintStream(errStream, true);
+        String error = null;
+        boolean budgetExhausted = false;
+        long loadNanos = 0;
+        
+        System.setOut(out);
+        System.setErr(err);
+        RunBudget.install(new RunBudget(null, data.getLong(KEY_TIMEOUT_MS), data.getLong(KEY_STEP_LIMIT)));
+        try {
+            long loadStart = System.nanoTime();
+            List<byte[]> dexFiles = readDexFiles(data, KEY_DEX_COUNT, KEY_DEX_PREFIX);
+            
+            ClassLoader parent = getClassLoader();
+            String sharedKey = data.getString(KEY_SHARED_KEY);
+            if (sharedKey != null) {
+                parent = sharedLoaders.get(sharedKey, () -> dexConverter.createClassLoader(
+                    readDexFiles(data, KEY_SHARED_DEX_COUNT, KEY_SHARED_DEX_PREFIX), getClassLoader()));
+            }
+            ClassLoader classLoader = dexFiles.isEmpty() ? parent : dexConverter.createClassLoader(dexFiles, parent);
+            Method mainMethod = classLoader.loadClass(data.getString(KEY_CLASS_NAME))
+                .getMethod("main", String[].class);
+            loadNanos = System.nanoTime() - loadStart;
+            mainMethod.invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RunBudget.Exhausted) {
+                error = e.getCause().getMessage();
+                budgetExhausted = true;
+            } else {
+                e.getCause().printStackTrace(err);
+            }
+        } catch (RunBudget.Exhausted e) {
+            error = e.getMessage();
+            budgetExhausted = true;
+        } catch (Throwable t) {
+            error = t.getClass().getSimpleName() + ": " + t.getMessage();
+        } finally {
+            RunBudget.clear();
+            out.flush();
+            err.flush();
+            outStream.finish();
+            errStream.finish();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+        
+        Message result = Message.obtain(null, MSG_RESULT, runId, 0);
+        if (error != null) {
+            result.getData().putString(KEY_ERROR, error);
+        }
+        result.getData().putLong(KEY_DROPPED_BYTES, outputBudget.dropped.get());
+        result.getData().putLong(KEY_LOAD_NANOS, loadNanos);
+        result.getData().putBoolean(KEY_BUDGET_EXHAUSTED, budgetExhausted);
+        reply(replyTo, result);
+    }
+    
+    private static List<byte[]> readDexFiles(Bundle data, String countKey, String prefix) {
+        List<byte[]> dexFiles = new ArrayList<>();
+        int dexCount = data.getInt(countKey);
+        for (int i = 0; i < dexCount; i++) {
+            dexFiles.add(data.getByteArray(prefix + i));
+        }
+        return dexFiles;
+    }
+    
+    private static void reply(Messenger replyTo, Message message) {
+        if (replyTo == null) {
+            return;
+        }
+        try {
+            replyTo.send(message);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Editor process unreachable", e);
+        }
+    }
+    
+    private static class OutputBudget {
+        final AtomicLong remaining;
+        final AtomicLong dropped = new AtomicLong();
+        
+        OutputBudget(int limitBytes) {
+            this.remaining = new AtomicLong(limitBytes);
+        }
+        
+        int claim(int length) {
+            while (true) {
+                long available = remaining.get();
+                int granted = (int) Math.min(length, Math.max(0, available));
+                if (remaining.compareAndSet(available, available - granted)) {
+                    if (granted < length) {
+                        dropped.addAndGet(length - granted);
+                    }
+                    return granted;
+                }
+            }
+        }
+    }
+    
+    private static class StreamingOutput extends OutputStream {
+        private final Messenger replyTo;
+        private final int runId;
+        private final int stream;
+        private final OutputBudget budget;
+        private final Handler handler;
+        private final Runnable drainTask = this::drain;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private long lastSendTime;
+        private boolean drainScheduled;
+        
+        StreamingOutput(Messenger replyTo, int runId, int stream, OutputBudget budget, Handler handler) {
+            this.replyTo = replyTo;
+            this.runId = runId;
+            this.stream = stream;
+            this.budget = budget;
+            this.handler = handler;
+        }
+        
+        @Override
+        public synchronized void write(int b) {
+            if (budget.claim(1) == 0) {
+                return;
+            }
+            buffer.write(b);
+            if (buffer.size() >= OUTPUT_CHUNK_BYTES) {
+                drain();
+            }
+        }
+        
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int granted = budget.claim(len);
+            if (granted == 0) {
+                return;
+            }
+            buffer.write(b, off, granted);
+            if (buffer.size() >= OUTPUT_CHUNK_BYTES) {
+                drain();
+            }
+        }
+        
+        @Override
+        public synchronized void flush() {
+            long wait = OUTPUT_FLUSH_INTERVAL_MS - (SystemClock.uptimeMillis() - lastSendTime);
+            if (wait <= 0) {
+                drain();
+            } else if (!drainScheduled && buffer.size() > 0) {
+                drainScheduled = true;
+                handler.postDelayed(drainTask, wait);
+            }
+        }
+        
+        synchronized void finish() {
+            handler.removeCallbacks(drainTask);
+            drain();
+        }
+        
+        synchronized void drain() {
+            drainScheduled = false;
+            if (buffer.size() == 0) {
+                return;
+            }
+            Message message = Message.obtain(null, MSG_OUTPUT, runId, stream);
+            message.getData().putByteArray(KEY_BYTES, buffer.toByteArray());
+            buffer.reset();
+            lastSendTime = SystemClock.uptimeMillis();
+            reply(replyTo, message);
+        }
+    }
+}
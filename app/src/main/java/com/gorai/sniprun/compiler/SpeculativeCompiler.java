@@ -0,0 +1,152 @@
+package com.gorai.sniprun.compiler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class SpeculativeCompiler {
+    
+    private static final String TAG = "SpeculativeCompiler";
+    private static final long DEBOUNCE_DELAY_MS = 600;
+    private static final long CANCEL_POLL_INTERVAL_MS = 16;
+    
+    private final ProfessionalJavaCompiler compiler;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService backgroundExecutor;
+    private final Runnable compileRunnable = this::startCompile;
+    
+    private boolean enabled;
+    private String pendingSource;
+    private CancellationToken inFlightToken;
+    private String inFlightSource;
+    private Future<ProfessionalJavaCompiler.CompiledProgram> inFlight;
+    private volatile ProfessionalJavaCompiler.CompiledProgram lastProgram;
+    
+    public SpeculativeCompiler(ProfessionalJavaCompiler compiler) {
+        this.compiler = compiler;
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                runnable.run();
+            }, "speculative-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            cancel();
+            lastProgram = null;
+        }
+    }
+    
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+    
+    public synchronized void onSourceChanged(String sourceCode) {
+        if (!enabled) {
+            return;
+        }
+        
+        cancel();
+        pendingSource = sourceCode;
+        handler.postDelayed(compileRunnable, DEBOUNCE_DELAY_MS);
+    }
+    
+    private synchronized void startCompile() {
+        String sourceCode = pendingSource;
+        pendingSource = null;
+        if (!enabled || sourceCode == null || sourceCode.isEmpty()) {
+            return;
+        }
+        
+        ProfessionalJavaCompiler.CompiledProgram ready = lastProgram;
+        if (ready != null && sourceCode.equals(ready.getSourceCode())) {
+            return;
+        }
+        
+        CancellationToken token = new CancellationToken();
+        inFlightToken = token;
+        inFlightSource = sourceCode;
+        inFlight = backgroundExecutor.submit(() -> {
+            ProfessionalJavaCompiler.CompiledProgram program = compiler.compile(sourceCode, token, null);
+            if (!program.isCancelled() && !token.isCancelled()) {
+                lastProgram = program;
+                Log.d(TAG, "Speculative build " + (program.isSuccess() ? "ready" : "failed") +
+                           " in " + program.getCompileTimeMs() + "ms");
+            }
+            return program;
+        });
+    }
+    
+    public ProfessionalJavaCompiler.CompiledProgram awaitProgram(String sourceCode, CancellationToken token) {
+        Future<ProfessionalJavaCompiler.CompiledProgram> pending;
+        synchronized (this) {
+            if (!enabled) {
+                return null;
+            }
+            ProfessionalJavaCompiler.CompiledProgram ready = lastProgram;
+            if (ready != null && sourceCode.equals(ready.getSourceCode())) {
+                return ready.isSuccess() ? ready : null;
+            }
+            if (inFlight == null || !sourceCode.equals(inFlightSource)) {
+                return null;
+            }
+            pending = inFlight;
+        }
+        
+        try {
+            ProfessionalJavaCompiler.CompiledProgram program = null;
+            while (program == null) {
+                if (token.isCancelled()) {
+                    Log.d(TAG, "Run cancelled while waiting for speculative build");
+                    return null;
+                }
+                program = poll(pending);
+            }
+            return program.isSuccess() ? program : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Speculative build failed", e.getCause());
+            return null;
+        }
+    }
+    
+    private static ProfessionalJavaCompiler.CompiledProgram poll(
+            Future<ProfessionalJavaCompiler.CompiledProgram> pending) throws InterruptedException, ExecutionException {
+        try {
+            return pending.get(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        }
+    }
+    
+    public synchronized void cancel() {
+        handler.removeCallbacks(compileRunnable);
+        pendingSource = null;
+        if (inFlightToken != null) {
+            inFlightToken.cancel();
+            inFlightToken = null;
+        }
+        inFlightSource = null;
+        inFlight = null;
+    }
+    
+    public void shutdown() {
+        cancel();
+        backgroundExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,58 @@
+package com.gorai.sniprun.compiler;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class StageHistograms {
+    
+    private static final int WINDOW_SIZE = 256;
+    
+    private static final StageHistograms instance = new StageHistograms();
+    
+    private final EnumMap<StageTimings.Stage, Window> windows = new EnumMap<>(StageTimings.Stage.class);
+    
+    private static class Window {
+        final long[] samples = new long[WINDOW_SIZE];
+        int next;
+        int size;
+        
+        void add(long value) {
+            samples[next] = value;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+        
+        long percentile(double percentile) {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+    
+    public static StageHistograms getInstance() {
+        return instance;
+    }
+    
+    public synchronized void record(StageTimings timings) {
+        for (Map.Entry<StageTimings.Stage, Long> entry : timings.asMap().entrySet()) {
+            Window window = windows.get(entry.getKey());
+            if (window == null) {
+                window = new Window();
+                windows.put(entry.getKey(), window);
+            }
+            window.add(entry.getValue());
+        }
+    }
+    
+    public synchronized int getSampleCount(StageTimings.Stage stage) {
+        Window window = windows.get(stage);
+        return window != null ? window.size : 0;
+    }
+    
+    public synchronized long getPercentileNanos(StageTimings.Stage stage, double percentile) {
+        Window window = windows.get(stage);
+        return window != null && window.size > 0 ? window.percentile(percentile) : 0;
+    }
+}
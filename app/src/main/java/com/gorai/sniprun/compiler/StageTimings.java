@@ -0,0 +1,95 @@
+package com.gorai.sniprun.compiler;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class StageTimings {
+    
+    public enum Stage {
+        WRAP("Wrap"),
+        SYNTAX("Syntax"),
+        COMPILE("Compile"),
+        SECURITY("Security"),
+        DEX("Dex"),
+        LOAD("Load"),
+        RUN("Run"),
+        INTERPRET("Interpret"),
+        CAPTURE("Capture");
+        
+        private final String label;
+        
+        Stage(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private final EnumMap<Stage, Long> nanos = new EnumMap<>(Stage.class);
+    private Stage currentStage;
+    private long stageStart;
+    
+    public StageTimings() {
+    }
+    
+    public StageTimings(StageTimings other) {
+        if (other != null) {
+            nanos.putAll(other.nanos);
+        }
+    }
+    
+    public synchronized void begin(Stage stage) {
+        end();
+        currentStage = stage;
+        stageStart = System.nanoTime();
+    }
+    
+    public synchronized void end() {
+        if (currentStage != null) {
+            add(currentStage, System.nanoTime() - stageStart);
+            currentStage = null;
+        }
+    }
+    
+    public synchronized void add(Stage stage, long elapsedNanos) {
+        Long previous = nanos.get(stage);
+        nanos.put(stage, previous != null ? previous + elapsedNanos : elapsedNanos);
+    }
+    
+    public synchronized long getNanos(Stage stage) {
+        Long value = nanos.get(stage);
+        return value != null ? value : 0;
+    }
+    
+    public synchronized boolean has(Stage stage) {
+        return nanos.containsKey(stage);
+    }
+    
+    public synchronized long getTotalNanos() {
+        long total = 0;
+        for (long value : nanos.values()) {
+            total += value;
+        }
+        return total;
+    }
+    
+    public synchronized Map<Stage, Long> asMap() {
+        return new EnumMap<>(nanos);
+    }
+    
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Stage, Long> entry : nanos.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(entry.getKey().getLabel()).append('=')
+                   .append(String.format(Locale.US, "%.2fms", entry.getValue() / 1_000_000.0));
+        }
+        return builder.toString();
+    }
+}
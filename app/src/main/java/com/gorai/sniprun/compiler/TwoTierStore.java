@@ -0,0 +1,213 @@
+package com.gorai.sniprun.compiler;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class TwoTierStore<E> {
+    
+    interface Codec<E> {
+        long sizeOf(E entry);
+        void write(DataOutputStream out, E entry) throws IOException;
+        E read(DataInputStream in) throws IOException;
+    }
+    
+    private final String tag;
+    private final File directory;
+    private final String suffix;
+    private final int magic;
+    private final int version;
+    private final long memoryBudgetBytes;
+    private final long diskBudgetBytes;
+    private final Codec<E> codec;
+    private final LinkedHashMap<String, E> memoryEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private int hitCount;
+    private int missCount;
+    
+    TwoTierStore(String tag, File directory, String suffix, int magic, int version,
+                 long memoryBudgetBytes, long diskBudgetBytes, Codec<E> codec) {
+        this.tag = tag;
+        this.directory = directory;
+        this.suffix = suffix;
+        this.magic = magic;
+        this.version = version;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.diskBudgetBytes = diskBudgetBytes;
+        this.codec = codec;
+        
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+    }
+    
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+    
+    synchronized E get(String key) {
+        E entry = memoryEntries.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry != null) {
+                putInMemory(key, entry);
+            }
+        }
+        
+        if (entry != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return entry;
+    }
+    
+    synchronized void put(String key, E entry) {
+        putInMemory(key, entry);
+        writeToDisk(key, entry);
+    }
+    
+    synchronized int getHitCount() {
+        return hitCount;
+    }
+    
+    synchronized int getMissCount() {
+        return missCount;
+    }
+    
+    synchronized void clear() {
+        memoryEntries.clear();
+        memoryBytes = 0;
+        
+        for (File file : listEntryFiles()) {
+            file.delete();
+        }
+    }
+    
+    private void putInMemory(String key, E entry) {
+        long size = codec.sizeOf(entry);
+        if (size > memoryBudgetBytes) {
+            return;
+        }
+        
+        E previous = memoryEntries.put(key, entry);
+        if (previous != null) {
+            memoryBytes -= codec.sizeOf(previous);
+        }
+        memoryBytes += size;
+        
+        Iterator<Map.Entry<String, E>> iterator = memoryEntries.entrySet().iterator();
+        while (memoryBytes > memoryBudgetBytes && iterator.hasNext()) {
+            Map.Entry<String, E> eldest = iterator.next();
+            memoryBytes -= codec.sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+    
+    private E readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        
+        File file = new File(directory, key + suffix);
+        if (!file.exists()) {
+            return null;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != magic || in.readInt() != version) {
+                file.delete();
+                return null;
+            }
+            
+            E entry = codec.read(in);
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (IOException e) {
+            Log.w(tag, "Discarding unreadable cache entry " + key, e);
+            file.delete();
+            return null;
+        }
+    }
+    
+    private void writeToDisk(String key, E entry) {
+        if (directory == null || codec.sizeOf(entry) > diskBudgetBytes) {
+            return;
+        }
+        
+        File file = new File(directory, key + suffix);
+        File temp = new File(directory, key + ".tmp");
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            codec.write(out, entry);
+        } catch (IOException e) {
+            Log.w(tag, "Could not write cache entry " + key, e);
+            temp.delete();
+            return;
+        }
+        
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        
+        trimDisk();
+    }
+    
+    private void trimDisk() {
+        File[] files = listEntryFiles();
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        
+        if (totalBytes <= diskBudgetBytes) {
+            return;
+        }
+        
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (totalBytes <= diskBudgetBytes) {
+                break;
+            }
+            totalBytes -= file.length();
+            file.delete();
+        }
+    }
+    
+    private File[] listEntryFiles() {
+        if (directory == null) {
+            return new File[0];
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        return files != null ? files : new File[0];
+    }
+}
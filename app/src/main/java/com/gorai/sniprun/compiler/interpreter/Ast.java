@@ -0,0 +1,518 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public final class Ast {
+    
+    private Ast() {
+    }
+    
+    public abstract static class Node {
+        public final int line;
+        
+        Node(int line) {
+            this.line = line;
+        }
+    }
+    
+    public static class TypeRef {
+        private static final Set<String> PRIMITIVES = new HashSet<>(Arrays.asList(
+            "boolean", "byte", "short", "char", "int", "long", "float", "double", "void"));
+        
+        public final String name;
+        public final List<TypeRef> typeArguments;
+        public final int dimensions;
+        
+        public TypeRef(String name, List<TypeRef> typeArguments, int dimensions) {
+            this.name = name;
+            this.typeArguments = typeArguments;
+            this.dimensions = dimensions;
+        }
+        
+        public TypeRef withDimensions(int extra) {
+            return extra == 0 ? this : new TypeRef(name, typeArguments, dimensions + extra);
+        }
+        
+        public TypeRef elementType() {
+            return new TypeRef(name, typeArguments, dimensions - 1);
+        }
+        
+        public boolean isPrimitive() {
+            return dimensions == 0 && PRIMITIVES.contains(name);
+        }
+        
+        public boolean isInferred() {
+            return dimensions == 0 && name.equals("var");
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(name);
+            for (int i = 0; i < dimensions; i++) {
+                builder.append("[]");
+            }
+            return builder.toString();
+        }
+    }
+    
+    public static class CompilationUnit {
+        public final List<String> imports;
+        public final List<String> staticImports;
+        public final List<ClassDecl> classes;
+        
+        public CompilationUnit(List<String> imports, List<String> staticImports, List<ClassDecl> classes) {
+            this.imports = imports;
+            this.staticImports = staticImports;
+            this.classes = classes;
+        }
+    }
+    
+    public static class ClassDecl extends Node {
+        public final String name;
+        public final List<FieldDecl> fields;
+        public final List<MethodDecl> methods;
+        
+        public ClassDecl(int line, String name, List<FieldDecl> fields, List<MethodDecl> methods) {
+            super(line);
+            this.name = name;
+            this.fields = fields;
+            this.methods = methods;
+        }
+    }
+    
+    public static class FieldDecl extends Node {
+        public final TypeRef type;
+        public final String name;
+        public final Expr initializer;
+        
+        public FieldDecl(int line, TypeRef type, String name, Expr initializer) {
+            super(line);
+            this.type = type;
+            this.name = name;
+            this.initializer = initializer;
+        }
+    }
+    
+    public static class Parameter {
+        public final TypeRef type;
+        public final String name;
+        
+        public Parameter(TypeRef type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+    }
+    
+    public static class MethodDecl extends Node {
+        public final String name;
+        public final TypeRef returnType;
+        public final List<Parameter> parameters;
+        public final boolean varargs;
+        public final Block body;
+        
+        public MethodDecl(int line, String name, TypeRef returnType, List<Parameter> parameters,
+                          boolean varargs, Block body) {
+            super(line);
+            this.name = name;
+            this.returnType = returnType;
+            this.parameters = parameters;
+            this.varargs = varargs;
+            this.body = body;
+        }
+    }
+    
+    public abstract static class Stmt extends Node {
+        Stmt(int line) {
+            super(line);
+        }
+    }
+    
+    public static class Block extends Stmt {
+        public final List<Stmt> statements;
+        
+        public Block(int line, List<Stmt> statements) {
+            super(line);
+            this.statements = statements;
+        }
+    }
+    
+    public static class Declarator {
+        public final String name;
+        public final TypeRef type;
+        public final Expr initializer;
+        public final int line;
+        
+        public Declarator(String name, TypeRef type, Expr initializer, int line) {
+            this.name = name;
+            this.type = type;
+            this.initializer = initializer;
+            this.line = line;
+        }
+    }
+    
+    public static class LocalVarDecl extends Stmt {
+        public final List<Declarator> declarators;
+        
+        public LocalVarDecl(int line, List<Declarator> declarators) {
+            super(line);
+            this.declarators = declarators;
+        }
+    }
+    
+    public static class ExprStmt extends Stmt {
+        public final Expr expression;
+        
+        public ExprStmt(int line, Expr expression) {
+            super(line);
+            this.expression = expression;
+        }
+    }
+    
+    public static class If extends Stmt {
+        public final Expr condition;
+        public final Stmt thenBranch;
+        public final Stmt elseBranch;
+        
+        public If(int line, Expr condition, Stmt thenBranch, Stmt elseBranch) {
+            super(line);
+            this.condition = condition;
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+    }
+    
+    public static class While extends Stmt {
+        public final Expr condition;
+        public final Stmt body;
+        
+        public While(int line, Expr condition, Stmt body) {
+            super(line);
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+    
+    public static class DoWhile extends Stmt {
+        public final Stmt body;
+        public final Expr condition;
+        
+        public DoWhile(int line, Stmt body, Expr condition) {
+            super(line);
+            this.body = body;
+            this.condition = condition;
+        }
+    }
+    
+    public static class For extends Stmt {
+        public final List<Stmt> init;
+        public final Expr condition;
+        public final List<Expr> update;
+        public final Stmt body;
+        
+        public For(int line, List<Stmt> init, Expr condition, List<Expr> update, Stmt body) {
+            super(line);
+            this.init = init;
+            this.condition = condition;
+            this.update = update;
+            this.body = body;
+        }
+    }
+    
+    public static class ForEach extends Stmt {
+        public final TypeRef type;
+        public final String name;
+        public final Expr iterable;
+        public final Stmt body;
+        
+        public ForEach(int line, TypeRef type, String name, Expr iterable, Stmt body) {
+            super(line);
+            this.type = type;
+            this.name = name;
+            this.iterable = iterable;
+            this.body = body;
+        }
+    }
+    
+    public static class Labeled extends Stmt {
+        public final String label;
+        public final Stmt body;
+        
+        public Labeled(int line, String label, Stmt body) {
+            super(line);
+            this.label = label;
+            this.body = body;
+        }
+    }
+    
+    public static class Break extends Stmt {
+        public final String label;
+        
+        public Break(int line, String label) {
+            super(line);
+            this.label = label;
+        }
+    }
+    
+    public static class Continue extends Stmt {
+        public final String label;
+        
+        public Continue(int line, String label) {
+            super(line);
+            this.label = label;
+        }
+    }
+    
+    public static class Return extends Stmt {
+        public final Expr value;
+        
+        public Return(int line, Expr value) {
+            super(line);
+            this.value = value;
+        }
+    }
+    
+    public static class SwitchCase {
+        public final List<Expr> labels;
+        public final List<Stmt> body;
+        
+        public SwitchCase(List<Expr> labels, List<Stmt> body) {
+            this.labels = labels;
+            this.body = body;
+        }
+        
+        public boolean isDefault() {
+            return labels.isEmpty();
+        }
+    }
+    
+    public static class Switch extends Stmt {
+        public final Expr selector;
+        public final List<SwitchCase> cases;
+        
+        public Switch(int line, Expr selector, List<SwitchCase> cases) {
+            super(line);
+            this.selector = selector;
+            this.cases = cases;
+        }
+    }
+    
+    public static class Throw extends Stmt {
+        public final Expr exception;
+        
+        public Throw(int line, Expr exception) {
+            super(line);
+            this.exception = exception;
+        }
+    }
+    
+    public static class Catch {
+        public final List<TypeRef> types;
+        public final String name;
+        public final Block body;
+        
+        public Catch(List<TypeRef> types, String name, Block body) {
+            this.types = types;
+            this.name = name;
+            this.body = body;
+        }
+    }
+    
+    public static class Try extends Stmt {
+        public final Block body;
+        public final List<Catch> catches;
+        public final Block finallyBlock;
+        
+        public Try(int line, Block body, List<Catch> catches, Block finallyBlock) {
+            super(line);
+            this.body = body;
+            this.catches = catches;
+            this.finallyBlock = finallyBlock;
+        }
+    }
+    
+    public static class Empty extends Stmt {
+        public Empty(int line) {
+            super(line);
+        }
+    }
+    
+    public abstract static class Expr extends Node {
+        Expr(int line) {
+            super(line);
+        }
+    }
+    
+    public static class Literal extends Expr {
+        public final Object value;
+        
+        public Literal(int line, Object value) {
+            super(line);
+            this.value = value;
+        }
+    }
+    
+    public static class Name extends Expr {
+        public final String identifier;
+        
+        public Name(int line, String identifier) {
+            super(line);
+            this.identifier = identifier;
+        }
+    }
+    
+    public static class FieldAccess extends Expr {
+        public final Expr target;
+        public final String name;
+        
+        public FieldAccess(int line, Expr target, String name) {
+            super(line);
+            this.target = target;
+            this.name = name;
+        }
+    }
+    
+    public static class MethodCall extends Expr {
+        public final Expr target;
+        public final String name;
+        public final List<Expr> arguments;
+        
+        public MethodCall(int line, Expr target, String name, List<Expr> arguments) {
+            super(line);
+            this.target = target;
+            this.name = name;
+            this.arguments = arguments;
+        }
+    }
+    
+    public static class New extends Expr {
+        public final TypeRef type;
+        public final List<Expr> arguments;
+        
+        public New(int line, TypeRef type, List<Expr> arguments) {
+            super(line);
+            this.type = type;
+            this.arguments = arguments;
+        }
+    }
+    
+    public static class NewArray extends Expr {
+        public final TypeRef type;
+        public final List<Expr> dimensions;
+        public final ArrayInit initializer;
+        
+        public NewArray(int line, TypeRef type, List<Expr> dimensions, ArrayInit initializer) {
+            super(line);
+            this.type = type;
+            this.dimensions = dimensions;
+            this.initializer = initializer;
+        }
+    }
+    
+    public static class ArrayInit extends Expr {
+        public final List<Expr> elements;
+        
+        public ArrayInit(int line, List<Expr> elements) {
+            super(line);
+            this.elements = elements;
+        }
+    }
+    
+    public static class ArrayAccess extends Expr {
+        public final Expr array;
+        public final Expr index;
+        
+        public ArrayAccess(int line, Expr array, Expr index) {
+            super(line);
+            this.array = array;
+            this.index = index;
+        }
+    }
+    
+    public static class Unary extends Expr {
+        public final String operator;
+        public final Expr operand;
+        
+        public Unary(int line, String operator, Expr operand) {
+            super(line);
+            this.operator = operator;
+            this.operand = operand;
+        }
+    }
+    
+    public static class IncDec extends Expr {
+        public final boolean prefix;
+        public final boolean increment;
+        public final Expr target;
+        
+        public IncDec(int line, boolean prefix, boolean increment, Expr target) {
+            super(line);
+            this.prefix = prefix;
+            this.increment = increment;
+            this.target = target;
+        }
+    }
+    
+    public static class Binary extends Expr {
+        public final String operator;
+        public final Expr left;
+        public final Expr right;
+        
+        public Binary(int line, String operator, Expr left, Expr right) {
+            super(line);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+    }
+    
+    public static class Assign extends Expr {
+        public final String operator;
+        public final Expr target;
+        public final Expr value;
+        
+        public Assign(int line, String operator, Expr target, Expr value) {
+            super(line);
+            this.operator = operator;
+            this.target = target;
+            this.value = value;
+        }
+    }
+    
+    public static class Conditional extends Expr {
+        public final Expr condition;
+        public final Expr whenTrue;
+        public final Expr whenFalse;
+        
+        public Conditional(int line, Expr condition, Expr whenTrue, Expr whenFalse) {
+            super(line);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+    }
+    
+    public static class Cast extends Expr {
+        public final TypeRef type;
+        public final Expr operand;
+        
+        public Cast(int line, TypeRef type, Expr operand) {
+            super(line);
+            this.type = type;
+            this.operand = operand;
+        }
+    }
+    
+    public static class InstanceOf extends Expr {
+        public final Expr operand;
+        public final TypeRef type;
+        
+        public InstanceOf(int line, Expr operand, TypeRef type) {
+            super(line);
+            this.operand = operand;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+public class BudgetExceededException extends EvaluationException {
+    
+    private final boolean cancelled;
+    
+    BudgetExceededException(String message, int line, boolean cancelled) {
+        super(message, line);
+        this.cancelled = cancelled;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
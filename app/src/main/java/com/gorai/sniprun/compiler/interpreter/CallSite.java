@@ -0,0 +1,86 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+final class CallSite {
+    
+    private static final class Entry {
+        final Class<?> owner;
+        final Class<?>[] argumentTypes;
+        final Member member;
+        final boolean adapt;
+        
+        Entry(Class<?> owner, Class<?>[] argumentTypes, Member member) {
+            this.owner = owner;
+            this.argumentTypes = argumentTypes;
+            this.member = member;
+            this.adapt = Interop.needsAdaptation(member, argumentTypes);
+        }
+        
+        boolean matches(Class<?> owner, Object[] arguments) {
+            if (this.owner != owner) {
+                return false;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                Object argument = arguments[i];
+                if ((argument == null ? null : argument.getClass()) != argumentTypes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private final String name;
+    private final Class<?>[] staticTypes;
+    private Entry entry;
+    
+    CallSite(String name, ExpressionNode[] arguments) {
+        this.name = name;
+        this.staticTypes = new Class<?>[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            staticTypes[i] = arguments[i].type;
+        }
+    }
+    
+    Object invoke(Class<?> owner, Object target, Object[] arguments, boolean wantStatic, int line) {
+        Entry cached = entry;
+        if (cached == null || !cached.matches(owner, arguments)) {
+            Class<?>[] argumentTypes = Interop.typesOf(arguments);
+            Class<?>[] lookup = lookupTypes(argumentTypes, true);
+            if (Interop.selectMethod(owner, name, lookup, wantStatic) == null) {
+                lookup = lookupTypes(argumentTypes, false);
+            }
+            cached = new Entry(owner, argumentTypes, Interop.findMethod(owner, name, lookup, wantStatic, line));
+            entry = cached;
+        }
+        return Interop.invoke((Method) cached.member, target, arguments, cached.adapt, line);
+    }
+    
+    Object construct(Class<?> owner, Object[] arguments, int line) {
+        Entry cached = entry;
+        if (cached == null || !cached.matches(owner, arguments)) {
+            Class<?>[] argumentTypes = Interop.typesOf(arguments);
+            Class<?>[] lookup = lookupTypes(argumentTypes, true);
+            if (Interop.selectConstructor(owner, lookup) == null) {
+                lookup = lookupTypes(argumentTypes, false);
+            }
+            cached = new Entry(owner, argumentTypes, Interop.findConstructor(owner, lookup, line));
+            entry = cached;
+        }
+        return Interop.construct((Constructor<?>) cached.member, arguments, cached.adapt, line);
+    }
+    
+    private Class<?>[] lookupTypes(Class<?>[] runtimeTypes, boolean typedNulls) {
+        Class<?>[] types = runtimeTypes.clone();
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = staticTypes[i];
+            if (type != null && (types[i] == null ? typedNulls && !type.isPrimitive() : type.isPrimitive())) {
+                types[i] = type;
+            }
+        }
+        return types;
+    }
+}
@@ -0,0 +1,1365 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ClosureCompiler {
+    
+    private static final class Variable {
+        final int bank;
+        final int slot;
+        final Class<?> type;
+        final boolean global;
+        
+        Variable(int bank, int slot, Class<?> type, boolean global) {
+            this.bank = bank;
+            this.slot = slot;
+            this.type = type;
+            this.global = global;
+        }
+    }
+    
+    private static final class UserClass {
+        final Ast.ClassDecl declaration;
+        final Map<String, Variable> fields = new HashMap<>();
+        final Map<String, List<CompiledMethod>> methods = new HashMap<>();
+        
+        UserClass(Ast.ClassDecl declaration) {
+            this.declaration = declaration;
+        }
+    }
+    
+    private static final class Scope {
+        final Scope parent;
+        final int[] firstSlots;
+        final Map<String, Variable> locals = new HashMap<>(4);
+        
+        Scope(Scope parent, int[] firstSlots) {
+            this.parent = parent;
+            this.firstSlots = firstSlots.clone();
+        }
+    }
+    
+    private static final class Label {
+        final String name;
+        final int id;
+        
+        Label(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+    
+    private final Ast.CompilationUnit unit;
+    private final Interop interop;
+    private final Map<String, UserClass> classes = new LinkedHashMap<>();
+    private final Map<Ast.MethodDecl, CompiledMethod> methods = new HashMap<>();
+    private final List<Label> labels = new ArrayList<>();
+    private final int[] staticCounts = new int[3];
+    
+    private UserClass currentClass;
+    private Class<?> returnType;
+    private Scope scope;
+    private final int[] nextSlots = new int[3];
+    private final int[] frameSizes = new int[3];
+    private int nextLabelId;
+    private int loopDepth;
+    private int breakDepth;
+    
+    private ClosureCompiler(Ast.CompilationUnit unit) {
+        this.unit = unit;
+        this.interop = new Interop(unit.imports);
+    }
+    
+    static Program compile(Ast.CompilationUnit unit, String mainClassName) {
+        return new ClosureCompiler(unit).compileProgram(mainClassName);
+    }
+    
+    private Program compileProgram(String mainClassName) {
+        for (Ast.ClassDecl declaration : unit.classes) {
+            classes.put(declaration.name, new UserClass(declaration));
+        }
+        for (UserClass userClass : classes.values()) {
+            declareMembers(userClass);
+        }
+        
+        CompiledMethod initializer = compileInitializer();
+        for (UserClass userClass : classes.values()) {
+            for (Ast.MethodDecl declaration : userClass.declaration.methods) {
+                compileMethod(userClass, declaration);
+            }
+        }
+        return new Program(staticCounts, initializer, findMain(mainClassName));
+    }
+    
+    private void declareMembers(UserClass userClass) {
+        for (Ast.FieldDecl field : userClass.declaration.fields) {
+            if (userClass.fields.containsKey(field.name)) {
+                throw new EvaluationException("Variable " + field.name + " is already defined in class " +
+                                              userClass.declaration.name, field.line);
+            }
+            Class<?> type = resolveType(field.type, field.line);
+            int bank = Frame.bank(type);
+            userClass.fields.put(field.name, new Variable(bank, staticCounts[bank]++, type, true));
+        }
+        for (Ast.MethodDecl declaration : userClass.declaration.methods) {
+            Class<?>[] parameterTypes = new Class<?>[declaration.parameters.size()];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = resolveType(declaration.parameters.get(i).type, declaration.line);
+            }
+            CompiledMethod method = new CompiledMethod(declaration.name, parameterTypes,
+                                                       resolveType(declaration.returnType, declaration.line),
+                                                       declaration.varargs, declaration.line);
+            List<CompiledMethod> overloads = userClass.methods.get(declaration.name);
+            if (overloads == null) {
+                overloads = new ArrayList<>();
+                userClass.methods.put(declaration.name, overloads);
+            }
+            overloads.add(method);
+            methods.put(declaration, method);
+        }
+    }
+    
+    private CompiledMethod compileInitializer() {
+        CompiledMethod initializer = new CompiledMethod("<clinit>", new Class<?>[0], void.class, false, 1);
+        beginMethod(null, void.class);
+        List<StatementNode> statements = new ArrayList<>();
+        for (UserClass userClass : classes.values()) {
+            for (Ast.FieldDecl field : userClass.declaration.fields) {
+                Variable target = userClass.fields.get(field.name);
+                ExpressionNode value = defaultValue(target.type, field.line);
+                statements.add(new Statements.Evaluate(field.line, store(target, value, field.line)));
+            }
+        }
+        for (UserClass userClass : classes.values()) {
+            currentClass = userClass;
+            for (Ast.FieldDecl field : userClass.declaration.fields) {
+                if (field.initializer != null) {
+                    Variable target = userClass.fields.get(field.name);
+                    ExpressionNode value = initializer(field.initializer, target.type);
+                    statements.add(new Statements.Evaluate(field.line, store(target, value, field.line)));
+                }
+            }
+        }
+        initializer.setBody(block(1, statements), frameSizes);
+        return initializer;
+    }
+    
+    private void compileMethod(UserClass owner, Ast.MethodDecl declaration) {
+        CompiledMethod method = methods.get(declaration);
+        beginMethod(owner, method.returnType);
+        for (int i = 0; i < declaration.parameters.size(); i++) {
+            Variable parameter = declare(declaration.parameters.get(i).name, method.parameterTypes[i],
+                                         declaration.line);
+            method.parameterSlots[i] = parameter.slot;
+        }
+        StatementNode body = statement(declaration.body, 0);
+        method.setBody(body, frameSizes);
+    }
+    
+    private void beginMethod(UserClass owner, Class<?> returnType) {
+        this.currentClass = owner;
+        this.returnType = returnType;
+        Arrays.fill(nextSlots, 0);
+        Arrays.fill(frameSizes, 0);
+        this.scope = new Scope(null, nextSlots);
+        this.loopDepth = 0;
+        this.breakDepth = 0;
+        this.labels.clear();
+    }
+    
+    private CompiledMethod findMain(String name) {
+        UserClass named = classes.get(name);
+        if (named != null && named.methods.containsKey("main")) {
+            return mainMethod(named);
+        }
+        for (UserClass userClass : classes.values()) {
+            if (userClass.methods.containsKey("main")) {
+                return mainMethod(userClass);
+            }
+        }
+        throw new EvaluationException("No main method found", 1);
+    }
+    
+    private static CompiledMethod mainMethod(UserClass userClass) {
+        for (CompiledMethod method : userClass.methods.get("main")) {
+            Class<?>[] types = method.parameterTypes;
+            if (types.length == 0 || (types.length == 1 && types[0] == String[].class)) {
+                return method;
+            }
+        }
+        throw new EvaluationException("No main method found in " + userClass.declaration.name,
+                                      userClass.declaration.line);
+    }
+    
+    private StatementNode statement(Ast.Stmt statement, int label) {
+        int line = statement.line;
+        
+        if (statement instanceof Ast.ExprStmt) {
+            return new Statements.Evaluate(line, expression(((Ast.ExprStmt) statement).expression));
+        }
+        if (statement instanceof Ast.LocalVarDecl) {
+            List<StatementNode> statements = new ArrayList<>();
+            for (Ast.Declarator declarator : ((Ast.LocalVarDecl) statement).declarators) {
+                statements.add(declaration(declarator));
+            }
+            return statements.size() == 1 ? statements.get(0) : block(line, statements);
+        }
+        if (statement instanceof Ast.Block) {
+            pushScope();
+            List<StatementNode> statements = new ArrayList<>();
+            for (Ast.Stmt child : ((Ast.Block) statement).statements) {
+                statements.add(statement(child, 0));
+            }
+            popScope();
+            return block(line, statements);
+        }
+        if (statement instanceof Ast.If) {
+            Ast.If branch = (Ast.If) statement;
+            ExpressionNode condition = condition(branch.condition);
+            StatementNode thenBranch = scoped(branch.thenBranch);
+            StatementNode elseBranch = branch.elseBranch == null ? null : scoped(branch.elseBranch);
+            return new Statements.If(line, condition, thenBranch, elseBranch);
+        }
+        if (statement instanceof Ast.While) {
+            Ast.While loop = (Ast.While) statement;
+            ExpressionNode condition = condition(loop.condition);
+            return new Statements.While(line, label, condition, loopBody(loop.body));
+        }
+        if (statement instanceof Ast.DoWhile) {
+            Ast.DoWhile loop = (Ast.DoWhile) statement;
+            StatementNode body = loopBody(loop.body);
+            return new Statements.DoWhile(line, label, body, condition(loop.condition));
+        }
+        if (statement instanceof Ast.For) {
+            return forLoop((Ast.For) statement, label);
+        }
+        if (statement instanceof Ast.ForEach) {
+            return forEachLoop((Ast.ForEach) statement, label);
+        }
+        if (statement instanceof Ast.Labeled) {
+            Ast.Labeled labeled = (Ast.Labeled) statement;
+            for (Label existing : labels) {
+                if (existing.name.equals(labeled.label)) {
+                    throw new EvaluationException("Label " + labeled.label + " already in use", line);
+                }
+            }
+            int id = ++nextLabelId;
+            labels.add(new Label(labeled.label, id));
+            Ast.Stmt body = labeled.body;
+            boolean loop = body instanceof Ast.While || body instanceof Ast.DoWhile || body instanceof Ast.For ||
+                           body instanceof Ast.ForEach;
+            StatementNode node = loop ? statement(body, id) : new Statements.Labeled(line, id, scoped(body));
+            labels.remove(labels.size() - 1);
+            return node;
+        }
+        if (statement instanceof Ast.Switch) {
+            return switchStatement((Ast.Switch) statement);
+        }
+        if (statement instanceof Ast.Return) {
+            return returnStatement((Ast.Return) statement);
+        }
+        if (statement instanceof Ast.Break) {
+            String name = ((Ast.Break) statement).label;
+            if (name == null && breakDepth == 0) {
+                throw new EvaluationException("break outside switch or loop", line);
+            }
+            return new Statements.Jump(line, StatementNode.BREAK, name == null ? 0 : labelId(name, line));
+        }
+        if (statement instanceof Ast.Continue) {
+            String name = ((Ast.Continue) statement).label;
+            if (loopDepth == 0) {
+                throw new EvaluationException("continue outside of loop", line);
+            }
+            return new Statements.Jump(line, StatementNode.CONTINUE, name == null ? 0 : labelId(name, line));
+        }
+        if (statement instanceof Ast.Throw) {
+            ExpressionNode exception = expression(((Ast.Throw) statement).exception);
+            if (exception.type != null && exception.type != Object.class &&
+                !Throwable.class.isAssignableFrom(exception.type)) {
+                throw new EvaluationException("Incompatible types: " + typeName(exception.type) +
+                                              " cannot be thrown", line);
+            }
+            return new Statements.Throw(line, exception);
+        }
+        if (statement instanceof Ast.Try) {
+            return tryStatement((Ast.Try) statement);
+        }
+        if (statement instanceof Ast.Empty) {
+            return Statements.EMPTY;
+        }
+        throw new EvaluationException("Unsupported statement", line);
+    }
+    
+    private StatementNode scoped(Ast.Stmt statement) {
+        pushScope();
+        StatementNode node = statement(statement, 0);
+        popScope();
+        return node;
+    }
+    
+    private StatementNode loopBody(Ast.Stmt body) {
+        loopDepth++;
+        breakDepth++;
+        StatementNode node = scoped(body);
+        loopDepth--;
+        breakDepth--;
+        return node;
+    }
+    
+    private StatementNode declaration(Ast.Declarator declarator) {
+        int line = declarator.line;
+        Class<?> type;
+        ExpressionNode value;
+        if (declarator.type.isInferred()) {
+            if (declarator.initializer == null || declarator.initializer instanceof Ast.ArrayInit) {
+                throw new EvaluationException("Cannot infer type for local variable " + declarator.name, line);
+            }
+            value = expression(declarator.initializer);
+            type = value.type;
+            if (type == null) {
+                throw new EvaluationException("Cannot infer type for local variable " + declarator.name +
+                                              " initialized to null", line);
+            }
+        } else {
+            type = resolveType(declarator.type, line);
+            value = declarator.initializer == null
+                ? defaultValue(type, line)
+                : initializer(declarator.initializer, type);
+        }
+        Variable local = declare(declarator.name, type, line);
+        return new Statements.Evaluate(line, store(local, value, line));
+    }
+    
+    private StatementNode forLoop(Ast.For loop, int label) {
+        pushScope();
+        List<StatementNode> init = new ArrayList<>();
+        for (Ast.Stmt statement : loop.init) {
+            init.add(statement(statement, 0));
+        }
+        ExpressionNode condition = loop.condition == null ? null : condition(loop.condition);
+        ExpressionNode[] update = expressions(loop.update);
+        StatementNode body = loopBody(loop.body);
+        popScope();
+        return new Statements.For(loop.line, label, block(loop.line, init), condition, update, body);
+    }
+    
+    private StatementNode forEachLoop(Ast.ForEach loop, int label) {
+        int line = loop.line;
+        ExpressionNode iterable = expression(loop.iterable);
+        Class<?> source = iterable.type;
+        if (source != null && source != Object.class && !source.isArray() &&
+            !Iterable.class.isAssignableFrom(source)) {
+            throw new EvaluationException("for-each not applicable to expression type " + typeName(source), line);
+        }
+        Class<?> type = loop.type.isInferred()
+            ? (source != null && source.isArray() ? source.getComponentType() : Object.class)
+            : resolveType(loop.type, line);
+        pushScope();
+        Variable element = declare(loop.name, type, line);
+        StatementNode body = loopBody(loop.body);
+        popScope();
+        return new Statements.ForEach(line, label, element.slot, type, iterable, body);
+    }
+    
+    private StatementNode switchStatement(Ast.Switch statement) {
+        int line = statement.line;
+        ExpressionNode selector = expression(statement.selector);
+        Class<?> type = selector.type;
+        boolean enumSelector = type != null && Enum.class.isAssignableFrom(type);
+        if (type == null || (!enumSelector && type != String.class && type != Object.class &&
+                             (Values.kind(type) != Values.INT))) {
+            throw new EvaluationException("Cannot switch on a value of type " + typeName(type), line);
+        }
+        
+        Map<Object, Integer> targets = new HashMap<>();
+        List<StatementNode> statements = new ArrayList<>();
+        int defaultTarget = -1;
+        pushScope();
+        breakDepth++;
+        for (Ast.SwitchCase switchCase : statement.cases) {
+            int start = statements.size();
+            if (switchCase.isDefault()) {
+                defaultTarget = start;
+            }
+            for (Ast.Expr label : switchCase.labels) {
+                Object key = enumSelector ? enumLabel(label) : caseKey(expression(label));
+                if (targets.put(key, start) != null) {
+                    throw new EvaluationException("Duplicate case label", label.line);
+                }
+            }
+            for (Ast.Stmt child : switchCase.body) {
+                statements.add(statement(child, 0));
+            }
+        }
+        breakDepth--;
+        popScope();
+        StatementNode[] body = statements.toArray(new StatementNode[0]);
+        if (defaultTarget < 0) {
+            defaultTarget = body.length;
+        }
+        if (type.isPrimitive()) {
+            int[] keys = new int[targets.size()];
+            int count = 0;
+            for (Object key : targets.keySet()) {
+                if (!(key instanceof Integer)) {
+                    throw new EvaluationException("Constant expression required", line);
+                }
+                keys[count++] = (Integer) key;
+            }
+            Arrays.sort(keys);
+            int[] starts = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                starts[i] = targets.get(keys[i]);
+            }
+            return new Statements.IntSwitch(line, selector, keys, starts, defaultTarget, body);
+        }
+        return new Statements.Switch(line, selector, enumSelector, targets, defaultTarget, body);
+    }
+    
+    private static Object enumLabel(Ast.Expr label) {
+        if (!(label instanceof Ast.Name)) {
+            throw new EvaluationException("An enum switch case label must be the name of an enum constant",
+                                          label.line);
+        }
+        return ((Ast.Name) label).identifier;
+    }
+    
+    private static Object caseKey(ExpressionNode label) {
+        if (label instanceof Expressions.Constant) {
+            Object value = ((Expressions.Constant) label).value;
+            if (value instanceof String) {
+                return value;
+            }
+            if (value instanceof Integer || value instanceof Character || value instanceof Short ||
+                value instanceof Byte) {
+                return Values.toInt(value);
+            }
+        }
+        throw new EvaluationException("Constant expression required", label.line);
+    }
+    
+    private StatementNode returnStatement(Ast.Return statement) {
+        int line = statement.line;
+        if (statement.value == null) {
+            if (returnType != void.class) {
+                throw new EvaluationException("Missing return value", line);
+            }
+            return new Statements.Return(line, Frame.OBJECT, null);
+        }
+        if (returnType == void.class) {
+            throw new EvaluationException("Incompatible types: unexpected return value", line);
+        }
+        return new Statements.Return(line, Frame.bank(returnType),
+                                     assign(expression(statement.value), returnType, line));
+    }
+    
+    private StatementNode tryStatement(Ast.Try statement) {
+        StatementNode body = statement(statement.body, 0);
+        Statements.CatchClause[] catches = new Statements.CatchClause[statement.catches.size()];
+        for (int i = 0; i < catches.length; i++) {
+            Ast.Catch clause = statement.catches.get(i);
+            Class<?>[] types = new Class<?>[clause.types.size()];
+            for (int j = 0; j < types.length; j++) {
+                types[j] = resolveType(clause.types.get(j), statement.line);
+                if (!Throwable.class.isAssignableFrom(types[j])) {
+                    throw new EvaluationException("Incompatible types: " + typeName(types[j]) +
+                                                  " cannot be converted to Throwable", statement.line);
+                }
+            }
+            pushScope();
+            Variable exception = declare(clause.name, types.length == 1 ? types[0] : Throwable.class,
+                                         statement.line);
+            catches[i] = new Statements.CatchClause(types, exception.slot, statement(clause.body, 0));
+            popScope();
+        }
+        StatementNode finallyBlock = statement.finallyBlock == null ? null : statement(statement.finallyBlock, 0);
+        return new Statements.Try(statement.line, body, catches, finallyBlock);
+    }
+    
+    private int labelId(String name, int line) {
+        for (int i = labels.size() - 1; i >= 0; i--) {
+            if (labels.get(i).name.equals(name)) {
+                return labels.get(i).id;
+            }
+        }
+        throw new EvaluationException("Undefined label: " + name, line);
+    }
+    
+    private ExpressionNode condition(Ast.Expr expression) {
+        ExpressionNode node = expression(expression);
+        Class<?> type = node.type;
+        if (type != boolean.class && type != Boolean.class && type != Object.class) {
+            throw new EvaluationException("Incompatible types: " + typeName(type) + " cannot be converted to boolean",
+                                          expression.line);
+        }
+        return node;
+    }
+    
+    private ExpressionNode[] expressions(List<Ast.Expr> expressions) {
+        ExpressionNode[] nodes = new ExpressionNode[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = expression(expressions.get(i));
+        }
+        return nodes;
+    }
+    
+    private ExpressionNode expression(Ast.Expr expression) {
+        int line = expression.line;
+        
+        if (expression instanceof Ast.Literal) {
+            Object value = ((Ast.Literal) expression).value;
+            if (value == null) {
+                return new Expressions.Constant(line, null, null);
+            }
+            if (value instanceof String) {
+                value = ((String) value).intern();
+            }
+            Class<?> primitive = Interop.unboxedType(value.getClass());
+            return new Expressions.Constant(line, primitive != null ? primitive : value.getClass(), value);
+        }
+        if (expression instanceof Ast.Name) {
+            return name((Ast.Name) expression);
+        }
+        if (expression instanceof Ast.Binary) {
+            return binary((Ast.Binary) expression);
+        }
+        if (expression instanceof Ast.Assign) {
+            Ast.Assign assignment = (Ast.Assign) expression;
+            if (assignment.value instanceof Ast.ArrayInit) {
+                throw new EvaluationException("Array initializer is not allowed here", line);
+            }
+            ExpressionNode value = expression(assignment.value);
+            if (assignment.operator.equals("=")) {
+                return store(assignment.target, value, line);
+            }
+            String operator = assignment.operator.substring(0, assignment.operator.length() - 1);
+            return update(assignment.target, Values.opcode(operator), value, false, line);
+        }
+        if (expression instanceof Ast.IncDec) {
+            Ast.IncDec incDec = (Ast.IncDec) expression;
+            return update(incDec.target, incDec.increment ? Values.ADD : Values.SUB,
+                          new Expressions.Constant(line, int.class, 1), !incDec.prefix, line);
+        }
+        if (expression instanceof Ast.MethodCall) {
+            return call((Ast.MethodCall) expression);
+        }
+        if (expression instanceof Ast.FieldAccess) {
+            return fieldAccess((Ast.FieldAccess) expression);
+        }
+        if (expression instanceof Ast.ArrayAccess) {
+            Ast.ArrayAccess access = (Ast.ArrayAccess) expression;
+            ExpressionNode array = arrayTarget(access.array);
+            ExpressionNode index = assign(expression(access.index), int.class, line);
+            return arrayLoad(array, index, line);
+        }
+        if (expression instanceof Ast.Unary) {
+            return unary((Ast.Unary) expression);
+        }
+        if (expression instanceof Ast.Conditional) {
+            return conditional((Ast.Conditional) expression);
+        }
+        if (expression instanceof Ast.Cast) {
+            Ast.Cast cast = (Ast.Cast) expression;
+            return cast(expression(cast.operand), resolveType(cast.type, line), line);
+        }
+        if (expression instanceof Ast.InstanceOf) {
+            Ast.InstanceOf instanceOf = (Ast.InstanceOf) expression;
+            Class<?> type = resolveType(instanceOf.type, line);
+            if (type.isPrimitive()) {
+                throw new EvaluationException("Unexpected type: " + typeName(type), line);
+            }
+            return new Expressions.InstanceOf(line, type, expression(instanceOf.operand));
+        }
+        if (expression instanceof Ast.New) {
+            Ast.New creation = (Ast.New) expression;
+            Class<?> type = resolveType(creation.type, line);
+            if (type.isPrimitive() || type.isArray()) {
+                throw new EvaluationException("Cannot instantiate " + typeName(type), line);
+            }
+            return new Expressions.JavaConstruct(line, type, expressions(creation.arguments));
+        }
+        if (expression instanceof Ast.NewArray) {
+            Ast.NewArray creation = (Ast.NewArray) expression;
+            Class<?> type = resolveType(creation.type, line);
+            if (creation.initializer != null) {
+                return initializer(creation.initializer, type);
+            }
+            ExpressionNode[] dimensions = new ExpressionNode[creation.dimensions.size()];
+            for (int i = 0; i < dimensions.length; i++) {
+                dimensions[i] = assign(expression(creation.dimensions.get(i)), int.class, line);
+            }
+            Class<?> elementType = resolveType(creation.type.withDimensions(-dimensions.length), line);
+            return new Expressions.NewArray(line, type, elementType, dimensions);
+        }
+        if (expression instanceof Ast.ArrayInit) {
+            throw new EvaluationException("Array initializer is not allowed here", line);
+        }
+        throw new EvaluationException("Unsupported expression", line);
+    }
+    
+    private ExpressionNode name(Ast.Name name) {
+        int line = name.line;
+        String identifier = name.identifier;
+        Variable variable = lookupVariable(identifier);
+        if (variable != null) {
+            return load(variable, line);
+        }
+        Class<?> owner = staticImportOwner(identifier, false);
+        if (owner != null) {
+            return javaStaticField(owner, identifier, line);
+        }
+        throw new EvaluationException("Cannot find symbol: variable " + identifier, line);
+    }
+    
+    private ExpressionNode fieldAccess(Ast.FieldAccess access) {
+        int line = access.line;
+        Object owner = typeTarget(access.target);
+        if (owner instanceof UserClass) {
+            UserClass userClass = (UserClass) owner;
+            Variable field = userClass.fields.get(access.name);
+            if (field == null) {
+                throw new EvaluationException("Cannot find symbol: " + userClass.declaration.name + "." +
+                                              access.name, line);
+            }
+            return load(field, line);
+        }
+        if (owner instanceof Class) {
+            return javaStaticField((Class<?>) owner, access.name, line);
+        }
+        
+        ExpressionNode target = expression(access.target);
+        Class<?> type = target.type;
+        if (type != null && type.isArray() && access.name.equals("length")) {
+            return new Expressions.ArrayLength(line, target);
+        }
+        if (type != null && type.isPrimitive()) {
+            throw new EvaluationException(typeName(type) + " cannot be dereferenced", line);
+        }
+        Class<?> fieldType = Object.class;
+        if (type != null) {
+            try {
+                Field field = type.getField(access.name);
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    fieldType = field.getType();
+                }
+            } catch (NoSuchFieldException e) {
+                // Resolved against the runtime class instead.
+            }
+        }
+        return new Expressions.InstanceField(line, fieldType, target, access.name);
+    }
+    
+    private static ExpressionNode javaStaticField(Class<?> owner, String name, int line) {
+        if (owner == System.class && (name.equals("out") || name.equals("err"))) {
+            return new Expressions.StandardStream(line, java.io.PrintStream.class, name.equals("err"));
+        }
+        Field field = Interop.findField(owner, name, true, line);
+        if (Modifier.isFinal(field.getModifiers())) {
+            return new Expressions.Constant(line, field.getType(), Interop.readStatic(field, line));
+        }
+        return new Expressions.JavaStaticField(line, field);
+    }
+    
+    private ExpressionNode call(Ast.MethodCall call) {
+        int line = call.line;
+        String name = call.name;
+        if (call.target == null) {
+            ExpressionNode[] arguments = expressions(call.arguments);
+            if (currentClass != null && currentClass.methods.containsKey(name)) {
+                return userCall(currentClass, name, arguments, line);
+            }
+            Class<?> owner = staticImportOwner(name, true);
+            if (owner == null) {
+                throw new EvaluationException("Cannot find symbol: method " + name, line);
+            }
+            return javaStaticCall(owner, name, arguments, line);
+        }
+        
+        Object owner = typeTarget(call.target);
+        if (owner instanceof UserClass) {
+            return userCall((UserClass) owner, name, expressions(call.arguments), line);
+        }
+        if (owner instanceof Class) {
+            Class<?> type = (Class<?>) owner;
+            if (!Interop.hasMethod(type, name, true)) {
+                throw new EvaluationException("Cannot find symbol: method " + name + " in " + type.getSimpleName(),
+                                              line);
+            }
+            return javaStaticCall(type, name, expressions(call.arguments), line);
+        }
+        
+        ExpressionNode target = expression(call.target);
+        ExpressionNode[] arguments = expressions(call.arguments);
+        Class<?> type = target.type;
+        if (type != null && type.isPrimitive()) {
+            throw new EvaluationException(typeName(type) + " cannot be dereferenced", line);
+        }
+        if (type != null && type.isArray() && name.equals("clone") && arguments.length == 0) {
+            return new Expressions.ArrayClone(line, target);
+        }
+        Class<?> resultType = returnType(type == null ? Object.class : type, name, arguments, false);
+        return new Expressions.JavaVirtualCall(line, resultType, target, name, arguments);
+    }
+    
+    private static ExpressionNode javaStaticCall(Class<?> owner, String name, ExpressionNode[] arguments, int line) {
+        if (owner == Thread.class && name.equals("sleep") && (arguments.length == 1 || arguments.length == 2)) {
+            return new Expressions.Sleep(line, assign(arguments[0], long.class, line),
+                                         arguments.length == 2 ? assign(arguments[1], int.class, line) : null);
+        }
+        return new Expressions.JavaStaticCall(line, returnType(owner, name, arguments, true), owner, name,
+                                              arguments);
+    }
+    
+    private static Class<?> returnType(Class<?> owner, String name, ExpressionNode[] arguments, boolean wantStatic) {
+        Class<?>[] types = new Class<?>[arguments.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = arguments[i].type;
+            if (types[i] == Object.class) {
+                return Object.class;
+            }
+        }
+        Method method = Interop.selectMethod(owner, name, types, wantStatic);
+        return method == null ? Object.class : method.getReturnType();
+    }
+    
+    private ExpressionNode userCall(UserClass owner, String name, ExpressionNode[] arguments, int line) {
+        CompiledMethod method = null;
+        List<CompiledMethod> overloads = owner.methods.get(name);
+        for (int phase = Interop.STRICT; overloads != null && method == null && phase <= Interop.VARIABLE_ARITY;
+             phase++) {
+            int bestScore = Integer.MAX_VALUE;
+            for (CompiledMethod candidate : overloads) {
+                int score = score(candidate, arguments, phase);
+                if (score >= 0 && score < bestScore) {
+                    method = candidate;
+                    bestScore = score;
+                }
+            }
+        }
+        if (method == null) {
+            StringBuilder types = new StringBuilder();
+            for (ExpressionNode argument : arguments) {
+                types.append(types.length() == 0 ? "" : ", ").append(typeName(argument.type));
+            }
+            throw new EvaluationException("Cannot find symbol: method " + name + "(" + types + ") in " +
+                                          owner.declaration.name, line);
+        }
+        
+        Class<?>[] types = method.parameterTypes;
+        int fixed = method.varargs ? types.length - 1 : types.length;
+        ExpressionNode[] converted = new ExpressionNode[types.length];
+        for (int i = 0; i < fixed; i++) {
+            converted[i] = assign(arguments[i], types[i], line);
+        }
+        if (method.varargs) {
+            Class<?> arrayType = types[fixed];
+            if (arguments.length == types.length &&
+                (arguments[fixed].type == null || arrayType.isAssignableFrom(arguments[fixed].type))) {
+                converted[fixed] = arguments[fixed];
+            } else {
+                ExpressionNode[] elements = new ExpressionNode[arguments.length - fixed];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = assign(arguments[fixed + i], arrayType.getComponentType(), line);
+                }
+                converted[fixed] = new Expressions.ArrayLiteral(line, arrayType, elements);
+            }
+        }
+        return new Expressions.UserCall(line, method, converted);
+    }
+    
+    private static int score(CompiledMethod method, ExpressionNode[] arguments, int phase) {
+        Class<?>[] types = method.parameterTypes;
+        boolean variableArity = phase == Interop.VARIABLE_ARITY;
+        if (variableArity && !method.varargs) {
+            return -1;
+        }
+        int fixed = variableArity ? types.length - 1 : types.length;
+        if (variableArity ? arguments.length < fixed : arguments.length != fixed) {
+            return -1;
+        }
+        int score = 0;
+        for (int i = 0; i < arguments.length; i++) {
+            Class<?> type = i < fixed ? types[i] : types[fixed].getComponentType();
+            int cost = staticCost(type, arguments[i].type, phase != Interop.STRICT);
+            if (cost < 0) {
+                return -1;
+            }
+            score += cost;
+        }
+        return score;
+    }
+    
+    private static int staticCost(Class<?> parameter, Class<?> argument, boolean boxing) {
+        if (argument == Object.class && parameter != Object.class) {
+            return 10;
+        }
+        return Interop.cost(parameter, argument, boxing);
+    }
+    
+    private ExpressionNode binary(Ast.Binary binary) {
+        int line = binary.line;
+        if (binary.operator.equals("&&")) {
+            return new Expressions.And(line, condition(binary.left), condition(binary.right));
+        }
+        if (binary.operator.equals("||")) {
+            return new Expressions.Or(line, condition(binary.left), condition(binary.right));
+        }
+        ExpressionNode left = expression(binary.left);
+        ExpressionNode right = expression(binary.right);
+        ExpressionNode node = binary(Values.opcode(binary.operator), left, right, line);
+        if (left instanceof Expressions.Constant && right instanceof Expressions.Constant) {
+            try {
+                Object value = node.evaluate(null);
+                return new Expressions.Constant(line, node.type, value instanceof String ? ((String) value).intern()
+                                                                                         : value);
+            } catch (RuntimeException e) {
+                return node;
+            }
+        }
+        return node;
+    }
+    
+    private static ExpressionNode binary(int operator, ExpressionNode left, ExpressionNode right, int line) {
+        if (operator == Values.ADD && (left.type == String.class || right.type == String.class)) {
+            return concat(left, right, line);
+        }
+        int leftKind = kindOf(left);
+        int rightKind = kindOf(right);
+        if (leftKind >= 0 && rightKind >= 0) {
+            if (Values.isShift(operator)) {
+                if (leftKind > Values.LONG || rightKind > Values.LONG) {
+                    throw badOperands(operator, left, right, line);
+                }
+                return new Expressions.Shift(line, leftKind, operator, left, right);
+            }
+            int kind = Math.max(leftKind, rightKind);
+            if (Values.isComparison(operator)) {
+                return new Expressions.Comparison(line, kind, operator, left, right);
+            }
+            if (Values.isBitwise(operator) && kind > Values.LONG) {
+                throw badOperands(operator, left, right, line);
+            }
+            if (kind >= Values.FLOAT) {
+                return new Expressions.FloatingArithmetic(line, kind, operator, left, right);
+            }
+            return new Expressions.IntegralArithmetic(line, kind, operator, left, right);
+        }
+        if (Values.isComparison(operator) || (isBoolean(left.type) && isBoolean(right.type))) {
+            boolean reference = left.type != Object.class && right.type != Object.class &&
+                                !isBoolean(left.type) && !isBoolean(right.type);
+            if (reference && (operator == Values.EQ || operator == Values.NE)) {
+                return new Expressions.ReferenceEquality(line, operator == Values.NE, left, right);
+            }
+            return new Expressions.Dynamic(line, boolean.class, operator, left, right);
+        }
+        if (left.type != Object.class && right.type != Object.class) {
+            throw badOperands(operator, left, right, line);
+        }
+        return new Expressions.Dynamic(line, Object.class, operator, left, right);
+    }
+    
+    private static ExpressionNode concat(ExpressionNode left, ExpressionNode right, int line) {
+        List<ExpressionNode> parts = new ArrayList<>();
+        for (ExpressionNode side : new ExpressionNode[] {left, right}) {
+            if (side instanceof Expressions.Concat) {
+                for (ExpressionNode part : ((Expressions.Concat) side).parts) {
+                    parts.add(part);
+                }
+            } else {
+                parts.add(side);
+            }
+        }
+        return new Expressions.Concat(line, parts.toArray(new ExpressionNode[0]));
+    }
+    
+    private ExpressionNode unary(Ast.Unary unary) {
+        int line = unary.line;
+        if (unary.operator.equals("!")) {
+            return new Expressions.Not(line, condition(unary.operand));
+        }
+        ExpressionNode operand = expression(unary.operand);
+        char operator = unary.operator.charAt(0);
+        int kind = kindOf(operand);
+        Class<?> type;
+        if (kind >= 0 && !(operator == '~' && kind > Values.LONG)) {
+            type = Values.kindType(kind);
+        } else if (operand.type == Object.class) {
+            type = Object.class;
+        } else {
+            throw new EvaluationException("Bad operand type " + typeName(operand.type) + " for unary operator " +
+                                          unary.operator, line);
+        }
+        ExpressionNode node;
+        if (type == Object.class) {
+            node = new Expressions.Unary(line, type, operator, operand);
+        } else if (kind >= Values.FLOAT) {
+            node = new Expressions.FloatingUnary(line, type, operator == '-', operand);
+        } else {
+            node = new Expressions.IntegralUnary(line, type, operator, operand);
+        }
+        if (operand instanceof Expressions.Constant) {
+            return new Expressions.Constant(line, type, node.evaluate(null));
+        }
+        return node;
+    }
+    
+    private ExpressionNode conditional(Ast.Conditional conditional) {
+        int line = conditional.line;
+        ExpressionNode condition = condition(conditional.condition);
+        ExpressionNode whenTrue = expression(conditional.whenTrue);
+        ExpressionNode whenFalse = expression(conditional.whenFalse);
+        Class<?> a = whenTrue.type;
+        Class<?> b = whenFalse.type;
+        Class<?> type;
+        if (a == b) {
+            type = a;
+        } else if (kindOf(whenTrue) >= 0 && kindOf(whenFalse) >= 0) {
+            type = Values.kindType(Math.max(kindOf(whenTrue), kindOf(whenFalse)));
+            whenTrue = cast(whenTrue, type, line);
+            whenFalse = cast(whenFalse, type, line);
+        } else if (a == null || b == null) {
+            type = Interop.boxedType(a == null ? b : a);
+        } else if (a.isAssignableFrom(b) && !a.isPrimitive()) {
+            type = a;
+        } else if (b.isAssignableFrom(a) && !b.isPrimitive()) {
+            type = b;
+        } else {
+            type = Object.class;
+        }
+        return new Expressions.Conditional(line, type, condition, whenTrue, whenFalse);
+    }
+    
+    private ExpressionNode store(Ast.Expr target, ExpressionNode value, int line) {
+        if (target instanceof Ast.Name) {
+            Variable variable = lookupVariable(((Ast.Name) target).identifier);
+            if (variable != null) {
+                return store(variable, assign(value, variable.type, line), line);
+            }
+        } else if (target instanceof Ast.FieldAccess) {
+            Variable field = userField((Ast.FieldAccess) target);
+            if (field != null) {
+                return store(field, assign(value, field.type, line), line);
+            }
+        } else if (target instanceof Ast.ArrayAccess) {
+            Ast.ArrayAccess access = (Ast.ArrayAccess) target;
+            ExpressionNode array = arrayTarget(access.array);
+            ExpressionNode index = assign(expression(access.index), int.class, line);
+            return arrayStore(array, index, assign(value, componentType(array), line), line);
+        }
+        throw notAssignable(target, line);
+    }
+    
+    private ExpressionNode update(Ast.Expr target, int operator, ExpressionNode operand, boolean returnOld,
+                                  int line) {
+        if (target instanceof Ast.Name) {
+            Variable variable = lookupVariable(((Ast.Name) target).identifier);
+            if (variable != null) {
+                return update(variable, operator, operand, returnOld, line);
+            }
+        } else if (target instanceof Ast.FieldAccess) {
+            Variable field = userField((Ast.FieldAccess) target);
+            if (field != null) {
+                return update(field, operator, operand, returnOld, line);
+            }
+        } else if (target instanceof Ast.ArrayAccess) {
+            Ast.ArrayAccess access = (Ast.ArrayAccess) target;
+            ExpressionNode array = arrayTarget(access.array);
+            ExpressionNode index = assign(expression(access.index), int.class, line);
+            return arrayUpdate(array, index, operator, operand, returnOld, line);
+        }
+        throw notAssignable(target, line);
+    }
+    
+    private static ExpressionNode load(Variable variable, int line) {
+        switch (variable.bank) {
+            case Frame.LONG:
+                return new Expressions.LongLoad(line, variable.type, variable.slot, variable.global);
+            case Frame.DOUBLE:
+                return new Expressions.DoubleLoad(line, variable.type, variable.slot, variable.global);
+            default:
+                return new Expressions.Load(line, variable.type, variable.slot, variable.global);
+        }
+    }
+    
+    private static ExpressionNode store(Variable variable, ExpressionNode value, int line) {
+        switch (variable.bank) {
+            case Frame.LONG:
+                return new Expressions.LongStore(line, variable.type, variable.slot, variable.global, value);
+            case Frame.DOUBLE:
+                return new Expressions.DoubleStore(line, variable.type, variable.slot, variable.global, value);
+            default:
+                return new Expressions.Store(line, variable.type, variable.slot, variable.global, value);
+        }
+    }
+    
+    private static ExpressionNode update(Variable variable, int operator, ExpressionNode operand, boolean returnOld,
+                                         int line) {
+        ExpressionNode value = compound(operator, load(variable, line), operand, line);
+        switch (variable.bank) {
+            case Frame.LONG:
+                return new Expressions.LongUpdate(line, variable.type, variable.slot, variable.global, value,
+                                                  returnOld);
+            case Frame.DOUBLE:
+                return new Expressions.DoubleUpdate(line, variable.type, variable.slot, variable.global, value,
+                                                    returnOld);
+            default:
+                return new Expressions.Update(line, variable.type, variable.slot, variable.global, value,
+                                              returnOld);
+        }
+    }
+    
+    private static ExpressionNode arrayLoad(ExpressionNode array, ExpressionNode index, int line) {
+        Class<?> component = componentType(array);
+        if (component == boolean.class) {
+            return new Expressions.BooleanArrayLoad(line, array, index);
+        }
+        if (component.isPrimitive()) {
+            return Frame.bank(component) == Frame.DOUBLE
+                ? new Expressions.FloatingArrayLoad(line, component, array, index)
+                : new Expressions.IntegralArrayLoad(line, component, array, index);
+        }
+        if (array.type.isArray()) {
+            return new Expressions.ReferenceArrayLoad(line, component, array, index);
+        }
+        return new Expressions.ArrayLoad(line, component, array, index);
+    }
+    
+    private static ExpressionNode arrayStore(ExpressionNode array, ExpressionNode index, ExpressionNode value,
+                                             int line) {
+        Class<?> component = componentType(array);
+        if (component == boolean.class) {
+            return new Expressions.BooleanArrayStore(line, array, index, value);
+        }
+        if (component.isPrimitive()) {
+            return Frame.bank(component) == Frame.DOUBLE
+                ? new Expressions.FloatingArrayStore(line, component, array, index, value)
+                : new Expressions.IntegralArrayStore(line, component, array, index, value);
+        }
+        if (array.type.isArray() && !Values.isBoxType(component)) {
+            return new Expressions.ReferenceArrayStore(line, component, array, index, value);
+        }
+        return new Expressions.ArrayStore(line, component, array, index, value);
+    }
+    
+    private static ExpressionNode arrayUpdate(ExpressionNode array, ExpressionNode index, int operator,
+                                              ExpressionNode operand, boolean returnOld, int line) {
+        Class<?> component = componentType(array);
+        int elementKind = component.isPrimitive() ? Values.kind(component) : -1;
+        int operandKind = operand.type == null ? -1 : Values.kind(operand.type);
+        if (elementKind >= 0 && operandKind >= 0) {
+            int kind = Math.max(elementKind, operandKind);
+            if (kind < Values.FLOAT) {
+                return new Expressions.IntegralArrayUpdate(line, component, array, index, kind, operator, operand,
+                                                           returnOld);
+            }
+            if (elementKind >= Values.FLOAT && !Values.isShift(operator) && !Values.isBitwise(operator)) {
+                return new Expressions.FloatingArrayUpdate(line, component, array, index, kind, operator, operand,
+                                                           returnOld);
+            }
+        }
+        return new Expressions.ArrayUpdate(line, component, array, index, operator, operand, returnOld);
+    }
+    
+    private static ExpressionNode compound(int operator, ExpressionNode current, ExpressionNode operand, int line) {
+        if (current.type == String.class && operator == Values.ADD) {
+            return concat(current, operand, line);
+        }
+        return cast(binary(operator, current, operand, line), current.type, line);
+    }
+    
+    private Variable userField(Ast.FieldAccess access) {
+        Object owner = typeTarget(access.target);
+        if (!(owner instanceof UserClass)) {
+            return null;
+        }
+        Variable field = ((UserClass) owner).fields.get(access.name);
+        if (field == null) {
+            throw new EvaluationException("Cannot find symbol: " + ((UserClass) owner).declaration.name + "." +
+                                          access.name, access.line);
+        }
+        return field;
+    }
+    
+    private ExpressionNode arrayTarget(Ast.Expr expression) {
+        ExpressionNode array = expression(expression);
+        if (array.type == null || (!array.type.isArray() && array.type != Object.class)) {
+            throw new EvaluationException("Array required, but " + typeName(array.type) + " found",
+                                          expression.line);
+        }
+        return array;
+    }
+    
+    private static Class<?> componentType(ExpressionNode array) {
+        return array.type.isArray() ? array.type.getComponentType() : Object.class;
+    }
+    
+    private static EvaluationException notAssignable(Ast.Expr target, int line) {
+        if (target instanceof Ast.Name) {
+            return new EvaluationException("Cannot assign a value to " + ((Ast.Name) target).identifier, line);
+        }
+        if (target instanceof Ast.FieldAccess) {
+            return new EvaluationException("Cannot assign a value to " + ((Ast.FieldAccess) target).name, line);
+        }
+        return new EvaluationException("Not a variable", line);
+    }
+    
+    private ExpressionNode initializer(Ast.Expr expression, Class<?> type) {
+        if (expression instanceof Ast.ArrayInit) {
+            if (!type.isArray()) {
+                throw new EvaluationException("Illegal initializer for " + typeName(type), expression.line);
+            }
+            List<Ast.Expr> elements = ((Ast.ArrayInit) expression).elements;
+            ExpressionNode[] nodes = new ExpressionNode[elements.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = initializer(elements.get(i), type.getComponentType());
+            }
+            return new Expressions.ArrayLiteral(expression.line, type, nodes);
+        }
+        return assign(expression(expression), type, expression.line);
+    }
+    
+    private static ExpressionNode assign(ExpressionNode node, Class<?> type, int line) {
+        Class<?> from = node.type;
+        if (from == type || (type == Object.class && (from == null || !from.isPrimitive()))) {
+            return node;
+        }
+        if (from == null) {
+            if (type.isPrimitive()) {
+                throw incompatible(from, type, line);
+            }
+            return node;
+        }
+        if (type.isPrimitive() || Values.isBoxType(type)) {
+            Class<?> target = type.isPrimitive() ? type : Interop.unboxedType(type);
+            Class<?> source = from.isPrimitive() ? from : Interop.unboxedType(from);
+            if (source == null) {
+                if (from.isAssignableFrom(Interop.boxedType(type))) {
+                    return convert(node, type, line);
+                }
+                throw incompatible(from, type, line);
+            }
+            if (source == target || (type.isPrimitive() && Interop.cost(target, source) >= 0)) {
+                return convert(node, type, line);
+            }
+            if (node instanceof Expressions.Constant && source == int.class &&
+                (target == byte.class || target == short.class || target == char.class)) {
+                return convert(node, type, line);
+            }
+            if (Values.kind(source) >= 0 && Values.kind(target) >= 0 && type.isPrimitive()) {
+                throw new EvaluationException("Incompatible types: possible lossy conversion from " +
+                                              typeName(from) + " to " + typeName(type), line);
+            }
+            throw incompatible(from, type, line);
+        }
+        Class<?> boxed = Interop.boxedType(from);
+        if (type.isAssignableFrom(boxed)) {
+            return node;
+        }
+        if (!from.isPrimitive() && (from.isAssignableFrom(type) || from.isInterface() || type.isInterface())) {
+            return new Expressions.CheckCast(line, type, node);
+        }
+        throw incompatible(from, type, line);
+    }
+    
+    private static ExpressionNode cast(ExpressionNode node, Class<?> type, int line) {
+        Class<?> from = node.type;
+        if (from == type) {
+            return node;
+        }
+        if (type.isPrimitive() || (Values.isBoxType(type) && from != null && from.isPrimitive())) {
+            if (from == null || (!from.isPrimitive() && !Values.isBoxType(from) && from != Object.class &&
+                                 !from.isAssignableFrom(Interop.boxedType(type)))) {
+                throw incompatible(from, type, line);
+            }
+            if ((kindOf(node) < 0) != (Values.kind(type) < 0) && from != Object.class) {
+                throw incompatible(from, type, line);
+            }
+            return convert(node, type, line);
+        }
+        if (from != null && from.isPrimitive()) {
+            if (type.isAssignableFrom(Interop.boxedType(from))) {
+                return new Expressions.CheckCast(line, type, node);
+            }
+            throw incompatible(from, type, line);
+        }
+        if (from != null && !type.isAssignableFrom(from) && !from.isAssignableFrom(type) &&
+            !from.isInterface() && !type.isInterface()) {
+            throw incompatible(from, type, line);
+        }
+        return new Expressions.CheckCast(line, type, node);
+    }
+    
+    private static ExpressionNode convert(ExpressionNode node, Class<?> type, int line) {
+        if (node instanceof Expressions.Constant) {
+            Object value = ((Expressions.Constant) node).value;
+            return new Expressions.Constant(line, type, Values.coerce(value, type, line));
+        }
+        switch (type.isPrimitive() ? Frame.bank(type) : Frame.OBJECT) {
+            case Frame.LONG:
+                return new Expressions.IntegralConvert(line, type, node);
+            case Frame.DOUBLE:
+                return new Expressions.FloatingConvert(line, type, node);
+            default:
+                return new Expressions.Convert(line, type, node);
+        }
+    }
+    
+    private static ExpressionNode defaultValue(Class<?> type, int line) {
+        if (!type.isPrimitive()) {
+            return new Expressions.Constant(line, type, null);
+        }
+        Object value = type == boolean.class ? Boolean.FALSE
+            : type == char.class ? (Object) '\0'
+            : Values.convert(0, type, line);
+        return new Expressions.Constant(line, type, value);
+    }
+    
+    private Object typeTarget(Ast.Expr target) {
+        if (target instanceof Ast.Name) {
+            String name = ((Ast.Name) target).identifier;
+            if (isVariable(name)) {
+                return null;
+            }
+            UserClass userClass = classes.get(name);
+            if (userClass != null) {
+                return userClass;
+            }
+            return interop.findClass(name);
+        }
+        if (target instanceof Ast.FieldAccess) {
+            String qualified = qualifiedName(target);
+            if (qualified != null) {
+                String first = qualified.substring(0, qualified.indexOf('.'));
+                if (!isVariable(first) && !classes.containsKey(first)) {
+                    return interop.findClass(qualified);
+                }
+            }
+        }
+        return null;
+    }
+    
+    private boolean isVariable(String name) {
+        return lookupLocal(name) != null || (currentClass != null && currentClass.fields.containsKey(name)) ||
+               staticImportOwner(name, false) != null;
+    }
+    
+    private static String qualifiedName(Ast.Expr expression) {
+        if (expression instanceof Ast.Name) {
+            return ((Ast.Name) expression).identifier;
+        }
+        if (expression instanceof Ast.FieldAccess) {
+            String prefix = qualifiedName(((Ast.FieldAccess) expression).target);
+            return prefix == null ? null : prefix + "." + ((Ast.FieldAccess) expression).name;
+        }
+        return null;
+    }
+    
+    private Class<?> staticImportOwner(String name, boolean method) {
+        for (String imported : unit.staticImports) {
+            int dot = imported.lastIndexOf('.');
+            String member = imported.substring(dot + 1);
+            if (!member.equals("*") && !member.equals(name)) {
+                continue;
+            }
+            Class<?> owner = interop.findClass(imported.substring(0, dot));
+            if (owner != null && hasStaticMember(owner, name, method)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean hasStaticMember(Class<?> owner, String name, boolean method) {
+        if (method) {
+            return Interop.hasMethod(owner, name, true);
+        }
+        try {
+            return Modifier.isStatic(owner.getField(name).getModifiers());
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+    
+    private Class<?> resolveType(Ast.TypeRef type, int line) {
+        if (classes.containsKey(type.name)) {
+            throw new EvaluationException("Instances of " + type.name + " are not supported by the interpreter", line);
+        }
+        Class<?> resolved = interop.resolveType(type, line);
+        Interop.checkType(resolved, line);
+        return resolved;
+    }
+    
+    private Variable lookupLocal(String name) {
+        for (Scope current = scope; current != null; current = current.parent) {
+            Variable local = current.locals.get(name);
+            if (local != null) {
+                return local;
+            }
+        }
+        return null;
+    }
+    
+    private Variable lookupVariable(String name) {
+        Variable local = lookupLocal(name);
+        if (local != null || currentClass == null) {
+            return local;
+        }
+        return currentClass.fields.get(name);
+    }
+    
+    private Variable declare(String name, Class<?> type, int line) {
+        if (lookupLocal(name) != null) {
+            throw new EvaluationException("Variable " + name + " is already defined", line);
+        }
+        int bank = Frame.bank(type);
+        int slot = nextSlots[bank]++;
+        frameSizes[bank] = Math.max(frameSizes[bank], nextSlots[bank]);
+        Variable local = new Variable(bank, slot, type, false);
+        scope.locals.put(name, local);
+        return local;
+    }
+    
+    private void pushScope() {
+        scope = new Scope(scope, nextSlots);
+    }
+    
+    private void popScope() {
+        System.arraycopy(scope.firstSlots, 0, nextSlots, 0, nextSlots.length);
+        scope = scope.parent;
+    }
+    
+    private static StatementNode block(int line, List<StatementNode> statements) {
+        return new Statements.Block(line, statements.toArray(new StatementNode[0]));
+    }
+    
+    private static int kindOf(ExpressionNode node) {
+        return node.type == null ? -1 : Values.kind(node.type);
+    }
+    
+    private static boolean isBoolean(Class<?> type) {
+        return type == boolean.class || type == Boolean.class;
+    }
+    
+    private static String typeName(Class<?> type) {
+        return type == null ? "<null>" : type.getSimpleName();
+    }
+    
+    private static EvaluationException incompatible(Class<?> from, Class<?> to, int line) {
+        return new EvaluationException("Incompatible types: " + typeName(from) + " cannot be converted to " +
+                                       typeName(to), line);
+    }
+    
+    private static EvaluationException badOperands(int operator, ExpressionNode left, ExpressionNode right,
+                                                   int line) {
+        return new EvaluationException("Bad operand types for operator " + Values.symbol(operator) + ": " +
+                                       typeName(left.type) + " and " + typeName(right.type), line);
+    }
+}
@@ -0,0 +1,53 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+final class CompiledMethod {
+    
+    final String name;
+    final Class<?>[] parameterTypes;
+    final Class<?> returnType;
+    final int returnBank;
+    final boolean varargs;
+    final int line;
+    final int[] parameterSlots;
+    private StatementNode body;
+    int longCount;
+    int doubleCount;
+    int objectCount;
+    
+    CompiledMethod(String name, Class<?>[] parameterTypes, Class<?> returnType, boolean varargs, int line) {
+        this.name = name;
+        this.parameterTypes = parameterTypes;
+        this.returnType = returnType;
+        this.returnBank = Frame.bank(returnType);
+        this.varargs = varargs;
+        this.line = line;
+        this.parameterSlots = new int[parameterTypes.length];
+    }
+    
+    void setBody(StatementNode body, int[] frameSizes) {
+        this.body = body;
+        this.longCount = frameSizes[Frame.LONG];
+        this.doubleCount = frameSizes[Frame.DOUBLE];
+        this.objectCount = frameSizes[Frame.OBJECT];
+    }
+    
+    void execute(Frame frame) {
+        int status = body.execute(frame);
+        if (status != StatementNode.RETURN && returnType != void.class) {
+            throw new EvaluationException("Missing return statement in " + name, line);
+        }
+    }
+    
+    void invoke(ExecutionContext context, Object... arguments) {
+        int depth = context.depth;
+        Frame frame = context.enter(this);
+        try {
+            for (int i = 0; i < arguments.length; i++) {
+                frame.objects[parameterSlots[i]] = arguments[i];
+            }
+            execute(frame);
+        } finally {
+            context.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+public class EvaluationException extends RuntimeException {
+    
+    private final int line;
+    
+    public EvaluationException(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+    
+    public int getLine() {
+        return line;
+    }
+}
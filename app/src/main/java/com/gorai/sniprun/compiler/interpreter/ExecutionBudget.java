@@ -0,0 +1,91 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import com.gorai.sniprun.compiler.CancellationToken;
+
+import java.util.concurrent.TimeUnit;
+
+public final class ExecutionBudget {
+    
+    static final int CHECK_INTERVAL = 64;
+    static final long SLEEP_SLICE_MS = 10;
+    
+    private final CancellationToken token;
+    private final long timeoutMs;
+    private final long stepLimit;
+    private long startNanos;
+    private long deadlineNanos;
+    private long elapsedNanos;
+    private long steps;
+    private long nextCheck;
+    
+    public ExecutionBudget(CancellationToken token, long timeoutMs, long stepLimit) {
+        this.token = token;
+        this.timeoutMs = timeoutMs;
+        this.stepLimit = stepLimit;
+    }
+    
+    void start() {
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + timeoutMs * 1_000_000L;
+        steps = 0;
+        nextCheck = nextCheckAfter(0);
+    }
+    
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+    
+    void tick(int line) {
+        if (++steps >= nextCheck) {
+            check(line);
+        }
+    }
+    
+    void sleep(long millis, int line) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(millis);
+        long last = System.nanoTime();
+        while (remaining > 0) {
+            poll(line);
+            try {
+                Thread.sleep(Math.min(SLEEP_SLICE_MS, TimeUnit.NANOSECONDS.toMillis(remaining - 1) + 1));
+            } catch (InterruptedException e) {
+                throw new ThrownException(e, line);
+            }
+            long now = System.nanoTime();
+            remaining -= now - last;
+            last = now;
+        }
+        poll(line);
+    }
+    
+    private void check(int line) {
+        poll(line);
+        if (stepLimit > 0 && steps >= stepLimit) {
+            throw new BudgetExceededException("Step budget of " + stepLimit + " exhausted", line, false);
+        }
+        nextCheck = nextCheckAfter(steps);
+    }
+    
+    private void poll(int line) {
+        if (token != null && token.isCancelled()) {
+            throw new BudgetExceededException("Execution stopped", line, true);
+        }
+        if (timeoutMs > 0 && System.nanoTime() - deadlineNanos >= 0) {
+            throw new BudgetExceededException("Execution timeout exceeded (" + timeoutMs / 1000 + " seconds)",
+                                              line, false);
+        }
+    }
+    
+    private long nextCheckAfter(long from) {
+        long next = from + CHECK_INTERVAL;
+        return stepLimit > 0 ? Math.min(next, stepLimit) : next;
+    }
+    
+    public long getSteps() {
+        return steps;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
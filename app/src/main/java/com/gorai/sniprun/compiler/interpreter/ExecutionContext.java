@@ -0,0 +1,40 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+final class ExecutionContext {
+    
+    final PrintStream out;
+    final PrintStream err;
+    final Frame globals;
+    final ExecutionBudget budget;
+    int line;
+    int depth;
+    private Frame[] frames = new Frame[16];
+    
+    ExecutionContext(PrintStream out, PrintStream err, int[] staticCounts, ExecutionBudget budget) {
+        this.out = out;
+        this.err = err;
+        this.budget = budget;
+        this.globals = new Frame(this, staticCounts[Frame.LONG], staticCounts[Frame.DOUBLE],
+                                 staticCounts[Frame.OBJECT]);
+    }
+    
+    Frame enter(CompiledMethod method) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null || !frame.fits(method)) {
+            frame = frame == null
+                ? new Frame(this, method.longCount, method.doubleCount, method.objectCount)
+                : new Frame(this, Math.max(frame.longs.length, method.longCount),
+                            Math.max(frame.doubles.length, method.doubleCount),
+                            Math.max(frame.objects.length, method.objectCount));
+            frames[depth] = frame;
+        }
+        depth++;
+        return frame;
+    }
+}
@@ -0,0 +1,30 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+abstract class ExpressionNode {
+    
+    final int line;
+    final Class<?> type;
+    
+    ExpressionNode(int line, Class<?> type) {
+        this.line = line;
+        this.type = type;
+    }
+    
+    abstract Object evaluate(Frame frame);
+    
+    long evaluateLong(Frame frame) {
+        return Values.toLong(evaluate(frame));
+    }
+    
+    double evaluateDouble(Frame frame) {
+        return Values.toDouble(evaluate(frame));
+    }
+    
+    boolean evaluateCondition(Frame frame) {
+        return Values.toBoolean(evaluate(frame), line);
+    }
+    
+    void evaluateForEffect(Frame frame) {
+        evaluate(frame);
+    }
+}
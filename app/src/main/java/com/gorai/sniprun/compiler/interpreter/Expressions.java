@@ -0,0 +1,1418 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+
+final class Expressions {
+    
+    private Expressions() {
+    }
+    
+    abstract static class LongNode extends ExpressionNode {
+        LongNode(int line, Class<?> type) {
+            super(line, type);
+        }
+        
+        @Override
+        abstract long evaluateLong(Frame frame);
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return Values.box(evaluateLong(frame), type);
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            return evaluateLong(frame);
+        }
+        
+        @Override
+        void evaluateForEffect(Frame frame) {
+            evaluateLong(frame);
+        }
+    }
+    
+    abstract static class DoubleNode extends ExpressionNode {
+        DoubleNode(int line, Class<?> type) {
+            super(line, type);
+        }
+        
+        @Override
+        abstract double evaluateDouble(Frame frame);
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return Values.box(evaluateDouble(frame), type);
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            return Values.narrow(evaluateDouble(frame), long.class);
+        }
+        
+        @Override
+        void evaluateForEffect(Frame frame) {
+            evaluateDouble(frame);
+        }
+    }
+    
+    abstract static class BooleanNode extends ExpressionNode {
+        BooleanNode(int line) {
+            super(line, boolean.class);
+        }
+        
+        @Override
+        abstract boolean evaluateCondition(Frame frame);
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return evaluateCondition(frame);
+        }
+        
+        @Override
+        void evaluateForEffect(Frame frame) {
+            evaluateCondition(frame);
+        }
+    }
+    
+    static final class Constant extends ExpressionNode {
+        final Object value;
+        private final long longValue;
+        private final double doubleValue;
+        
+        Constant(int line, Class<?> type, Object value) {
+            super(line, type);
+            this.value = value;
+            this.longValue = Values.isNumeric(value) ? Values.toLong(value) : 0;
+            this.doubleValue = Values.isNumeric(value) ? Values.toDouble(value) : 0;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return value;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            return value == null ? Values.toLong(null) : longValue;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            return value == null ? Values.toDouble(null) : doubleValue;
+        }
+        
+        @Override
+        void evaluateForEffect(Frame frame) {
+        }
+    }
+    
+    static final class Load extends ExpressionNode {
+        private final int slot;
+        private final boolean global;
+        
+        Load(int line, Class<?> type, int slot, boolean global) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return storage(frame, global).objects[slot];
+        }
+    }
+    
+    static final class LongLoad extends LongNode {
+        private final int slot;
+        private final boolean global;
+        
+        LongLoad(int line, Class<?> type, int slot, boolean global) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            return storage(frame, global).longs[slot];
+        }
+    }
+    
+    static final class DoubleLoad extends DoubleNode {
+        private final int slot;
+        private final boolean global;
+        
+        DoubleLoad(int line, Class<?> type, int slot, boolean global) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            return storage(frame, global).doubles[slot];
+        }
+    }
+    
+    static final class Store extends ExpressionNode {
+        private final int slot;
+        private final boolean global;
+        private final ExpressionNode value;
+        
+        Store(int line, Class<?> type, int slot, boolean global, ExpressionNode value) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+            this.value = value;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object result = value.evaluate(frame);
+            storage(frame, global).objects[slot] = result;
+            return result;
+        }
+    }
+    
+    static final class LongStore extends LongNode {
+        private final int slot;
+        private final boolean global;
+        private final ExpressionNode value;
+        
+        LongStore(int line, Class<?> type, int slot, boolean global, ExpressionNode value) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+            this.value = value;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            long result = value.evaluateLong(frame);
+            storage(frame, global).longs[slot] = result;
+            return result;
+        }
+    }
+    
+    static final class DoubleStore extends DoubleNode {
+        private final int slot;
+        private final boolean global;
+        private final ExpressionNode value;
+        
+        DoubleStore(int line, Class<?> type, int slot, boolean global, ExpressionNode value) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+            this.value = value;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            double result = value.evaluateDouble(frame);
+            storage(frame, global).doubles[slot] = result;
+            return result;
+        }
+    }
+    
+    static final class Update extends ExpressionNode {
+        private final int slot;
+        private final boolean global;
+        private final ExpressionNode value;
+        private final boolean returnOld;
+        
+        Update(int line, Class<?> type, int slot, boolean global, ExpressionNode value, boolean returnOld) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+            this.value = value;
+            this.returnOld = returnOld;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object[] objects = storage(frame, global).objects;
+            Object old = objects[slot];
+            Object updated = value.evaluate(frame);
+            objects[slot] = updated;
+            return returnOld ? old : updated;
+        }
+    }
+    
+    static final class LongUpdate extends LongNode {
+        private final int slot;
+        private final boolean global;
+        private final ExpressionNode value;
+        private final boolean returnOld;
+        
+        LongUpdate(int line, Class<?> type, int slot, boolean global, ExpressionNode value, boolean returnOld) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+            this.value = value;
+            this.returnOld = returnOld;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            long[] longs = storage(frame, global).longs;
+            long old = longs[slot];
+            long updated = value.evaluateLong(frame);
+            longs[slot] = updated;
+            return returnOld ? old : updated;
+        }
+    }
+    
+    static final class DoubleUpdate extends DoubleNode {
+        private final int slot;
+        private final boolean global;
+        private final ExpressionNode value;
+        private final boolean returnOld;
+        
+        DoubleUpdate(int line, Class<?> type, int slot, boolean global, ExpressionNode value, boolean returnOld) {
+            super(line, type);
+            this.slot = slot;
+            this.global = global;
+            this.value = value;
+            this.returnOld = returnOld;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            double[] doubles = storage(frame, global).doubles;
+            double old = doubles[slot];
+            double updated = value.evaluateDouble(frame);
+            doubles[slot] = updated;
+            return returnOld ? old : updated;
+        }
+    }
+    
+    static final class ArrayUpdate extends ExpressionNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final int operator;
+        private final ExpressionNode operand;
+        private final boolean returnOld;
+        
+        ArrayUpdate(int line, Class<?> type, ExpressionNode array, ExpressionNode index, int operator,
+                    ExpressionNode operand, boolean returnOld) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.operator = operator;
+            this.operand = operand;
+            this.returnOld = returnOld;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object target = checkArray(array.evaluate(frame), line);
+            int position = (int) index.evaluateLong(frame);
+            Object old = Array.get(target, position);
+            Object updated = update(target.getClass().getComponentType(), operator, old, operand.evaluate(frame),
+                                    line);
+            Array.set(target, position, updated);
+            return returnOld ? old : updated;
+        }
+    }
+    
+    static final class JavaStaticField extends ExpressionNode {
+        private final Field field;
+        
+        JavaStaticField(int line, Field field) {
+            super(line, field.getType());
+            this.field = field;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return Interop.readStatic(field, line);
+        }
+    }
+    
+    static final class StandardStream extends ExpressionNode {
+        private final boolean error;
+        
+        StandardStream(int line, Class<?> type, boolean error) {
+            super(line, type);
+            this.error = error;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return error ? frame.context.err : frame.context.out;
+        }
+    }
+    
+    static final class InstanceField extends ExpressionNode {
+        private final ExpressionNode target;
+        private final String name;
+        
+        InstanceField(int line, Class<?> type, ExpressionNode target, String name) {
+            super(line, type);
+            this.target = target;
+            this.name = name;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object value = target.evaluate(frame);
+            if (value != null && value.getClass().isArray() && name.equals("length")) {
+                return Array.getLength(value);
+            }
+            return Interop.getField(value, name, line);
+        }
+    }
+    
+    static final class ArrayLength extends LongNode {
+        private final ExpressionNode array;
+        
+        ArrayLength(int line, ExpressionNode array) {
+            super(line, int.class);
+            this.array = array;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            return Array.getLength(checkArray(array.evaluate(frame), line));
+        }
+    }
+    
+    static final class ArrayLoad extends ExpressionNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        
+        ArrayLoad(int line, Class<?> type, ExpressionNode array, ExpressionNode index) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object target = checkArray(array.evaluate(frame), line);
+            return Array.get(target, (int) index.evaluateLong(frame));
+        }
+    }
+    
+    static final class ArrayStore extends ExpressionNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final ExpressionNode value;
+        
+        ArrayStore(int line, Class<?> type, ExpressionNode array, ExpressionNode index, ExpressionNode value) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object target = checkArray(array.evaluate(frame), line);
+            int position = (int) index.evaluateLong(frame);
+            Object result = Values.coerce(value.evaluate(frame), target.getClass().getComponentType(), line);
+            Array.set(target, position, result);
+            return result;
+        }
+    }
+    
+    static final class IntegralArrayLoad extends LongNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        
+        IntegralArrayLoad(int line, Class<?> type, ExpressionNode array, ExpressionNode index) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            Object target = array.evaluate(frame);
+            return loadLong(target, (int) index.evaluateLong(frame), line);
+        }
+    }
+    
+    static final class FloatingArrayLoad extends DoubleNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        
+        FloatingArrayLoad(int line, Class<?> type, ExpressionNode array, ExpressionNode index) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            Object target = array.evaluate(frame);
+            return loadDouble(target, (int) index.evaluateLong(frame), line);
+        }
+    }
+    
+    static final class BooleanArrayLoad extends BooleanNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        
+        BooleanArrayLoad(int line, ExpressionNode array, ExpressionNode index) {
+            super(line);
+            this.array = array;
+            this.index = index;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            boolean[] target = (boolean[]) checkArray(array.evaluate(frame), line);
+            return target[(int) index.evaluateLong(frame)];
+        }
+    }
+    
+    static final class ReferenceArrayLoad extends ExpressionNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        
+        ReferenceArrayLoad(int line, Class<?> type, ExpressionNode array, ExpressionNode index) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object[] target = (Object[]) checkArray(array.evaluate(frame), line);
+            return target[(int) index.evaluateLong(frame)];
+        }
+    }
+    
+    static final class IntegralArrayStore extends LongNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final ExpressionNode value;
+        
+        IntegralArrayStore(int line, Class<?> type, ExpressionNode array, ExpressionNode index,
+                           ExpressionNode value) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            Object target = array.evaluate(frame);
+            int position = (int) index.evaluateLong(frame);
+            long result = value.evaluateLong(frame);
+            storeLong(target, position, result, line);
+            return result;
+        }
+    }
+    
+    static final class FloatingArrayStore extends DoubleNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final ExpressionNode value;
+        
+        FloatingArrayStore(int line, Class<?> type, ExpressionNode array, ExpressionNode index,
+                           ExpressionNode value) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            Object target = array.evaluate(frame);
+            int position = (int) index.evaluateLong(frame);
+            double result = value.evaluateDouble(frame);
+            storeDouble(target, position, result, line);
+            return result;
+        }
+    }
+    
+    static final class BooleanArrayStore extends BooleanNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final ExpressionNode value;
+        
+        BooleanArrayStore(int line, ExpressionNode array, ExpressionNode index, ExpressionNode value) {
+            super(line);
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            boolean[] target = (boolean[]) checkArray(array.evaluate(frame), line);
+            int position = (int) index.evaluateLong(frame);
+            boolean result = value.evaluateCondition(frame);
+            target[position] = result;
+            return result;
+        }
+    }
+    
+    static final class ReferenceArrayStore extends ExpressionNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final ExpressionNode value;
+        
+        ReferenceArrayStore(int line, Class<?> type, ExpressionNode array, ExpressionNode index,
+                            ExpressionNode value) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.value = value;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object[] target = (Object[]) checkArray(array.evaluate(frame), line);
+            int position = (int) index.evaluateLong(frame);
+            Object result = value.evaluate(frame);
+            target[position] = result;
+            return result;
+        }
+    }
+    
+    static final class IntegralArrayUpdate extends LongNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final boolean wide;
+        private final int operator;
+        private final ExpressionNode operand;
+        private final boolean returnOld;
+        
+        IntegralArrayUpdate(int line, Class<?> type, ExpressionNode array, ExpressionNode index, int kind,
+                            int operator, ExpressionNode operand, boolean returnOld) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.wide = kind == Values.LONG;
+            this.operator = operator;
+            this.operand = operand;
+            this.returnOld = returnOld;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            Object target = array.evaluate(frame);
+            int position = (int) index.evaluateLong(frame);
+            long old = loadLong(target, position, line);
+            long value = operand.evaluateLong(frame);
+            long updated;
+            if (Values.isShift(operator)) {
+                updated = type == long.class ? Values.longShift(operator, old, value)
+                                             : Values.intShift(operator, (int) old, value);
+            } else {
+                updated = wide ? Values.longArithmetic(operator, old, value, line)
+                               : Values.intArithmetic(operator, (int) old, (int) value, line);
+            }
+            updated = Values.narrow(updated, type);
+            storeLong(target, position, updated, line);
+            return returnOld ? old : updated;
+        }
+    }
+    
+    static final class FloatingArrayUpdate extends DoubleNode {
+        private final ExpressionNode array;
+        private final ExpressionNode index;
+        private final boolean single;
+        private final int operator;
+        private final ExpressionNode operand;
+        private final boolean returnOld;
+        
+        FloatingArrayUpdate(int line, Class<?> type, ExpressionNode array, ExpressionNode index, int kind,
+                            int operator, ExpressionNode operand, boolean returnOld) {
+            super(line, type);
+            this.array = array;
+            this.index = index;
+            this.single = kind == Values.FLOAT;
+            this.operator = operator;
+            this.operand = operand;
+            this.returnOld = returnOld;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            Object target = array.evaluate(frame);
+            int position = (int) index.evaluateLong(frame);
+            double old = loadDouble(target, position, line);
+            double value = operand.evaluateDouble(frame);
+            double updated;
+            if (single) {
+                updated = (float) Values.doubleArithmetic(operator, old, (float) value, line);
+            } else {
+                updated = Values.doubleArithmetic(operator, old, value, line);
+                if (type == float.class) {
+                    updated = (float) updated;
+                }
+            }
+            storeDouble(target, position, updated, line);
+            return returnOld ? old : updated;
+        }
+    }
+    
+    static final class ArrayClone extends ExpressionNode {
+        private final ExpressionNode array;
+        
+        ArrayClone(int line, ExpressionNode array) {
+            super(line, array.type);
+            this.array = array;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object source = checkArray(array.evaluate(frame), line);
+            int length = Array.getLength(source);
+            Object copy = Array.newInstance(source.getClass().getComponentType(), length);
+            System.arraycopy(source, 0, copy, 0, length);
+            return copy;
+        }
+    }
+    
+    static final class NewArray extends ExpressionNode {
+        private final Class<?> elementType;
+        private final ExpressionNode[] dimensions;
+        
+        NewArray(int line, Class<?> type, Class<?> elementType, ExpressionNode[] dimensions) {
+            super(line, type);
+            this.elementType = elementType;
+            this.dimensions = dimensions;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            if (dimensions.length == 1) {
+                return Array.newInstance(elementType, (int) dimensions[0].evaluateLong(frame));
+            }
+            int[] lengths = new int[dimensions.length];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = (int) dimensions[i].evaluateLong(frame);
+            }
+            return Array.newInstance(elementType, lengths);
+        }
+    }
+    
+    static final class ArrayLiteral extends ExpressionNode {
+        private final ExpressionNode[] elements;
+        
+        ArrayLiteral(int line, Class<?> type, ExpressionNode[] elements) {
+            super(line, type);
+            this.elements = elements;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Class<?> component = type.getComponentType();
+            Object array = Array.newInstance(component, elements.length);
+            if (array instanceof Object[]) {
+                Object[] values = (Object[]) array;
+                for (int i = 0; i < elements.length; i++) {
+                    values[i] = elements[i].evaluate(frame);
+                }
+                return array;
+            }
+            switch (Frame.bank(component)) {
+                case Frame.LONG:
+                    for (int i = 0; i < elements.length; i++) {
+                        storeLong(array, i, elements[i].evaluateLong(frame), line);
+                    }
+                    break;
+                case Frame.DOUBLE:
+                    for (int i = 0; i < elements.length; i++) {
+                        storeDouble(array, i, elements[i].evaluateDouble(frame), line);
+                    }
+                    break;
+                default:
+                    boolean[] values = (boolean[]) array;
+                    for (int i = 0; i < elements.length; i++) {
+                        values[i] = elements[i].evaluateCondition(frame);
+                    }
+                    break;
+            }
+            return array;
+        }
+    }
+    
+    static final class IntegralArithmetic extends LongNode {
+        private final boolean wide;
+        private final int operator;
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        IntegralArithmetic(int line, int kind, int operator, ExpressionNode left, ExpressionNode right) {
+            super(line, Values.kindType(kind));
+            this.wide = kind == Values.LONG;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            long a = left.evaluateLong(frame);
+            long b = right.evaluateLong(frame);
+            return wide ? Values.longArithmetic(operator, a, b, line)
+                        : Values.intArithmetic(operator, (int) a, (int) b, line);
+        }
+    }
+    
+    static final class FloatingArithmetic extends DoubleNode {
+        private final boolean single;
+        private final int operator;
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        FloatingArithmetic(int line, int kind, int operator, ExpressionNode left, ExpressionNode right) {
+            super(line, Values.kindType(kind));
+            this.single = kind == Values.FLOAT;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            double a = left.evaluateDouble(frame);
+            double b = right.evaluateDouble(frame);
+            return single ? (float) Values.doubleArithmetic(operator, (float) a, (float) b, line)
+                          : Values.doubleArithmetic(operator, a, b, line);
+        }
+    }
+    
+    static final class Comparison extends BooleanNode {
+        private final boolean integral;
+        private final int operator;
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        Comparison(int line, int kind, int operator, ExpressionNode left, ExpressionNode right) {
+            super(line);
+            this.integral = kind == Values.INT || kind == Values.LONG;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            if (integral) {
+                return Values.compare(operator, left.evaluateLong(frame), right.evaluateLong(frame));
+            }
+            return Values.compare(operator, left.evaluateDouble(frame), right.evaluateDouble(frame));
+        }
+    }
+    
+    static final class Shift extends LongNode {
+        private final int operator;
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        Shift(int line, int kind, int operator, ExpressionNode left, ExpressionNode right) {
+            super(line, Values.kindType(kind));
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            long value = left.evaluateLong(frame);
+            long distance = right.evaluateLong(frame);
+            return type == long.class ? Values.longShift(operator, value, distance)
+                                      : Values.intShift(operator, (int) value, distance);
+        }
+    }
+    
+    static final class Dynamic extends ExpressionNode {
+        private final int operator;
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        Dynamic(int line, Class<?> type, int operator, ExpressionNode left, ExpressionNode right) {
+            super(line, type);
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return Values.arithmetic(operator, left.evaluate(frame), right.evaluate(frame), line);
+        }
+    }
+    
+    static final class ReferenceEquality extends BooleanNode {
+        private final boolean negate;
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        ReferenceEquality(int line, boolean negate, ExpressionNode left, ExpressionNode right) {
+            super(line);
+            this.negate = negate;
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            return (left.evaluate(frame) == right.evaluate(frame)) != negate;
+        }
+    }
+    
+    static final class Concat extends ExpressionNode {
+        private static final int REFERENCE = 0;
+        private static final int CHAR = 1;
+        private static final int INTEGRAL = 2;
+        private static final int FLOAT = 3;
+        private static final int DOUBLE = 4;
+        private static final int BOOLEAN = 5;
+        
+        final ExpressionNode[] parts;
+        private final int[] kinds;
+        
+        Concat(int line, ExpressionNode[] parts) {
+            super(line, String.class);
+            this.parts = parts;
+            this.kinds = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                kinds[i] = partKind(parts[i].type);
+            }
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < parts.length; i++) {
+                ExpressionNode part = parts[i];
+                switch (kinds[i]) {
+                    case CHAR:
+                        builder.append((char) part.evaluateLong(frame));
+                        break;
+                    case INTEGRAL:
+                        builder.append(part.evaluateLong(frame));
+                        break;
+                    case FLOAT:
+                        builder.append((float) part.evaluateDouble(frame));
+                        break;
+                    case DOUBLE:
+                        builder.append(part.evaluateDouble(frame));
+                        break;
+                    case BOOLEAN:
+                        builder.append(part.evaluateCondition(frame));
+                        break;
+                    default:
+                        builder.append(part.evaluate(frame));
+                        break;
+                }
+            }
+            return builder.toString();
+        }
+        
+        private static int partKind(Class<?> type) {
+            if (type == char.class) {
+                return CHAR;
+            }
+            if (type == boolean.class) {
+                return BOOLEAN;
+            }
+            if (type == float.class) {
+                return FLOAT;
+            }
+            if (type == double.class) {
+                return DOUBLE;
+            }
+            return type != null && type.isPrimitive() ? INTEGRAL : REFERENCE;
+        }
+    }
+    
+    static final class And extends BooleanNode {
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        And(int line, ExpressionNode left, ExpressionNode right) {
+            super(line);
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            return left.evaluateCondition(frame) && right.evaluateCondition(frame);
+        }
+    }
+    
+    static final class Or extends BooleanNode {
+        private final ExpressionNode left;
+        private final ExpressionNode right;
+        
+        Or(int line, ExpressionNode left, ExpressionNode right) {
+            super(line);
+            this.left = left;
+            this.right = right;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            return left.evaluateCondition(frame) || right.evaluateCondition(frame);
+        }
+    }
+    
+    static final class Not extends BooleanNode {
+        private final ExpressionNode operand;
+        
+        Not(int line, ExpressionNode operand) {
+            super(line);
+            this.operand = operand;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            return !operand.evaluateCondition(frame);
+        }
+    }
+    
+    static final class IntegralUnary extends LongNode {
+        private final char operator;
+        private final ExpressionNode operand;
+        
+        IntegralUnary(int line, Class<?> type, char operator, ExpressionNode operand) {
+            super(line, type);
+            this.operator = operator;
+            this.operand = operand;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            long value = operand.evaluateLong(frame);
+            switch (operator) {
+                case '-': return Values.narrow(-value, type);
+                case '~': return Values.narrow(~value, type);
+                default: return value;
+            }
+        }
+    }
+    
+    static final class FloatingUnary extends DoubleNode {
+        private final boolean negate;
+        private final ExpressionNode operand;
+        
+        FloatingUnary(int line, Class<?> type, boolean negate, ExpressionNode operand) {
+            super(line, type);
+            this.negate = negate;
+            this.operand = operand;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            double value = operand.evaluateDouble(frame);
+            return negate ? -value : value;
+        }
+    }
+    
+    static final class Unary extends ExpressionNode {
+        private final char operator;
+        private final ExpressionNode operand;
+        
+        Unary(int line, Class<?> type, char operator, ExpressionNode operand) {
+            super(line, type);
+            this.operator = operator;
+            this.operand = operand;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object value = operand.evaluate(frame);
+            switch (operator) {
+                case '-': return Values.negate(value, line);
+                case '~': return Values.complement(value, line);
+                default: return Values.promote(value, line);
+            }
+        }
+    }
+    
+    static final class Conditional extends ExpressionNode {
+        private final ExpressionNode condition;
+        private final ExpressionNode whenTrue;
+        private final ExpressionNode whenFalse;
+        
+        Conditional(int line, Class<?> type, ExpressionNode condition, ExpressionNode whenTrue,
+                    ExpressionNode whenFalse) {
+            super(line, type);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return condition.evaluateCondition(frame) ? whenTrue.evaluate(frame) : whenFalse.evaluate(frame);
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            return condition.evaluateCondition(frame) ? whenTrue.evaluateLong(frame) : whenFalse.evaluateLong(frame);
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            return condition.evaluateCondition(frame) ? whenTrue.evaluateDouble(frame)
+                                                      : whenFalse.evaluateDouble(frame);
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            return condition.evaluateCondition(frame) ? whenTrue.evaluateCondition(frame)
+                                                      : whenFalse.evaluateCondition(frame);
+        }
+    }
+    
+    static final class IntegralConvert extends LongNode {
+        private final int source;
+        private final ExpressionNode operand;
+        
+        IntegralConvert(int line, Class<?> type, ExpressionNode operand) {
+            super(line, type);
+            this.source = Frame.bank(operand.type);
+            this.operand = operand;
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            switch (source) {
+                case Frame.LONG:
+                    return Values.narrow(operand.evaluateLong(frame), type);
+                case Frame.DOUBLE:
+                    return Values.narrow(operand.evaluateDouble(frame), type);
+                default:
+                    return Values.toLong(Values.coerce(operand.evaluate(frame), type, line));
+            }
+        }
+    }
+    
+    static final class FloatingConvert extends DoubleNode {
+        private final int source;
+        private final ExpressionNode operand;
+        
+        FloatingConvert(int line, Class<?> type, ExpressionNode operand) {
+            super(line, type);
+            this.source = Frame.bank(operand.type);
+            this.operand = operand;
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            if (source == Frame.LONG && type == float.class) {
+                return (float) operand.evaluateLong(frame);
+            }
+            double value = operand.evaluateDouble(frame);
+            return type == float.class ? (float) value : value;
+        }
+    }
+    
+    static final class Convert extends ExpressionNode {
+        private final ExpressionNode operand;
+        
+        Convert(int line, Class<?> type, ExpressionNode operand) {
+            super(line, type);
+            this.operand = operand;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            return Values.coerce(operand.evaluate(frame), type, line);
+        }
+    }
+    
+    static final class CheckCast extends ExpressionNode {
+        private final Class<?> boxedType;
+        private final ExpressionNode operand;
+        
+        CheckCast(int line, Class<?> type, ExpressionNode operand) {
+            super(line, type);
+            this.boxedType = Interop.boxedType(type);
+            this.operand = operand;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object value = operand.evaluate(frame);
+            if (value != null && !boxedType.isInstance(value)) {
+                throw new ClassCastException(value.getClass().getName() + " cannot be cast to " + type.getName());
+            }
+            return value;
+        }
+    }
+    
+    static final class InstanceOf extends BooleanNode {
+        private final Class<?> target;
+        private final ExpressionNode operand;
+        
+        InstanceOf(int line, Class<?> target, ExpressionNode operand) {
+            super(line);
+            this.target = target;
+            this.operand = operand;
+        }
+        
+        @Override
+        boolean evaluateCondition(Frame frame) {
+            return target.isInstance(operand.evaluate(frame));
+        }
+    }
+    
+    static final class Sleep extends ExpressionNode {
+        private final ExpressionNode millis;
+        private final ExpressionNode nanos;
+        
+        Sleep(int line, ExpressionNode millis, ExpressionNode nanos) {
+            super(line, void.class);
+            this.millis = millis;
+            this.nanos = nanos;
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            long duration = millis.evaluateLong(frame);
+            long extra = nanos == null ? 0 : nanos.evaluateLong(frame);
+            if (duration < 0) {
+                throw new ThrownException(new IllegalArgumentException("timeout value is negative"), line);
+            }
+            if (extra < 0 || extra > 999_999) {
+                throw new ThrownException(new IllegalArgumentException("nanosecond timeout value out of range"),
+                                          line);
+            }
+            frame.context.budget.sleep(extra > 0 && duration < Long.MAX_VALUE ? duration + 1 : duration, line);
+            return null;
+        }
+    }
+    
+    static final class JavaStaticCall extends ExpressionNode {
+        private final Class<?> owner;
+        private final ExpressionNode[] arguments;
+        private final CallSite site;
+        
+        JavaStaticCall(int line, Class<?> type, Class<?> owner, String name, ExpressionNode[] arguments) {
+            super(line, type);
+            this.owner = owner;
+            this.arguments = arguments;
+            this.site = new CallSite(name, arguments);
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object[] values = evaluateAll(arguments, frame);
+            return site.invoke(owner, null, values, true, line);
+        }
+    }
+    
+    static final class JavaVirtualCall extends ExpressionNode {
+        private final ExpressionNode target;
+        private final String name;
+        private final ExpressionNode[] arguments;
+        private final CallSite site;
+        
+        JavaVirtualCall(int line, Class<?> type, ExpressionNode target, String name, ExpressionNode[] arguments) {
+            super(line, type);
+            this.target = target;
+            this.name = name;
+            this.arguments = arguments;
+            this.site = new CallSite(name, arguments);
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object receiver = target.evaluate(frame);
+            Object[] values = evaluateAll(arguments, frame);
+            if (receiver == null) {
+                throw new NullPointerException("Cannot invoke \"" + name + "()\" because value is null");
+            }
+            return site.invoke(receiver.getClass(), receiver, values, false, line);
+        }
+    }
+    
+    static final class JavaConstruct extends ExpressionNode {
+        private final ExpressionNode[] arguments;
+        private final CallSite site;
+        
+        JavaConstruct(int line, Class<?> type, ExpressionNode[] arguments) {
+            super(line, type);
+            this.arguments = arguments;
+            this.site = new CallSite("<init>", arguments);
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Object[] values = evaluateAll(arguments, frame);
+            return site.construct(type, values, line);
+        }
+    }
+    
+    static final class UserCall extends ExpressionNode {
+        private final CompiledMethod method;
+        private final ExpressionNode[] arguments;
+        private final int[] banks;
+        
+        UserCall(int line, CompiledMethod method, ExpressionNode[] arguments) {
+            super(line, method.returnType);
+            this.method = method;
+            this.arguments = arguments;
+            this.banks = new int[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                banks[i] = Frame.bank(method.parameterTypes[i]);
+            }
+        }
+        
+        @Override
+        Object evaluate(Frame frame) {
+            Frame callee = call(frame);
+            switch (method.returnBank) {
+                case Frame.LONG:
+                    return Values.box(callee.returnLong, type);
+                case Frame.DOUBLE:
+                    return Values.box(callee.returnDouble, type);
+                default:
+                    Object result = callee.returnValue;
+                    callee.returnValue = null;
+                    return result;
+            }
+        }
+        
+        @Override
+        long evaluateLong(Frame frame) {
+            return method.returnBank == Frame.LONG ? call(frame).returnLong : super.evaluateLong(frame);
+        }
+        
+        @Override
+        double evaluateDouble(Frame frame) {
+            switch (method.returnBank) {
+                case Frame.LONG:
+                    return call(frame).returnLong;
+                case Frame.DOUBLE:
+                    return call(frame).returnDouble;
+                default:
+                    return super.evaluateDouble(frame);
+            }
+        }
+        
+        @Override
+        void evaluateForEffect(Frame frame) {
+            call(frame).returnValue = null;
+        }
+        
+        private Frame call(Frame frame) {
+            ExecutionContext context = frame.context;
+            int depth = context.depth;
+            int callerLine = context.line;
+            context.budget.tick(line);
+            Frame callee = context.enter(method);
+            try {
+                int[] slots = method.parameterSlots;
+                for (int i = 0; i < arguments.length; i++) {
+                    switch (banks[i]) {
+                        case Frame.LONG:
+                            callee.longs[slots[i]] = arguments[i].evaluateLong(frame);
+                            break;
+                        case Frame.DOUBLE:
+                            callee.doubles[slots[i]] = arguments[i].evaluateDouble(frame);
+                            break;
+                        default:
+                            callee.objects[slots[i]] = arguments[i].evaluate(frame);
+                            break;
+                    }
+                }
+                method.execute(callee);
+                context.line = callerLine;
+                return callee;
+            } finally {
+                context.depth = depth;
+            }
+        }
+    }
+    
+    static Frame storage(Frame frame, boolean global) {
+        return global ? frame.context.globals : frame;
+    }
+    
+    static Object[] evaluateAll(ExpressionNode[] nodes, Frame frame) {
+        Object[] values = new Object[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            values[i] = nodes[i].evaluate(frame);
+        }
+        return values;
+    }
+    
+    static long loadLong(Object array, int index, int line) {
+        if (array instanceof int[]) {
+            return ((int[]) array)[index];
+        }
+        if (array instanceof long[]) {
+            return ((long[]) array)[index];
+        }
+        if (array instanceof char[]) {
+            return ((char[]) array)[index];
+        }
+        if (array instanceof byte[]) {
+            return ((byte[]) array)[index];
+        }
+        if (array instanceof short[]) {
+            return ((short[]) array)[index];
+        }
+        return Values.toLong(Array.get(checkArray(array, line), index));
+    }
+    
+    static double loadDouble(Object array, int index, int line) {
+        if (array instanceof double[]) {
+            return ((double[]) array)[index];
+        }
+        if (array instanceof float[]) {
+            return ((float[]) array)[index];
+        }
+        if (array instanceof Object[]) {
+            return Values.toDouble(((Object[]) array)[index]);
+        }
+        return loadLong(array, index, line);
+    }
+    
+    static void storeLong(Object array, int index, long value, int line) {
+        if (array instanceof int[]) {
+            ((int[]) array)[index] = (int) value;
+        } else if (array instanceof long[]) {
+            ((long[]) array)[index] = value;
+        } else if (array instanceof char[]) {
+            ((char[]) array)[index] = (char) value;
+        } else if (array instanceof byte[]) {
+            ((byte[]) array)[index] = (byte) value;
+        } else if (array instanceof short[]) {
+            ((short[]) array)[index] = (short) value;
+        } else {
+            Array.set(checkArray(array, line), index, Values.coerce(value, array.getClass().getComponentType(), line));
+        }
+    }
+    
+    static void storeDouble(Object array, int index, double value, int line) {
+        if (array instanceof double[]) {
+            ((double[]) array)[index] = value;
+        } else if (array instanceof float[]) {
+            ((float[]) array)[index] = (float) value;
+        } else {
+            Array.set(checkArray(array, line), index, Values.coerce(value, array.getClass().getComponentType(), line));
+        }
+    }
+    
+    static Object checkArray(Object array, int line) {
+        if (array == null) {
+            throw new NullPointerException("Cannot load from null array");
+        }
+        if (!array.getClass().isArray()) {
+            throw new EvaluationException("Array required, but " + Values.describe(array) + " found", line);
+        }
+        return array;
+    }
+    
+    private static Object update(Class<?> type, int operator, Object current, Object operand, int line) {
+        Object result = Values.arithmetic(operator, current, operand, line);
+        return type == String.class || type == Object.class ? result : Values.coerce(result, type, line);
+    }
+}
@@ -0,0 +1,37 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+final class Frame {
+    
+    static final int LONG = 0;
+    static final int DOUBLE = 1;
+    static final int OBJECT = 2;
+    
+    final ExecutionContext context;
+    final long[] longs;
+    final double[] doubles;
+    final Object[] objects;
+    Object returnValue;
+    long returnLong;
+    double returnDouble;
+    int label;
+    
+    Frame(ExecutionContext context, int longCount, int doubleCount, int objectCount) {
+        this.context = context;
+        this.longs = new long[longCount];
+        this.doubles = new double[doubleCount];
+        this.objects = new Object[objectCount];
+    }
+    
+    boolean fits(CompiledMethod method) {
+        return longs.length >= method.longCount && doubles.length >= method.doubleCount &&
+               objects.length >= method.objectCount;
+    }
+    
+    static int bank(Class<?> type) {
+        if (type == int.class || type == long.class || type == char.class || type == short.class ||
+            type == byte.class) {
+            return LONG;
+        }
+        return type == double.class || type == float.class ? DOUBLE : OBJECT;
+    }
+}
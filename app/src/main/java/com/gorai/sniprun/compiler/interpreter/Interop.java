@@ -0,0 +1,512 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import com.gorai.sniprun.compiler.BytecodeSecurityValidator;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class Interop {
+    
+    private static final Set<String> ALLOWED_PACKAGES = new HashSet<>(Arrays.asList(
+        "java.lang", "java.util", "java.util.function", "java.util.regex", "java.util.stream", "java.math",
+        "java.text", "java.time"));
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+        "java.io.PrintStream"));
+    private static final Set<String> BLOCKED_CLASSES = new HashSet<>(Arrays.asList(
+        "java.lang.Class", "java.lang.ClassLoader", "java.lang.Runtime", "java.lang.Process",
+        "java.lang.ProcessBuilder", "java.lang.Thread", "java.lang.ThreadGroup", "java.lang.Module",
+        "java.lang.ModuleLayer", "java.lang.StackWalker", "java.lang.SecurityManager"));
+    private static final Set<String> ALLOWED_BLOCKED_MEMBERS = new HashSet<>(Arrays.asList(
+        "java.lang.Class.getName", "java.lang.Class.getSimpleName", "java.lang.Thread.sleep"));
+    private static final Set<String> DENIED_MEMBERS = new HashSet<>(Arrays.asList(
+        "java.lang.System.setProperty", "java.lang.System.clearProperty", "java.lang.System.setProperties",
+        "java.lang.System.getenv", "java.lang.System.gc", "java.lang.System.runFinalization",
+        "java.lang.System.console", "java.lang.System.inheritedChannel", "java.lang.Object.wait",
+        "java.lang.Object.notify", "java.lang.Object.notifyAll"));
+    
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+    
+    static {
+        for (Class<?> type : new Class<?>[] {boolean.class, byte.class, short.class, char.class, int.class,
+                                              long.class, float.class, double.class, void.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+    
+    private static final Class<?> MISSING = Void.class;
+    
+    static final int STRICT = 0;
+    static final int LOOSE = 1;
+    static final int VARIABLE_ARITY = 2;
+    
+    private final List<String> imports;
+    private final Map<String, Class<?>> classes = new HashMap<>();
+    
+    Interop(List<String> imports) {
+        this.imports = imports;
+    }
+    
+    Class<?> resolveType(Ast.TypeRef type, int line) {
+        if (type.isInferred()) {
+            return Object.class;
+        }
+        Class<?> base = PRIMITIVES.get(type.name);
+        if (base == null) {
+            base = findClass(type.name);
+        }
+        if (base == null) {
+            throw new EvaluationException("Cannot find symbol: class " + type.name, line);
+        }
+        for (int i = 0; i < type.dimensions; i++) {
+            base = Array.newInstance(base, 0).getClass();
+        }
+        return base;
+    }
+    
+    Class<?> findClass(String name) {
+        Class<?> cached = classes.get(name);
+        if (cached == null) {
+            cached = lookupClass(name);
+            classes.put(name, cached != null ? cached : MISSING);
+        }
+        return cached == MISSING ? null : cached;
+    }
+    
+    private Class<?> lookupClass(String name) {
+        int dot = name.indexOf('.');
+        if (dot > 0) {
+            Class<?> outer = findClass(name.substring(0, dot));
+            if (outer != null) {
+                return load(outer.getName() + "$" + name.substring(dot + 1).replace('.', '$'));
+            }
+            return load(name);
+        }
+        for (String imported : imports) {
+            if (imported.endsWith("." + name)) {
+                Class<?> type = load(imported);
+                if (type != null) {
+                    return type;
+                }
+            }
+        }
+        Class<?> type = load("java.lang." + name);
+        if (type != null) {
+            return type;
+        }
+        for (String imported : imports) {
+            if (imported.endsWith(".*")) {
+                type = load(imported.substring(0, imported.length() - 1) + name);
+                if (type != null) {
+                    return type;
+                }
+            }
+        }
+        return load("java.util." + name);
+    }
+    
+    private static Class<?> load(String name) {
+        for (int i = 0; i < 4; i++) {
+            try {
+                return Class.forName(name, false, Interop.class.getClassLoader());
+            } catch (ClassNotFoundException | LinkageError e) {
+                int dot = name.lastIndexOf('.');
+                if (dot < 0) {
+                    return null;
+                }
+                name = name.substring(0, dot) + "$" + name.substring(dot + 1);
+            }
+        }
+        return null;
+    }
+    
+    static Object readStatic(Field field, int line) {
+        try {
+            return field.get(null);
+        } catch (IllegalAccessException e) {
+            throw new EvaluationException("Cannot access " + field.getName(), line);
+        }
+    }
+    
+    static Object getField(Object target, String name, int line) {
+        if (target == null) {
+            throw new NullPointerException("Cannot read field \"" + name + "\" because value is null");
+        }
+        Field field = findField(target.getClass(), name, false, line);
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new EvaluationException("Cannot access field " + name, line);
+        }
+    }
+    
+    static Field findField(Class<?> owner, String name, boolean wantStatic, int line) {
+        Field field;
+        try {
+            field = owner.getField(name);
+        } catch (NoSuchFieldException e) {
+            throw new EvaluationException("Cannot find symbol: " + owner.getSimpleName() + "." + name, line);
+        }
+        if (Modifier.isStatic(field.getModifiers()) != wantStatic) {
+            throw new EvaluationException("Cannot find symbol: " + owner.getSimpleName() + "." + name, line);
+        }
+        checkAccess(field.getDeclaringClass(), name, line);
+        return field;
+    }
+    
+    static boolean hasMethod(Class<?> owner, String name, boolean wantStatic) {
+        for (Method method : owner.getMethods()) {
+            if (method.getName().equals(name) && (!wantStatic || Modifier.isStatic(method.getModifiers()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static Method selectMethod(Class<?> owner, String name, Class<?>[] argumentTypes, boolean wantStatic) {
+        List<Method> candidates = new ArrayList<>();
+        for (Method method : owner.getMethods()) {
+            if (method.getName().equals(name) && (!wantStatic || Modifier.isStatic(method.getModifiers()))) {
+                candidates.add(method);
+            }
+        }
+        Method method = select(candidates, argumentTypes);
+        return method == null ? null : publicVariant(method, owner);
+    }
+    
+    static Method findMethod(Class<?> owner, String name, Class<?>[] argumentTypes, boolean wantStatic, int line) {
+        Method method = selectMethod(owner, name, argumentTypes, wantStatic);
+        if (method == null) {
+            throw new EvaluationException("Cannot find symbol: method " + name + describeArguments(argumentTypes) +
+                                          " in " + owner.getSimpleName(), line);
+        }
+        checkAccess(method.getDeclaringClass(), name, line);
+        return method;
+    }
+    
+    static Constructor<?> selectConstructor(Class<?> owner, Class<?>[] argumentTypes) {
+        return select(Arrays.asList(owner.getConstructors()), argumentTypes);
+    }
+    
+    static Constructor<?> findConstructor(Class<?> owner, Class<?>[] argumentTypes, int line) {
+        if (Modifier.isAbstract(owner.getModifiers())) {
+            throw new EvaluationException(owner.getSimpleName() + " is abstract; cannot be instantiated", line);
+        }
+        checkAccess(owner, "<init>", line);
+        Constructor<?> constructor = selectConstructor(owner, argumentTypes);
+        if (constructor == null) {
+            throw new EvaluationException("No constructor " + owner.getSimpleName() + 
+                                          describeArguments(argumentTypes) + " found", line);
+        }
+        return constructor;
+    }
+    
+    static Object invoke(Method method, Object target, Object[] arguments, boolean adapt, int line) {
+        if (target == null && !Modifier.isStatic(method.getModifiers())) {
+            throw new NullPointerException("Cannot invoke \"" + method.getDeclaringClass().getSimpleName() + "." +
+                                           method.getName() + "()\" because value is null");
+        }
+        try {
+            return method.invoke(target, adapt ? adapt(method, arguments, line) : arguments);
+        } catch (InvocationTargetException e) {
+            throw new ThrownException(e.getCause(), line);
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new EvaluationException("Cannot invoke " + method.getName() + ": " + e.getMessage(), line);
+        }
+    }
+    
+    static Object construct(Constructor<?> constructor, Object[] arguments, boolean adapt, int line) {
+        try {
+            return constructor.newInstance(adapt ? adapt(constructor, arguments, line) : arguments);
+        } catch (InvocationTargetException e) {
+            throw new ThrownException(e.getCause(), line);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new EvaluationException("Cannot instantiate " + constructor.getDeclaringClass().getSimpleName() +
+                                          ": " + e.getMessage(), line);
+        }
+    }
+    
+    static Class<?>[] typesOf(Object[] values) {
+        Class<?>[] types = new Class<?>[values.length];
+        for (int i = 0; i < values.length; i++) {
+            types[i] = values[i] == null ? null : values[i].getClass();
+        }
+        return types;
+    }
+    
+    static void checkType(Class<?> type, int line) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (!type.isPrimitive()) {
+            checkAccess(type, null, line);
+        }
+    }
+    
+    private static void checkAccess(Class<?> owner, String member, int line) {
+        String className = owner.getName();
+        String qualified = className + "." + member;
+        if (member != null && DENIED_MEMBERS.contains(qualified)) {
+            throw new EvaluationException(qualified + " is not allowed in the interpreter", line);
+        }
+        if (member != null) {
+            String reason = BytecodeSecurityValidator.deniedReason(className.replace('.', '/'), member);
+            if (reason != null) {
+                throw new EvaluationException(reason + " (" + qualified + ")", line);
+            }
+        }
+        if (BLOCKED_CLASSES.contains(className) && !ALLOWED_BLOCKED_MEMBERS.contains(qualified)) {
+            throw new EvaluationException(className + " is not available in the interpreter", line);
+        }
+        int dot = className.lastIndexOf('.');
+        String packageName = dot > 0 ? className.substring(0, dot) : "";
+        if (!ALLOWED_PACKAGES.contains(packageName) && !ALLOWED_CLASSES.contains(className)) {
+            throw new EvaluationException(className + " is not available in the interpreter", line);
+        }
+    }
+    
+    private static Method publicVariant(Method method, Class<?> owner) {
+        if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return method;
+        }
+        for (Class<?> type = owner; type != null; type = type.getSuperclass()) {
+            Method found = publicVariant(type, method);
+            if (found != null) {
+                return found;
+            }
+        }
+        return method;
+    }
+    
+    private static Method publicVariant(Class<?> type, Method method) {
+        if (Modifier.isPublic(type.getModifiers())) {
+            try {
+                Method found = type.getMethod(method.getName(), method.getParameterTypes());
+                if (Modifier.isPublic(found.getDeclaringClass().getModifiers())) {
+                    return found;
+                }
+            } catch (NoSuchMethodException e) {
+                // Keep searching the interfaces.
+            }
+        }
+        for (Class<?> implemented : type.getInterfaces()) {
+            Method found = publicVariant(implemented, method);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+    
+    private static <T extends Member> T select(List<T> candidates, Class<?>[] arguments) {
+        for (int phase = STRICT; phase <= VARIABLE_ARITY; phase++) {
+            T best = null;
+            int bestScore = Integer.MAX_VALUE;
+            for (T candidate : candidates) {
+                int score = score(candidate, arguments, phase);
+                if (score < 0) {
+                    continue;
+                }
+                if (score < bestScore || (score == bestScore && moreSpecific(candidate, best))) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+        }
+        return null;
+    }
+    
+    private static Class<?>[] parameterTypes(Member member) {
+        return member instanceof Method ? ((Method) member).getParameterTypes()
+                                        : ((Constructor<?>) member).getParameterTypes();
+    }
+    
+    private static boolean isVarArgs(Member member) {
+        return member instanceof Method ? ((Method) member).isVarArgs() : ((Constructor<?>) member).isVarArgs();
+    }
+    
+    private static int score(Member executable, Class<?>[] arguments, int phase) {
+        Class<?>[] parameters = parameterTypes(executable);
+        boolean boxing = phase != STRICT;
+        if (phase != VARIABLE_ARITY) {
+            if (parameters.length != arguments.length) {
+                return -1;
+            }
+            int score = 0;
+            for (int i = 0; i < parameters.length; i++) {
+                int cost = cost(parameters[i], arguments[i], boxing);
+                if (cost < 0) {
+                    return -1;
+                }
+                score += cost;
+            }
+            return score;
+        }
+        if (!isVarArgs(executable) || arguments.length < parameters.length - 1) {
+            return -1;
+        }
+        int score = 0;
+        Class<?> component = parameters[parameters.length - 1].getComponentType();
+        for (int i = 0; i < arguments.length; i++) {
+            int cost = cost(i < parameters.length - 1 ? parameters[i] : component, arguments[i], true);
+            if (cost < 0) {
+                return -1;
+            }
+            score += cost;
+        }
+        return score;
+    }
+    
+    static int cost(Class<?> parameter, Class<?> argument) {
+        return cost(parameter, argument, true);
+    }
+    
+    static int cost(Class<?> parameter, Class<?> argument, boolean boxing) {
+        if (argument == null) {
+            return parameter.isPrimitive() ? -1 : 1;
+        }
+        if (!boxing && parameter.isPrimitive() != argument.isPrimitive()) {
+            return -1;
+        }
+        if (parameter.isPrimitive()) {
+            Class<?> primitive = argument.isPrimitive() ? argument : unboxedType(argument);
+            if (primitive == parameter) {
+                return 0;
+            }
+            return primitive != null && widens(primitive, parameter) ? 1 : -1;
+        }
+        Class<?> boxed = argument.isPrimitive() ? boxedType(argument) : argument;
+        if (parameter == boxed) {
+            return argument.isPrimitive() ? 3 : 0;
+        }
+        if (parameter.isAssignableFrom(boxed)) {
+            return Values.isBoxType(boxed) ? 3 : 2;
+        }
+        return -1;
+    }
+    
+    private static boolean moreSpecific(Member candidate, Member current) {
+        if (current == null) {
+            return true;
+        }
+        Class<?>[] a = parameterTypes(candidate);
+        Class<?>[] b = parameterTypes(current);
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (!b[i].isAssignableFrom(a[i]) && !(a[i].isPrimitive() && widens(a[i], b[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static Class<?> boxedType(Class<?> type) {
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == char.class) return Character.class;
+        if (type == short.class) return Short.class;
+        if (type == byte.class) return Byte.class;
+        if (type == boolean.class) return Boolean.class;
+        return type;
+    }
+    
+    static Class<?> unboxedType(Class<?> type) {
+        if (type == Integer.class) return int.class;
+        if (type == Long.class) return long.class;
+        if (type == Double.class) return double.class;
+        if (type == Float.class) return float.class;
+        if (type == Character.class) return char.class;
+        if (type == Short.class) return short.class;
+        if (type == Byte.class) return byte.class;
+        if (type == Boolean.class) return boolean.class;
+        return null;
+    }
+    
+    private static boolean widens(Class<?> from, Class<?> to) {
+        if (from == boolean.class || to == boolean.class || to == char.class) {
+            return false;
+        }
+        return widthOf(from) < widthOf(to) && !(from == char.class && to == short.class);
+    }
+    
+    private static int widthOf(Class<?> type) {
+        if (type == byte.class) return 0;
+        if (type == short.class || type == char.class) return 1;
+        if (type == int.class) return 2;
+        if (type == long.class) return 3;
+        if (type == float.class) return 4;
+        return 5;
+    }
+    
+    static boolean needsAdaptation(Member executable, Class<?>[] argumentTypes) {
+        Class<?>[] parameters = parameterTypes(executable);
+        if (argumentTypes.length != parameters.length) {
+            return true;
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            Class<?> argument = argumentTypes[i];
+            if (argument == null) {
+                continue;
+            }
+            if (parameters[i].isPrimitive() ? unboxedType(argument) != parameters[i]
+                                            : !parameters[i].isAssignableFrom(argument)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static Object[] adapt(Member executable, Object[] arguments, int line) {
+        Class<?>[] parameters = parameterTypes(executable);
+        boolean packVarargs = isVarArgs(executable) && (arguments.length != parameters.length ||
+            (arguments[arguments.length - 1] != null &&
+             !parameters[parameters.length - 1].isInstance(arguments[arguments.length - 1])));
+        Object[] adapted = new Object[parameters.length];
+        int fixed = packVarargs ? parameters.length - 1 : parameters.length;
+        for (int i = 0; i < fixed; i++) {
+            adapted[i] = adaptArgument(parameters[i], arguments[i], line);
+        }
+        if (packVarargs) {
+            Class<?> component = parameters[fixed].getComponentType();
+            Object array = Array.newInstance(component, arguments.length - fixed);
+            for (int i = fixed; i < arguments.length; i++) {
+                Array.set(array, i - fixed, adaptArgument(component, arguments[i], line));
+            }
+            adapted[fixed] = array;
+        }
+        return adapted;
+    }
+    
+    private static Object adaptArgument(Class<?> parameter, Object argument, int line) {
+        if (parameter.isPrimitive() && argument != null && unboxedType(argument.getClass()) != parameter) {
+            return Values.convert(argument, parameter, line);
+        }
+        return argument;
+    }
+    
+    private static String describeArguments(Class<?>[] arguments) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; i < arguments.length; i++) {
+            builder.append(i == 0 ? "" : ", ").append(arguments[i] == null ? "null" : arguments[i].getSimpleName());
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,302 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class Lexer {
+    
+    public enum TokenType {
+        IDENTIFIER, KEYWORD, INT_LITERAL, LONG_LITERAL, FLOAT_LITERAL, DOUBLE_LITERAL,
+        CHAR_LITERAL, STRING_LITERAL, OPERATOR, EOF
+    }
+    
+    public static class Token {
+        public final TokenType type;
+        public final String text;
+        public final Object value;
+        public final int line;
+        public final int offset;
+        
+        Token(TokenType type, String text, Object value, int line, int offset) {
+            this.type = type;
+            this.text = text;
+            this.value = value;
+            this.line = line;
+            this.offset = offset;
+        }
+        
+        public boolean is(String text) {
+            return (type == TokenType.OPERATOR || type == TokenType.KEYWORD) && this.text.equals(text);
+        }
+        
+        @Override
+        public String toString() {
+            return type == TokenType.EOF ? "end of input" : "\"" + text + "\"";
+        }
+    }
+    
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+        "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+        "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+        "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+        "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+        "volatile", "while", "true", "false", "null"));
+    
+    private static final String[] OPERATORS = {
+        "...", "->", "::", "++", "--", "&&", "||", "==", "!=", "<=", ">=", "+=", "-=", "*=", "/=",
+        "%=", "&=", "|=", "^=", "<<=", "<<",
+        "(", ")", "{", "}", "[", "]", ";", ",", ".", "@", "=", "<", ">", "!", "~", "?", ":",
+        "+", "-", "*", "/", "&", "|", "^", "%"
+    };
+    
+    private final String source;
+    private int position;
+    private int line = 1;
+    
+    public Lexer(String source) {
+        this.source = source;
+    }
+    
+    public List<Token> tokenize() throws ParseException {
+        List<Token> tokens = new ArrayList<>();
+        while (true) {
+            skipWhitespaceAndComments();
+            if (position >= source.length()) {
+                tokens.add(new Token(TokenType.EOF, "", null, line, position));
+                return tokens;
+            }
+            tokens.add(nextToken());
+        }
+    }
+    
+    private void skipWhitespaceAndComments() throws ParseException {
+        while (position < source.length()) {
+            char c = source.charAt(position);
+            if (c == '\n') {
+                line++;
+                position++;
+            } else if (Character.isWhitespace(c)) {
+                position++;
+            } else if (source.startsWith("//", position)) {
+                while (position < source.length() && source.charAt(position) != '\n') {
+                    position++;
+                }
+            } else if (source.startsWith("/*", position)) {
+                int startLine = line;
+                int end = source.indexOf("*/", position + 2);
+                if (end < 0) {
+                    throw new ParseException("Unclosed comment", startLine);
+                }
+                for (int i = position; i < end; i++) {
+                    if (source.charAt(i) == '\n') {
+                        line++;
+                    }
+                }
+                position = end + 2;
+            } else {
+                return;
+            }
+        }
+    }
+    
+    private Token nextToken() throws ParseException {
+        int start = position;
+        char c = source.charAt(position);
+        
+        if (Character.isJavaIdentifierStart(c)) {
+            while (position < source.length() && Character.isJavaIdentifierPart(source.charAt(position))) {
+                position++;
+            }
+            String word = source.substring(start, position);
+            return new Token(KEYWORDS.contains(word) ? TokenType.KEYWORD : TokenType.IDENTIFIER, word, null, line, start);
+        }
+        if (Character.isDigit(c) || (c == '.' && position + 1 < source.length() &&
+                                     Character.isDigit(source.charAt(position + 1)))) {
+            return number();
+        }
+        if (c == '"') {
+            return string();
+        }
+        if (c == '\'') {
+            return character();
+        }
+        for (String operator : OPERATORS) {
+            if (source.startsWith(operator, position)) {
+                position += operator.length();
+                return new Token(TokenType.OPERATOR, operator, null, line, start);
+            }
+        }
+        throw new ParseException("Unexpected character '" + c + "'", line);
+    }
+    
+    private Token number() throws ParseException {
+        int start = position;
+        if (source.startsWith("0x", position) || source.startsWith("0X", position) ||
+            source.startsWith("0b", position) || source.startsWith("0B", position)) {
+            int radix = Character.toLowerCase(source.charAt(position + 1)) == 'x' ? 16 : 2;
+            position += 2;
+            while (position < source.length() &&
+                   (Character.digit(source.charAt(position), radix) >= 0 || source.charAt(position) == '_')) {
+                position++;
+            }
+            return integer(start, source.substring(start + 2, position), radix);
+        }
+        
+        boolean floating = false;
+        while (position < source.length()) {
+            char c = source.charAt(position);
+            if (Character.isDigit(c) || c == '_') {
+                position++;
+            } else if (c == '.' && !floating && position + 1 < source.length() &&
+                       Character.isDigit(source.charAt(position + 1))) {
+                floating = true;
+                position++;
+            } else if (c == '.' && !floating && (position + 1 >= source.length() ||
+                       !Character.isJavaIdentifierStart(source.charAt(position + 1)))) {
+                floating = true;
+                position++;
+            } else if ((c == 'e' || c == 'E')) {
+                floating = true;
+                position++;
+                if (position < source.length() && (source.charAt(position) == '+' || source.charAt(position) == '-')) {
+                    position++;
+                }
+            } else {
+                break;
+            }
+        }
+        
+        String digits = source.substring(start, position).replace("_", "");
+        char suffix = position < source.length() ? Character.toLowerCase(source.charAt(position)) : 0;
+        try {
+            if (suffix == 'f') {
+                position++;
+                return new Token(TokenType.FLOAT_LITERAL, source.substring(start, position),
+                                 Float.parseFloat(digits), line, start);
+            }
+            if (suffix == 'd') {
+                position++;
+                return new Token(TokenType.DOUBLE_LITERAL, source.substring(start, position),
+                                 Double.parseDouble(digits), line, start);
+            }
+            if (floating) {
+                return new Token(TokenType.DOUBLE_LITERAL, digits, Double.parseDouble(digits), line, start);
+            }
+        } catch (NumberFormatException e) {
+            throw new ParseException("Malformed number " + source.substring(start, position), line);
+        }
+        boolean octal = digits.length() > 1 && digits.charAt(0) == '0';
+        return integer(start, octal ? digits.substring(1) : digits, octal ? 8 : 10);
+    }
+    
+    private Token integer(int start, String digits, int radix) throws ParseException {
+        digits = digits.replace("_", "");
+        boolean isLong = position < source.length() && Character.toLowerCase(source.charAt(position)) == 'l';
+        if (isLong) {
+            position++;
+        }
+        String text = source.substring(start, position);
+        try {
+            if (isLong) {
+                return new Token(TokenType.LONG_LITERAL, text, Long.parseUnsignedLong(digits, radix), line, start);
+            }
+            long value = Long.parseLong(digits, radix);
+            if (radix == 10 ? value > Integer.MAX_VALUE + 1L : value > 0xFFFFFFFFL) {
+                throw new ParseException("Integer number too large: " + text, line);
+            }
+            Object boxed = radix == 10 && value > Integer.MAX_VALUE ? (Object) value : (Object) (int) value;
+            return new Token(TokenType.INT_LITERAL, text, boxed, line, start);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Malformed number " + text, line);
+        }
+    }
+    
+    private Token string() throws ParseException {
+        int start = position;
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (true) {
+            if (position >= source.length() || source.charAt(position) == '\n') {
+                throw new ParseException("Unclosed string literal", line);
+            }
+            char c = source.charAt(position);
+            if (c == '"') {
+                position++;
+                break;
+            }
+            value.append(c == '\\' ? escape() : c);
+            if (c != '\\') {
+                position++;
+            }
+        }
+        return new Token(TokenType.STRING_LITERAL, source.substring(start, position),
+                         value.toString().intern(), line, start);
+    }
+    
+    private Token character() throws ParseException {
+        int start = position;
+        position++;
+        if (position >= source.length() || source.charAt(position) == '\n' || source.charAt(position) == '\'') {
+            throw new ParseException("Empty or unclosed character literal", line);
+        }
+        char value;
+        if (source.charAt(position) == '\\') {
+            value = escape();
+        } else {
+            value = source.charAt(position++);
+        }
+        if (position >= source.length() || source.charAt(position) != '\'') {
+            throw new ParseException("Unclosed character literal", line);
+        }
+        position++;
+        return new Token(TokenType.CHAR_LITERAL, source.substring(start, position), value, line, start);
+    }
+    
+    private char escape() throws ParseException {
+        position++;
+        if (position >= source.length()) {
+            throw new ParseException("Illegal escape sequence", line);
+        }
+        char c = source.charAt(position++);
+        switch (c) {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 's': return ' ';
+            case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': {
+                int value = c - '0';
+                int maxDigits = c <= '3' ? 2 : 1;
+                for (int i = 0; i < maxDigits && position < source.length() &&
+                     source.charAt(position) >= '0' && source.charAt(position) <= '7'; i++) {
+                    value = value * 8 + (source.charAt(position++) - '0');
+                }
+                return (char) value;
+            }
+            case 'u': {
+                while (position < source.length() && source.charAt(position) == 'u') {
+                    position++;
+                }
+                if (position + 4 > source.length()) {
+                    throw new ParseException("Illegal unicode escape", line);
+                }
+                try {
+                    char value = (char) Integer.parseInt(source.substring(position, position + 4), 16);
+                    position += 4;
+                    return value;
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Illegal unicode escape", line);
+                }
+            }
+            case '\\': case '\'': case '"':
+                return c;
+            default:
+                throw new ParseException("Illegal escape sequence \\" + c, line);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+public class ParseException extends Exception {
+    
+    private final int line;
+    
+    public ParseException(String message, int line) {
+        super(message);
+        this.line = line;
+    }
+    
+    public int getLine() {
+        return line;
+    }
+}
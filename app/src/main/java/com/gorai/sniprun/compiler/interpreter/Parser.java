@@ -0,0 +1,937 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class Parser {
+    
+    private static final Set<String> MODIFIERS = new HashSet<>(Arrays.asList(
+        "public", "protected", "private", "static", "final", "abstract", "strictfp", "synchronized",
+        "native", "transient", "volatile"));
+    private static final Set<String> PRIMITIVE_TYPES = new HashSet<>(Arrays.asList(
+        "boolean", "byte", "short", "char", "int", "long", "float", "double"));
+    private static final Set<String> ASSIGNMENT_OPERATORS = new HashSet<>(Arrays.asList(
+        "=", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "<<="));
+    
+    private final List<Lexer.Token> tokens;
+    private int position;
+    
+    private Parser(List<Lexer.Token> tokens) {
+        this.tokens = tokens;
+    }
+    
+    public static Ast.CompilationUnit parse(String source) throws ParseException {
+        return new Parser(new Lexer(source).tokenize()).compilationUnit();
+    }
+    
+    private Ast.CompilationUnit compilationUnit() throws ParseException {
+        List<String> imports = new ArrayList<>();
+        List<String> staticImports = new ArrayList<>();
+        List<Ast.ClassDecl> classes = new ArrayList<>();
+        
+        skipAnnotations();
+        if (accept("package")) {
+            qualifiedName();
+            expect(";");
+        }
+        while (peek().is("import")) {
+            advance();
+            boolean isStatic = accept("static");
+            StringBuilder name = new StringBuilder(identifier());
+            while (accept(".")) {
+                name.append('.').append(accept("*") ? "*" : identifier());
+            }
+            expect(";");
+            (isStatic ? staticImports : imports).add(name.toString());
+        }
+        while (peek().type != Lexer.TokenType.EOF) {
+            if (!accept(";")) {
+                classes.add(classDeclaration());
+            }
+        }
+        return new Ast.CompilationUnit(imports, staticImports, classes);
+    }
+    
+    private Ast.ClassDecl classDeclaration() throws ParseException {
+        modifiers();
+        Lexer.Token start = peek();
+        if (start.is("interface") || start.is("enum") || start.is("@")) {
+            throw unsupported(start, start.text + " declarations");
+        }
+        expect("class");
+        String name = identifier();
+        if (peek().is("<")) {
+            throw unsupported(peek(), "generic classes");
+        }
+        if (peek().is("extends") || peek().is("implements")) {
+            throw unsupported(peek(), "class inheritance");
+        }
+        expect("{");
+        
+        List<Ast.FieldDecl> fields = new ArrayList<>();
+        List<Ast.MethodDecl> methods = new ArrayList<>();
+        while (!accept("}")) {
+            if (accept(";")) {
+                continue;
+            }
+            Lexer.Token memberStart = peek();
+            Set<String> modifiers = modifiers();
+            Lexer.Token next = peek();
+            if (next.is("class") || next.is("interface") || next.is("enum")) {
+                throw unsupported(next, "nested types");
+            }
+            if (next.is("{")) {
+                throw unsupported(next, "initializer blocks");
+            }
+            if (next.type == Lexer.TokenType.IDENTIFIER && next.text.equals(name) && peek(1).is("(")) {
+                throw unsupported(next, "constructors");
+            }
+            if (!modifiers.contains("static")) {
+                throw new ParseException("Only static members are supported by the interpreter; declare " +
+                                         "this member static", memberStart.line);
+            }
+            if (peek().is("<")) {
+                skipTypeArguments();
+            }
+            Ast.TypeRef type = peek().is("void") ? new Ast.TypeRef(advance().text, Collections.emptyList(), 0) : type();
+            Lexer.Token memberName = expectIdentifier();
+            if (peek().is("(")) {
+                methods.add(method(memberName, type));
+            } else {
+                fields.addAll(toFields(declarators(type, memberName)));
+                expect(";");
+            }
+        }
+        return new Ast.ClassDecl(start.line, name, fields, methods);
+    }
+    
+    private List<Ast.FieldDecl> toFields(List<Ast.Declarator> declarators) {
+        List<Ast.FieldDecl> fields = new ArrayList<>();
+        for (Ast.Declarator declarator : declarators) {
+            fields.add(new Ast.FieldDecl(declarator.line, declarator.type, declarator.name, declarator.initializer));
+        }
+        return fields;
+    }
+    
+    private Ast.MethodDecl method(Lexer.Token name, Ast.TypeRef returnType) throws ParseException {
+        expect("(");
+        List<Ast.Parameter> parameters = new ArrayList<>();
+        boolean varargs = false;
+        if (!accept(")")) {
+            do {
+                modifiers();
+                Ast.TypeRef type = type();
+                if (accept("...")) {
+                    type = type.withDimensions(1);
+                    varargs = true;
+                }
+                String parameterName = identifier();
+                type = type.withDimensions(dimensions());
+                parameters.add(new Ast.Parameter(type, parameterName));
+            } while (!varargs && accept(","));
+            expect(")");
+        }
+        returnType = returnType.withDimensions(dimensions());
+        if (accept("throws")) {
+            do {
+                qualifiedName();
+            } while (accept(","));
+        }
+        if (peek().is(";")) {
+            throw unsupported(peek(), "abstract or native methods");
+        }
+        return new Ast.MethodDecl(name.line, name.text, returnType, parameters, varargs, block());
+    }
+    
+    private Set<String> modifiers() throws ParseException {
+        Set<String> modifiers = new HashSet<>();
+        while (true) {
+            skipAnnotations();
+            Lexer.Token token = peek();
+            if (token.type == Lexer.TokenType.KEYWORD && MODIFIERS.contains(token.text)) {
+                modifiers.add(advance().text);
+            } else {
+                return modifiers;
+            }
+        }
+    }
+    
+    private void skipAnnotations() throws ParseException {
+        while (peek().is("@") && !peek(1).is("interface")) {
+            advance();
+            qualifiedName();
+            if (peek().is("(")) {
+                skipBalanced("(", ")");
+            }
+        }
+    }
+    
+    private void skipBalanced(String open, String close) throws ParseException {
+        int depth = 0;
+        do {
+            Lexer.Token token = advance();
+            if (token.type == Lexer.TokenType.EOF) {
+                throw new ParseException("Missing " + close, token.line);
+            }
+            if (token.is(open)) {
+                depth++;
+            } else if (token.is(close)) {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+    
+    private Ast.Block block() throws ParseException {
+        Lexer.Token start = expect("{");
+        List<Ast.Stmt> statements = new ArrayList<>();
+        while (!accept("}")) {
+            if (peek().type == Lexer.TokenType.EOF) {
+                throw new ParseException("Missing closing brace for block opened on line " + start.line,
+                                         peek().line);
+            }
+            statements.add(statement());
+        }
+        return new Ast.Block(start.line, statements);
+    }
+    
+    private Ast.Stmt statement() throws ParseException {
+        Lexer.Token token = peek();
+        int line = token.line;
+        
+        if (token.is("{")) {
+            return block();
+        }
+        if (accept(";")) {
+            return new Ast.Empty(line);
+        }
+        if (accept("if")) {
+            Ast.Expr condition = parenthesized();
+            Ast.Stmt thenBranch = statement();
+            Ast.Stmt elseBranch = accept("else") ? statement() : null;
+            return new Ast.If(line, condition, thenBranch, elseBranch);
+        }
+        if (accept("while")) {
+            Ast.Expr condition = parenthesized();
+            return new Ast.While(line, condition, statement());
+        }
+        if (accept("do")) {
+            Ast.Stmt body = statement();
+            expect("while");
+            Ast.Expr condition = parenthesized();
+            expect(";");
+            return new Ast.DoWhile(line, body, condition);
+        }
+        if (accept("for")) {
+            return forStatement(line);
+        }
+        if (accept("switch")) {
+            return switchStatement(line);
+        }
+        if (accept("return")) {
+            Ast.Expr value = peek().is(";") ? null : expression();
+            expect(";");
+            return new Ast.Return(line, value);
+        }
+        if (accept("break")) {
+            String label = peek().type == Lexer.TokenType.IDENTIFIER ? advance().text : null;
+            expect(";");
+            return new Ast.Break(line, label);
+        }
+        if (accept("continue")) {
+            String label = peek().type == Lexer.TokenType.IDENTIFIER ? advance().text : null;
+            expect(";");
+            return new Ast.Continue(line, label);
+        }
+        if (accept("throw")) {
+            Ast.Expr exception = expression();
+            expect(";");
+            return new Ast.Throw(line, exception);
+        }
+        if (accept("try")) {
+            return tryStatement(line);
+        }
+        if (token.is("class") || token.is("interface") || token.is("enum")) {
+            throw unsupported(token, "local type declarations");
+        }
+        if (token.is("synchronized") || token.is("assert")) {
+            throw unsupported(token, token.text + " statements");
+        }
+        if (token.type == Lexer.TokenType.IDENTIFIER && peek(1).is(":")) {
+            advance();
+            advance();
+            return new Ast.Labeled(line, token.text, statement());
+        }
+        if (token.is("final") || token.is("@") || isLocalVariableDeclaration()) {
+            modifiers();
+            Ast.TypeRef type = type();
+            Ast.LocalVarDecl declaration = new Ast.LocalVarDecl(line, declarators(type, expectIdentifier()));
+            expect(";");
+            return declaration;
+        }
+        
+        Ast.Expr expression = expression();
+        if (!(expression instanceof Ast.Assign || expression instanceof Ast.IncDec ||
+              expression instanceof Ast.MethodCall || expression instanceof Ast.New)) {
+            throw new ParseException("Not a statement", line);
+        }
+        expect(";");
+        return new Ast.ExprStmt(line, expression);
+    }
+    
+    private Ast.Stmt forStatement(int line) throws ParseException {
+        expect("(");
+        List<Ast.Stmt> init = new ArrayList<>();
+        if (peek().is("final") || isLocalVariableDeclaration()) {
+            modifiers();
+            Ast.TypeRef type = type();
+            Lexer.Token name = expectIdentifier();
+            if (accept(":")) {
+                Ast.Expr iterable = expression();
+                expect(")");
+                return new Ast.ForEach(line, type, name.text, iterable, statement());
+            }
+            init.add(new Ast.LocalVarDecl(line, declarators(type, name)));
+        } else if (!peek().is(";")) {
+            for (Ast.Expr expression : expressionList()) {
+                init.add(new Ast.ExprStmt(line, expression));
+            }
+        }
+        expect(";");
+        Ast.Expr condition = peek().is(";") ? null : expression();
+        expect(";");
+        List<Ast.Expr> update = peek().is(")") ? Collections.<Ast.Expr>emptyList() : expressionList();
+        expect(")");
+        return new Ast.For(line, init, condition, update, statement());
+    }
+    
+    private Ast.Stmt switchStatement(int line) throws ParseException {
+        Ast.Expr selector = parenthesized();
+        expect("{");
+        List<Ast.SwitchCase> cases = new ArrayList<>();
+        boolean hasDefault = false;
+        while (!accept("}")) {
+            List<Ast.Expr> labels = new ArrayList<>();
+            Lexer.Token label = peek();
+            if (accept("default")) {
+                if (hasDefault) {
+                    throw new ParseException("Duplicate default label", label.line);
+                }
+                hasDefault = true;
+            } else {
+                expect("case");
+                do {
+                    labels.add(conditional());
+                } while (accept(","));
+            }
+            if (peek().is("->")) {
+                throw unsupported(peek(), "arrow-style switch cases");
+            }
+            expect(":");
+            List<Ast.Stmt> body = new ArrayList<>();
+            while (!peek().is("case") && !peek().is("default") && !peek().is("}")) {
+                if (peek().type == Lexer.TokenType.EOF) {
+                    throw new ParseException("Missing closing brace for switch", peek().line);
+                }
+                body.add(statement());
+            }
+            cases.add(new Ast.SwitchCase(labels, body));
+        }
+        return new Ast.Switch(line, selector, cases);
+    }
+    
+    private Ast.Stmt tryStatement(int line) throws ParseException {
+        if (peek().is("(")) {
+            throw unsupported(peek(), "try-with-resources");
+        }
+        Ast.Block body = block();
+        List<Ast.Catch> catches = new ArrayList<>();
+        while (accept("catch")) {
+            expect("(");
+            modifiers();
+            List<Ast.TypeRef> types = new ArrayList<>();
+            do {
+                types.add(type());
+            } while (accept("|"));
+            String name = identifier();
+            expect(")");
+            catches.add(new Ast.Catch(types, name, block()));
+        }
+        Ast.Block finallyBlock = accept("finally") ? block() : null;
+        if (catches.isEmpty() && finallyBlock == null) {
+            throw new ParseException("'try' without 'catch' or 'finally'", line);
+        }
+        return new Ast.Try(line, body, catches, finallyBlock);
+    }
+    
+    private boolean isLocalVariableDeclaration() {
+        Lexer.Token token = peek();
+        if (token.type == Lexer.TokenType.KEYWORD) {
+            return PRIMITIVE_TYPES.contains(token.text);
+        }
+        if (token.type != Lexer.TokenType.IDENTIFIER) {
+            return false;
+        }
+        int saved = position;
+        try {
+            type();
+            return peek().type == Lexer.TokenType.IDENTIFIER;
+        } catch (ParseException e) {
+            return false;
+        } finally {
+            position = saved;
+        }
+    }
+    
+    private List<Ast.Declarator> declarators(Ast.TypeRef type, Lexer.Token firstName) throws ParseException {
+        List<Ast.Declarator> declarators = new ArrayList<>();
+        Lexer.Token name = firstName;
+        while (true) {
+            Ast.TypeRef declaredType = type.withDimensions(dimensions());
+            Ast.Expr initializer = null;
+            if (accept("=")) {
+                initializer = peek().is("{") ? arrayInitializer() : expression();
+            }
+            if (declaredType.isInferred() && initializer == null) {
+                throw new ParseException("Cannot infer the type of '" + name.text + "' without an initializer",
+                                         name.line);
+            }
+            declarators.add(new Ast.Declarator(name.text, declaredType, initializer, name.line));
+            if (!accept(",")) {
+                return declarators;
+            }
+            name = expectIdentifier();
+        }
+    }
+    
+    private int dimensions() throws ParseException {
+        int dimensions = 0;
+        while (peek().is("[") && peek(1).is("]")) {
+            advance();
+            advance();
+            dimensions++;
+        }
+        return dimensions;
+    }
+    
+    private Ast.TypeRef type() throws ParseException {
+        skipAnnotations();
+        Lexer.Token token = peek();
+        String name;
+        List<Ast.TypeRef> arguments = Collections.emptyList();
+        if (token.type == Lexer.TokenType.KEYWORD && PRIMITIVE_TYPES.contains(token.text)) {
+            name = advance().text;
+        } else {
+            StringBuilder qualified = new StringBuilder(identifier());
+            arguments = typeArguments();
+            while (peek().is(".") && peek(1).type == Lexer.TokenType.IDENTIFIER) {
+                advance();
+                qualified.append('.').append(advance().text);
+                arguments = typeArguments();
+            }
+            name = qualified.toString();
+        }
+        return new Ast.TypeRef(name, arguments, dimensions());
+    }
+    
+    private List<Ast.TypeRef> typeArguments() throws ParseException {
+        if (!peek().is("<")) {
+            return Collections.emptyList();
+        }
+        advance();
+        List<Ast.TypeRef> arguments = new ArrayList<>();
+        if (accept(">")) {
+            return arguments;
+        }
+        do {
+            if (accept("?")) {
+                if (accept("extends") || accept("super")) {
+                    arguments.add(type());
+                } else {
+                    arguments.add(new Ast.TypeRef("Object", Collections.emptyList(), 0));
+                }
+            } else {
+                arguments.add(type());
+            }
+        } while (accept(","));
+        closeTypeArguments();
+        return arguments;
+    }
+    
+    private void skipTypeArguments() throws ParseException {
+        expect("<");
+        int depth = 1;
+        while (depth > 0) {
+            Lexer.Token token = advance();
+            if (token.type == Lexer.TokenType.EOF) {
+                throw new ParseException("Missing >", token.line);
+            }
+            if (token.is("<")) {
+                depth++;
+            } else if (token.is(">")) {
+                depth--;
+            } else if (token.is(">=")) {
+                depth--;
+                position--;
+                tokens.set(position, new Lexer.Token(Lexer.TokenType.OPERATOR, "=", null, token.line, token.offset + 1));
+            }
+        }
+    }
+    
+    private void closeTypeArguments() throws ParseException {
+        Lexer.Token token = peek();
+        if (token.is(">=")) {
+            tokens.set(position, new Lexer.Token(Lexer.TokenType.OPERATOR, "=", null, token.line, token.offset + 1));
+            return;
+        }
+        expect(">");
+    }
+    
+    private Ast.Expr parenthesized() throws ParseException {
+        expect("(");
+        Ast.Expr expression = expression();
+        expect(")");
+        return expression;
+    }
+    
+    private List<Ast.Expr> expressionList() throws ParseException {
+        List<Ast.Expr> expressions = new ArrayList<>();
+        do {
+            expressions.add(expression());
+        } while (accept(","));
+        return expressions;
+    }
+    
+    private Ast.Expr expression() throws ParseException {
+        Lexer.Token start = peek();
+        if ((start.type == Lexer.TokenType.IDENTIFIER && peek(1).is("->")) || isParenthesizedLambda()) {
+            throw unsupported(start, "lambda expressions");
+        }
+        
+        Ast.Expr target = conditional();
+        Lexer.Token token = peek();
+        String operator = null;
+        if (token.type == Lexer.TokenType.OPERATOR && ASSIGNMENT_OPERATORS.contains(token.text)) {
+            operator = advance().text;
+        } else if (token.is(">") && adjacent(0, 1, ">") && adjacent(1, 2, ">=")) {
+            position += 3;
+            operator = ">>>=";
+        } else if (token.is(">") && adjacent(0, 1, ">=")) {
+            position += 2;
+            operator = ">>=";
+        }
+        if (operator == null) {
+            return target;
+        }
+        if (!(target instanceof Ast.Name || target instanceof Ast.FieldAccess || target instanceof Ast.ArrayAccess)) {
+            throw new ParseException("The left-hand side of an assignment must be a variable", token.line);
+        }
+        Ast.Expr value = operator.equals("=") && peek().is("{") ? arrayInitializer() : expression();
+        return new Ast.Assign(token.line, operator, target, value);
+    }
+    
+    private boolean isParenthesizedLambda() {
+        if (!peek().is("(")) {
+            return false;
+        }
+        int depth = 0;
+        for (int i = position; i < tokens.size(); i++) {
+            Lexer.Token token = tokens.get(i);
+            if (token.is("(")) {
+                depth++;
+            } else if (token.is(")")) {
+                depth--;
+                if (depth == 0) {
+                    return i + 1 < tokens.size() && tokens.get(i + 1).is("->");
+                }
+            } else if (token.type == Lexer.TokenType.EOF || token.is(";") || token.is("{")) {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    private Ast.Expr conditional() throws ParseException {
+        Ast.Expr condition = binary(0);
+        Lexer.Token token = peek();
+        if (!accept("?")) {
+            return condition;
+        }
+        Ast.Expr whenTrue = expression();
+        expect(":");
+        Ast.Expr whenFalse = peek().is("(") && isParenthesizedLambda() ? expression() : conditional();
+        return new Ast.Conditional(token.line, condition, whenTrue, whenFalse);
+    }
+    
+    private static final String[][] BINARY_LEVELS = {
+        {"||"}, {"&&"}, {"|"}, {"^"}, {"&"}, {"==", "!="}, {"<", ">", "<=", ">=", "instanceof"},
+        {"<<", ">>", ">>>"}, {"+", "-"}, {"*", "/", "%"}
+    };
+    
+    private Ast.Expr binary(int level) throws ParseException {
+        if (level == BINARY_LEVELS.length) {
+            return unary();
+        }
+        Ast.Expr left = binary(level + 1);
+        while (true) {
+            Lexer.Token token = peek();
+            String operator = binaryOperator(level);
+            if (operator == null) {
+                return left;
+            }
+            if (operator.equals("instanceof")) {
+                left = new Ast.InstanceOf(token.line, left, type());
+            } else {
+                left = new Ast.Binary(token.line, operator, left, binary(level + 1));
+            }
+        }
+    }
+    
+    private String binaryOperator(int level) {
+        Lexer.Token token = peek();
+        if (token.is(">")) {
+            boolean shift = adjacent(0, 1, ">");
+            if (shift && adjacent(1, 2, ">") && !adjacent(2, 3, "=") && !adjacent(2, 3, ">=")) {
+                if (BINARY_LEVELS[level][0].equals("<<")) {
+                    position += 3;
+                    return ">>>";
+                }
+                return null;
+            }
+            if (shift && !adjacent(1, 2, ">") && !adjacent(1, 2, ">=") && !adjacent(1, 2, "=")) {
+                if (BINARY_LEVELS[level][0].equals("<<")) {
+                    position += 2;
+                    return ">>";
+                }
+                return null;
+            }
+            if (shift || adjacent(0, 1, ">=")) {
+                return null;
+            }
+        }
+        for (String operator : BINARY_LEVELS[level]) {
+            if (token.is(operator)) {
+                advance();
+                return operator;
+            }
+        }
+        return null;
+    }
+    
+    private boolean adjacent(int first, int second, String text) {
+        if (position + second >= tokens.size()) {
+            return false;
+        }
+        Lexer.Token a = tokens.get(position + first);
+        Lexer.Token b = tokens.get(position + second);
+        return b.is(text) && b.offset == a.offset + a.text.length();
+    }
+    
+    private Ast.Expr unary() throws ParseException {
+        Lexer.Token token = peek();
+        if (token.is("++") || token.is("--")) {
+            advance();
+            return new Ast.IncDec(token.line, true, token.is("++"), unary());
+        }
+        if (token.is("-") && (peek(1).type == Lexer.TokenType.INT_LITERAL || peek(1).type == Lexer.TokenType.LONG_LITERAL)) {
+            Lexer.Token literal = peek(1);
+            if (literal.value instanceof Long && literal.type == Lexer.TokenType.INT_LITERAL) {
+                if ((Long) literal.value != Integer.MAX_VALUE + 1L) {
+                    throw new ParseException("Integer number too large: " + literal.text, literal.line);
+                }
+                position += 2;
+                return postfix(new Ast.Literal(token.line, Integer.MIN_VALUE));
+            }
+        }
+        if (token.is("+") || token.is("-") || token.is("!") || token.is("~")) {
+            advance();
+            return new Ast.Unary(token.line, token.text, unary());
+        }
+        if (token.is("(")) {
+            Ast.TypeRef castType = castType();
+            if (castType != null) {
+                return new Ast.Cast(token.line, castType, unary());
+            }
+        }
+        return postfix(primary());
+    }
+    
+    private Ast.TypeRef castType() throws ParseException {
+        int saved = position;
+        advance();
+        Lexer.Token first = peek();
+        if (first.type == Lexer.TokenType.KEYWORD && PRIMITIVE_TYPES.contains(first.text)) {
+            Ast.TypeRef type = type();
+            expect(")");
+            return type;
+        }
+        if (first.type != Lexer.TokenType.IDENTIFIER) {
+            position = saved;
+            return null;
+        }
+        try {
+            Ast.TypeRef type = type();
+            if (accept(")")) {
+                Lexer.Token next = peek();
+                boolean operandFollows = next.type == Lexer.TokenType.IDENTIFIER ||
+                    next.type == Lexer.TokenType.STRING_LITERAL || next.type == Lexer.TokenType.CHAR_LITERAL ||
+                    next.type == Lexer.TokenType.INT_LITERAL || next.type == Lexer.TokenType.LONG_LITERAL ||
+                    next.type == Lexer.TokenType.FLOAT_LITERAL || next.type == Lexer.TokenType.DOUBLE_LITERAL ||
+                    next.is("(") || next.is("!") || next.is("~") || next.is("new") || next.is("this") ||
+                    next.is("true") || next.is("false") || next.is("null") || next.is("super");
+                if (operandFollows) {
+                    return type;
+                }
+            }
+        } catch (ParseException e) {
+            // Not a cast; fall through and parse a parenthesized expression.
+        }
+        position = saved;
+        return null;
+    }
+    
+    private Ast.Expr postfix(Ast.Expr expression) throws ParseException {
+        while (true) {
+            Lexer.Token token = peek();
+            if (token.is("++") || token.is("--")) {
+                advance();
+                expression = new Ast.IncDec(token.line, false, token.is("++"), expression);
+            } else {
+                return expression;
+            }
+        }
+    }
+    
+    private Ast.Expr primary() throws ParseException {
+        Lexer.Token token = advance();
+        Ast.Expr expression;
+        switch (token.type) {
+            case INT_LITERAL:
+                if (token.value instanceof Long) {
+                    throw new ParseException("Integer number too large: " + token.text, token.line);
+                }
+                expression = new Ast.Literal(token.line, token.value);
+                break;
+            case LONG_LITERAL:
+            case FLOAT_LITERAL:
+            case DOUBLE_LITERAL:
+            case CHAR_LITERAL:
+            case STRING_LITERAL:
+                expression = new Ast.Literal(token.line, token.value);
+                break;
+            case IDENTIFIER:
+                expression = peek().is("(")
+                    ? new Ast.MethodCall(token.line, null, token.text, arguments())
+                    : new Ast.Name(token.line, token.text);
+                break;
+            case KEYWORD:
+                expression = keywordPrimary(token);
+                break;
+            case OPERATOR:
+                if (token.is("(")) {
+                    expression = expression();
+                    expect(")");
+                    break;
+                }
+                throw new ParseException("Unexpected " + token, token.line);
+            default:
+                throw new ParseException("Unexpected " + token, token.line);
+        }
+        return selectors(expression);
+    }
+    
+    private Ast.Expr keywordPrimary(Lexer.Token token) throws ParseException {
+        switch (token.text) {
+            case "true":
+                return new Ast.Literal(token.line, Boolean.TRUE);
+            case "false":
+                return new Ast.Literal(token.line, Boolean.FALSE);
+            case "null":
+                return new Ast.Literal(token.line, null);
+            case "new":
+                return creator(token);
+            case "this":
+            case "super":
+                throw unsupported(token, "'" + token.text + "' (only static code is supported)");
+            default:
+                if (PRIMITIVE_TYPES.contains(token.text) || token.text.equals("void")) {
+                    throw unsupported(token, "class literals");
+                }
+                throw new ParseException("Unexpected " + token, token.line);
+        }
+    }
+    
+    private Ast.Expr creator(Lexer.Token newToken) throws ParseException {
+        skipAnnotations();
+        Lexer.Token start = peek();
+        String name;
+        List<Ast.TypeRef> typeArguments = Collections.emptyList();
+        if (start.type == Lexer.TokenType.KEYWORD && PRIMITIVE_TYPES.contains(start.text)) {
+            name = advance().text;
+        } else {
+            StringBuilder qualified = new StringBuilder(identifier());
+            typeArguments = typeArguments();
+            while (accept(".")) {
+                qualified.append('.').append(identifier());
+                typeArguments = typeArguments();
+            }
+            name = qualified.toString();
+        }
+        Ast.TypeRef type = new Ast.TypeRef(name, typeArguments, 0);
+        
+        if (peek().is("[")) {
+            List<Ast.Expr> dimensions = new ArrayList<>();
+            int extra = 0;
+            while (peek().is("[")) {
+                advance();
+                if (accept("]")) {
+                    extra++;
+                } else {
+                    if (extra > 0) {
+                        throw new ParseException("Array dimension missing", peek().line);
+                    }
+                    dimensions.add(expression());
+                    expect("]");
+                }
+            }
+            Ast.TypeRef arrayType = type.withDimensions(dimensions.size() + extra);
+            if (dimensions.isEmpty()) {
+                if (!peek().is("{")) {
+                    throw new ParseException("Array dimension missing", peek().line);
+                }
+                return new Ast.NewArray(newToken.line, arrayType, dimensions, arrayInitializer());
+            }
+            return new Ast.NewArray(newToken.line, arrayType, dimensions, null);
+        }
+        
+        if (type.isPrimitive()) {
+            throw new ParseException("Cannot instantiate primitive type " + name, start.line);
+        }
+        List<Ast.Expr> arguments = arguments();
+        if (peek().is("{")) {
+            throw unsupported(peek(), "anonymous classes");
+        }
+        return new Ast.New(newToken.line, type, arguments);
+    }
+    
+    private Ast.ArrayInit arrayInitializer() throws ParseException {
+        Lexer.Token start = expect("{");
+        List<Ast.Expr> elements = new ArrayList<>();
+        while (!accept("}")) {
+            elements.add(peek().is("{") ? arrayInitializer() : expression());
+            if (!accept(",")) {
+                expect("}");
+                break;
+            }
+        }
+        return new Ast.ArrayInit(start.line, elements);
+    }
+    
+    private Ast.Expr selectors(Ast.Expr expression) throws ParseException {
+        while (true) {
+            Lexer.Token token = peek();
+            if (token.is(".")) {
+                advance();
+                if (peek().is("<")) {
+                    skipTypeArguments();
+                }
+                Lexer.Token member = advance();
+                if (member.is("class")) {
+                    throw unsupported(member, "class literals");
+                }
+                if (member.is("new") || member.is("this")) {
+                    throw unsupported(member, "inner class instances");
+                }
+                if (member.type != Lexer.TokenType.IDENTIFIER) {
+                    throw new ParseException("<identifier> expected after '.'", member.line);
+                }
+                expression = peek().is("(")
+                    ? new Ast.MethodCall(member.line, expression, member.text, arguments())
+                    : new Ast.FieldAccess(member.line, expression, member.text);
+            } else if (token.is("[")) {
+                if (peek(1).is("]")) {
+                    throw unsupported(token, "class literals");
+                }
+                advance();
+                Ast.Expr index = expression();
+                expect("]");
+                expression = new Ast.ArrayAccess(token.line, expression, index);
+            } else if (token.is("::")) {
+                throw unsupported(token, "method references");
+            } else {
+                return expression;
+            }
+        }
+    }
+    
+    private List<Ast.Expr> arguments() throws ParseException {
+        expect("(");
+        if (accept(")")) {
+            return Collections.emptyList();
+        }
+        List<Ast.Expr> arguments = expressionList();
+        expect(")");
+        return arguments;
+    }
+    
+    private String qualifiedName() throws ParseException {
+        StringBuilder name = new StringBuilder(identifier());
+        while (peek().is(".") && peek(1).type == Lexer.TokenType.IDENTIFIER) {
+            advance();
+            name.append('.').append(advance().text);
+        }
+        return name.toString();
+    }
+    
+    private String identifier() throws ParseException {
+        return expectIdentifier().text;
+    }
+    
+    private Lexer.Token expectIdentifier() throws ParseException {
+        Lexer.Token token = advance();
+        if (token.type != Lexer.TokenType.IDENTIFIER) {
+            throw new ParseException("<identifier> expected but found " + token, token.line);
+        }
+        return token;
+    }
+    
+    private Lexer.Token expect(String text) throws ParseException {
+        Lexer.Token token = peek();
+        if (!token.is(text)) {
+            int line = text.equals(";") && position > 0 ? tokens.get(position - 1).line : token.line;
+            throw new ParseException("'" + text + "' expected but found " + token, line);
+        }
+        return advance();
+    }
+    
+    private boolean accept(String text) {
+        if (peek().is(text)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+    
+    private Lexer.Token peek() {
+        return tokens.get(position);
+    }
+    
+    private Lexer.Token peek(int ahead) {
+        return tokens.get(Math.min(position + ahead, tokens.size() - 1));
+    }
+    
+    private Lexer.Token advance() {
+        Lexer.Token token = tokens.get(position);
+        if (token.type != Lexer.TokenType.EOF) {
+            position++;
+        }
+        return token;
+    }
+    
+    private static ParseException unsupported(Lexer.Token token, String feature) {
+        return new ParseException("The interpreter does not support " + feature, token.line);
+    }
+}
@@ -0,0 +1,39 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.io.PrintStream;
+
+public class Program {
+    
+    private final int[] staticCounts;
+    private final CompiledMethod initializer;
+    private final CompiledMethod main;
+    
+    Program(int[] staticCounts, CompiledMethod initializer, CompiledMethod main) {
+        this.staticCounts = staticCounts;
+        this.initializer = initializer;
+        this.main = main;
+    }
+    
+    public static Program compile(Ast.CompilationUnit unit, String mainClassName) {
+        return ClosureCompiler.compile(unit, mainClassName);
+    }
+    
+    public void run(PrintStream out, PrintStream err, ExecutionBudget budget) {
+        ExecutionContext context = new ExecutionContext(out, err, staticCounts, budget);
+        budget.start();
+        try {
+            initializer.invoke(context);
+            if (main.parameterTypes.length == 0) {
+                main.invoke(context);
+            } else {
+                main.invoke(context, (Object) new String[0]);
+            }
+        } catch (ThrownException | EvaluationException e) {
+            throw e;
+        } catch (RuntimeException | StackOverflowError e) {
+            throw new ThrownException(e, context.line);
+        } finally {
+            budget.finish();
+        }
+    }
+}
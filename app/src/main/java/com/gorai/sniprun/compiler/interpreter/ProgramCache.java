@@ -0,0 +1,77 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ProgramCache {
+    
+    private static final String TAG = "ProgramCache";
+    
+    private final int maxEntries;
+    private final LinkedHashMap<String, Program> entries;
+    private int hitCount;
+    private int missCount;
+    
+    public ProgramCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Program>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+                return size() > ProgramCache.this.maxEntries;
+            }
+        };
+    }
+    
+    public Program get(String source, String mainClassName) throws ParseException {
+        String key = hash(source);
+        synchronized (this) {
+            Program cached = entries.get(key);
+            if (cached != null) {
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+        
+        long startTime = System.nanoTime();
+        Program program = Program.compile(Parser.parse(source), mainClassName);
+        Log.d(TAG, "Compiled " + source.length() + " chars in " + (System.nanoTime() - startTime) / 1000 + "us");
+        
+        synchronized (this) {
+            entries.put(key, program);
+        }
+        return program;
+    }
+    
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+    
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    private static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+abstract class StatementNode {
+    
+    static final int NORMAL = 0;
+    static final int BREAK = 1;
+    static final int CONTINUE = 2;
+    static final int RETURN = 3;
+    static final int EXIT = -1;
+    
+    final int line;
+    
+    StatementNode(int line) {
+        this.line = line;
+    }
+    
+    abstract int execute(Frame frame);
+    
+    static int loopControl(int status, Frame frame, int label) {
+        if (status == BREAK || status == CONTINUE) {
+            if (frame.label != 0 && frame.label != label) {
+                return status;
+            }
+            frame.label = 0;
+            return status == BREAK ? EXIT : NORMAL;
+        }
+        return status;
+    }
+}
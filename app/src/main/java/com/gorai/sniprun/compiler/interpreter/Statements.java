@@ -0,0 +1,507 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+final class Statements {
+    
+    static final StatementNode EMPTY = new Block(0, new StatementNode[0]);
+    
+    private Statements() {
+    }
+    
+    static final class Block extends StatementNode {
+        private final StatementNode[] statements;
+        
+        Block(int line, StatementNode[] statements) {
+            super(line);
+            this.statements = statements;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            for (StatementNode statement : statements) {
+                int status = statement.execute(frame);
+                if (status != NORMAL) {
+                    return status;
+                }
+            }
+            return NORMAL;
+        }
+    }
+    
+    static final class Evaluate extends StatementNode {
+        private final ExpressionNode expression;
+        
+        Evaluate(int line, ExpressionNode expression) {
+            super(line);
+            this.expression = expression;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.context.line = line;
+            expression.evaluateForEffect(frame);
+            return NORMAL;
+        }
+    }
+    
+    static final class If extends StatementNode {
+        private final ExpressionNode condition;
+        private final StatementNode thenBranch;
+        private final StatementNode elseBranch;
+        
+        If(int line, ExpressionNode condition, StatementNode thenBranch, StatementNode elseBranch) {
+            super(line);
+            this.condition = condition;
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.context.line = line;
+            if (condition.evaluateCondition(frame)) {
+                return thenBranch.execute(frame);
+            }
+            return elseBranch == null ? NORMAL : elseBranch.execute(frame);
+        }
+    }
+    
+    static final class While extends StatementNode {
+        private final int label;
+        private final ExpressionNode condition;
+        private final StatementNode body;
+        
+        While(int line, int label, ExpressionNode condition, StatementNode body) {
+            super(line);
+            this.label = label;
+            this.condition = condition;
+            this.body = body;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            ExecutionContext context = frame.context;
+            ExecutionBudget budget = context.budget;
+            while (true) {
+                context.line = line;
+                budget.tick(line);
+                if (!condition.evaluateCondition(frame)) {
+                    return NORMAL;
+                }
+                int status = loopControl(body.execute(frame), frame, label);
+                if (status != NORMAL) {
+                    return status == EXIT ? NORMAL : status;
+                }
+            }
+        }
+    }
+    
+    static final class DoWhile extends StatementNode {
+        private final int label;
+        private final StatementNode body;
+        private final ExpressionNode condition;
+        
+        DoWhile(int line, int label, StatementNode body, ExpressionNode condition) {
+            super(line);
+            this.label = label;
+            this.body = body;
+            this.condition = condition;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            ExecutionContext context = frame.context;
+            ExecutionBudget budget = context.budget;
+            do {
+                budget.tick(line);
+                int status = loopControl(body.execute(frame), frame, label);
+                if (status != NORMAL) {
+                    return status == EXIT ? NORMAL : status;
+                }
+                context.line = line;
+            } while (condition.evaluateCondition(frame));
+            return NORMAL;
+        }
+    }
+    
+    static final class For extends StatementNode {
+        private final int label;
+        private final StatementNode init;
+        private final ExpressionNode condition;
+        private final ExpressionNode[] update;
+        private final StatementNode body;
+        
+        For(int line, int label, StatementNode init, ExpressionNode condition, ExpressionNode[] update,
+            StatementNode body) {
+            super(line);
+            this.label = label;
+            this.init = init;
+            this.condition = condition;
+            this.update = update;
+            this.body = body;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            ExecutionContext context = frame.context;
+            ExecutionBudget budget = context.budget;
+            init.execute(frame);
+            while (true) {
+                context.line = line;
+                budget.tick(line);
+                if (condition != null && !condition.evaluateCondition(frame)) {
+                    return NORMAL;
+                }
+                int status = loopControl(body.execute(frame), frame, label);
+                if (status != NORMAL) {
+                    return status == EXIT ? NORMAL : status;
+                }
+                context.line = line;
+                for (ExpressionNode expression : update) {
+                    expression.evaluateForEffect(frame);
+                }
+            }
+        }
+    }
+    
+    static final class ForEach extends StatementNode {
+        private final int label;
+        private final int slot;
+        private final int bank;
+        private final Class<?> elementType;
+        private final ExpressionNode iterable;
+        private final StatementNode body;
+        
+        ForEach(int line, int label, int slot, Class<?> elementType, ExpressionNode iterable, StatementNode body) {
+            super(line);
+            this.label = label;
+            this.slot = slot;
+            this.bank = Frame.bank(elementType);
+            this.elementType = elementType;
+            this.iterable = iterable;
+            this.body = body;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.context.line = line;
+            Object source = iterable.evaluate(frame);
+            if (source == null) {
+                throw new NullPointerException("Cannot iterate over null");
+            }
+            ExecutionBudget budget = frame.context.budget;
+            if (source.getClass().isArray()) {
+                int length = Array.getLength(source);
+                boolean primitive = bank != Frame.OBJECT && source.getClass().getComponentType().isPrimitive();
+                Object[] references = source instanceof Object[] ? (Object[]) source : null;
+                for (int i = 0; i < length; i++) {
+                    budget.tick(line);
+                    if (primitive) {
+                        storeElement(frame, source, i);
+                    } else {
+                        store(frame, references != null ? references[i] : Array.get(source, i));
+                    }
+                    int status = loopControl(body.execute(frame), frame, label);
+                    if (status != NORMAL) {
+                        return status == EXIT ? NORMAL : status;
+                    }
+                }
+                return NORMAL;
+            }
+            if (!(source instanceof Iterable)) {
+                throw new EvaluationException("for-each not applicable to " + Values.describe(source), line);
+            }
+            Iterator<?> iterator = ((Iterable<?>) source).iterator();
+            while (iterator.hasNext()) {
+                budget.tick(line);
+                store(frame, iterator.next());
+                int status = loopControl(body.execute(frame), frame, label);
+                if (status != NORMAL) {
+                    return status == EXIT ? NORMAL : status;
+                }
+            }
+            return NORMAL;
+        }
+        
+        private void storeElement(Frame frame, Object array, int index) {
+            if (bank == Frame.LONG) {
+                frame.longs[slot] = Values.narrow(Expressions.loadLong(array, index, line), elementType);
+            } else {
+                frame.doubles[slot] = Expressions.loadDouble(array, index, line);
+            }
+        }
+        
+        private void store(Frame frame, Object element) {
+            Object value = Values.coerce(element, elementType, line);
+            switch (bank) {
+                case Frame.LONG:
+                    frame.longs[slot] = Values.toLong(value);
+                    break;
+                case Frame.DOUBLE:
+                    frame.doubles[slot] = Values.toDouble(value);
+                    break;
+                default:
+                    frame.objects[slot] = value;
+                    break;
+            }
+        }
+    }
+    
+    static final class Labeled extends StatementNode {
+        private final int label;
+        private final StatementNode body;
+        
+        Labeled(int line, int label, StatementNode body) {
+            super(line);
+            this.label = label;
+            this.body = body;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            int status = body.execute(frame);
+            if (status == BREAK && frame.label == label) {
+                frame.label = 0;
+                return NORMAL;
+            }
+            return status;
+        }
+    }
+    
+    static final class Switch extends StatementNode {
+        private final ExpressionNode selector;
+        private final boolean enumSelector;
+        private final Map<Object, Integer> targets;
+        private final int defaultTarget;
+        private final StatementNode[] statements;
+        
+        Switch(int line, ExpressionNode selector, boolean enumSelector, Map<Object, Integer> targets,
+               int defaultTarget, StatementNode[] statements) {
+            super(line);
+            this.selector = selector;
+            this.enumSelector = enumSelector;
+            this.targets = targets;
+            this.defaultTarget = defaultTarget;
+            this.statements = statements;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.context.line = line;
+            Object value = selector.evaluate(frame);
+            if (value == null) {
+                throw new NullPointerException("Cannot switch on null");
+            }
+            Integer target = targets.get(key(value));
+            int start = target != null ? target : defaultTarget;
+            for (int i = start; i < statements.length; i++) {
+                int status = statements[i].execute(frame);
+                if (status != NORMAL) {
+                    if (status == BREAK && frame.label == 0) {
+                        return NORMAL;
+                    }
+                    return status;
+                }
+            }
+            return NORMAL;
+        }
+        
+        private Object key(Object value) {
+            if (enumSelector) {
+                return ((Enum<?>) value).name();
+            }
+            return value instanceof String ? value : (Object) Values.toInt(value);
+        }
+    }
+    
+    static final class IntSwitch extends StatementNode {
+        private final ExpressionNode selector;
+        private final int[] keys;
+        private final int[] targets;
+        private final int defaultTarget;
+        private final StatementNode[] statements;
+        
+        IntSwitch(int line, ExpressionNode selector, int[] keys, int[] targets, int defaultTarget,
+                  StatementNode[] statements) {
+            super(line);
+            this.selector = selector;
+            this.keys = keys;
+            this.targets = targets;
+            this.defaultTarget = defaultTarget;
+            this.statements = statements;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.context.line = line;
+            int index = Arrays.binarySearch(keys, (int) selector.evaluateLong(frame));
+            int start = index >= 0 ? targets[index] : defaultTarget;
+            for (int i = start; i < statements.length; i++) {
+                int status = statements[i].execute(frame);
+                if (status != NORMAL) {
+                    if (status == BREAK && frame.label == 0) {
+                        return NORMAL;
+                    }
+                    return status;
+                }
+            }
+            return NORMAL;
+        }
+    }
+    
+    static final class Return extends StatementNode {
+        private final int bank;
+        private final ExpressionNode value;
+        
+        Return(int line, int bank, ExpressionNode value) {
+            super(line);
+            this.bank = bank;
+            this.value = value;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            if (value == null) {
+                return RETURN;
+            }
+            frame.context.line = line;
+            switch (bank) {
+                case Frame.LONG:
+                    frame.returnLong = value.evaluateLong(frame);
+                    break;
+                case Frame.DOUBLE:
+                    frame.returnDouble = value.evaluateDouble(frame);
+                    break;
+                default:
+                    frame.returnValue = value.evaluate(frame);
+                    break;
+            }
+            return RETURN;
+        }
+    }
+    
+    static final class Jump extends StatementNode {
+        private final int status;
+        private final int label;
+        
+        Jump(int line, int status, int label) {
+            super(line);
+            this.status = status;
+            this.label = label;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.label = label;
+            return status;
+        }
+    }
+    
+    static final class Throw extends StatementNode {
+        private final ExpressionNode exception;
+        
+        Throw(int line, ExpressionNode exception) {
+            super(line);
+            this.exception = exception;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            frame.context.line = line;
+            Object value = exception.evaluate(frame);
+            if (value == null) {
+                throw new NullPointerException("Cannot throw null");
+            }
+            if (!(value instanceof Throwable)) {
+                throw new EvaluationException("Incompatible types: " + Values.describe(value) +
+                                              " cannot be thrown", line);
+            }
+            throw new ThrownException((Throwable) value, line);
+        }
+    }
+    
+    static final class CatchClause {
+        final Class<?>[] types;
+        final int slot;
+        final StatementNode body;
+        
+        CatchClause(Class<?>[] types, int slot, StatementNode body) {
+            this.types = types;
+            this.slot = slot;
+            this.body = body;
+        }
+    }
+    
+    static final class Try extends StatementNode {
+        private final StatementNode body;
+        private final CatchClause[] catches;
+        private final StatementNode finallyBlock;
+        
+        Try(int line, StatementNode body, CatchClause[] catches, StatementNode finallyBlock) {
+            super(line);
+            this.body = body;
+            this.catches = catches;
+            this.finallyBlock = finallyBlock;
+        }
+        
+        @Override
+        int execute(Frame frame) {
+            if (finallyBlock == null) {
+                return executeGuarded(frame);
+            }
+            int status;
+            try {
+                status = executeGuarded(frame);
+            } catch (BudgetExceededException e) {
+                throw e;
+            } catch (RuntimeException | Error e) {
+                int finallyStatus = finallyBlock.execute(frame);
+                if (finallyStatus != NORMAL) {
+                    return finallyStatus;
+                }
+                throw e;
+            }
+            Object returnValue = frame.returnValue;
+            long returnLong = frame.returnLong;
+            double returnDouble = frame.returnDouble;
+            int label = frame.label;
+            int finallyStatus = finallyBlock.execute(frame);
+            if (finallyStatus != NORMAL) {
+                return finallyStatus;
+            }
+            frame.returnValue = returnValue;
+            frame.returnLong = returnLong;
+            frame.returnDouble = returnDouble;
+            frame.label = label;
+            return status;
+        }
+        
+        private int executeGuarded(Frame frame) {
+            try {
+                return body.execute(frame);
+            } catch (EvaluationException e) {
+                throw e;
+            } catch (ThrownException e) {
+                return handle(frame, e.thrown, e);
+            } catch (RuntimeException | StackOverflowError e) {
+                return handle(frame, e, new ThrownException(e, frame.context.line));
+            }
+        }
+        
+        private int handle(Frame frame, Throwable thrown, ThrownException uncaught) {
+            for (CatchClause clause : catches) {
+                for (Class<?> type : clause.types) {
+                    if (type.isInstance(thrown)) {
+                        frame.objects[clause.slot] = thrown;
+                        return clause.body.execute(frame);
+                    }
+                }
+            }
+            throw uncaught;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+public class ThrownException extends RuntimeException {
+    
+    final Throwable thrown;
+    final int line;
+    
+    ThrownException(Throwable thrown, int line) {
+        super(null, null, false, false);
+        this.thrown = thrown;
+        this.line = line;
+    }
+    
+    public Throwable getThrown() {
+        return thrown;
+    }
+    
+    public int getLine() {
+        return line;
+    }
+}
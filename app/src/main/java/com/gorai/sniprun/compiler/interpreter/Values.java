@@ -0,0 +1,415 @@
+package com.gorai.sniprun.compiler.interpreter;
+
+final class Values {
+    
+    static final int INT = 0;
+    static final int LONG = 1;
+    static final int FLOAT = 2;
+    static final int DOUBLE = 3;
+    
+    static final int ADD = 0;
+    static final int SUB = 1;
+    static final int MUL = 2;
+    static final int DIV = 3;
+    static final int REM = 4;
+    static final int AND = 5;
+    static final int OR = 6;
+    static final int XOR = 7;
+    static final int SHL = 8;
+    static final int SHR = 9;
+    static final int USHR = 10;
+    static final int LT = 11;
+    static final int GT = 12;
+    static final int LE = 13;
+    static final int GE = 14;
+    static final int EQ = 15;
+    static final int NE = 16;
+    
+    private static final String[] SYMBOLS = {
+        "+", "-", "*", "/", "%", "&", "|", "^", "<<", ">>", ">>>", "<", ">", "<=", ">=", "==", "!="
+    };
+    
+    private Values() {
+    }
+    
+    static boolean isNumeric(Object value) {
+        return value instanceof Number || value instanceof Character;
+    }
+    
+    static int rank(Object value) {
+        if (value instanceof Double) {
+            return DOUBLE;
+        }
+        if (value instanceof Float) {
+            return FLOAT;
+        }
+        if (value instanceof Long) {
+            return LONG;
+        }
+        return INT;
+    }
+    
+    static int kind(Class<?> type) {
+        Class<?> primitive = type.isPrimitive() ? type : Interop.unboxedType(type);
+        if (primitive == null || primitive == boolean.class || primitive == void.class) {
+            return -1;
+        }
+        if (primitive == double.class) {
+            return DOUBLE;
+        }
+        if (primitive == float.class) {
+            return FLOAT;
+        }
+        return primitive == long.class ? LONG : INT;
+    }
+    
+    static Class<?> kindType(int kind) {
+        switch (kind) {
+            case DOUBLE: return double.class;
+            case FLOAT: return float.class;
+            case LONG: return long.class;
+            default: return int.class;
+        }
+    }
+    
+    static Object box(long value, Class<?> type) {
+        if (type == int.class) {
+            return (int) value;
+        }
+        if (type == long.class) {
+            return value;
+        }
+        if (type == char.class) {
+            return (char) value;
+        }
+        if (type == short.class) {
+            return (short) value;
+        }
+        return (byte) value;
+    }
+    
+    static Object box(double value, Class<?> type) {
+        return type == float.class ? (Object) (float) value : (Object) value;
+    }
+    
+    static long narrow(long value, Class<?> type) {
+        if (type == int.class) {
+            return (int) value;
+        }
+        if (type == char.class) {
+            return (char) value;
+        }
+        if (type == short.class) {
+            return (short) value;
+        }
+        if (type == byte.class) {
+            return (byte) value;
+        }
+        return value;
+    }
+    
+    static long narrow(double value, Class<?> type) {
+        return type == long.class ? (long) value : narrow((int) value, type);
+    }
+    
+    static int toInt(Object value) {
+        return value instanceof Character ? (Character) value : ((Number) value).intValue();
+    }
+    
+    static long toLong(Object value) {
+        return value instanceof Character ? (Character) value : ((Number) value).longValue();
+    }
+    
+    static float toFloat(Object value) {
+        return value instanceof Character ? (Character) value : ((Number) value).floatValue();
+    }
+    
+    static double toDouble(Object value) {
+        return value instanceof Character ? (Character) value : ((Number) value).doubleValue();
+    }
+    
+    static boolean toBoolean(Object value, int line) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new EvaluationException("Expected a boolean but found " + describe(value), line);
+    }
+    
+    static String describe(Object value) {
+        return value == null ? "null" : value.getClass().getSimpleName();
+    }
+    
+    static Object arithmetic(int operator, Object left, Object right, int line) {
+        if (operator == ADD && (left instanceof String || right instanceof String)) {
+            return String.valueOf(left) + right;
+        }
+        if (left instanceof Boolean && right instanceof Boolean) {
+            boolean a = (Boolean) left;
+            boolean b = (Boolean) right;
+            switch (operator) {
+                case AND: return a & b;
+                case OR: return a | b;
+                case XOR: return a ^ b;
+                case EQ: return a == b;
+                case NE: return a != b;
+                default: break;
+            }
+        }
+        if (!isNumeric(left) || !isNumeric(right)) {
+            if (operator == EQ) {
+                return left == right;
+            }
+            if (operator == NE) {
+                return left != right;
+            }
+            throw new EvaluationException("Operator " + symbol(operator) + " cannot be applied to " +
+                                          describe(left) + " and " + describe(right), line);
+        }
+        if (isShift(operator)) {
+            return left instanceof Long
+                ? (Object) longShift(operator, (Long) left, toLong(right))
+                : (Object) intShift(operator, toInt(left), toLong(right));
+        }
+        
+        int kind = Math.max(rank(left), rank(right));
+        if (isComparison(operator)) {
+            return kind == INT || kind == LONG
+                ? compare(operator, toLong(left), toLong(right))
+                : compare(operator, toDouble(left), toDouble(right));
+        }
+        switch (kind) {
+            case DOUBLE:
+                return doubleArithmetic(operator, toDouble(left), toDouble(right), line);
+            case FLOAT:
+                return (float) doubleArithmetic(operator, toFloat(left), toFloat(right), line);
+            case LONG:
+                return longArithmetic(operator, toLong(left), toLong(right), line);
+            default:
+                return intArithmetic(operator, toInt(left), toInt(right), line);
+        }
+    }
+    
+    static int intArithmetic(int operator, int a, int b, int line) {
+        switch (operator) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return a / b;
+            case REM: return a % b;
+            case AND: return a & b;
+            case OR: return a | b;
+            case XOR: return a ^ b;
+            default: throw badOperands(operator, line);
+        }
+    }
+    
+    static long longArithmetic(int operator, long a, long b, int line) {
+        switch (operator) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return a / b;
+            case REM: return a % b;
+            case AND: return a & b;
+            case OR: return a | b;
+            case XOR: return a ^ b;
+            default: throw badOperands(operator, line);
+        }
+    }
+    
+    static double doubleArithmetic(int operator, double a, double b, int line) {
+        switch (operator) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return a / b;
+            case REM: return a % b;
+            default: throw badOperands(operator, line);
+        }
+    }
+    
+    static boolean compare(int operator, long a, long b) {
+        switch (operator) {
+            case LT: return a < b;
+            case GT: return a > b;
+            case LE: return a <= b;
+            case GE: return a >= b;
+            case EQ: return a == b;
+            default: return a != b;
+        }
+    }
+    
+    static boolean compare(int operator, double a, double b) {
+        switch (operator) {
+            case LT: return a < b;
+            case GT: return a > b;
+            case LE: return a <= b;
+            case GE: return a >= b;
+            case EQ: return a == b;
+            default: return a != b;
+        }
+    }
+    
+    static int intShift(int operator, int value, long distance) {
+        switch (operator) {
+            case SHL: return value << distance;
+            case SHR: return value >> distance;
+            default: return value >>> distance;
+        }
+    }
+    
+    static long longShift(int operator, long value, long distance) {
+        switch (operator) {
+            case SHL: return value << distance;
+            case SHR: return value >> distance;
+            default: return value >>> distance;
+        }
+    }
+    
+    static int opcode(String operator) {
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            if (SYMBOLS[i].equals(operator)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(operator);
+    }
+    
+    static String symbol(int operator) {
+        return SYMBOLS[operator];
+    }
+    
+    static boolean isComparison(int operator) {
+        return operator >= LT;
+    }
+    
+    static boolean isShift(int operator) {
+        return operator == SHL || operator == SHR || operator == USHR;
+    }
+    
+    static boolean isBitwise(int operator) {
+        return operator == AND || operator == OR || operator == XOR;
+    }
+    
+    static Object negate(Object value, int line) {
+        if (!isNumeric(value)) {
+            throw new EvaluationException("Operator - cannot be applied to " + describe(value), line);
+        }
+        switch (rank(value)) {
+            case DOUBLE: return -toDouble(value);
+            case FLOAT: return -toFloat(value);
+            case LONG: return -toLong(value);
+            default: return -toInt(value);
+        }
+    }
+    
+    static Object promote(Object value, int line) {
+        if (!isNumeric(value)) {
+            throw new EvaluationException("Operator + cannot be applied to " + describe(value), line);
+        }
+        return rank(value) == INT ? (Object) toInt(value) : value;
+    }
+    
+    static Object complement(Object value, int line) {
+        if (value instanceof Long) {
+            return ~(Long) value;
+        }
+        if (!isNumeric(value) || value instanceof Double || value instanceof Float) {
+            throw new EvaluationException("Operator ~ cannot be applied to " + describe(value), line);
+        }
+        return ~toInt(value);
+    }
+    
+    static Object increment(Object value, int delta, int line) {
+        if (!isNumeric(value)) {
+            throw new EvaluationException("Cannot increment " + describe(value), line);
+        }
+        if (value instanceof Integer) {
+            return (Integer) value + delta;
+        }
+        if (value instanceof Long) {
+            return (Long) value + delta;
+        }
+        if (value instanceof Double) {
+            return (Double) value + delta;
+        }
+        if (value instanceof Float) {
+            return (Float) value + delta;
+        }
+        if (value instanceof Character) {
+            return (char) ((Character) value + delta);
+        }
+        if (value instanceof Short) {
+            return (short) ((Short) value + delta);
+        }
+        return (byte) ((Byte) value + delta);
+    }
+    
+    static Object coerce(Object value, Class<?> type, int line) {
+        if (type == null || type == Object.class) {
+            return value;
+        }
+        if (type.isPrimitive() || isBoxType(type)) {
+            if (value == null) {
+                if (type.isPrimitive()) {
+                    throw new NullPointerException("Cannot unbox null value");
+                }
+                return null;
+            }
+            return convert(value, type, line);
+        }
+        if (value != null && !type.isInstance(value)) {
+            throw new EvaluationException("Incompatible types: " + describe(value) + " cannot be converted to " +
+                                          type.getSimpleName(), line);
+        }
+        return value;
+    }
+    
+    static Object convert(Object value, Class<?> type, int line) {
+        if (type == boolean.class || type == Boolean.class) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+        } else if (isNumeric(value)) {
+            if (type == int.class || type == Integer.class) {
+                return toInt(value);
+            }
+            if (type == long.class || type == Long.class) {
+                return toLong(value);
+            }
+            if (type == double.class || type == Double.class) {
+                return toDouble(value);
+            }
+            if (type == float.class || type == Float.class) {
+                return toFloat(value);
+            }
+            if (type == char.class || type == Character.class) {
+                return (char) toInt(value);
+            }
+            if (type == short.class || type == Short.class) {
+                return (short) toInt(value);
+            }
+            if (type == byte.class || type == Byte.class) {
+                return (byte) toInt(value);
+            }
+        }
+        throw new EvaluationException("Incompatible types: " + describe(value) + " cannot be converted to " +
+                                      type.getSimpleName(), line);
+    }
+    
+    static boolean isBoxType(Class<?> type) {
+        return type == Integer.class || type == Long.class || type == Double.class || type == Float.class ||
+               type == Character.class || type == Short.class || type == Byte.class || type == Boolean.class;
+    }
+    
+    static boolean valueEquals(Object left, Object right) {
+        if (isNumeric(left) && isNumeric(right)) {
+            return (Boolean) arithmetic(EQ, left, right, 0);
+        }
+        return left == right || (left instanceof Boolean && left.equals(right));
+    }
+    
+    private static EvaluationException badOperands(int operator, int line) {
+        return new EvaluationException("Bad operand types for operator " + symbol(operator), line);
+    }
+}
@@ -0,0 +1,37 @@
+package com.gorai.sniprun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.gorai.sniprun.compiler.CancellationToken;
+import com.gorai.sniprun.compiler.CompilerService;
+import com.gorai.sniprun.compiler.ExecutionScheduler;
+
+import org.junit.Test;
+
+public class JavaExecutorTest {
+    
+    private static final String LONG_RUNNING_SOURCE = 
+        "long sum = 0;\n" +
+        "for (long i = 0; i < 200000000L; i++) { sum += i % 7; }\n" +
+        "System.out.println(sum);";
+    
+    @Test
+    public void compiledSuccessCancelsInterpretedPreview() throws Exception {
+        TestContext context = new TestContext();
+        JavaExecutor executor = new JavaExecutor(context);
+        ExecutionScheduler scheduler = CompilerService.getInstance(context).getScheduler();
+        
+        JavaExecutor.ExecutionResult result = executor.submit("preview-test", LONG_RUNNING_SOURCE, 
+                                                              ExecutionScheduler.Priority.INTERACTIVE,
+                                                              new CancellationToken(), null, null, true).get();
+        
+        assertTrue(result.isSuccess());
+        assertEquals(JavaExecutor.Tier.COMPILED, result.getTier());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (scheduler.getActivePreviewCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scheduler.getActivePreviewCount());
+    }
+}
@@ -0,0 +1,47 @@
+package com.gorai.sniprun;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+class TestContext extends ContextWrapper {
+    
+    private final File root;
+    private final Map<String, SharedPreferences> preferences = new HashMap<>();
+    
+    TestContext() throws IOException {
+        super(null);
+        this.root = Files.createTempDirectory("sniprun-test").toFile();
+    }
+    
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+    
+    @Override
+    public File getFilesDir() {
+        return new File(root, "files");
+    }
+    
+    @Override
+    public File getCodeCacheDir() {
+        return new File(root, "code_cache");
+    }
+    
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences prefs = preferences.get(name);
+        if (prefs == null) {
+            prefs = new InMemoryPreferences();
+            preferences.put(name, prefs);
+        }
+        return prefs;
+    }
+}
@@ -0,0 +1,98 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AndroidCompatibleJavaCompilerTest {
+    
+    private final AndroidCompatibleJavaCompiler compiler = new AndroidCompatibleJavaCompiler(null);
+    
+    private String run(String source) {
+        AndroidCompatibleJavaCompiler.CompilationResult result = compiler.compileAndExecute(source);
+        assertTrue(result.getErrorMessage(), result.isSuccess());
+        return result.getOutput().trim();
+    }
+    
+    @Test
+    public void listRemoveOfBoxedValueRemovesByValue() {
+        assertEquals("[1, 9, 16]", run(
+            "List<Integer> list = new ArrayList<>(Arrays.asList(1, 4, 9, 16));\n" +
+            "list.remove(Integer.valueOf(4));\n" +
+            "System.out.println(list);"));
+    }
+    
+    @Test
+    public void listRemoveOfPrimitiveRemovesByIndex() {
+        assertEquals("[1, 9, 16]", run(
+            "List<Integer> list = new ArrayList<>(Arrays.asList(1, 4, 9, 16));\n" +
+            "int index = 1;\n" +
+            "list.remove(index);\n" +
+            "System.out.println(list);"));
+    }
+    
+    @Test
+    public void userOverloadsPreferSubtypingOverUnboxing() {
+        assertEquals("object int", run(
+            "public class Main {\n" +
+            "    static String pick(int value) { return \"int\"; }\n" +
+            "    static String pick(Object value) { return \"object\"; }\n" +
+            "    public static void main(String[] args) {\n" +
+            "        System.out.println(pick(Integer.valueOf(4)) + \" \" + pick(4));\n" +
+            "    }\n" +
+            "}"));
+    }
+    
+    @Test
+    public void nullArgumentsResolveByStaticType() {
+        assertEquals("null\nnull\nnull\nnull", run(
+            "String s = null;\n" +
+            "System.out.println(s);\n" +
+            "Map<String, Integer> map = new HashMap<>();\n" +
+            "System.out.println(map.get(\"missing\"));\n" +
+            "Object o = null;\n" +
+            "System.out.println(o);\n" +
+            "System.out.println(String.valueOf((String) null));"));
+    }
+    
+    private static final String SLEEPING_LOOP =
+        "while (true) {\n" +
+        "    try { Thread.sleep(1000); } catch (InterruptedException e) { }\n" +
+        "}";
+    
+    @Test(timeout = 5000)
+    public void cancelStopsSleepingLoop() throws Exception {
+        CancellationToken token = new CancellationToken();
+        AtomicReference<AndroidCompatibleJavaCompiler.CompilationResult> result = new AtomicReference<>();
+        Thread runner = new Thread(() -> result.set(compiler.compileAndExecute(SLEEPING_LOOP, token)));
+        runner.start();
+        Thread.sleep(300);
+        long cancelledAt = System.nanoTime();
+        token.cancel();
+        runner.join();
+        
+        assertTrue((System.nanoTime() - cancelledAt) / 1_000_000 < 500);
+        assertFalse(result.get().isSuccess());
+        assertEquals("Execution stopped", result.get().getErrorMessage());
+    }
+    
+    @Test(timeout = 5000)
+    public void deadlineStopsSleepingLoop() {
+        compiler.setTimeoutMs(300);
+        AndroidCompatibleJavaCompiler.CompilationResult result = compiler.compileAndExecute(SLEEPING_LOOP);
+        
+        assertFalse(result.isSuccess());
+        assertTrue(result.getErrorMessage(), result.getErrorMessage().startsWith("Execution timeout exceeded"));
+    }
+    
+    @Test
+    public void shortSleepCompletes() {
+        assertEquals("done", run(
+            "try { Thread.sleep(20); Thread.sleep(0, 500); } catch (InterruptedException e) { }\n" +
+            "System.out.println(\"done\");"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BytecodeSecurityValidatorTest {
+    
+    private final ProfessionalJavaCompiler compiler = new ProfessionalJavaCompiler(null);
+    
+    private ProfessionalJavaCompiler.CompiledProgram compile(String source) {
+        return compiler.compile(source, new CancellationToken(), null);
+    }
+    
+    private static void assertRejected(ProfessionalJavaCompiler.CompiledProgram program) {
+        assertFalse(program.isSuccess());
+        assertEquals("Code contains unsafe operations", program.getFailure().getErrorMessage());
+        assertTrue(program.getFailure().getCompilationErrors().toString(), 
+                   program.getFailure().getCompilationErrors().toString().contains("File system modifications"));
+    }
+    
+    @Test
+    public void rejectsDeniedCallOnAnonymousSubclass() {
+        assertRejected(compile("new java.io.File(\"victim\") {}.delete();"));
+    }
+    
+    @Test
+    public void rejectsDeniedCallOnNamedSubclass() {
+        assertRejected(compile(
+            "public class Main {\n" +
+            "    static class Wiper extends java.io.File {\n" +
+            "        Wiper(String path) { super(path); }\n" +
+            "    }\n" +
+            "    static class DeepWiper extends Wiper {\n" +
+            "        DeepWiper(String path) { super(path); }\n" +
+            "    }\n" +
+            "    public static void main(String[] args) {\n" +
+            "        new DeepWiper(\"victim\").mkdirs();\n" +
+            "    }\n" +
+            "}"));
+    }
+    
+    @Test
+    public void allowsHarmlessCallsOnSubclass() {
+        ProfessionalJavaCompiler.CompiledProgram program = 
+            compile("System.out.println(new java.io.File(\"name\") {}.getName());");
+        assertTrue(String.valueOf(program.getFailure() != null ? program.getFailure().getCompilationErrors() : ""),
+                   program.isSuccess());
+    }
+}
@@ -0,0 +1,22 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class CompilationCacheTest {
+    
+    private static final String SOURCE = "public class Main {\n    public static void main(String[] args) {}\n}";
+    
+    @Test
+    public void leadingBlankLinesChangeTheKey() {
+        assertNotEquals(CompilationCache.computeKey(SOURCE, ""), CompilationCache.computeKey("\n\n" + SOURCE, ""));
+    }
+    
+    @Test
+    public void trailingWhitespaceDoesNotChangeTheKey() {
+        assertEquals(CompilationCache.computeKey(SOURCE, ""),
+                     CompilationCache.computeKey(SOURCE.replace("{\n", "{   \r\n") + "\n\n", ""));
+    }
+}
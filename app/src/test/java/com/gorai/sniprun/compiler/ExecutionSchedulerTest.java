@@ -0,0 +1,30 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ExecutionSchedulerTest {
+    
+    private static final String DEEP_RECURSION =
+        "public class Main {\n" +
+        "    static int d(int n) { return n == 0 ? 0 : 1 + d(n - 1); }\n" +
+        "    public static void main(String[] args) { System.out.println(d(5000)); }\n" +
+        "}";
+    
+    @Test
+    public void interpretedRecursionFitsOnRunThreads() throws Exception {
+        ExecutionScheduler scheduler = new ExecutionScheduler();
+        AndroidCompatibleJavaCompiler interpreter = new AndroidCompatibleJavaCompiler(null);
+        CancellationToken token = new CancellationToken();
+        
+        AndroidCompatibleJavaCompiler.CompilationResult preview = scheduler.submitPreview(
+            ExecutionScheduler.Priority.INTERACTIVE, token, () -> interpreter.compileAndExecute(DEEP_RECURSION)).get();
+        AndroidCompatibleJavaCompiler.CompilationResult executed = scheduler.submit(null,
+            ExecutionScheduler.Priority.INTERACTIVE, token, compileToken -> DEEP_RECURSION,
+            (source, executeToken) -> interpreter.compileAndExecute(source, executeToken)).get();
+        
+        assertEquals("5000", preview.getOutput().trim());
+        assertEquals("5000", executed.getOutput().trim());
+    }
+}
@@ -0,0 +1,55 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ProjectBuilderTest {
+    
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    
+    private final ProjectBuilder builder = new ProfessionalJavaCompiler(null).newProjectBuilder();
+    
+    private void write(String name, String content) throws IOException {
+        Files.write(new File(folder.getRoot(), name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private ProfessionalJavaCompiler.CompiledProgram build() {
+        ProfessionalJavaCompiler.CompiledProgram program =
+            builder.build(folder.getRoot(), null, null, new CancellationToken(), null);
+        assertTrue(String.valueOf(program.getFailure() != null ? program.getFailure().getErrorMessage() : ""),
+                   program.isSuccess());
+        return program;
+    }
+    
+    private static boolean mentions(byte[] bytecode, String text) {
+        return new String(bytecode, StandardCharsets.ISO_8859_1).contains(text);
+    }
+    
+    @Test
+    public void superclassAbiChangeRecompilesCallersOfSubclass() throws IOException {
+        write("B.java", "public class B {\n" +
+                        "    public void m(Object o) { System.out.println(\"object\"); }\n" +
+                        "}\n");
+        write("C.java", "public class C extends B {\n}\n");
+        write("Main.java", "public class Main {\n" +
+                           "    public static void main(String[] args) { new C().m(\"x\"); }\n" +
+                           "}\n");
+        assertTrue(mentions(build().getClasses().get("Main"), "(Ljava/lang/Object;)V"));
+        
+        write("B.java", "public class B {\n" +
+                        "    public void m(Object o) { System.out.println(\"object\"); }\n" +
+                        "    public void m(String s) { System.out.println(\"string\"); }\n" +
+                        "}\n");
+        byte[] main = build().getClasses().get("Main");
+        assertTrue(mentions(main, "(Ljava/lang/String;)V"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RunBudgetTest {
+    
+    @After
+    public void tearDown() {
+        RunBudget.clear();
+    }
+    
+    @Test
+    public void exhaustionIsStickyAfterBeingCaught() {
+        RunBudget.install(new RunBudget(null, 0, RunBudget.CHECK_INTERVAL));
+        RunBudget.Exhausted first = null;
+        for (int i = 0; i < RunBudget.CHECK_INTERVAL * 4 && first == null; i++) {
+            try {
+                RunBudget.tick();
+            } catch (RunBudget.Exhausted e) {
+                first = e;
+            }
+        }
+        assertTrue(first != null);
+        try {
+            RunBudget.tick();
+            fail("tick after exhaustion should rethrow");
+        } catch (RunBudget.Exhausted e) {
+            assertSame(first, e);
+        }
+    }
+    
+    @Test
+    public void cancellationStopsOtherThreadsOfTheRun() throws Exception {
+        CancellationToken token = new CancellationToken();
+        RunBudget.install(new RunBudget(token, 0, 0));
+        RunBudget.Exhausted[] caught = new RunBudget.Exhausted[1];
+        Thread spawned = new Thread(() -> {
+            try {
+                while (true) {
+                    RunBudget.tick();
+                }
+            } catch (RunBudget.Exhausted e) {
+                caught[0] = e;
+            }
+        });
+        spawned.start();
+        token.cancel();
+        spawned.join(5000);
+        
+        assertTrue(caught[0] != null && caught[0].isCancelled());
+        assertEquals(false, spawned.isAlive());
+    }
+}
@@ -0,0 +1,66 @@
+package com.gorai.sniprun.compiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TwoTierStoreTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static DexCache.Entry entry(int size, int fill) {
+        byte[] dex = new byte[size];
+        Arrays.fill(dex, (byte) fill);
+        return new DexCache.Entry(Collections.singletonList(dex));
+    }
+    
+    @Test
+    public void memoryTierEvictsLeastRecentlyUsed() {
+        DexCache cache = new DexCache(null, 100, 1000);
+        cache.put("a", entry(40, 1));
+        cache.put("b", entry(40, 2));
+        cache.get("a");
+        cache.put("c", entry(40, 3));
+        
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.get("a").getDexFiles().get(0)[0]);
+        assertEquals(3, cache.get("c").getDexFiles().get(0)[0]);
+    }
+    
+    @Test
+    public void diskTierSurvivesANewInstance() {
+        new DexCache(folder.getRoot(), 100, 1000).put("key", entry(60, 7));
+        
+        DexCache reopened = new DexCache(folder.getRoot(), 100, 1000);
+        List<byte[]> dexFiles = reopened.get("key").getDexFiles();
+        
+        assertArrayEquals(entry(60, 7).getDexFiles().get(0), dexFiles.get(0));
+        assertEquals(1, reopened.getHitCount());
+        
+        reopened.clear();
+        assertNull(new DexCache(folder.getRoot(), 100, 1000).get("key"));
+    }
+    
+    @Test
+    public void diskTierTrimsOldestFilesToItsBudget() {
+        DexCache cache = new DexCache(folder.getRoot(), 0, 160);
+        cache.put("a", entry(60, 1));
+        new File(folder.getRoot(), "a.dexs").setLastModified(System.currentTimeMillis() - 60_000);
+        cache.put("b", entry(60, 2));
+        cache.put("c", entry(60, 3));
+        
+        assertEquals(2, folder.getRoot().listFiles((dir, name) -> name.endsWith(".dexs")).length);
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.get("b").getDexFiles().get(0)[0]);
+    }
+}